@@ -0,0 +1,424 @@
+package main.java.com.bag.client;
+
+import bftsmart.communication.client.ReplyListener;
+import bftsmart.tom.AsynchServiceProxy;
+import bftsmart.tom.RequestContext;
+import bftsmart.tom.core.messages.TOMMessage;
+import bftsmart.tom.core.messages.TOMMessageType;
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import main.java.com.bag.util.Constants;
+import main.java.com.bag.util.KryoContext;
+import main.java.com.bag.util.Log;
+import main.java.com.bag.util.ReadModes;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Client which runs many transactions concurrently over the asynchronous BFT-SMaRt proxies.
+ * Every request gets its own reply listener, BFT-SMaRt routes the replies to it by the request id,
+ * the listener completes a future as soon as enough matching replies arrived. No thread blocks while a request is in flight.
+ */
+public class AsyncClient
+{
+    /**
+     * The place the local config file is. This + the cluster id will contain the concrete cluster config location.
+     */
+    private static final String LOCAL_CONFIG_LOCATION = "local%d/config";
+
+    /**
+     * The place the global config files is.
+     */
+    private static final String GLOBAL_CONFIG_LOCATION = "global/config";
+
+    /**
+     * Default time after which a request without enough replies fails.
+     */
+    private static final long DEFAULT_TIMEOUT_MILLIS = 10000;
+
+    /**
+     * Shared thread which fails requests timing out.
+     */
+    private static final ScheduledExecutorService TIMEOUTS = Executors.newSingleThreadScheduledExecutor(runnable ->
+    {
+        final Thread thread = new Thread(runnable, "async-client-timeouts");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * The proxy to use during communication with the local cluster, or the global cluster if there is no local cluster.
+     */
+    private final AsynchServiceProxy localProxy;
+
+    /**
+     * The proxy to use during communication with the globalCluster, null if there is no local cluster.
+     */
+    @Nullable
+    private final AsynchServiceProxy globalProxy;
+
+    /**
+     * The id of the local server process the client is communicating with.
+     */
+    private final int serverProcess;
+
+    /**
+     * Id of the local cluster, -1 if the client talks to the global cluster directly.
+     */
+    private final int localClusterId;
+
+    /**
+     * The ReadMode of this client.
+     */
+    private final ReadModes readMode;
+
+    /**
+     * Time after which a request without enough replies fails.
+     */
+    private final long timeoutMillis;
+
+    /**
+     * Amount of requests which are waiting for replies.
+     */
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * Random to choose the replicas of the read-only commits.
+     */
+    private final Random random = new Random();
+
+    /**
+     * Creates an asynchronous client with the default timeout.
+     *
+     * @param processId      the id of the client process.
+     * @param serverId       the id of the server the client reads from.
+     * @param localClusterId the id of the local cluster or -1.
+     * @param readModeId     the ordinal of the read mode.
+     */
+    public AsyncClient(final int processId, final int serverId, final int localClusterId, final int readModeId)
+    {
+        this(processId, serverId, localClusterId, readModeId, DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Creates an asynchronous client.
+     *
+     * @param processId      the id of the client process.
+     * @param serverId       the id of the server the client reads from.
+     * @param localClusterId the id of the local cluster or -1.
+     * @param readModeId     the ordinal of the read mode.
+     * @param timeoutMillis  time after which a request without enough replies fails.
+     */
+    public AsyncClient(final int processId, final int serverId, final int localClusterId, final int readModeId, final long timeoutMillis)
+    {
+        localProxy = new AsynchServiceProxy(processId, localClusterId == -1 ? GLOBAL_CONFIG_LOCATION : String.format(LOCAL_CONFIG_LOCATION, localClusterId));
+        globalProxy = localClusterId == -1 ? null : new AsynchServiceProxy(100 + processId, GLOBAL_CONFIG_LOCATION);
+        this.serverProcess = serverId;
+        this.localClusterId = localClusterId;
+        this.readMode = ReadModes.values()[readModeId];
+        this.timeoutMillis = timeoutMillis;
+        Log.getLogger().error("Starting async client " + processId + " with read-mode: " + readMode.name());
+    }
+
+    /**
+     * Start a new transaction, any amount of transactions may run at the same time.
+     *
+     * @return the transaction.
+     */
+    public AsyncTransaction begin()
+    {
+        return new AsyncTransaction(this);
+    }
+
+    /**
+     * Get the ReadMode of this client.
+     *
+     * @return the read mode.
+     */
+    public ReadModes getReadMode()
+    {
+        return readMode;
+    }
+
+    /**
+     * Get the amount of requests which are waiting for replies.
+     *
+     * @return the amount.
+     */
+    public int getInFlightRequests()
+    {
+        return inFlight.get();
+    }
+
+    /**
+     * Close the proxies.
+     */
+    public void close()
+    {
+        localProxy.close();
+        if (globalProxy != null)
+        {
+            globalProxy.close();
+        }
+    }
+
+    /**
+     * Send a read to the server the client is attached to.
+     *
+     * @param bytes the serialized read message.
+     * @return future of the reply.
+     */
+    CompletableFuture<byte[]> sendRead(final byte[] bytes)
+    {
+        return invoke(localProxy, bytes, new int[] {serverProcess}, TOMMessageType.UNORDERED_REQUEST, 1, reply -> reply);
+    }
+
+    /**
+     * Send a commit, to the replicas the read mode requires.
+     *
+     * @param bytes    the serialized commit message.
+     * @param readOnly if the transaction didn't write.
+     * @return future of the reply which has been confirmed by enough replicas.
+     */
+    CompletableFuture<byte[]> sendCommit(final byte[] bytes, final boolean readOnly)
+    {
+        final AsynchServiceProxy proxy = globalProxy == null ? localProxy : globalProxy;
+        if (!readOnly)
+        {
+            return invoke(proxy, bytes, null, TOMMessageType.ORDERED_REQUEST, replyQuorum(proxy), AsyncClient::decisionOf);
+        }
+
+        if (localClusterId == -1 || globalProxy == null)
+        {
+            if (readMode == ReadModes.TO_1_OTHER)
+            {
+                return invoke(localProxy, bytes, new int[] {randomProcess(localProxy, -1)}, TOMMessageType.UNORDERED_REQUEST, 1, AsyncClient::decisionOf);
+            }
+            return invoke(localProxy, bytes, null, TOMMessageType.UNORDERED_REQUEST, replyQuorum(localProxy), AsyncClient::decisionOf);
+        }
+
+        if (localProxy.getViewManager().getCurrentViewProcesses().length >= 4 && (readMode == ReadModes.TO_F_PLUS_1_LOCALLY || readMode == ReadModes.LOCALLY_UNORDERED))
+        {
+            if (readMode == ReadModes.TO_F_PLUS_1_LOCALLY)
+            {
+                return invoke(localProxy, bytes, new int[] {0, randomProcess(localProxy, 0)}, TOMMessageType.UNORDERED_REQUEST, 2, AsyncClient::decisionOf);
+            }
+            return invoke(localProxy, bytes, null, TOMMessageType.UNORDERED_REQUEST, replyQuorum(localProxy), AsyncClient::decisionOf);
+        }
+
+        switch (readMode)
+        {
+            case TO_F_PLUS_1_GLOBALLY:
+                return invoke(globalProxy, bytes, new int[] {serverProcess, randomProcess(globalProxy, serverProcess)}, TOMMessageType.UNORDERED_REQUEST, 2, AsyncClient::decisionOf);
+            case TO_1_OTHER:
+                return invoke(globalProxy, bytes, new int[] {randomProcess(globalProxy, -1)}, TOMMessageType.UNORDERED_REQUEST, 1, AsyncClient::decisionOf);
+            case PESSIMISTIC:
+                return invoke(globalProxy, bytes, null, TOMMessageType.ORDERED_REQUEST, replyQuorum(globalProxy), AsyncClient::decisionOf);
+            default:
+                return invoke(globalProxy, bytes, null, TOMMessageType.UNORDERED_REQUEST, replyQuorum(globalProxy), AsyncClient::decisionOf);
+        }
+    }
+
+    /**
+     * Send a request and complete the future with the first reply for which enough replicas answered equally.
+     *
+     * @param proxy    the proxy to send it with.
+     * @param bytes    the request.
+     * @param targets  the replicas to send it to, null for all.
+     * @param type     the type of the request.
+     * @param required the amount of matching replies.
+     * @param keyOf    extracts the part of a reply which has to match.
+     * @return the future of the reply.
+     */
+    private CompletableFuture<byte[]> invoke(
+            @NotNull final AsynchServiceProxy proxy,
+            final byte[] bytes,
+            @Nullable final int[] targets,
+            final TOMMessageType type,
+            final int required,
+            final Function<byte[], Object> keyOf)
+    {
+        final PendingRequest request = new PendingRequest(proxy, required, keyOf);
+        inFlight.incrementAndGet();
+
+        final ScheduledFuture<?> timeout = TIMEOUTS.schedule(
+                () -> request.future.completeExceptionally(new TimeoutException("No reply within " + timeoutMillis + "ms")), timeoutMillis, TimeUnit.MILLISECONDS);
+        request.future.whenComplete((reply, error) ->
+        {
+            timeout.cancel(false);
+            inFlight.decrementAndGet();
+            if (error != null)
+            {
+                request.clean();
+            }
+        });
+
+        try
+        {
+            if (targets == null)
+            {
+                request.requestId.set(proxy.invokeAsynchRequest(bytes, request, type));
+            }
+            else
+            {
+                request.requestId.set(proxy.invokeAsynchRequest(bytes, targets, request, type));
+            }
+
+            //The request may have timed out before its id was known.
+            if (request.future.isCompletedExceptionally())
+            {
+                request.clean();
+            }
+        }
+        catch (final RuntimeException e)
+        {
+            request.future.completeExceptionally(e);
+        }
+        return request.future;
+    }
+
+    /**
+     * Get the amount of matching replies BFT-SMaRt requires for an ordered request.
+     *
+     * @param proxy the proxy of the cluster.
+     * @return the quorum.
+     */
+    private static int replyQuorum(final AsynchServiceProxy proxy)
+    {
+        return (proxy.getViewManager().getCurrentViewN() + proxy.getViewManager().getCurrentViewF()) / 2 + 1;
+    }
+
+    /**
+     * Choose a random replica of a cluster.
+     *
+     * @param proxy   the proxy of the cluster.
+     * @param exclude a replica not to choose, -1 for none.
+     * @return the id of the replica.
+     */
+    private int randomProcess(final AsynchServiceProxy proxy, final int exclude)
+    {
+        final int[] processes = proxy.getViewManager().getCurrentViewProcesses();
+        int process = processes[random.nextInt(processes.length)];
+        while (process == exclude && processes.length > 1)
+        {
+            process = processes[random.nextInt(processes.length)];
+        }
+        return process;
+    }
+
+    /**
+     * Get the decision of a commit response, replicas might answer with different snapshotIds.
+     *
+     * @param reply the reply.
+     * @return the message type and the decision.
+     */
+    private static Object decisionOf(final byte[] reply)
+    {
+        final Kryo kryo = KryoContext.borrow();
+        try (final Input input = new Input(reply))
+        {
+            final String type = kryo.readObject(input, String.class);
+            return Constants.COMMIT_RESPONSE.equals(type) ? type + kryo.readObject(input, String.class) : type;
+        }
+        catch (final RuntimeException e)
+        {
+            return e.getClass();
+        }
+        finally
+        {
+            KryoContext.release(kryo);
+        }
+    }
+
+    /**
+     * Listener of one request, counts the matching replies.
+     */
+    private static class PendingRequest implements ReplyListener
+    {
+        /**
+         * The proxy the request was sent with.
+         */
+        private final AsynchServiceProxy proxy;
+
+        /**
+         * The amount of matching replies.
+         */
+        private final int required;
+
+        /**
+         * Extracts the part of a reply which has to match.
+         */
+        private final Function<byte[], Object> keyOf;
+
+        /**
+         * The amount of replies of each key.
+         */
+        private final Map<Object, Integer> replies = new HashMap<>();
+
+        /**
+         * The future of the confirmed reply.
+         */
+        private final CompletableFuture<byte[]> future = new CompletableFuture<>();
+
+        /**
+         * The id BFT-SMaRt assigned to the request, -1 until it has been sent or once it has been cleaned.
+         */
+        private final AtomicInteger requestId = new AtomicInteger(-1);
+
+        /**
+         * Creates the listener of a request.
+         *
+         * @param proxy    the proxy the request was sent with.
+         * @param required the amount of matching replies.
+         * @param keyOf    extracts the part of a reply which has to match.
+         */
+        private PendingRequest(final AsynchServiceProxy proxy, final int required, final Function<byte[], Object> keyOf)
+        {
+            this.proxy = proxy;
+            this.required = required;
+            this.keyOf = keyOf;
+        }
+
+        /**
+         * Remove the request from the proxy once it failed, late replies are dropped by the proxy then.
+         */
+        private void clean()
+        {
+            final int id = requestId.getAndSet(-1);
+            if (id >= 0)
+            {
+                proxy.cleanAsynchRequest(id);
+            }
+        }
+
+        @Override
+        public void reset()
+        {
+            replies.clear();
+        }
+
+        @Override
+        public void replyReceived(final RequestContext requestContext, final TOMMessage tomMessage)
+        {
+            if (future.isDone())
+            {
+                proxy.cleanAsynchRequest(requestContext.getReqId());
+                return;
+            }
+
+            final byte[] content = tomMessage.getContent();
+            if (replies.merge(keyOf.apply(content), 1, Integer::sum) >= required)
+            {
+                proxy.cleanAsynchRequest(requestContext.getReqId());
+                future.complete(content);
+            }
+        }
+    }
+}
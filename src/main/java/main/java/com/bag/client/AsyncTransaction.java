@@ -0,0 +1,435 @@
+package main.java.com.bag.client;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import main.java.com.bag.operations.CreateOperation;
+import main.java.com.bag.operations.DeleteOperation;
+import main.java.com.bag.operations.IOperation;
+import main.java.com.bag.operations.UpdateOperation;
+import main.java.com.bag.util.Constants;
+import main.java.com.bag.util.KryoContext;
+import main.java.com.bag.util.Log;
+import main.java.com.bag.util.ReadModes;
+import main.java.com.bag.util.storage.NodeStorage;
+import main.java.com.bag.util.storage.RelationshipStorage;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * One transaction of the {@link AsyncClient}, holds its own read and write sets and snapshotId.
+ * Reads and the commit return futures, the replies are processed on the threads of the proxies.
+ */
+public class AsyncTransaction
+{
+    /**
+     * The client the transaction runs on.
+     */
+    private final AsyncClient client;
+
+    /**
+     * Sets to log reads, updates, deletes and node creations.
+     * Hold the keys of the read objects, storages which can't be keyed are logged with their hash.
+     */
+    private final ArrayList<Object> readsSetNode         = new ArrayList<>();
+    private final ArrayList<Object> readsSetRelationship = new ArrayList<>();
+
+    /**
+     * Write Set of the operations.
+     */
+    private final List<IOperation> writeSet = new ArrayList<>();
+
+    /**
+     * The snapshotId of the transaction, -1 until the first read returned.
+     */
+    private long snapshotId = -1;
+
+    /**
+     * The first read, later reads wait for it to read in the same snapshot.
+     */
+    private CompletableFuture<List<Object>> firstRead;
+
+    /**
+     * Completes when all reads sent so far returned, the commit waits for it.
+     */
+    private CompletableFuture<?> pendingReads = CompletableFuture.completedFuture(null);
+
+    /**
+     * If a server aborted the transaction during a read.
+     */
+    private boolean aborted = false;
+
+    /**
+     * Creates a transaction.
+     *
+     * @param client the client it runs on.
+     */
+    AsyncTransaction(@NotNull final AsyncClient client)
+    {
+        this.client = client;
+    }
+
+    /**
+     * Read nodes or relationships, the storages act as pattern.
+     *
+     * @param identifiers list of objects which should be read, may be NodeStorage or RelationshipStorage.
+     * @return future of all read storages, empty if the transaction has been aborted.
+     */
+    public CompletableFuture<List<Object>> read(final Object... identifiers)
+    {
+        final CompletableFuture<List<Object>> read;
+        synchronized (this)
+        {
+            if (aborted)
+            {
+                return CompletableFuture.completedFuture(Collections.emptyList());
+            }
+            if (firstRead == null)
+            {
+                firstRead = sendReads(-1, identifiers);
+                read = firstRead;
+            }
+            else
+            {
+                read = firstRead.handle((result, error) -> result).thenCompose(ignored -> sendReads(getSnapshotId(), identifiers));
+            }
+            pendingReads = CompletableFuture.allOf(pendingReads, read);
+        }
+        return read;
+    }
+
+    /**
+     * Send the identifiers in one read message, the server reads all of them at the same snapshot.
+     *
+     * @param timeStamp   the snapshotId to read in.
+     * @param identifiers the identifiers.
+     * @return future of all read storages.
+     */
+    private CompletableFuture<List<Object>> sendReads(final long timeStamp, final Object... identifiers)
+    {
+        final ArrayList<Object> storages = new ArrayList<>(identifiers.length);
+        for (final Object identifier : identifiers)
+        {
+            if (identifier instanceof NodeStorage || identifier instanceof RelationshipStorage)
+            {
+                storages.add(identifier);
+            }
+            else
+            {
+                Log.getLogger().error("Unsupported identifier: " + identifier);
+            }
+        }
+
+        final byte[] message;
+        if (storages.isEmpty())
+        {
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
+        else if (storages.size() > 1)
+        {
+            message = serialize(Constants.MULTI_READ_MESSAGE, timeStamp, storages);
+        }
+        else if (storages.get(0) instanceof NodeStorage)
+        {
+            message = serialize(Constants.READ_MESSAGE, timeStamp, storages.get(0));
+        }
+        else
+        {
+            message = serialize(Constants.RELATIONSHIP_READ_MESSAGE, timeStamp, storages.get(0));
+        }
+        return client.sendRead(message).thenCompose(reply -> readPages(reply, new ArrayList<>()));
+    }
+
+    /**
+     * Process the page of a read and request the next one until the last has been received.
+     *
+     * @param reply the received bytes.
+     * @param read  the storages of the previous pages.
+     * @return future of all read storages.
+     */
+    private CompletableFuture<List<Object>> readPages(final byte[] reply, final List<Object> read)
+    {
+        final long token = processReadReturn(reply, read);
+        if (token == Constants.NO_CURSOR)
+        {
+            return CompletableFuture.completedFuture(read);
+        }
+        return client.sendRead(serialize(Constants.PAGE_READ_MESSAGE, token)).thenCompose(next -> readPages(next, read));
+    }
+
+    /**
+     * Processes the return of a read request. Filling the readsets.
+     *
+     * @param reply the received bytes.
+     * @param read  the list to add the read storages to.
+     * @return the token of the next page, {@link Constants#NO_CURSOR} if it was the last.
+     */
+    private long processReadReturn(final byte[] reply, final List<Object> read)
+    {
+        final Kryo kryo = KryoContext.borrow();
+        try (final Input input = new Input(reply))
+        {
+            if (!Constants.READ_MESSAGE.equals(kryo.readObject(input, String.class)))
+            {
+                Log.getLogger().error("Unexpected reply to read");
+                return Constants.NO_CURSOR;
+            }
+
+            final String result = kryo.readObject(input, String.class);
+            final long readSnapshot = kryo.readObject(input, Long.class);
+
+            if (Constants.ABORT.equals(result))
+            {
+                synchronized (this)
+                {
+                    aborted = true;
+                }
+                read.clear();
+                return Constants.NO_CURSOR;
+            }
+
+            final List<?> nodes = kryo.readObject(input, ArrayList.class);
+            final List<?> relationships = kryo.readObject(input, ArrayList.class);
+
+            synchronized (this)
+            {
+                snapshotId = readSnapshot;
+                if (nodes != null)
+                {
+                    for (final Object object : nodes)
+                    {
+                        if (object instanceof NodeStorage)
+                        {
+                            final NodeStorage storage = (NodeStorage) object;
+                            if (!storage.getId().equalsIgnoreCase("Dummy"))
+                            {
+                                readsSetNode.add(TestClient.toReadSetEntry(storage, readSnapshot, true));
+                                read.add(storage);
+                            }
+                        }
+                    }
+                }
+
+                if (relationships != null)
+                {
+                    for (final Object object : relationships)
+                    {
+                        if (object instanceof RelationshipStorage)
+                        {
+                            readsSetRelationship.add(TestClient.toReadSetEntry(object, readSnapshot, true));
+                            read.add(object);
+                        }
+                    }
+                }
+            }
+            return input.eof() ? Constants.NO_CURSOR : kryo.readObject(input, Long.class);
+        }
+        finally
+        {
+            KryoContext.release(kryo);
+        }
+    }
+
+    /**
+     * write requests. (Only reach database on commit)
+     *
+     * @param identifier the object to update or delete, null for a create.
+     * @param value      the new value, null for a delete.
+     */
+    public synchronized void write(final Object identifier, final Object value)
+    {
+        if (identifier == null && value == null)
+        {
+            Log.getLogger().error("Unsupported write operation");
+        }
+        else if (identifier == null)
+        {
+            if (value instanceof NodeStorage)
+            {
+                writeSet.add(new CreateOperation<>((NodeStorage) value));
+            }
+            else if (value instanceof RelationshipStorage)
+            {
+                readsSetNode.add(TestClient.toReadSetEntry(((RelationshipStorage) value).getStartNode(), snapshotId, false));
+                readsSetNode.add(TestClient.toReadSetEntry(((RelationshipStorage) value).getEndNode(), snapshotId, false));
+                writeSet.add(new CreateOperation<>((RelationshipStorage) value));
+            }
+        }
+        else if (value == null)
+        {
+            if (identifier instanceof NodeStorage)
+            {
+                writeSet.add(new DeleteOperation<>((NodeStorage) identifier));
+            }
+            else if (identifier instanceof RelationshipStorage)
+            {
+                writeSet.add(new DeleteOperation<>((RelationshipStorage) identifier));
+            }
+        }
+        else if (identifier instanceof NodeStorage && value instanceof NodeStorage)
+        {
+            writeSet.add(new UpdateOperation<>((NodeStorage) identifier, (NodeStorage) value));
+        }
+        else if (identifier instanceof RelationshipStorage && value instanceof RelationshipStorage)
+        {
+            writeSet.add(new UpdateOperation<>((RelationshipStorage) identifier, (RelationshipStorage) value));
+        }
+        else
+        {
+            Log.getLogger().error("Unsupported update operation can't update a node with a relationship or vice versa");
+        }
+    }
+
+    /**
+     * Commit the transaction, waits for the reads which are still in flight.
+     *
+     * @return future which is true if the transaction committed.
+     */
+    public CompletableFuture<Boolean> commit()
+    {
+        final CompletableFuture<?> reads;
+        synchronized (this)
+        {
+            reads = pendingReads;
+        }
+        return reads.handle((result, error) -> result).thenCompose(ignored -> sendCommit());
+    }
+
+    /**
+     * Send the commit message with the read and write sets.
+     *
+     * @return future which is true if the transaction committed.
+     */
+    private CompletableFuture<Boolean> sendCommit()
+    {
+        final byte[] bytes;
+        final boolean readOnly;
+        synchronized (this)
+        {
+            if (aborted)
+            {
+                return CompletableFuture.completedFuture(false);
+            }
+            readOnly = writeSet.isEmpty();
+            if (readOnly && client.getReadMode() == ReadModes.UNSAFE)
+            {
+                return CompletableFuture.completedFuture(true);
+            }
+            bytes = serializeAll();
+        }
+
+        return client.sendCommit(bytes, readOnly).thenApply(this::processCommitReturn);
+    }
+
+    /**
+     * Processes the confirmed reply to the commit.
+     *
+     * @param reply the reply.
+     * @return true if committed.
+     */
+    private boolean processCommitReturn(final byte[] reply)
+    {
+        final Kryo kryo = KryoContext.borrow();
+        try (final Input input = new Input(reply))
+        {
+            if (!Constants.COMMIT_RESPONSE.equals(kryo.readObject(input, String.class)))
+            {
+                Log.getLogger().error("Incorrect response to commit message");
+                return false;
+            }
+            return Constants.COMMIT.equals(kryo.readObject(input, String.class));
+        }
+        finally
+        {
+            KryoContext.release(kryo);
+        }
+    }
+
+    /**
+     * Get the snapshotId of the transaction.
+     *
+     * @return the snapshotId, -1 if nothing has been read yet.
+     */
+    public synchronized long getSnapshotId()
+    {
+        return snapshotId;
+    }
+
+    /**
+     * Check if a server aborted the transaction during a read.
+     *
+     * @return true if so.
+     */
+    public synchronized boolean isAborted()
+    {
+        return aborted;
+    }
+
+    /**
+     * Serializes a read message.
+     *
+     * @param reason     the message type.
+     * @param timeStamp  the snapshotId to read in.
+     * @param identifier the storage or the list of storages to read.
+     * @return the data in byte format.
+     */
+    private static byte[] serialize(@NotNull final String reason, final long timeStamp, final Object identifier)
+    {
+        final Kryo kryo = KryoContext.borrow();
+        final Output output = KryoContext.borrowOutput();
+        kryo.writeObject(output, reason);
+        kryo.writeObject(output, timeStamp);
+        kryo.writeObject(output, identifier);
+
+        final byte[] bytes = output.toBytes();
+        KryoContext.releaseOutput(output);
+        KryoContext.release(kryo);
+        return bytes;
+    }
+
+    /**
+     * Serializes the request of the next page of a read.
+     *
+     * @param reason the message type.
+     * @param token  the continuation token of the last page.
+     * @return the data in byte format.
+     */
+    private static byte[] serialize(@NotNull final String reason, final long token)
+    {
+        final Kryo kryo = KryoContext.borrow();
+        final Output output = KryoContext.borrowOutput();
+        kryo.writeObject(output, reason);
+        kryo.writeObject(output, token);
+
+        final byte[] bytes = output.toBytes();
+        KryoContext.releaseOutput(output);
+        KryoContext.release(kryo);
+        return bytes;
+    }
+
+    /**
+     * Serializes all sets and returns it in byte format.
+     *
+     * @return the data in byte format.
+     */
+    private byte[] serializeAll()
+    {
+        final Kryo kryo = KryoContext.borrow();
+        final Output output = KryoContext.borrowOutput();
+
+        kryo.writeObject(output, Constants.COMMIT_MESSAGE);
+        kryo.writeObject(output, snapshotId);
+        kryo.writeObject(output, readsSetNode);
+        kryo.writeObject(output, readsSetRelationship);
+        kryo.writeObject(output, writeSet);
+
+        final byte[] bytes = output.toBytes();
+        KryoContext.releaseOutput(output);
+        KryoContext.release(kryo);
+        return bytes;
+    }
+}
@@ -5,8 +5,8 @@ import bftsmart.tom.RequestContext;
 import bftsmart.tom.core.messages.TOMMessage;
 import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.io.Input;
-import com.esotericsoftware.kryo.pool.KryoPool;
 import main.java.com.bag.util.Constants;
+import main.java.com.bag.util.KryoContext;
 import main.java.com.bag.util.Log;
 import main.java.com.bag.util.ReadModes;
 
@@ -63,8 +63,7 @@ public class BAGReplyListener implements ReplyListener
     public void replyReceived(final RequestContext requestContext, final TOMMessage tomMessage)
     {
         final byte[] answer = tomMessage.getContent();
-        final KryoPool pool = new KryoPool.Builder(testClient.factory).softReferences().build();
-        final Kryo kryo = pool.borrow();
+        final Kryo kryo = KryoContext.borrow();
 
         final Input input = new Input(answer);
         final String messageType = kryo.readObject(input, String.class);
@@ -74,7 +73,7 @@ public class BAGReplyListener implements ReplyListener
             Log.getLogger().error("Incorrect response type to client from server! ReqId: " + tomMessage.destination + "type: " + messageType + " ");
             testClient.resetSets();
             testClient.setFirstRead(true);
-            pool.release(kryo);
+            KryoContext.release(kryo);
             return;
         }
 
@@ -90,7 +89,7 @@ public class BAGReplyListener implements ReplyListener
             Log.getLogger().error("Two different responses to client from servers! ReqId: " + tomMessage.destination);
             testClient.resetSets();
             testClient.setFirstRead(true);
-            pool.release(kryo);
+            KryoContext.release(kryo);
             return;
         }
 
@@ -103,7 +102,7 @@ public class BAGReplyListener implements ReplyListener
                 testClient.setLocalTimestamp(kryo.readObject(input, Long.class));
                 testClient.resetSets();
                 testClient.setFirstRead(true);
-                pool.release(kryo);
+                KryoContext.release(kryo);
                 Log.getLogger().info(String.format("Transaction with local transaction id: %d successfully committed", testClient.getLocalTimestamp()));
                 return;
             }
@@ -113,7 +112,7 @@ public class BAGReplyListener implements ReplyListener
             testClient.resetSets();
         }
         Log.getLogger().info("Only: " + resultsReceived + " received");
-        pool.release(kryo);
+        KryoContext.release(kryo);
         return;
     }
 }
@@ -2,8 +2,6 @@ package main.java.com.bag.client;
 
 import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.io.Output;
-import com.esotericsoftware.kryo.pool.KryoFactory;
-import com.esotericsoftware.kryo.pool.KryoPool;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.EventLoopGroup;
@@ -20,6 +18,7 @@ import main.java.com.bag.operations.UpdateOperation;
 import main.java.com.bag.server.nettyhandlers.BAGMessageDecoder;
 import main.java.com.bag.server.nettyhandlers.BAGMessageEncoder;
 import main.java.com.bag.server.nettyhandlers.ClientHandler;
+import main.java.com.bag.util.KryoContext;
 import main.java.com.bag.util.Log;
 import main.java.com.bag.util.storage.NodeStorage;
 import main.java.com.bag.util.storage.RelationshipStorage;
@@ -43,26 +42,10 @@ public class DirectAccessClient implements BAGClient
     private ClientHandler         handler;
     private String                host;
     private int                   hostPort;
-    private KryoPool              kryoPool;
     private ArrayList<IOperation> writeSet;
 
-    /**
-     * Create a threadsafe version of kryo.
-     */
-    public KryoFactory factory = () ->
-    {
-        Kryo kryo = new Kryo();
-        kryo.register(NodeStorage.class, 100);
-        kryo.register(RelationshipStorage.class, 200);
-        kryo.register(CreateOperation.class, 250);
-        kryo.register(DeleteOperation.class, 300);
-        kryo.register(UpdateOperation.class, 350);
-        return kryo;
-    };
-
 
     public DirectAccessClient(String host, int hostPort) {
-        kryoPool = new KryoPool.Builder(factory).softReferences().build();
         writeSet = new ArrayList<>();
         this.readQueue = new ArrayBlockingQueue<>(500);
         final ThreadFactory connectFactory = new DefaultThreadFactory("connect");
@@ -208,8 +191,8 @@ public class DirectAccessClient implements BAGClient
             else
                 Log.getLogger().error("Invalid type to read " + item.getClass().getName());
         }
-        final Kryo kryo = kryoPool.borrow();
-        final Output output = new Output(0, 10240);
+        final Kryo kryo = KryoContext.borrow();
+        final Output output = KryoContext.borrowOutput();
         kryo.writeObject(output, list);
 
         if (Log.getLogger().getLevel() == Level.INFO) {
@@ -217,15 +200,15 @@ public class DirectAccessClient implements BAGClient
                 Log.getLogger().info("Reading: " + item.toString());
         }
 
-        handler.sendMessage(output.getBuffer());
-        output.close();
-        kryoPool.release(kryo);
+        handler.sendMessage(output.toBytes());
+        KryoContext.releaseOutput(output);
+        KryoContext.release(kryo);
     }
 
     @Override
     public void commit() {
-        final Kryo kryo = kryoPool.borrow();
-        final Output output = new Output(0, 10240);
+        final Kryo kryo = KryoContext.borrow();
+        final Output output = KryoContext.borrowOutput();
         kryo.writeObject(output, writeSet);
 
 
@@ -237,9 +220,9 @@ public class DirectAccessClient implements BAGClient
                 Log.getLogger().info("Commiting empty writeSet");
         }
 
-        handler.sendMessage(output.getBuffer());
-        output.close();
-        kryoPool.release(kryo);
+        handler.sendMessage(output.toBytes());
+        KryoContext.releaseOutput(output);
+        KryoContext.release(kryo);
         writeSet.clear();
         try {
             while (getReadQueue().take() != TestClient.FINISHED_READING);
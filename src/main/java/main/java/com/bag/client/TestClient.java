@@ -8,18 +8,16 @@ import bftsmart.tom.core.messages.TOMMessageType;
 import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
-import com.esotericsoftware.kryo.pool.KryoFactory;
-import com.esotericsoftware.kryo.pool.KryoPool;
 import main.java.com.bag.operations.CreateOperation;
 import main.java.com.bag.operations.DeleteOperation;
 import main.java.com.bag.operations.IOperation;
 import main.java.com.bag.operations.UpdateOperation;
 import main.java.com.bag.util.*;
 import main.java.com.bag.util.storage.NodeStorage;
+import main.java.com.bag.util.storage.ReadKey;
 import main.java.com.bag.util.storage.RelationshipStorage;
 import org.jetbrains.annotations.NotNull;
 
-import java.security.NoSuchAlgorithmException;
 import java.util.*;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -44,9 +42,10 @@ public class TestClient implements BAGClient, ReplyListener
 
     /**
      * Sets to log reads, updates, deletes and node creations.
+     * Hold the keys of the read objects, storages which can't be keyed are logged with their hash.
      */
-    private ArrayList<NodeStorage>         readsSetNode;
-    private ArrayList<RelationshipStorage> readsSetRelationship;
+    private ArrayList<Object> readsSetNode;
+    private ArrayList<Object> readsSetRelationship;
 
     /**
      * Write Set of the operations.
@@ -117,7 +116,7 @@ public class TestClient implements BAGClient, ReplyListener
             return 0;
         }
         
-        final Kryo kryo = new Kryo();
+        final Kryo kryo = KryoContext.borrow();
         try (final Input input1 = new Input(o1); final Input input2 = new Input(o2))
         {
             if(o1.length == 0 || o2.length == 0)
@@ -157,24 +156,14 @@ public class TestClient implements BAGClient, ReplyListener
             Log.getLogger().error("Something went wrong deserializing:" + e.toString());
             return -1;
         }
+        finally
+        {
+            KryoContext.release(kryo);
+        }
 
         return 0;
     };
 
-    /**
-     * Create a threadsafe version of kryo.
-     */
-    protected final KryoFactory factory = () ->
-    {
-        Kryo kryo = new Kryo();
-        kryo.register(NodeStorage.class, 100);
-        kryo.register(RelationshipStorage.class, 200);
-        kryo.register(CreateOperation.class, 250);
-        kryo.register(DeleteOperation.class, 300);
-        kryo.register(UpdateOperation.class, 350);
-        return kryo;
-    };
-
     public TestClient(final int processId, final int serverId, final int localClusterId, final int readModeId)
     {
         super();
@@ -282,8 +271,8 @@ public class TestClient implements BAGClient, ReplyListener
         }
         else if (value instanceof RelationshipStorage)
         {
-            readsSetNode.add(((RelationshipStorage) value).getStartNode());
-            readsSetNode.add(((RelationshipStorage) value).getEndNode());
+            readsSetNode.add(toReadSetEntry(((RelationshipStorage) value).getStartNode(), localTimestamp, false));
+            readsSetNode.add(toReadSetEntry(((RelationshipStorage) value).getEndNode(), localTimestamp, false));
             writeSet.add(new CreateOperation<>((RelationshipStorage) value));
         }
     }
@@ -315,6 +304,17 @@ public class TestClient implements BAGClient, ReplyListener
     {
         final long timeStampToSend = firstRead ? -1 : localTimestamp;
 
+        if (identifiers.length > 1)
+        {
+            //One round trip for all identifiers, the server reads them at the same snapshot.
+            localProxy.invokeAsynchRequest(this.serialize(Constants.MULTI_READ_MESSAGE, timeStampToSend, new ArrayList<>(Arrays.asList(identifiers))),
+                    new int[] {serverProcess},
+                    this,
+                    TOMMessageType.UNORDERED_REQUEST);
+            firstRead = false;
+            return;
+        }
+
         for (final Object identifier : identifiers)
         {
             if (identifier instanceof NodeStorage)
@@ -340,8 +340,7 @@ public class TestClient implements BAGClient, ReplyListener
     @Override
     public void replyReceived(final RequestContext requestContext, final TOMMessage tomMessage)
     {
-        final KryoPool pool = new KryoPool.Builder(factory).softReferences().build();
-        final Kryo kryo = pool.borrow();
+        final Kryo kryo = KryoContext.borrow();
 
         Log.getLogger().info("reply");
         if (tomMessage.getReqType() == TOMMessageType.UNORDERED_REQUEST)
@@ -354,7 +353,7 @@ public class TestClient implements BAGClient, ReplyListener
                     break;
                 case Constants.GET_PRIMARY:
                 case Constants.COMMIT_RESPONSE:
-                    pool.release(kryo);
+                    KryoContext.release(kryo);
                     return;
                 default:
                     Log.getLogger().info("Unexpected message type!");
@@ -364,7 +363,7 @@ public class TestClient implements BAGClient, ReplyListener
         }
         else if (tomMessage.getReqType() == TOMMessageType.REPLY || tomMessage.getReqType() == TOMMessageType.ORDERED_REQUEST)
         {
-            pool.release(kryo);
+            KryoContext.release(kryo);
             Log.getLogger().info("Commit return" + tomMessage.getReqType().name());
             return;
         }
@@ -372,7 +371,43 @@ public class TestClient implements BAGClient, ReplyListener
         {
             Log.getLogger().info("Receiving other type of request." + tomMessage.getReqType().name());
         }
-        pool.release(kryo);
+        KryoContext.release(kryo);
+    }
+
+    /**
+     * Create the entry of the readSet of a storage, its key and the snapshotId it has been read at.
+     * Storages which can't be keyed are logged as a copy with their hash.
+     *
+     * @param storage    the node or relationship storage.
+     * @param snapshotId the snapshotId it has been read at.
+     * @param hash       false to log a storage which can't be keyed as it is, for the endpoints of created relationships.
+     * @return the key or the storage.
+     */
+    static Object toReadSetEntry(final Object storage, final long snapshotId, final boolean hash)
+    {
+        final ReadKey readKey = ReadKey.of(storage, snapshotId);
+        if (readKey != null)
+        {
+            return readKey;
+        }
+
+        if (!hash)
+        {
+            return storage;
+        }
+
+        if (storage instanceof NodeStorage)
+        {
+            final NodeStorage node = (NodeStorage) storage;
+            final NodeStorage tempStorage = new NodeStorage(node.getId(), node.getProperties());
+            tempStorage.addProperty(Constants.TAG_HASH, HashCreator.hashNode(node));
+            return tempStorage;
+        }
+
+        final RelationshipStorage relationship = (RelationshipStorage) storage;
+        final RelationshipStorage tempStorage = new RelationshipStorage(relationship.getId(), relationship.getProperties(), relationship.getStartNode(), relationship.getEndNode());
+        tempStorage.addProperty(Constants.TAG_HASH, HashCreator.hashRelationship(relationship));
+        return tempStorage;
     }
 
     /**
@@ -390,8 +425,7 @@ public class TestClient implements BAGClient, ReplyListener
 
         Log.getLogger().info("Process read return!");
 
-        final KryoPool pool = new KryoPool.Builder(factory).softReferences().build();
-        final Kryo kryo = pool.borrow();
+        final Kryo kryo = KryoContext.borrow();
 
         final String result = kryo.readObject(input, String.class);
         this.localTimestamp = kryo.readObject(input, Long.class);
@@ -399,7 +433,7 @@ public class TestClient implements BAGClient, ReplyListener
         if (Constants.ABORT.equals(result))
         {
             input.close();
-            pool.release(kryo);
+            KryoContext.release(kryo);
             resetSets();
             readQueue.add(FINISHED_READING);
             return;
@@ -412,18 +446,9 @@ public class TestClient implements BAGClient, ReplyListener
         {
             for (final NodeStorage storage : (ArrayList<NodeStorage>) nodes)
             {
-                final NodeStorage tempStorage = new NodeStorage(storage.getId(), storage.getProperties());
-                try
-                {
-                    tempStorage.addProperty("hash", HashCreator.sha1FromNode(storage));
-                }
-                catch (final NoSuchAlgorithmException e)
+                if(!storage.getId().equalsIgnoreCase("Dummy"))
                 {
-                    Log.getLogger().error("Couldn't add hash for node", e);
-                }
-                if(!tempStorage.getId().equalsIgnoreCase("Dummy"))
-                {
-                    readsSetNode.add(tempStorage);
+                    readsSetNode.add(toReadSetEntry(storage, localTimestamp, true));
                 }
             }
         }
@@ -432,28 +457,26 @@ public class TestClient implements BAGClient, ReplyListener
         {
             for (final RelationshipStorage storage : (ArrayList<RelationshipStorage>) relationships)
             {
-                final RelationshipStorage tempStorage = new RelationshipStorage(storage.getId(), storage.getProperties(), storage.getStartNode(), storage.getEndNode());
-                try
-                {
-                    tempStorage.addProperty("hash", HashCreator.sha1FromRelationship(storage));
-                }
-                catch (final NoSuchAlgorithmException e)
-                {
-                    Log.getLogger().error("Couldn't add hash for relationship", e);
-                }
-                readsSetRelationship.add(tempStorage);
+                readsSetRelationship.add(toReadSetEntry(storage, localTimestamp, true));
             }
         }
 
-        readQueue.add(FINISHED_READING);
+        //Large results arrive in pages, the read is only finished with the last one.
+        final long token = input.eof() ? Constants.NO_CURSOR : kryo.readObject(input, Long.class);
         input.close();
-        pool.release(kryo);
+        KryoContext.release(kryo);
+
+        if (token == Constants.NO_CURSOR)
+        {
+            readQueue.add(FINISHED_READING);
+            return;
+        }
+        localProxy.invokeAsynchRequest(serializePageRead(token), new int[] {serverProcess}, this, TOMMessageType.UNORDERED_REQUEST);
     }
 
     private void processCommitReturn(final byte[] result)
     {
-        final KryoPool pool = new KryoPool.Builder(factory).softReferences().build();
-        final Kryo kryo = pool.borrow();
+        final Kryo kryo = KryoContext.borrow();
 
         if (result == null)
         {
@@ -491,7 +514,7 @@ public class TestClient implements BAGClient, ReplyListener
         resetSets();
 
         input.close();
-        pool.release(kryo);
+        KryoContext.release(kryo);
     }
 
     /**
@@ -517,8 +540,7 @@ public class TestClient implements BAGClient, ReplyListener
 
         if (readOnly)
         {
-            final KryoPool pool = new KryoPool.Builder(factory).softReferences().build();
-            final Kryo kryo = pool.borrow();
+            final Kryo kryo = KryoContext.borrow();
             Log.getLogger().info(localProxy.getProcessId() + " Read-only Commit with snapshotId: " + this.localTimestamp);
 
             final byte[] answer;
@@ -602,7 +624,7 @@ public class TestClient implements BAGClient, ReplyListener
                 Log.getLogger().error("Incorrect response type to client from server!" + localProxy.getProcessId());
                 resetSets();
                 firstRead = true;
-                pool.release(kryo);
+                KryoContext.release(kryo);
                 return;
             }
 
@@ -613,11 +635,11 @@ public class TestClient implements BAGClient, ReplyListener
                 resetSets();
                 firstRead = true;
                 Log.getLogger().info(String.format("Transaction with local transaction id: %d successfully committed", localTimestamp));
-                pool.release(kryo);
+                KryoContext.release(kryo);
                 return;
             }
 
-            pool.release(kryo);
+            KryoContext.release(kryo);
             resetSets();
             return;
         }
@@ -644,15 +666,14 @@ public class TestClient implements BAGClient, ReplyListener
      */
     private byte[] serialize(@NotNull final String request)
     {
-        final KryoPool pool = new KryoPool.Builder(factory).softReferences().build();
-        final Kryo kryo = pool.borrow();
+        final Kryo kryo = KryoContext.borrow();
 
-        final Output output = new Output(0, 256);
+        final Output output = KryoContext.borrowOutput();
         kryo.writeObject(output, request);
 
-        final byte[] bytes = output.getBuffer();
-        output.close();
-        pool.release(kryo);
+        final byte[] bytes = output.toBytes();
+        KryoContext.releaseOutput(output);
+        KryoContext.release(kryo);
         return bytes;
     }
 
@@ -663,24 +684,43 @@ public class TestClient implements BAGClient, ReplyListener
      */
     private byte[] serialize(@NotNull final String reason, final long localTimestamp, final Object... args)
     {
-        final KryoPool pool = new KryoPool.Builder(factory).softReferences().build();
-        final Kryo kryo = pool.borrow();
+        final Kryo kryo = KryoContext.borrow();
 
-        final Output output = new Output(0, 100024);
+        final Output output = KryoContext.borrowOutput();
         kryo.writeObject(output, reason);
         kryo.writeObject(output, localTimestamp);
 
         for (final Object identifier : args)
         {
-            if (identifier instanceof NodeStorage || identifier instanceof RelationshipStorage)
+            if (identifier instanceof NodeStorage || identifier instanceof RelationshipStorage || identifier instanceof ArrayList)
             {
                 kryo.writeObject(output, identifier);
             }
         }
 
-        final byte[] bytes = output.getBuffer();
-        output.close();
-        pool.release(kryo);
+        final byte[] bytes = output.toBytes();
+        KryoContext.releaseOutput(output);
+        KryoContext.release(kryo);
+        return bytes;
+    }
+
+    /**
+     * Serializes the request of the next page of a read.
+     *
+     * @param token the continuation token of the last page.
+     * @return the data in byte format.
+     */
+    private static byte[] serializePageRead(final long token)
+    {
+        final Kryo kryo = KryoContext.borrow();
+
+        final Output output = KryoContext.borrowOutput();
+        kryo.writeObject(output, Constants.PAGE_READ_MESSAGE);
+        kryo.writeObject(output, token);
+
+        final byte[] bytes = output.toBytes();
+        KryoContext.releaseOutput(output);
+        KryoContext.release(kryo);
         return bytes;
     }
 
@@ -691,10 +731,9 @@ public class TestClient implements BAGClient, ReplyListener
      */
     private byte[] serializeAll()
     {
-        final KryoPool pool = new KryoPool.Builder(factory).softReferences().build();
-        final Kryo kryo = pool.borrow();
+        final Kryo kryo = KryoContext.borrow();
 
-        final Output output = new Output(0, 400024);
+        final Output output = KryoContext.borrowOutput();
 
         kryo.writeObject(output, Constants.COMMIT_MESSAGE);
         //Write the timeStamp to the server
@@ -707,9 +746,9 @@ public class TestClient implements BAGClient, ReplyListener
         //Write the writeSet.
         kryo.writeObject(output, writeSet);
 
-        final byte[] bytes = output.getBuffer();
-        output.close();
-        pool.release(kryo);
+        final byte[] bytes = output.toBytes();
+        KryoContext.releaseOutput(output);
+        KryoContext.release(kryo);
         return bytes;
     }
 
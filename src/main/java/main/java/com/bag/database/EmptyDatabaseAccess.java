@@ -9,6 +9,7 @@ import main.java.com.bag.util.storage.RelationshipStorage;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
+import java.util.function.Consumer;
 
 /**
  * Empty DatabaseAccess for testing only.
@@ -173,4 +174,20 @@ public class EmptyDatabaseAccess implements IDatabaseAccess
     {
         return true;
     }
+
+    @Override
+    public void exportData(final int chunkSize, final Consumer<List<Object>> consumer)
+    {
+        /*
+         * Nothing to export.
+         */
+    }
+
+    @Override
+    public void clear(final long snapshotId)
+    {
+        /*
+         * Nothing to clear.
+         */
+    }
 }
@@ -0,0 +1,66 @@
+package main.java.com.bag.database;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Collects the storages of a database export and hands them to a consumer in chunks of a fixed size.
+ */
+public class ExportChunker
+{
+    /**
+     * The maximum amount of storages in a chunk.
+     */
+    private final int chunkSize;
+
+    /**
+     * The consumer receiving the chunks.
+     */
+    private final Consumer<List<Object>> consumer;
+
+    /**
+     * The chunk which is currently filled.
+     */
+    private List<Object> chunk;
+
+    /**
+     * Creates a chunker for an export.
+     *
+     * @param chunkSize the maximum amount of storages in a chunk.
+     * @param consumer  the consumer receiving the chunks.
+     */
+    public ExportChunker(final int chunkSize, final Consumer<List<Object>> consumer)
+    {
+        this.chunkSize = chunkSize;
+        this.consumer = consumer;
+        this.chunk = new ArrayList<>(chunkSize);
+    }
+
+    /**
+     * Add a storage to the current chunk and hand it over if it is full.
+     *
+     * @param storage the node or relationship storage.
+     */
+    public void add(final Object storage)
+    {
+        chunk.add(storage);
+        if (chunk.size() >= chunkSize)
+        {
+            flush();
+        }
+    }
+
+    /**
+     * Hand over the current chunk if it contains anything.
+     */
+    public void flush()
+    {
+        if (chunk.isEmpty())
+        {
+            return;
+        }
+        consumer.accept(chunk);
+        chunk = new ArrayList<>(chunkSize);
+    }
+}
@@ -1,11 +1,8 @@
 package main.java.com.bag.database;
 
-import com.esotericsoftware.kryo.Kryo;
-import com.esotericsoftware.kryo.io.Output;
-import com.esotericsoftware.kryo.pool.KryoFactory;
-import com.esotericsoftware.kryo.pool.KryoPool;
 import main.java.com.bag.exceptions.OutDatedDataException;
 import main.java.com.bag.database.interfaces.IDatabaseAccess;
+import main.java.com.bag.operations.IOperation;
 import main.java.com.bag.util.*;
 import main.java.com.bag.util.storage.NodeStorage;
 import main.java.com.bag.util.storage.RelationshipStorage;
@@ -21,8 +18,8 @@ import org.neo4j.kernel.impl.core.NodeProxy;
 import org.neo4j.kernel.impl.core.RelationshipProxy;
 
 import java.io.File;
-import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import static main.java.com.bag.util.Constants.TAG_PRE;
@@ -49,11 +46,23 @@ public class Neo4jDatabaseAccess implements IDatabaseAccess
      */
     private static final String MATCH = "MATCH ";
 
+    /**
+     * Prefixes of the keys of the nodes and relationships in the version store.
+     */
+    private static final String NODE_KEY = "n";
+    private static final String RELATIONSHIP_KEY = "r";
+
     /**
      * If the DB runs in multi-version mode.
      */
     private final boolean multiVersion;
 
+    /**
+     * The previous versions of the nodes and relationships, null if not in multi-version mode.
+     */
+    @Nullable
+    private final VersionStore versionStore;
+
     /**
      * The graphDB object.
      */
@@ -69,24 +78,16 @@ public class Neo4jDatabaseAccess implements IDatabaseAccess
      */
     private final String haAddresses;
 
-    /**
-     * Pool for kryo objects.
-     */
-    @Nullable
-    private final KryoPool pool;
-
     /**
      * Public constructor.
      * @param id, id of the server.
-     * @param pool the kryo factory.
      */
-    public Neo4jDatabaseAccess(final int id, final String haAddresses, final boolean multiVersion, final @Nullable KryoFactory pool)
+    public Neo4jDatabaseAccess(final int id, final String haAddresses, final boolean multiVersion)
     {
         this.id = id;
         this.haAddresses = haAddresses;
         this.multiVersion = multiVersion;
-
-        this.pool = pool == null ? null : new KryoPool.Builder(pool).softReferences().build();
+        this.versionStore = multiVersion ? new VersionStore() : null;
     }
 
     @Override
@@ -143,6 +144,10 @@ public class Neo4jDatabaseAccess implements IDatabaseAccess
     public void terminate()
     {
         Log.getLogger().info("Shutting down Neo4j manually");
+        if (versionStore != null)
+        {
+            versionStore.close();
+        }
         graphDb.shutdown();
     }
 
@@ -179,9 +184,12 @@ public class Neo4jDatabaseAccess implements IDatabaseAccess
 
         //We only support 1 label each node/vertex because of compatibility with our graph dbs.
         final ArrayList<Object> returnStorage = new ArrayList<>();
+        if (versionStore != null)
+        {
+            versionStore.touch(snapshotId);
+        }
         try (Transaction tx = graphDb.beginTx())
         {
-            final Kryo kryo = pool.borrow();
             final StringBuilder builder = new StringBuilder(MATCH);
             final Map<String, Object> properties;
 
@@ -220,31 +228,17 @@ public class Neo4jDatabaseAccess implements IDatabaseAccess
                 {
                     if (entry.getValue() instanceof NodeProxy)
                     {
-                        final NodeProxy n = (NodeProxy) entry.getValue();
-                        NodeStorage temp = new NodeStorage(n.getLabels().iterator().next().name(), n.getAllProperties());
-                        if (temp.getProperties().containsKey(Constants.TAG_SNAPSHOT_ID))
+                        final NodeStorage temp = getVisibleNode((NodeProxy) entry.getValue(), snapshotId);
+                        if (temp == null)
                         {
-                            final Object sId = temp.getProperties().get(Constants.TAG_SNAPSHOT_ID);
-                            if (multiVersion)
-                            {
-                                temp = OutDatedDataException.getCorrectNodeStorage(sId, snapshotId, temp, kryo);
-                            }
-                            else
-                            {
-                                OutDatedDataException.checkSnapshotId(sId, snapshotId);
-                            }
-                            //temp.removeProperty(Constants.TAG_SNAPSHOT_ID);
+                            continue;
                         }
                         temp.removeProperty(Constants.TAG_HASH);
 
                         if (multiVersion)
                         {
                            // If the version int is < 0, it means it is outdated and we don't need it.
-                           final Object propPre = temp.getProperty(TAG_PRE);
-                           if(propPre instanceof NodeProxy)
-                           {
-                               temp.removeProperty(TAG_PRE);
-                           }
+                           temp.removeProperty(TAG_PRE);
                            final Object propV = temp.getProperty(TAG_VERSION);
                            if(propV instanceof Integer)
                            {
@@ -259,33 +253,16 @@ public class Neo4jDatabaseAccess implements IDatabaseAccess
                     }
                     else if (entry.getValue() instanceof RelationshipProxy)
                     {
-                        final RelationshipProxy r = (RelationshipProxy) entry.getValue();
-                        final NodeStorage start = new NodeStorage(r.getStartNode().getLabels().iterator().next().name(), r.getStartNode().getAllProperties());
-                        final NodeStorage end = new NodeStorage(r.getEndNode().getLabels().iterator().next().name(), r.getEndNode().getAllProperties());
-
-                        RelationshipStorage temp = new RelationshipStorage(r.getType().name(), r.getAllProperties(), start, end);
-                        if (temp.getProperties().containsKey(Constants.TAG_SNAPSHOT_ID))
+                        final RelationshipStorage temp = getVisibleRelationship((RelationshipProxy) entry.getValue(), snapshotId);
+                        if (temp == null)
                         {
-                            final Object sId = temp.getProperties().get(Constants.TAG_SNAPSHOT_ID);
-                            if (multiVersion)
-                            {
-                                temp = OutDatedDataException.getCorrectRSStorage(sId, snapshotId, temp, kryo);
-                            }
-                            else
-                            {
-                                OutDatedDataException.checkSnapshotId(sId, snapshotId);
-                            }
-                            //temp.removeProperty(Constants.TAG_SNAPSHOT_ID);
+                            continue;
                         }
                         temp.removeProperty(Constants.TAG_HASH);
                         if (multiVersion)
                         {
                             // If the version int is < 0, it means it is outdated and we don't need it.
-                            final Object propPre = temp.getProperty(TAG_PRE);
-                            if(propPre instanceof RelationshipProxy)
-                            {
-                                temp.removeProperty(TAG_PRE);
-                            }
+                            temp.removeProperty(TAG_PRE);
                             final Object propV = temp.getProperty(TAG_VERSION);
                             if(propV instanceof Integer)
                             {
@@ -300,12 +277,130 @@ public class Neo4jDatabaseAccess implements IDatabaseAccess
                     }
                 }
             }
-            pool.release(kryo);
             tx.success();
         }
         return returnStorage;
     }
 
+    /**
+     * Get the version of a node a snapshot reads.
+     *
+     * @param n          the node.
+     * @param snapshotId the snapshot.
+     * @return a copy of the version or null if the node didn't exist at the snapshot.
+     * @throws OutDatedDataException if the version isn't available anymore.
+     */
+    @Nullable
+    private NodeStorage getVisibleNode(final NodeProxy n, final long snapshotId) throws OutDatedDataException
+    {
+        final NodeStorage current = new NodeStorage(n.getLabels().iterator().next().name(), n.getAllProperties());
+        final Object version = getVisibleVersion(NODE_KEY + n.getId(), current, current.getProperty(TAG_SNAPSHOT_ID), snapshotId);
+        if (version == current)
+        {
+            return current;
+        }
+        return version instanceof NodeStorage ? new NodeStorage((NodeStorage) version) : null;
+    }
+
+    /**
+     * Get the version of a relationship a snapshot reads.
+     *
+     * @param r          the relationship.
+     * @param snapshotId the snapshot.
+     * @return a copy of the version or null if the relationship didn't exist at the snapshot.
+     * @throws OutDatedDataException if the version isn't available anymore.
+     */
+    @Nullable
+    private RelationshipStorage getVisibleRelationship(final RelationshipProxy r, final long snapshotId) throws OutDatedDataException
+    {
+        final RelationshipStorage current = toRelationshipStorage(r);
+        final Object version = getVisibleVersion(RELATIONSHIP_KEY + r.getId(), current, current.getProperty(TAG_SNAPSHOT_ID), snapshotId);
+        if (version == current)
+        {
+            return current;
+        }
+        return version instanceof RelationshipStorage ? new RelationshipStorage((RelationshipStorage) version) : null;
+    }
+
+    /**
+     * Get the version of an object a snapshot reads, the current one if it has been written before the snapshot.
+     * Older versions come from the version store in multi-version mode, in single-version mode the read is outdated.
+     *
+     * @param key        the key of the object in the version store.
+     * @param current    the current version.
+     * @param sId        the snapshotId property of the current version.
+     * @param snapshotId the snapshot.
+     * @return the version or null if the object didn't exist at the snapshot.
+     * @throws OutDatedDataException if the version isn't available.
+     */
+    @Nullable
+    private Object getVisibleVersion(final String key, final Object current, final Object sId, final long snapshotId) throws OutDatedDataException
+    {
+        if (versionStore == null)
+        {
+            OutDatedDataException.checkSnapshotId(sId, snapshotId);
+            return current;
+        }
+
+        if (snapshotId == OutDatedDataException.IGNORE_SNAPSHOT || OutDatedDataException.toSnapshotId(sId) <= snapshotId)
+        {
+            return current;
+        }
+        return versionStore.getVersion(key, snapshotId);
+    }
+
+    /**
+     * Convert a relationship of the database to a storage.
+     *
+     * @param r the relationship.
+     * @return the storage with all properties.
+     */
+    private static RelationshipStorage toRelationshipStorage(final Relationship r)
+    {
+        final NodeStorage start = new NodeStorage(r.getStartNode().getLabels().iterator().next().name(), r.getStartNode().getAllProperties());
+        final NodeStorage end = new NodeStorage(r.getEndNode().getLabels().iterator().next().name(), r.getEndNode().getAllProperties());
+        return new RelationshipStorage(r.getType().name(), r.getAllProperties(), start, end);
+    }
+
+    /**
+     * Retain the current version of an object in the version store before an update replaces it.
+     *
+     * @param key        the key of the object in the version store.
+     * @param current    the current version.
+     * @param sId        the snapshotId property of the current version.
+     * @param snapshotId the snapshot of the update.
+     */
+    private void retainVersion(final String key, final Object current, final Object sId, final long snapshotId)
+    {
+        final long from = OutDatedDataException.toSnapshotId(sId);
+        //A version replaced in its own snapshot has never been visible.
+        if (versionStore != null && from < snapshotId)
+        {
+            versionStore.addVersion(key, current, from, snapshotId);
+        }
+    }
+
+    @Override
+    public List<List<Object>> readObjects(final List<Object> identifiers, final long snapshotId) throws OutDatedDataException
+    {
+        if (graphDb == null)
+        {
+            start();
+        }
+
+        //The transactions of the single reads are nested into this one.
+        try (Transaction tx = graphDb.beginTx())
+        {
+            final List<List<Object>> returnStorage = new ArrayList<>(identifiers.size());
+            for (final Object identifier : identifiers)
+            {
+                returnStorage.add(readObject(identifier, snapshotId));
+            }
+            tx.success();
+            return returnStorage;
+        }
+    }
+
     @Override
     public boolean shouldFollow(final int sequence)
     {
@@ -445,16 +540,9 @@ public class Neo4jDatabaseAccess implements IDatabaseAccess
                     {
                         final NodeProxy n = (NodeProxy) entry.getValue();
 
-                        try
+                        if (HashCreator.matches(HashCreator.hashNode(nodeStorage), n.getProperty(Constants.TAG_HASH, null)))
                         {
-                            if (HashCreator.sha1FromNode(nodeStorage).equals(n.getProperty(Constants.TAG_HASH)))
-                            {
-                                return true;
-                            }
-                        }
-                        catch (final NoSuchAlgorithmException e)
-                        {
-                            Log.getLogger().error("Couldn't execute SHA1 for node", e);
+                            return true;
                         }
 
                         if (!multiVersion)
@@ -462,23 +550,16 @@ public class Neo4jDatabaseAccess implements IDatabaseAccess
                             return false;
                         }
 
-                        final Kryo kryo = pool.borrow();
                         try
                         {
-                            NodeStorage temp = new NodeStorage(n.getLabels().iterator().next().name(), n.getAllProperties());
-                            if (temp.getProperties().containsKey(TAG_SNAPSHOT_ID))
-                            {
-                                final Object sId = temp.getProperties().get(TAG_SNAPSHOT_ID);
-                                final Object wantedId = nodeStorage.getProperty(TAG_SNAPSHOT_ID);
-                                temp = OutDatedDataException.getCorrectNodeStorage(sId, wantedId instanceof Long ? (long) wantedId : -1, temp, kryo);
-                            }
-                            return HashCreator.sha1FromNode(nodeStorage).equals(temp.getProperty(Constants.TAG_HASH));
+                            final Object wantedId = nodeStorage.getProperty(TAG_SNAPSHOT_ID);
+                            final NodeStorage temp = getVisibleNode(n, wantedId instanceof Long ? (long) wantedId : OutDatedDataException.IGNORE_SNAPSHOT);
+                            return temp != null && HashCreator.matches(HashCreator.hashNode(nodeStorage), temp.getProperty(Constants.TAG_HASH));
                         }
                         catch (final Exception e)
                         {
                             Log.getLogger().error("Couldn't execute SHA1 for node " + nodeStorage.toString(), e);
                         }
-                        pool.release(kryo);
 
                         break;
                     }
@@ -496,10 +577,8 @@ public class Neo4jDatabaseAccess implements IDatabaseAccess
     @Override
     public boolean applyUpdate(final NodeStorage key, final NodeStorage value, final long snapshotId)
     {
-        final Kryo kryo = pool.borrow();
-        try
+        try (Transaction tx = graphDb.beginTx())
         {
-            graphDb.beginTx();
             final Map<String, Object> tempProperties = transFormToPropertyMap(key.getProperties(), "");
             final Result result = graphDb.execute(MATCH + buildNodeString(key, "") + " RETURN n", tempProperties);
 
@@ -514,36 +593,34 @@ public class Neo4jDatabaseAccess implements IDatabaseAccess
                         final NodeProxy proxy = (NodeProxy) entry.getValue();
                         if(multiVersion)
                         {
-                            final Object obj = proxy.hasProperty(TAG_VERSION) ? proxy.getProperty(TAG_VERSION) : null;
                             final NodeStorage temp = new NodeStorage(proxy.getLabels().iterator().next().name(), proxy.getAllProperties());
-                            final Output output = new Output(10000);
-                            kryo.writeObject(output, temp);
-                            proxy.setProperty(TAG_PRE, output.toBytes());
-                            output.close();
-                            proxy.setProperty(TAG_VERSION, obj instanceof Integer ? (Integer) obj + 1 : 1);
+                            temp.removeProperty(TAG_PRE);
+                            retainVersion(NODE_KEY + proxy.getId(), temp, temp.getProperty(TAG_SNAPSHOT_ID), snapshotId);
 
+                            final Object obj = temp.getProperty(TAG_VERSION);
+                            proxy.setProperty(TAG_VERSION, obj instanceof Integer ? (Integer) obj + 1 : 1);
+                            if (proxy.hasProperty(TAG_PRE))
+                            {
+                                proxy.removeProperty(TAG_PRE);
+                            }
                         }
                         for (final Map.Entry<String, Object> properties : value.getProperties().entrySet())
                         {
                             proxy.setProperty(properties.getKey(), properties.getValue());
                         }
 
-                        proxy.setProperty(Constants.TAG_HASH, HashCreator.sha1FromNode(new NodeStorage(proxy.getLabels().iterator().next().name(), proxy.getAllProperties())));
+                        proxy.setProperty(Constants.TAG_HASH, HashCreator.hashNode(new NodeStorage(proxy.getLabels().iterator().next().name(), proxy.getAllProperties())));
                         proxy.setProperty(Constants.TAG_SNAPSHOT_ID, snapshotId);
                     }
                 }
             }
-
+            tx.success();
         }
         catch (final Exception e)
         {
             Log.getLogger().error("Couldn't execute update node transaction in server:  " + id, e);
             return false;
         }
-        finally
-        {
-            pool.release(kryo);
-        }
         Log.getLogger().info("Executed update node transaction in server:  " + id);
         return true;
     }
@@ -560,12 +637,12 @@ public class Neo4jDatabaseAccess implements IDatabaseAccess
             {
                 myNode.setProperty(entry.getKey(), entry.getValue());
             }
-            myNode.setProperty(Constants.TAG_HASH, HashCreator.sha1FromNode(storage));
+            myNode.setProperty(Constants.TAG_HASH, HashCreator.hashNode(storage));
             myNode.setProperty(Constants.TAG_SNAPSHOT_ID, snapshotId);
 
             if (multiVersion)
             {
-                myNode.setProperty(TAG_VERSION, -1);
+                myNode.setProperty(TAG_VERSION, 0);
             }
 
             tx.success();
@@ -610,8 +687,7 @@ public class Neo4jDatabaseAccess implements IDatabaseAccess
     @Override
     public boolean applyUpdate(final RelationshipStorage key, final RelationshipStorage value, final long snapshotId)
     {
-        final Kryo kryo = pool.borrow();
-        try
+        try (Transaction tx = graphDb.beginTx())
         {
             //Transform relationship params.
             final Map<String, Object> propertyMap = transFormToPropertyMap(key.getProperties(), "");
@@ -632,18 +708,16 @@ public class Neo4jDatabaseAccess implements IDatabaseAccess
                         final RelationshipProxy proxy = (RelationshipProxy) entry.getValue();
                         if(multiVersion)
                         {
+                            final RelationshipStorage temp = toRelationshipStorage(proxy);
+                            temp.removeProperty(TAG_PRE);
+                            retainVersion(RELATIONSHIP_KEY + proxy.getId(), temp, temp.getProperty(TAG_SNAPSHOT_ID), snapshotId);
 
-                            final Object obj = proxy.hasProperty(TAG_VERSION) ? proxy.getProperty(TAG_VERSION) : null;
-                            final NodeStorage start = new NodeStorage(proxy.getStartNode().getLabels().iterator().next().name(), proxy.getStartNode().getAllProperties());
-                            final NodeStorage end = new NodeStorage(proxy.getEndNode().getLabels().iterator().next().name(), proxy.getEndNode().getAllProperties());
-
-                            final RelationshipStorage temp = new RelationshipStorage(proxy.getType().name(), proxy.getAllProperties(), start, end);
-                            final Output output = new Output(10000);
-                            kryo.writeObject(output, temp);
-                            proxy.setProperty(TAG_PRE, output.toBytes());
-                            output.clear();
-                            output.close();
+                            final Object obj = temp.getProperty(TAG_VERSION);
                             proxy.setProperty(TAG_VERSION, obj instanceof Integer ? (Integer) obj + 1 : 1);
+                            if (proxy.hasProperty(TAG_PRE))
+                            {
+                                proxy.removeProperty(TAG_PRE);
+                            }
                         }
 
                         for (final Map.Entry<String, Object> properties : value.getProperties().entrySet())
@@ -655,21 +729,18 @@ public class Neo4jDatabaseAccess implements IDatabaseAccess
                         final NodeStorage end = new NodeStorage(proxy.getEndNode().getLabels().iterator().next().name(), proxy.getEndNode().getAllProperties());
 
                         proxy.setProperty(Constants.TAG_HASH,
-                                HashCreator.sha1FromRelationship(new RelationshipStorage(proxy.getType().name(), proxy.getAllProperties(), start, end)));
+                                HashCreator.hashRelationship(new RelationshipStorage(proxy.getType().name(), proxy.getAllProperties(), start, end)));
                         proxy.setProperty(Constants.TAG_SNAPSHOT_ID, snapshotId);
                     }
                 }
             }
+            tx.success();
         }
-        catch (final NoSuchAlgorithmException e)
+        catch (final Exception e)
         {
             Log.getLogger().error("Couldn't execute update relationship transaction in server:  " + id, e);
             return false;
         }
-        finally
-        {
-            pool.release(kryo);
-        }
         Log.getLogger().info("Executed update relationship transaction in server:  " + id);
         return true;
     }
@@ -680,7 +751,7 @@ public class Neo4jDatabaseAccess implements IDatabaseAccess
         try
         {
             final RelationshipStorage tempStorage = new RelationshipStorage(storage.getId(), storage.getProperties(), storage.getStartNode(), storage.getEndNode());
-            tempStorage.addProperty(Constants.TAG_HASH, HashCreator.sha1FromRelationship(storage));
+            tempStorage.addProperty(Constants.TAG_HASH, HashCreator.hashRelationship(storage));
             tempStorage.addProperty(Constants.TAG_SNAPSHOT_ID, snapshotId);
 
             final String builder = MATCH + buildNodeString(tempStorage.getStartNode(), "1") +
@@ -692,7 +763,7 @@ public class Neo4jDatabaseAccess implements IDatabaseAccess
 
             if (multiVersion)
             {
-               tempStorage.addProperty(TAG_VERSION,-1);
+               tempStorage.addProperty(TAG_VERSION, 0);
             }
 
             //Transform relationship params.
@@ -749,6 +820,27 @@ public class Neo4jDatabaseAccess implements IDatabaseAccess
         return true;
     }
 
+    @Override
+    public boolean applyWriteSet(final List<IOperation> writeSet, final long snapshotId)
+    {
+        //The transactions of the single operations are nested into this one and commit with it, a failing one rolls back the whole writeSet.
+        try (Transaction tx = graphDb.beginTx())
+        {
+            for (final IOperation operation : writeSet)
+            {
+                operation.apply(this, snapshotId, null, id);
+            }
+            tx.success();
+        }
+        catch (final Exception e)
+        {
+            Log.getLogger().error("Couldn't execute writeSet transaction in server:  " + id, e);
+            return false;
+        }
+        Log.getLogger().info("Executed writeSet transaction in server:  " + id);
+        return true;
+    }
+
     @Override
     public boolean compareRelationship(final RelationshipStorage relationshipStorage)
     {
@@ -772,16 +864,9 @@ public class Neo4jDatabaseAccess implements IDatabaseAccess
                 if (entry.getValue() instanceof RelationshipProxy)
                 {
                     final RelationshipProxy r = (RelationshipProxy) entry.getValue();
-                    try
+                    if (HashCreator.matches(HashCreator.hashRelationship(relationshipStorage), r.getProperty(Constants.TAG_HASH, null)))
                     {
-                        if (HashCreator.sha1FromRelationship(relationshipStorage).equals(r.getProperty(Constants.TAG_HASH)))
-                        {
-                            return true;
-                        }
-                    }
-                    catch (final NoSuchAlgorithmException e)
-                    {
-                        Log.getLogger().error("Couldn't execute SHA1 for node", e);
+                        return true;
                     }
 
                     if (!multiVersion)
@@ -789,28 +874,16 @@ public class Neo4jDatabaseAccess implements IDatabaseAccess
                         return false;
                     }
 
-                    final Kryo kryo = pool.borrow();
-
                     try
                     {
-                        final NodeStorage start = new NodeStorage(r.getStartNode().getLabels().iterator().next().name(), r.getStartNode().getAllProperties());
-                        final NodeStorage end = new NodeStorage(r.getEndNode().getLabels().iterator().next().name(), r.getEndNode().getAllProperties());
-
-                        RelationshipStorage temp = new RelationshipStorage(r.getType().name(), r.getAllProperties(), start, end);
-                        if (temp.getProperties().containsKey(Constants.TAG_SNAPSHOT_ID))
-                        {
-                            final Object sId = temp.getProperties().get(Constants.TAG_SNAPSHOT_ID);
-                            final Object snapshotId = relationshipStorage.getProperties().get(Constants.TAG_SNAPSHOT_ID);
-                            temp = OutDatedDataException.getCorrectRSStorage(sId, snapshotId instanceof Long ? (long) snapshotId : -1, temp, kryo);
-
-                            return HashCreator.sha1FromRelationship(relationshipStorage).equals(temp.getProperty(Constants.TAG_HASH));
-                        }
+                        final Object snapshotId = relationshipStorage.getProperties().get(Constants.TAG_SNAPSHOT_ID);
+                        final RelationshipStorage temp = getVisibleRelationship(r, snapshotId instanceof Long ? (long) snapshotId : OutDatedDataException.IGNORE_SNAPSHOT);
+                        return temp != null && HashCreator.matches(HashCreator.hashRelationship(relationshipStorage), temp.getProperty(Constants.TAG_HASH));
                     }
                     catch (final Exception e)
                     {
                         Log.getLogger().error("Couldn't execute SHA1 for relationship", e);
                     }
-                    pool.release(kryo);
                     break;
                 }
             }
@@ -819,6 +892,61 @@ public class Neo4jDatabaseAccess implements IDatabaseAccess
         return true;
     }
 
+    @Override
+    public void exportData(final int chunkSize, final Consumer<List<Object>> consumer)
+    {
+        final ExportChunker chunker = new ExportChunker(chunkSize, consumer);
+        //The results are streamed, only one chunk is held at a time.
+        try (Transaction tx = graphDb.beginTx();
+             ResourceIterator<Node> nodes = graphDb.execute("MATCH (n) RETURN n").columnAs("n"))
+        {
+            while (nodes.hasNext())
+            {
+                chunker.add(toNodeStorage(nodes.next()));
+            }
+            chunker.flush();
+
+            try (ResourceIterator<Relationship> relationships = graphDb.execute("MATCH ()-[r]->() RETURN r").columnAs("r"))
+            {
+                while (relationships.hasNext())
+                {
+                    final Relationship relationship = relationships.next();
+                    chunker.add(new RelationshipStorage(relationship.getType().name(), relationship.getAllProperties(),
+                            toNodeStorage(relationship.getStartNode()), toNodeStorage(relationship.getEndNode())));
+                }
+            }
+            chunker.flush();
+            tx.success();
+        }
+        Log.getLogger().info("Exported neo4j database in server:  " + id);
+    }
+
+    /**
+     * Create the storage of a node with its label and all its properties.
+     *
+     * @param node the node.
+     * @return the storage.
+     */
+    private static NodeStorage toNodeStorage(final Node node)
+    {
+        return new NodeStorage(node.getLabels().iterator().next().name(), node.getAllProperties());
+    }
+
+    @Override
+    public void clear(final long snapshotId)
+    {
+        try (Transaction tx = graphDb.beginTx())
+        {
+            graphDb.execute("MATCH (n) DETACH DELETE n");
+            tx.success();
+        }
+        if (versionStore != null)
+        {
+            versionStore.clear(snapshotId);
+        }
+        Log.getLogger().info("Cleared neo4j database in server:  " + id);
+    }
+
     /**
      * Registers a shutdown hook for the Neo4j instance so that it
      * shuts down nicely when the VM exits (even if you "Ctrl-C" the
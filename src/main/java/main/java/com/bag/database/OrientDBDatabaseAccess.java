@@ -9,13 +9,14 @@ import com.tinkerpop.blueprints.impls.orient.OrientGraph;
 import com.tinkerpop.blueprints.impls.orient.OrientGraphFactory;
 import main.java.com.bag.exceptions.OutDatedDataException;
 import main.java.com.bag.database.interfaces.IDatabaseAccess;
+import main.java.com.bag.operations.IOperation;
 import main.java.com.bag.util.*;
 import main.java.com.bag.util.storage.NodeStorage;
 import main.java.com.bag.util.storage.RelationshipStorage;
 import org.jetbrains.annotations.NotNull;
 
-import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 
@@ -39,6 +40,11 @@ public class OrientDBDatabaseAccess implements IDatabaseAccess
      */
     private OrientGraphFactory factory;
 
+    /**
+     * The graph of the writeSet the current thread applies, null if every operation runs in its own transaction.
+     */
+    private final ThreadLocal<OrientGraph> writeSetGraph = new ThreadLocal<>();
+
     /**
      * Constructor which sets the id of the server already.
      *
@@ -244,6 +250,55 @@ public class OrientDBDatabaseAccess implements IDatabaseAccess
         }
     }
 
+    @Override
+    public void exportData(final int chunkSize, final Consumer<List<Object>> consumer)
+    {
+        final ExportChunker chunker = new ExportChunker(chunkSize, consumer);
+        final OrientGraph graph = factory.getTx();
+        try
+        {
+            for (final Vertex vertex : graph.getVertices())
+            {
+                chunker.add(getNodeStorageFromVertex(vertex));
+            }
+            chunker.flush();
+
+            for (final Edge edge : graph.getEdges())
+            {
+                chunker.add(getRelationshipStorageFromEdge(edge, OutDatedDataException.IGNORE_SNAPSHOT));
+            }
+            chunker.flush();
+        }
+        catch (final OutDatedDataException e)
+        {
+            Log.getLogger().error("Couldn't export the database in server:  " + id, e);
+        }
+        finally
+        {
+            graph.shutdown();
+        }
+        Log.getLogger().info("Exported orientDB database in server:  " + id);
+    }
+
+    @Override
+    public void clear(final long snapshotId)
+    {
+        final OrientGraph graph = factory.getTx();
+        try
+        {
+            for (final Vertex vertex : graph.getVertices())
+            {
+                vertex.remove();
+            }
+            graph.commit();
+        }
+        finally
+        {
+            graph.shutdown();
+        }
+        Log.getLogger().info("Cleared orientDB database in server:  " + id);
+    }
+
     /**
      * Kills the graph database.
      */
@@ -273,13 +328,9 @@ public class OrientDBDatabaseAccess implements IDatabaseAccess
             //Assuming we only get one node in return.
             for (final Vertex tempVertex : getVertexList(nodeStorage, graph))
             {
-                return HashCreator.sha1FromNode(nodeStorage).equals(tempVertex.getProperty("hash"));
+                return HashCreator.matches(HashCreator.hashNode(nodeStorage), tempVertex.getProperty(Constants.TAG_HASH));
             }
         }
-        catch (NoSuchAlgorithmException e)
-        {
-            Log.getLogger().error("Failed at generating hash in server " + id, e);
-        }
         finally
         {
             graph.shutdown();
@@ -291,7 +342,7 @@ public class OrientDBDatabaseAccess implements IDatabaseAccess
     @Override
     public boolean applyUpdate(final NodeStorage key, final NodeStorage value, final long snapshotId)
     {
-        final OrientGraph graph = factory.getTx();
+        final OrientGraph graph = beginOperation();
         try
         {
             final Iterable<Vertex> result = getVertexList(key, graph);
@@ -303,11 +354,11 @@ public class OrientDBDatabaseAccess implements IDatabaseAccess
                     vertex.setProperty(entry.getKey(), entry.getValue());
                 }
 
-                vertex.setProperty(Constants.TAG_HASH, HashCreator.sha1FromNode(getNodeStorageFromVertex(vertex)));
+                vertex.setProperty(Constants.TAG_HASH, HashCreator.hashNode(getNodeStorageFromVertex(vertex)));
                 vertex.setProperty(Constants.TAG_SNAPSHOT_ID, snapshotId);
             }
 
-            graph.commit();
+            commitOperation(graph);
         }
         catch (Exception e)
         {
@@ -316,7 +367,7 @@ public class OrientDBDatabaseAccess implements IDatabaseAccess
         }
         finally
         {
-            graph.shutdown();
+            endOperation(graph);
         }
         return true;
     }
@@ -324,7 +375,7 @@ public class OrientDBDatabaseAccess implements IDatabaseAccess
     @Override
     public boolean applyCreate(final NodeStorage storage, final long snapshotId)
     {
-        final OrientGraph graph = factory.getTx();
+        final OrientGraph graph = beginOperation();
         try
         {
             if (graph.getVertexType(storage.getId()) == null)
@@ -333,9 +384,9 @@ public class OrientDBDatabaseAccess implements IDatabaseAccess
                 graph.createKeyIndex("idx", Vertex.class);
             }
             final Vertex vertex = graph.addVertex("class:" + storage.getId(), storage.getProperties());
-            vertex.setProperty(Constants.TAG_HASH, HashCreator.sha1FromNode(storage));
+            vertex.setProperty(Constants.TAG_HASH, HashCreator.hashNode(storage));
             vertex.setProperty(Constants.TAG_SNAPSHOT_ID, snapshotId);
-            graph.commit();
+            commitOperation(graph);
         }
         catch (Exception e)
         {
@@ -344,7 +395,7 @@ public class OrientDBDatabaseAccess implements IDatabaseAccess
         }
         finally
         {
-            graph.shutdown();
+            endOperation(graph);
         }
         Log.getLogger().info("Successfully executed create node transaction in server:  " + id);
         return true;
@@ -353,7 +404,7 @@ public class OrientDBDatabaseAccess implements IDatabaseAccess
     @Override
     public boolean applyDelete(final NodeStorage storage, final long snapshotId)
     {
-        final OrientGraph graph = factory.getTx();
+        final OrientGraph graph = beginOperation();
         try
         {
             for (final Vertex vertex : getVertexList(storage, graph))
@@ -368,7 +419,7 @@ public class OrientDBDatabaseAccess implements IDatabaseAccess
         }
         finally
         {
-            graph.shutdown();
+            endOperation(graph);
         }
         return true;
     }
@@ -376,7 +427,7 @@ public class OrientDBDatabaseAccess implements IDatabaseAccess
     @Override
     public boolean applyUpdate(final RelationshipStorage key, final RelationshipStorage value, final long snapshotId)
     {
-        OrientGraph graph = factory.getTx();
+        OrientGraph graph = beginOperation();
         try
         {
             final String relationshipId = "class:" + key.getId();
@@ -394,7 +445,7 @@ public class OrientDBDatabaseAccess implements IDatabaseAccess
                 {
                     edge.setProperty(entry.getKey(), entry.getValue());
                 }
-                edge.setProperty(Constants.TAG_HASH, HashCreator.sha1FromRelationship(getRelationshipStorageFromEdge(edge, snapshotId)));
+                edge.setProperty(Constants.TAG_HASH, HashCreator.hashRelationship(getRelationshipStorageFromEdge(edge, snapshotId)));
                 edge.setProperty(Constants.TAG_SNAPSHOT_ID, snapshotId);
             }
         }
@@ -405,7 +456,7 @@ public class OrientDBDatabaseAccess implements IDatabaseAccess
         }
         finally
         {
-            graph.shutdown();
+            endOperation(graph);
         }
         return true;
     }
@@ -418,7 +469,7 @@ public class OrientDBDatabaseAccess implements IDatabaseAccess
             factory.getNoTx().createEdgeType(storage.getId());
         }
 
-        final OrientGraph graph = factory.getTx();
+        final OrientGraph graph = beginOperation();
         try
         {
             final Iterable<Vertex> startNodes = this.getVertexList(storage.getStartNode(), graph);
@@ -435,11 +486,11 @@ public class OrientDBDatabaseAccess implements IDatabaseAccess
                     {
                         edge.setProperty(entry.getKey(), entry.getValue());
                     }
-                    edge.setProperty(Constants.TAG_HASH, HashCreator.sha1FromRelationship(storage));
+                    edge.setProperty(Constants.TAG_HASH, HashCreator.hashRelationship(storage));
                     edge.setProperty(Constants.TAG_SNAPSHOT_ID, snapshotId);
                 }
             }
-            graph.commit();
+            commitOperation(graph);
         }
         catch (Exception e)
         {
@@ -448,7 +499,7 @@ public class OrientDBDatabaseAccess implements IDatabaseAccess
         }
         finally
         {
-            graph.shutdown();
+            endOperation(graph);
         }
         Log.getLogger().info("Successfully executed create relationship transaction in server:  " + id);
         return true;
@@ -457,7 +508,7 @@ public class OrientDBDatabaseAccess implements IDatabaseAccess
     @Override
     public boolean applyDelete(final RelationshipStorage storage, final long snapshotId)
     {
-        OrientGraph graph = factory.getTx();
+        OrientGraph graph = beginOperation();
         try
         {
             final String relationshipId = "class:" + storage.getId();
@@ -477,11 +528,76 @@ public class OrientDBDatabaseAccess implements IDatabaseAccess
         }
         finally
         {
+            endOperation(graph);
+        }
+        return true;
+    }
+
+
+    @Override
+    public boolean applyWriteSet(final List<IOperation> writeSet, final long snapshotId)
+    {
+        final OrientGraph graph = factory.getTx();
+        writeSetGraph.set(graph);
+        try
+        {
+            for (final IOperation operation : writeSet)
+            {
+                operation.apply(this, snapshotId, null, id);
+            }
+            graph.commit();
+        }
+        catch (Exception e)
+        {
+            Log.getLogger().error("Couldn't execute writeSet transaction in server:  " + id, e);
+            graph.rollback();
+            return false;
+        }
+        finally
+        {
+            writeSetGraph.remove();
             graph.shutdown();
         }
         return true;
     }
 
+    /**
+     * Get the graph an operation should run on, the one of the current writeSet or a new transaction.
+     *
+     * @return the graph.
+     */
+    private OrientGraph beginOperation()
+    {
+        final OrientGraph graph = writeSetGraph.get();
+        return graph == null ? factory.getTx() : graph;
+    }
+
+    /**
+     * Commit the transaction of an operation, operations of a writeSet are committed together with it.
+     *
+     * @param graph the graph of the operation.
+     */
+    private void commitOperation(final OrientGraph graph)
+    {
+        if (writeSetGraph.get() != graph)
+        {
+            graph.commit();
+        }
+    }
+
+    /**
+     * Close the graph of an operation unless it belongs to the current writeSet.
+     *
+     * @param graph the graph of the operation.
+     */
+    private void endOperation(final OrientGraph graph)
+    {
+        if (writeSetGraph.get() != graph)
+        {
+            graph.shutdown();
+        }
+    }
+
     /**
      * Compares a nodeStorage with the node inside the db to check if correct.
      *
@@ -510,13 +626,9 @@ public class OrientDBDatabaseAccess implements IDatabaseAccess
                     .collect(Collectors.toList());
             for (final Edge edge : list)
             {
-                return HashCreator.sha1FromRelationship(relationshipStorage).equals(edge.getProperty(Constants.TAG_HASH));
+                return HashCreator.matches(HashCreator.hashRelationship(relationshipStorage), edge.getProperty(Constants.TAG_HASH));
             }
         }
-        catch (NoSuchAlgorithmException e)
-        {
-            Log.getLogger().error("Failed at generating hash in server " + id, e);
-        }
         finally
         {
             graph.shutdown();
@@ -4,6 +4,7 @@ import com.sparsity.sparksee.gdb.*;
 import com.sparsity.sparksee.gdb.Objects;
 import main.java.com.bag.exceptions.OutDatedDataException;
 import main.java.com.bag.database.interfaces.IDatabaseAccess;
+import main.java.com.bag.operations.IOperation;
 import main.java.com.bag.util.Constants;
 import main.java.com.bag.util.HashCreator;
 import main.java.com.bag.util.Log;
@@ -11,8 +12,8 @@ import main.java.com.bag.util.storage.NodeStorage;
 import main.java.com.bag.util.storage.RelationshipStorage;
 
 import java.io.File;
-import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.function.Consumer;
 
 /**
  * Database access for the sparksee graph database.
@@ -22,6 +23,12 @@ public class SparkseeDatabaseAccess implements IDatabaseAccess
     private final int id;
     private Database db = null;
     private Sparksee sparksee;
+
+    /**
+     * The session of the writeSet the current thread applies, null if every operation runs in its own session.
+     */
+    private final ThreadLocal<Session> writeSetSession = new ThreadLocal<>();
+
     public SparkseeDatabaseAccess(int id)
     {
         this.id = id;
@@ -262,6 +269,76 @@ public class SparkseeDatabaseAccess implements IDatabaseAccess
         return new NodeStorage(graph.getType(graph.getObjectType(nodeId)).getName(), localProperties);
     }
 
+    @Override
+    public void exportData(final int chunkSize, final Consumer<List<Object>> consumer)
+    {
+        final ExportChunker chunker = new ExportChunker(chunkSize, consumer);
+        final Session sess = db.newSession();
+        final Graph graph = sess.getGraph();
+        try
+        {
+            for (final Integer nodeTypeId : graph.findNodeTypes())
+            {
+                final Objects objs = graph.select(nodeTypeId);
+                try
+                {
+                    for (final Long nodeId : objs)
+                    {
+                        chunker.add(getNodeFromNodeId(graph, nodeId));
+                    }
+                }
+                finally
+                {
+                    objs.close();
+                }
+            }
+            chunker.flush();
+
+            for (final Integer edgeTypeId : graph.findEdgeTypes())
+            {
+                final Objects objs = graph.select(edgeTypeId);
+                try
+                {
+                    for (final Long edgeId : objs)
+                    {
+                        chunker.add(getRelationshipFromRelationshipId(graph, edgeId));
+                    }
+                }
+                finally
+                {
+                    objs.close();
+                }
+            }
+            chunker.flush();
+        }
+        finally
+        {
+            sess.close();
+        }
+        Log.getLogger().info("Exported sparksee database in server:  " + id);
+    }
+
+    @Override
+    public void clear(final long snapshotId)
+    {
+        final Session sess = db.newSession();
+        final Graph graph = sess.getGraph();
+        try
+        {
+            for (final Integer nodeTypeId : graph.findNodeTypes())
+            {
+                final Objects objs = graph.select(nodeTypeId);
+                graph.drop(objs);
+                objs.close();
+            }
+        }
+        finally
+        {
+            sess.close();
+        }
+        Log.getLogger().info("Cleared sparksee database in server:  " + id);
+    }
+
     @Override
     public boolean shouldFollow(final int sequence)
     {
@@ -324,11 +401,7 @@ public class SparkseeDatabaseAccess implements IDatabaseAccess
             long oId = graph.findEdge(relationshipTypeId, start, end);
             if (oId == 0)
                 return false;
-            return HashCreator.sha1FromRelationship(storage).equals(graph.getAttribute(oId, graph.findAttribute(Type.getGlobalType(), "hash")).getString());
-        }
-        catch (NoSuchAlgorithmException e)
-        {
-            Log.getLogger().error("Couldn't execute SHA1 for node", e);
+            return HashCreator.matches(HashCreator.hashRelationship(storage), graph.getAttribute(oId, graph.findAttribute(Type.getGlobalType(), Constants.TAG_HASH)).getString());
         }
         catch (RuntimeException e)
         {
@@ -339,7 +412,6 @@ public class SparkseeDatabaseAccess implements IDatabaseAccess
         {
             sess.close();
         }
-        return false;
     }
 
     @Override
@@ -365,11 +437,7 @@ public class SparkseeDatabaseAccess implements IDatabaseAccess
         try
         {
             final long oId = it.next();
-            return HashCreator.sha1FromNode(storage).equals(graph.getAttribute(oId, graph.findAttribute(Type.getGlobalType(), "hash")).getString());
-        }
-        catch (NoSuchAlgorithmException e)
-        {
-            Log.getLogger().error("Couldn't execute SHA1 for node", e);
+            return HashCreator.matches(HashCreator.hashNode(storage), graph.getAttribute(oId, graph.findAttribute(Type.getGlobalType(), Constants.TAG_HASH)).getString());
         }
         finally
         {
@@ -377,7 +445,6 @@ public class SparkseeDatabaseAccess implements IDatabaseAccess
             it.close();
             sess.close();
         }
-        return false;
     }
 
 
@@ -459,7 +526,7 @@ public class SparkseeDatabaseAccess implements IDatabaseAccess
     @Override
     public boolean applyUpdate(final NodeStorage key, final NodeStorage value, final long snapshotId)
     {
-        Session sess = db.newSession();
+        final Session sess = beginOperation();
         Graph graph = sess.getGraph();
 
         List<Long> objs = loadNodesAsIdList(graph, key);
@@ -474,29 +541,20 @@ public class SparkseeDatabaseAccess implements IDatabaseAccess
 
             int attributeTypeIdHash = SparkseeUtils.createOrFindAttributeType(Constants.TAG_HASH, "", Type.getGlobalType(), graph);
 
-            try
-            {
-                graph.setAttribute(nodeId, attributeTypeIdHash, SparkseeUtils.getValue(HashCreator.sha1FromNode(getNodeFromNodeId(graph, nodeId))));
-            }
-            catch (NoSuchAlgorithmException e)
-            {
-                Log.getLogger().error("Couldn't execute update node transaction in server:  " + id, e);
-                sess.close();
-                return false;
-            }
+            graph.setAttribute(nodeId, attributeTypeIdHash, SparkseeUtils.getValue(HashCreator.toHex(HashCreator.hashNode(getNodeFromNodeId(graph, nodeId)))));
 
             int attributeTypeIdSnapshotId = SparkseeUtils.createOrFindAttributeType(Constants.TAG_SNAPSHOT_ID, 1L, Type.getGlobalType(), graph);
             graph.setAttribute(nodeId, attributeTypeIdSnapshotId, SparkseeUtils.getValue(snapshotId));
         }
 
-        sess.close();
+        endOperation(sess);
         return true;
     }
 
     @Override
     public boolean applyCreate(final NodeStorage storage, final long snapshotId)
     {
-        Session sess = db.newSession();
+        final Session sess = beginOperation();
         Graph graph = sess.getGraph();
 
         int nodeTypeId = SparkseeUtils.createOrFindNodeType(storage, graph);
@@ -514,16 +572,11 @@ public class SparkseeDatabaseAccess implements IDatabaseAccess
         try
         {
             int hashAttributeId = SparkseeUtils.createOrFindAttributeType(Constants.TAG_HASH, " ", Type.GlobalType, graph);
-            graph.setAttribute(nodeId, hashAttributeId, SparkseeUtils.getValue(HashCreator.sha1FromNode(storage)));
-        }
-        catch (NoSuchAlgorithmException e)
-        {
-            Log.getLogger().error("Couldn't execute create node transaction in server:  " + id, e);
-            return false;
+            graph.setAttribute(nodeId, hashAttributeId, SparkseeUtils.getValue(HashCreator.toHex(HashCreator.hashNode(storage))));
         }
         finally
         {
-            sess.close();
+            endOperation(sess);
         }
 
         Log.getLogger().info("Successfully executed create node transaction in server:  " + id);
@@ -533,7 +586,7 @@ public class SparkseeDatabaseAccess implements IDatabaseAccess
     @Override
     public boolean applyDelete(final NodeStorage storage, final long snapshotId)
     {
-        Session sess = db.newSession();
+        final Session sess = beginOperation();
         Graph graph = sess.getGraph();
 
         Objects objs = findNode(graph, storage);
@@ -544,7 +597,7 @@ public class SparkseeDatabaseAccess implements IDatabaseAccess
             objs.close();
         }
 
-        sess.close();
+        endOperation(sess);
         Log.getLogger().info("Successfully executed delete node transaction in server:  " + id);
         return true;
     }
@@ -552,7 +605,7 @@ public class SparkseeDatabaseAccess implements IDatabaseAccess
     @Override
     public boolean applyUpdate(final RelationshipStorage key, final RelationshipStorage value, final long snapshotId)
     {
-        Session sess = db.newSession();
+        final Session sess = beginOperation();
         Graph graph = sess.getGraph();
         List<Long> startObjs = loadNodesAsIdList(graph, key.getStartNode());
         List<Long> endObjs = loadNodesAsIdList(graph, key.getStartNode());
@@ -572,29 +625,20 @@ public class SparkseeDatabaseAccess implements IDatabaseAccess
                     graph.setAttribute(relationship, attributeTypeId, SparkseeUtils.getValue(entry.getValue()));
                 }
                 int attributeTypeIdHash = SparkseeUtils.createOrFindAttributeType(Constants.TAG_HASH, "", Type.getGlobalType(), graph);
-                try
-                {
-                    graph.setAttribute(relationship, attributeTypeIdHash, SparkseeUtils.getValue(HashCreator.sha1FromRelationship(getRelationshipFromRelationshipId(graph, relationship))));
-                }
-                catch (NoSuchAlgorithmException e)
-                {
-                    Log.getLogger().error("Couldn't execute update node transaction in server:  " + id, e);
-                    sess.close();
-                    return false;
-                }
+                graph.setAttribute(relationship, attributeTypeIdHash, SparkseeUtils.getValue(HashCreator.toHex(HashCreator.hashRelationship(getRelationshipFromRelationshipId(graph, relationship)))));
                 int attributeTypeIdSnapshotId = SparkseeUtils.createOrFindAttributeType(Constants.TAG_SNAPSHOT_ID, 1L, Type.getGlobalType(), graph);
                 graph.setAttribute(relationship, attributeTypeIdSnapshotId, SparkseeUtils.getValue(snapshotId));
             }
         }
         Log.getLogger().info("Successfully executed update relationship transaction in server:  " + id);
-        sess.close();
+        endOperation(sess);
         return true;
     }
 
     @Override
     public boolean applyCreate(final RelationshipStorage storage, final long snapshotId)
     {
-        final Session sess = db.newSession();
+        final Session sess = beginOperation();
         final Graph graph = sess.getGraph();
         final Objects startObjs = findNode(graph, storage.getStartNode());
         final Objects endObjs = findNode(graph, storage.getEndNode());
@@ -609,7 +653,7 @@ public class SparkseeDatabaseAccess implements IDatabaseAccess
             {
                 endObjs.close();
             }
-            sess.close();
+            endOperation(sess);
             return false;
         }
 
@@ -640,21 +684,8 @@ public class SparkseeDatabaseAccess implements IDatabaseAccess
                 int snapshotAttributeId = SparkseeUtils.createOrFindAttributeType(Constants.TAG_SNAPSHOT_ID, snapshotId, Type.GlobalType, graph);
                 graph.setAttribute(relationship, snapshotAttributeId, SparkseeUtils.getValue(snapshotId));
 
-                try
-                {
-                    int hashAttributeId = SparkseeUtils.createOrFindAttributeType(Constants.TAG_HASH, " ", Type.GlobalType, graph);
-                    graph.setAttribute(relationship, hashAttributeId, SparkseeUtils.getValue(HashCreator.sha1FromRelationship(storage)));
-                }
-                catch (NoSuchAlgorithmException e)
-                {
-                    Log.getLogger().error("Couldn't execute create node transaction in server:  " + id, e);
-                    endObjs.close();
-                    startObjs.close();
-                    startIt.close();
-                    endIt.close();
-                    sess.close();
-                    return false;
-                }
+                int hashAttributeId = SparkseeUtils.createOrFindAttributeType(Constants.TAG_HASH, " ", Type.GlobalType, graph);
+                graph.setAttribute(relationship, hashAttributeId, SparkseeUtils.getValue(HashCreator.toHex(HashCreator.hashRelationship(storage))));
                 Log.getLogger().info("Successfully executed create relationship transaction in server:  " + id);
             }
         }
@@ -663,14 +694,14 @@ public class SparkseeDatabaseAccess implements IDatabaseAccess
         endObjs.close();
         startIt.close();
         endIt.close();
-        sess.close();
+        endOperation(sess);
         return true;
     }
 
     @Override
     public boolean applyDelete(final RelationshipStorage storage, final long snapshotId)
     {
-        final Session sess = db.newSession();
+        final Session sess = beginOperation();
         final Graph graph = sess.getGraph();
         final List<Long> startObjs = loadNodesAsIdList(graph, storage.getStartNode());
         final List<Long> endObjs = loadNodesAsIdList(graph, storage.getStartNode());
@@ -688,7 +719,60 @@ public class SparkseeDatabaseAccess implements IDatabaseAccess
                     graph.drop(edgeId);
             }
         }
-        sess.close();
+        endOperation(sess);
+        return true;
+    }
+
+    @Override
+    public boolean applyWriteSet(final List<IOperation> writeSet, final long snapshotId)
+    {
+        final Session sess = db.newSession();
+        writeSetSession.set(sess);
+        try
+        {
+            sess.beginUpdate();
+            for (final IOperation operation : writeSet)
+            {
+                operation.apply(this, snapshotId, null, id);
+            }
+            sess.commit();
+        }
+        catch (Exception e)
+        {
+            Log.getLogger().error("Couldn't execute writeSet transaction in server:  " + id, e);
+            sess.rollback();
+            return false;
+        }
+        finally
+        {
+            writeSetSession.remove();
+            sess.close();
+        }
+        Log.getLogger().info("Successfully executed writeSet transaction in server:  " + id);
         return true;
     }
+
+    /**
+     * Get the session an operation should run in, the one of the current writeSet or a new one.
+     *
+     * @return the session.
+     */
+    private Session beginOperation()
+    {
+        final Session sess = writeSetSession.get();
+        return sess == null ? db.newSession() : sess;
+    }
+
+    /**
+     * Close the session of an operation unless it belongs to the current writeSet.
+     *
+     * @param sess the session of the operation.
+     */
+    private void endOperation(final Session sess)
+    {
+        if (writeSetSession.get() != sess)
+        {
+            sess.close();
+        }
+    }
 }
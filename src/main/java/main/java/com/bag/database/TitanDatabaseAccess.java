@@ -4,6 +4,7 @@ import com.thinkaurelius.titan.core.*;
 import com.thinkaurelius.titan.core.schema.TitanManagement;
 import main.java.com.bag.exceptions.OutDatedDataException;
 import main.java.com.bag.database.interfaces.IDatabaseAccess;
+import main.java.com.bag.operations.IOperation;
 import main.java.com.bag.util.*;
 import main.java.com.bag.util.storage.NodeStorage;
 import main.java.com.bag.util.storage.RelationshipStorage;
@@ -19,8 +20,8 @@ import org.apache.tinkerpop.gremlin.structure.Vertex;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.File;
-import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.function.Consumer;
 
 /**
  * Class created to handle access to the titan database.
@@ -33,6 +34,11 @@ public class TitanDatabaseAccess implements IDatabaseAccess
 
     private final int id;
 
+    /**
+     * The transaction of the writeSet the current thread applies, null if every operation runs in its own transaction.
+     */
+    private final ThreadLocal<TitanTransaction> writeSetTransaction = new ThreadLocal<>();
+
     public TitanDatabaseAccess(int id)
     {
         this.id = id;
@@ -277,6 +283,56 @@ public class TitanDatabaseAccess implements IDatabaseAccess
         return tempStorage;
     }
 
+    @Override
+    public void exportData(final int chunkSize, final Consumer<List<Object>> consumer)
+    {
+        final ExportChunker chunker = new ExportChunker(chunkSize, consumer);
+        final TitanTransaction tx = graph.newTransaction();
+        try
+        {
+            final GraphTraversalSource g = graph.traversal();
+            final Iterator<Vertex> vertices = g.V();
+            while (vertices.hasNext())
+            {
+                final Vertex vertex = vertices.next();
+                final NodeStorage tempStorage = getNodeStorageFromVertex(vertex);
+                if (vertex.property(Constants.TAG_SNAPSHOT_ID).isPresent())
+                {
+                    tempStorage.addProperty(Constants.TAG_SNAPSHOT_ID, vertex.property(Constants.TAG_SNAPSHOT_ID).value());
+                }
+                chunker.add(tempStorage);
+            }
+            chunker.flush();
+
+            final Iterator<Edge> edges = g.E();
+            while (edges.hasNext())
+            {
+                chunker.add(getRelationshipStorageFromEdge(edges.next()));
+            }
+            chunker.flush();
+        }
+        finally
+        {
+            tx.commit();
+        }
+        Log.getLogger().info("Exported titan database in server:  " + id);
+    }
+
+    @Override
+    public void clear(final long snapshotId)
+    {
+        final TitanTransaction tx = graph.newTransaction();
+        try
+        {
+            graph.traversal().V().drop().iterate();
+        }
+        finally
+        {
+            tx.commit();
+        }
+        Log.getLogger().info("Cleared titan database in server:  " + id);
+    }
+
     /**
      * Kills the graph database.
      */
@@ -315,15 +371,11 @@ public class TitanDatabaseAccess implements IDatabaseAccess
                 tempOutput = tempOutput.has(entry.getKey(), entry.getValue());
             }
 
-            if (tempOutput == null || !HashCreator.sha1FromNode(nodeStorage).equals(tempOutput.values("hash").toString()))
+            if (tempOutput == null || !tempOutput.hasNext() || !HashCreator.matches(HashCreator.hashNode(nodeStorage), tempOutput.next().property(Constants.TAG_HASH).orElse(null)))
             {
                 return false;
             }
         }
-        catch (NoSuchAlgorithmException e)
-        {
-            Log.getLogger().info("Failed at generating hash in server " + id, e);
-        }
         finally
         {
             tx.commit();
@@ -335,10 +387,10 @@ public class TitanDatabaseAccess implements IDatabaseAccess
     @Override
     public boolean applyUpdate(final NodeStorage key, final NodeStorage value, final long snapshotId)
     {
-        TitanTransaction tx = graph.newTransaction();
+        final TitanTransaction tx = beginOperation();
         try
         {
-            GraphTraversalSource g = graph.traversal();
+            GraphTraversalSource g = tx.traversal();
 
             //Can't change label in titan!
 
@@ -352,7 +404,7 @@ public class TitanDatabaseAccess implements IDatabaseAccess
                 {
                     vertex.property(entry.getKey(), entry.getValue());
                 }
-                vertex.property(Constants.TAG_HASH, HashCreator.sha1FromNode(getNodeStorageFromVertex(vertex)));
+                vertex.property(Constants.TAG_HASH, HashCreator.hashNode(getNodeStorageFromVertex(vertex)));
                 vertex.property(Constants.TAG_SNAPSHOT_ID, snapshotId);
             }
         }
@@ -363,7 +415,7 @@ public class TitanDatabaseAccess implements IDatabaseAccess
         }
         finally
         {
-            tx.commit();
+            commitOperation(tx);
         }
         Log.getLogger().info("Successfully executed update node transaction in server:  " + id);
 
@@ -373,15 +425,15 @@ public class TitanDatabaseAccess implements IDatabaseAccess
     @Override
     public boolean applyCreate(final NodeStorage storage, final long snapshotId)
     {
-        TitanTransaction tx = graph.newTransaction();
+        final TitanTransaction tx = beginOperation();
         try
         {
-            TitanVertex vertex = graph.addVertex(storage.getId());
+            TitanVertex vertex = tx.addVertex(storage.getId());
             for (Map.Entry<String, Object> entry : storage.getProperties().entrySet())
             {
                 vertex.property(entry.getKey(), entry.getValue());
             }
-            vertex.property(Constants.TAG_HASH, HashCreator.sha1FromNode(storage));
+            vertex.property(Constants.TAG_HASH, HashCreator.hashNode(storage));
             vertex.property(Constants.TAG_SNAPSHOT_ID, snapshotId);
         }
         catch (Exception e)
@@ -391,7 +443,7 @@ public class TitanDatabaseAccess implements IDatabaseAccess
         }
         finally
         {
-            tx.commit();
+            commitOperation(tx);
         }
         Log.getLogger().info("Successfully executed create node transaction in server:  " + id);
         return true;
@@ -400,10 +452,10 @@ public class TitanDatabaseAccess implements IDatabaseAccess
     @Override
     public boolean applyDelete(final NodeStorage storage, final long snapshotId)
     {
-        TitanTransaction tx = graph.newTransaction();
+        final TitanTransaction tx = beginOperation();
         try
         {
-            GraphTraversalSource g = graph.traversal();
+            GraphTraversalSource g = tx.traversal();
 
             GraphTraversal<Vertex, Vertex> tempNode = getVertexList(storage, g);
 
@@ -419,7 +471,7 @@ public class TitanDatabaseAccess implements IDatabaseAccess
         }
         finally
         {
-            tx.commit();
+            commitOperation(tx);
         }
         Log.getLogger().info("Successfully executed delete node transaction in server:  " + id);
         return true;
@@ -428,10 +480,10 @@ public class TitanDatabaseAccess implements IDatabaseAccess
     @Override
     public boolean applyUpdate(final RelationshipStorage key, final RelationshipStorage value, final long snapshotId)
     {
-        TitanTransaction tx = graph.newTransaction();
+        final TitanTransaction tx = beginOperation();
         try
         {
-            GraphTraversalSource g = graph.traversal();
+            GraphTraversalSource g = tx.traversal();
 
             GraphTraversal<Vertex, Vertex> startNode = getVertexList(key.getStartNode(), g);
             GraphTraversal<Vertex, Vertex> endNode = getVertexList(key.getEndNode(), g);
@@ -468,7 +520,7 @@ public class TitanDatabaseAccess implements IDatabaseAccess
                         {
                             edge.property(entry.getKey(), entry.getValue());
                         }
-                        edge.property(Constants.TAG_HASH, HashCreator.sha1FromRelationship(getRelationshipStorageFromEdge(edge)));
+                        edge.property(Constants.TAG_HASH, HashCreator.hashRelationship(getRelationshipStorageFromEdge(edge)));
                         edge.property(Constants.TAG_SNAPSHOT_ID, snapshotId);
                     }
                 }
@@ -481,7 +533,7 @@ public class TitanDatabaseAccess implements IDatabaseAccess
         }
         finally
         {
-            tx.commit();
+            commitOperation(tx);
         }
         Log.getLogger().info("Successfully executed update relationship transaction in server:  " + id);
         return true;
@@ -490,10 +542,10 @@ public class TitanDatabaseAccess implements IDatabaseAccess
     @Override
     public boolean applyCreate(final RelationshipStorage storage, final long snapshotId)
     {
-        TitanTransaction tx = graph.newTransaction();
+        final TitanTransaction tx = beginOperation();
         try
         {
-            GraphTraversalSource g = graph.traversal();
+            GraphTraversalSource g = tx.traversal();
 
             GraphTraversal<Vertex, Vertex> startNode = getVertexList(storage.getStartNode(), g);
             GraphTraversal<Vertex, Vertex> endNode = getVertexList(storage.getEndNode(), g);
@@ -505,7 +557,7 @@ public class TitanDatabaseAccess implements IDatabaseAccess
                 {
                     Edge edge = tempVertex.addEdge(storage.getId(), endNode.next());
 
-                    edge.property(Constants.TAG_HASH, HashCreator.sha1FromRelationship(storage));
+                    edge.property(Constants.TAG_HASH, HashCreator.hashRelationship(storage));
                     edge.property(Constants.TAG_SNAPSHOT_ID, snapshotId);
 
                     for (Map.Entry<String, Object> entry : storage.getProperties().entrySet())
@@ -522,7 +574,7 @@ public class TitanDatabaseAccess implements IDatabaseAccess
         }
         finally
         {
-            tx.commit();
+            commitOperation(tx);
         }
         Log.getLogger().info("Successfully executed create relationship transaction in server:  " + id);
         return true;
@@ -531,10 +583,10 @@ public class TitanDatabaseAccess implements IDatabaseAccess
     @Override
     public boolean applyDelete(final RelationshipStorage storage, final long snapshotId)
     {
-        TitanTransaction tx = graph.newTransaction();
+        final TitanTransaction tx = beginOperation();
         try
         {
-            GraphTraversalSource g = graph.traversal();
+            GraphTraversalSource g = tx.traversal();
 
             ArrayList<Vertex> nodeStartList = getVertexList(storage.getStartNode(), g, snapshotId);
             ArrayList<Vertex> nodeEndList = getVertexList(storage.getEndNode(), g, snapshotId);
@@ -561,12 +613,66 @@ public class TitanDatabaseAccess implements IDatabaseAccess
         }
         finally
         {
-            tx.commit();
+            commitOperation(tx);
         }
         Log.getLogger().info("Successfully executed delete relationship transaction in server:  " + id);
         return true;
     }
 
+    @Override
+    public boolean applyWriteSet(final List<IOperation> writeSet, final long snapshotId)
+    {
+        final TitanTransaction tx = graph.newTransaction();
+        writeSetTransaction.set(tx);
+        try
+        {
+            for (final IOperation operation : writeSet)
+            {
+                operation.apply(this, snapshotId, null, id);
+            }
+            tx.commit();
+        }
+        catch (Exception e)
+        {
+            Log.getLogger().error("Couldn't execute writeSet transaction in server:  " + id, e);
+            if (tx.isOpen())
+            {
+                tx.rollback();
+            }
+            return false;
+        }
+        finally
+        {
+            writeSetTransaction.remove();
+        }
+        Log.getLogger().info("Successfully executed writeSet transaction in server:  " + id);
+        return true;
+    }
+
+    /**
+     * Get the transaction an operation should run in, the one of the current writeSet or a new one.
+     *
+     * @return the transaction.
+     */
+    private TitanTransaction beginOperation()
+    {
+        final TitanTransaction tx = writeSetTransaction.get();
+        return tx == null ? graph.newTransaction() : tx;
+    }
+
+    /**
+     * Commit the transaction of an operation, operations of a writeSet are committed together with it.
+     *
+     * @param tx the transaction of the operation.
+     */
+    private void commitOperation(final TitanTransaction tx)
+    {
+        if (writeSetTransaction.get() != tx)
+        {
+            tx.commit();
+        }
+    }
+
     /**
      * Compares a nodeStorage with the node inside the db to check if correct.
      *
@@ -596,15 +702,11 @@ public class TitanDatabaseAccess implements IDatabaseAccess
                 tempOutput = tempOutput.has(entry.getKey(), entry.getValue());
             }
 
-            if (tempOutput == null || !HashCreator.sha1FromRelationship(relationshipStorage).equals(tempOutput.values("hash").toString()))
+            if (tempOutput == null || !tempOutput.hasNext() || !HashCreator.matches(HashCreator.hashRelationship(relationshipStorage), tempOutput.next().property(Constants.TAG_HASH).orElse(null)))
             {
                 return false;
             }
         }
-        catch (NoSuchAlgorithmException e)
-        {
-            Log.getLogger().error("Failed at generating hash in server " + id, e);
-        }
         finally
         {
             tx.commit();
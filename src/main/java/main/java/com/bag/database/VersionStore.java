@@ -0,0 +1,344 @@
+package main.java.com.bag.database;
+
+import main.java.com.bag.exceptions.OutDatedDataException;
+import main.java.com.bag.util.Log;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Store of the previous versions of the objects of a multi-version database, kept outside of their properties.
+ * Every object has a chain of versions, each valid from the snapshot which wrote it until the one which replaced it, newest first.
+ * A vacuum thread drops the versions no active snapshot reads anymore, a snapshot is active while it has been read in the last seconds.
+ * Start with -Dbag.version.chain.length=x to bound the chain of an object, it defaults to 16 versions,
+ * with -Dbag.version.snapshot.timeout=x to set the milliseconds a snapshot stays active, it defaults to 30000,
+ * and with -Dbag.version.vacuum.interval=x to set the milliseconds between two vacuums, it defaults to 1000.
+ */
+public class VersionStore
+{
+    /**
+     * Name of the system property which bounds the chains.
+     */
+    private static final String CHAIN_LENGTH_PROPERTY = "bag.version.chain.length";
+
+    /**
+     * Name of the system property of the time a snapshot stays active.
+     */
+    private static final String SNAPSHOT_TIMEOUT_PROPERTY = "bag.version.snapshot.timeout";
+
+    /**
+     * Name of the system property of the time between two vacuums.
+     */
+    private static final String VACUUM_INTERVAL_PROPERTY = "bag.version.vacuum.interval";
+
+    /**
+     * Maximum amount of previous versions of an object.
+     */
+    private final int maxChainLength = Math.max(1, Integer.getInteger(CHAIN_LENGTH_PROPERTY, 16));
+
+    /**
+     * Time a snapshot stays active after it has been read.
+     */
+    private final long snapshotTimeout = Long.getLong(SNAPSHOT_TIMEOUT_PROPERTY, 30000L);
+
+    /**
+     * The version chains by the key of their object.
+     */
+    private final ConcurrentHashMap<String, Chain> chains = new ConcurrentHashMap<>();
+
+    /**
+     * The active snapshots with the time they have last been read.
+     */
+    private final ConcurrentHashMap<Long, Long> activeSnapshots = new ConcurrentHashMap<>();
+
+    /**
+     * The latest snapshot which replaced a version.
+     */
+    private final AtomicLong latestSnapshot = new AtomicLong(-1);
+
+    /**
+     * Versions only valid before this snapshot have been dropped by the vacuum.
+     */
+    private final AtomicLong vacuumed = new AtomicLong(-1);
+
+    /**
+     * Metrics, the retained versions and the dropped versions.
+     */
+    private final AtomicLong versionCount = new AtomicLong();
+    private final AtomicLong droppedVersions = new AtomicLong();
+
+    /**
+     * The vacuum thread.
+     */
+    private final ScheduledExecutorService vacuum = Executors.newSingleThreadScheduledExecutor(runnable ->
+    {
+        final Thread thread = new Thread(runnable, "version-vacuum");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Creates the store and starts the vacuum.
+     */
+    public VersionStore()
+    {
+        final long interval = Math.max(1, Long.getLong(VACUUM_INTERVAL_PROPERTY, 1000L));
+        vacuum.scheduleWithFixedDelay(this::vacuum, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Retain the version of an object an update replaces.
+     *
+     * @param key          the key of the object.
+     * @param version      the replaced version.
+     * @param fromSnapshot the snapshot which wrote the replaced version.
+     * @param toSnapshot   the snapshot of the update.
+     */
+    public void addVersion(@NotNull final String key, @NotNull final Object version, final long fromSnapshot, final long toSnapshot)
+    {
+        chains.compute(key, (k, chain) -> (chain == null ? new Chain(new Version[0], -1) : chain).prepend(new Version(fromSnapshot, toSnapshot, version)));
+        latestSnapshot.accumulateAndGet(toSnapshot, Math::max);
+    }
+
+    /**
+     * Mark a snapshot as read, the vacuum retains its versions until it hasn't been read for the timeout.
+     *
+     * @param snapshotId the snapshot.
+     */
+    public void touch(final long snapshotId)
+    {
+        if (snapshotId != OutDatedDataException.IGNORE_SNAPSHOT)
+        {
+            activeSnapshots.put(snapshotId, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Get the version of an object a snapshot reads if the current version has been written after it.
+     *
+     * @param key        the key of the object.
+     * @param snapshotId the snapshot.
+     * @return the version or null if the object didn't exist at the snapshot.
+     * @throws OutDatedDataException if the version has been dropped already.
+     */
+    @Nullable
+    public Object getVersion(@NotNull final String key, final long snapshotId) throws OutDatedDataException
+    {
+        final Chain chain = chains.get(key);
+        if (chain != null)
+        {
+            for (final Version version : chain.versions)
+            {
+                if (version.from <= snapshotId && snapshotId < version.to)
+                {
+                    return version.storage;
+                }
+            }
+        }
+
+        if (snapshotId < vacuumed.get())
+        {
+            throw new OutDatedDataException("Versions of snapshot " + snapshotId + " have been vacuumed");
+        }
+
+        if (chain != null && snapshotId < chain.horizon)
+        {
+            throw new OutDatedDataException("Version of snapshot " + snapshotId + " exceeded the chain of " + key);
+        }
+        return null;
+    }
+
+    /**
+     * Get the lowest active snapshot, the latest snapshot if none is active.
+     *
+     * @return the snapshotId.
+     */
+    public long getLowestActiveSnapshot()
+    {
+        final long now = System.currentTimeMillis();
+        long lowest = latestSnapshot.get();
+        for (final Map.Entry<Long, Long> entry : activeSnapshots.entrySet())
+        {
+            if (now - entry.getValue() > snapshotTimeout)
+            {
+                activeSnapshots.remove(entry.getKey(), entry.getValue());
+            }
+            else
+            {
+                lowest = Math.min(lowest, entry.getKey());
+            }
+        }
+        return lowest;
+    }
+
+    /**
+     * Get the amount of retained versions.
+     *
+     * @return the amount.
+     */
+    public long getVersionCount()
+    {
+        return versionCount.get();
+    }
+
+    /**
+     * Drop the versions which were replaced before the lowest active snapshot.
+     */
+    private void vacuum()
+    {
+        try
+        {
+            final long lowest = getLowestActiveSnapshot();
+            vacuumed.accumulateAndGet(lowest, Math::max);
+            final long before = droppedVersions.get();
+            for (final String key : chains.keySet())
+            {
+                chains.computeIfPresent(key, (k, chain) -> chain.dropBefore(lowest));
+            }
+
+            final long dropped = droppedVersions.get() - before;
+            if (dropped > 0)
+            {
+                Log.getLogger().info("Vacuumed " + dropped + " versions before snapshot " + lowest + ", retained: " + versionCount.get());
+            }
+        }
+        catch (final RuntimeException e)
+        {
+            Log.getLogger().error("Unable to vacuum versions", e);
+        }
+    }
+
+    /**
+     * Drop all versions, the state of a snapshot replaces them and older snapshots can't be read anymore.
+     *
+     * @param snapshotId the snapshot of the installed state.
+     */
+    public void clear(final long snapshotId)
+    {
+        chains.clear();
+        versionCount.set(0);
+        latestSnapshot.set(snapshotId);
+        vacuumed.set(snapshotId);
+    }
+
+    /**
+     * Stop the vacuum.
+     */
+    public void close()
+    {
+        vacuum.shutdownNow();
+    }
+
+    /**
+     * A previous version of an object.
+     */
+    private static class Version
+    {
+        /**
+         * The snapshot which wrote it and the one which replaced it.
+         */
+        private final long from;
+        private final long to;
+
+        /**
+         * The node or relationship storage.
+         */
+        private final Object storage;
+
+        /**
+         * Creates a version.
+         *
+         * @param from    the snapshot which wrote it.
+         * @param to      the snapshot which replaced it.
+         * @param storage the storage.
+         */
+        private Version(final long from, final long to, final Object storage)
+        {
+            this.from = from;
+            this.to = to;
+            this.storage = storage;
+        }
+    }
+
+    /**
+     * The immutable version chain of an object, replaced as a whole on every change.
+     */
+    private class Chain
+    {
+        /**
+         * The versions, newest first.
+         */
+        private final Version[] versions;
+
+        /**
+         * Snapshots before this one read versions which were dropped because the chain exceeded its bound.
+         */
+        private final long horizon;
+
+        /**
+         * Creates a chain.
+         *
+         * @param versions the versions, newest first.
+         * @param horizon  the snapshot before which the versions were dropped.
+         */
+        private Chain(final Version[] versions, final long horizon)
+        {
+            this.versions = versions;
+            this.horizon = horizon;
+        }
+
+        /**
+         * Add the newest version, drops the oldest one if the chain exceeds its bound.
+         *
+         * @param version the version.
+         * @return the new chain.
+         */
+        private Chain prepend(final Version version)
+        {
+            final int length = Math.min(versions.length + 1, maxChainLength);
+            final Version[] result = new Version[length];
+            result[0] = version;
+            System.arraycopy(versions, 0, result, 1, length - 1);
+            versionCount.incrementAndGet();
+
+            long newHorizon = horizon;
+            if (length <= versions.length)
+            {
+                newHorizon = Math.max(horizon, versions[versions.length - 1].to);
+                versionCount.decrementAndGet();
+                droppedVersions.incrementAndGet();
+            }
+            return new Chain(result, newHorizon);
+        }
+
+        /**
+         * Drop the versions replaced before a snapshot.
+         *
+         * @param snapshotId the snapshot.
+         * @return the new chain or null if no version is left.
+         */
+        private Chain dropBefore(final long snapshotId)
+        {
+            int length = versions.length;
+            while (length > 0 && versions[length - 1].to <= snapshotId)
+            {
+                length--;
+            }
+
+            if (length == versions.length)
+            {
+                return this;
+            }
+            versionCount.addAndGet(length - versions.length);
+            droppedVersions.addAndGet(versions.length - length);
+            return length == 0 ? null : new Chain(Arrays.copyOf(versions, length), horizon);
+        }
+    }
+}
@@ -2,11 +2,17 @@ package main.java.com.bag.database.interfaces;
 
 
 import main.java.com.bag.exceptions.OutDatedDataException;
-import main.java.com.bag.util.Log;
+import main.java.com.bag.operations.IOperation;
+import main.java.com.bag.util.Constants;
 import main.java.com.bag.util.storage.NodeStorage;
+import main.java.com.bag.util.storage.ReadKey;
 import main.java.com.bag.util.storage.RelationshipStorage;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * Abstract class with required methods for all graph databases.
@@ -25,25 +31,37 @@ public interface IDatabaseAccess
 
     /**
      * Method used to check if the hashes inside a readSet are correct.
+     * Keys of the compact readSet are checked by their version, the storages which couldn't be keyed by their hash.
      */
     default boolean equalHash(final List readSet)
     {
-        if(readSet.isEmpty())
+        for (final Object storage : readSet)
         {
-            return true;
+            if (storage instanceof ReadKey && !isReadCurrent((ReadKey) storage))
+            {
+                return false;
+            }
         }
+        return equalHashNode(readSet) && equalHashRelationship(readSet);
+    }
 
-        if(readSet.get(0) instanceof NodeStorage)
+    /**
+     * Checks if a key of the readSet still matches the database.
+     * The object has to exist and mustn't have been written after the version it has been read at.
+     * @param readKey the key of the read node or relationship.
+     * @return true if it matches.
+     */
+    default boolean isReadCurrent(final ReadKey readKey)
+    {
+        final long version = readKey.getVersion() < 0 ? OutDatedDataException.IGNORE_SNAPSHOT : readKey.getVersion();
+        try
         {
-            return equalHashNode(readSet);
+            return !readObject(readKey.toPattern(), version).isEmpty();
         }
-        else if(readSet.get(0) instanceof RelationshipStorage)
+        catch (final OutDatedDataException e)
         {
-            return equalHashRelationship(readSet);
+            return false;
         }
-        Log.getLogger().warn("Invalid readSet");
-
-        return true;
     }
 
     /**
@@ -140,6 +158,55 @@ public interface IDatabaseAccess
      */
     boolean applyDelete(RelationshipStorage storage, long snapshotId);
 
+    /**
+     * Applies the writeSet of a committed transaction to the database.
+     * Databases with transactions run all operations in one backend transaction and commit it once,
+     * if it fails it is rolled back and leaves the database unchanged. This default applies the operations one by one.
+     * @param writeSet the operations of the transaction.
+     * @param snapshotId the snapshotId the transaction commits at.
+     * @return true if successful.
+     */
+    default boolean applyWriteSet(final List<IOperation> writeSet, final long snapshotId)
+    {
+        for (final IOperation operation : writeSet)
+        {
+            operation.apply(this, snapshotId, null, 0);
+        }
+        return true;
+    }
+
+    /**
+     * Applies the writeSets of several committed transactions under one snapshotId.
+     * They are applied together in one backend transaction first, if that fails every writeSet is applied in its own one,
+     * so a failing transaction doesn't take the others down with it.
+     * @param writeSets the operations of every transaction.
+     * @param snapshotId the snapshotId the transactions commit at.
+     * @return for every writeSet if it has been applied.
+     */
+    default boolean[] applyWriteSets(final List<List<IOperation>> writeSets, final long snapshotId)
+    {
+        final boolean[] applied = new boolean[writeSets.size()];
+        if (writeSets.size() > 1)
+        {
+            final List<IOperation> batchWriteSet = new ArrayList<>();
+            for (final List<IOperation> writeSet : writeSets)
+            {
+                batchWriteSet.addAll(writeSet);
+            }
+            if (applyWriteSet(batchWriteSet, snapshotId))
+            {
+                Arrays.fill(applied, true);
+                return applied;
+            }
+        }
+
+        for (int i = 0; i < applied.length; i++)
+        {
+            applied[i] = applyWriteSet(writeSets.get(i), snapshotId);
+        }
+        return applied;
+    }
+
     /**
      * Method to read an object from the database.
      * @param identifier identifier of the object.
@@ -148,10 +215,107 @@ public interface IDatabaseAccess
      */
     List<Object> readObject(Object identifier, long localSnapshotId) throws OutDatedDataException;
 
+    /**
+     * Method to read several objects from the database at the same snapshotId.
+     * @param identifiers identifiers of the objects, node and relationship storages.
+     * @param localSnapshotId snapshotId.
+     * @return the list of read objects of every identifier, in the order of the identifiers.
+     */
+    default List<List<Object>> readObjects(final List<Object> identifiers, final long localSnapshotId) throws OutDatedDataException
+    {
+        final List<List<Object>> result = new ArrayList<>(identifiers.size());
+        for (final Object identifier : identifiers)
+        {
+            result.add(readObject(identifier, localSnapshotId));
+        }
+        return result;
+    }
+
     /**
      * Checks if this db should try to check requests with this sequence number.
      * @param sequence the sequence number.
      * @return true if so.
      */
     boolean shouldFollow(int sequence);
+
+    /**
+     * Exports all nodes and afterwards all relationships of the database in chunks.
+     * The storages keep their snapshotId so that they can be imported at the same version.
+     * @param chunkSize the maximum amount of storages in a chunk.
+     * @param consumer the consumer receiving the chunks one after another.
+     */
+    void exportData(int chunkSize, Consumer<List<Object>> consumer);
+
+    /**
+     * Removes all nodes and relationships from the database, used before a snapshot is installed.
+     * Multi-version databases drop their previous versions as well, reads of older snapshots fail afterwards.
+     * @param snapshotId the snapshotId of the installed snapshot.
+     */
+    void clear(long snapshotId);
+
+    /**
+     * Imports a chunk which has been created by exportData.
+     * @param chunk the chunk of node and relationship storages.
+     */
+    default void importData(final List<Object> chunk)
+    {
+        for (final Object storage : chunk)
+        {
+            if (storage instanceof NodeStorage)
+            {
+                final NodeStorage node = (NodeStorage) storage;
+                final long snapshotId = getExportedSnapshotId(node.getProperty(Constants.TAG_SNAPSHOT_ID));
+                node.removeProperty(Constants.TAG_SNAPSHOT_ID);
+                node.removeProperty(Constants.TAG_HASH);
+                applyCreate(node, snapshotId);
+            }
+            else if (storage instanceof RelationshipStorage)
+            {
+                final RelationshipStorage relationship = (RelationshipStorage) storage;
+                final long snapshotId = getExportedSnapshotId(relationship.getProperty(Constants.TAG_SNAPSHOT_ID));
+                relationship.removeProperty(Constants.TAG_SNAPSHOT_ID);
+                relationship.removeProperty(Constants.TAG_HASH);
+                applyCreate(new RelationshipStorage(relationship.getId(),
+                        relationship.getProperties(),
+                        getExportedEndpoint(relationship.getStartNode()),
+                        getExportedEndpoint(relationship.getEndNode())), snapshotId);
+            }
+        }
+    }
+
+    /**
+     * Get the snapshotId of an exported storage.
+     * @param snapshotId the value of the snapshotId property.
+     * @return the snapshotId or 0 if not set.
+     */
+    static long getExportedSnapshotId(final Object snapshotId)
+    {
+        if (snapshotId instanceof Long)
+        {
+            return (long) snapshotId;
+        }
+        else if (snapshotId instanceof String)
+        {
+            return Long.parseLong((String) snapshotId);
+        }
+        return 0;
+    }
+
+    /**
+     * Reduces an exported endpoint to its idx, since its hash and snapshotId have been rewritten on import.
+     * @param node the exported endpoint.
+     * @return the node to match the endpoint with.
+     */
+    static NodeStorage getExportedEndpoint(final NodeStorage node)
+    {
+        final Object idx = node.getProperty(Constants.TAG_IDX);
+        if (idx == null)
+        {
+            final NodeStorage copy = new NodeStorage(node);
+            copy.removeProperty(Constants.TAG_SNAPSHOT_ID);
+            copy.removeProperty(Constants.TAG_HASH);
+            return copy;
+        }
+        return new NodeStorage(node.getId(), Collections.singletonMap(Constants.TAG_IDX, idx));
+    }
 }
@@ -2,8 +2,6 @@ package main.java.com.bag.evaluations;
 
 import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.io.Output;
-import com.esotericsoftware.kryo.pool.KryoFactory;
-import com.esotericsoftware.kryo.pool.KryoPool;
 import main.java.com.bag.client.BAGClient;
 import main.java.com.bag.client.TestClient;
 import main.java.com.bag.operations.CreateOperation;
@@ -11,6 +9,7 @@ import main.java.com.bag.operations.DeleteOperation;
 import main.java.com.bag.operations.IOperation;
 import main.java.com.bag.operations.UpdateOperation;
 import main.java.com.bag.util.Constants;
+import main.java.com.bag.util.KryoContext;
 import main.java.com.bag.util.Log;
 import main.java.com.bag.util.storage.NodeStorage;
 import main.java.com.bag.util.storage.RelationshipStorage;
@@ -53,20 +52,6 @@ public class ClientWorkLoads
         private final int stopAt;
         private final int commitAfter;
 
-        /**
-         * Create a threadsafe version of kryo.
-         */
-        private final KryoFactory factory = () ->
-        {
-            Kryo kryo = new Kryo();
-            kryo.register(NodeStorage.class, 100);
-            kryo.register(RelationshipStorage.class, 200);
-            kryo.register(CreateOperation.class, 250);
-            kryo.register(DeleteOperation.class, 300);
-            kryo.register(UpdateOperation.class, 350);
-            return kryo;
-        };
-
         public MassiveNodeInsertThread(@NotNull final TestClient client, final int share, final int start, final int commitAfter, final int size)
         {
             this.client = client;
@@ -86,8 +71,7 @@ public class ClientWorkLoads
 
         public void run()
         {
-            final KryoPool pool = new KryoPool.Builder(factory).softReferences().build();
-            final Kryo kryo = pool.borrow();
+            final Kryo kryo = KryoContext.borrow();
             List<IOperation> createNodeOperationList = new ArrayList<>();
 
             int written = 0;
@@ -100,12 +84,11 @@ public class ClientWorkLoads
 
                     if (written >= commitAfter || i == stopAt)
                     {
-                        try (final Output output = new Output(0, 10024))
-                        {
-                            written = 0;
-                            kryo.writeObject(output, createNodeOperationList);
-                            out.sendMessage(output.getBuffer());
-                        }
+                        final Output output = KryoContext.borrowOutput();
+                        written = 0;
+                        kryo.writeObject(output, createNodeOperationList);
+                        out.sendMessage(output.toBytes());
+                        KryoContext.releaseOutput(output);
                         createNodeOperationList = new ArrayList<>();
                     }
                 }
@@ -119,7 +102,7 @@ public class ClientWorkLoads
                     }
                 }
             }
-            pool.release(kryo);
+            KryoContext.release(kryo);
         }
     }
 
@@ -132,20 +115,6 @@ public class ClientWorkLoads
         private final int share;
         private final int start;
 
-        /**
-         * Create a threadsafe version of kryo.
-         */
-        public KryoFactory factory = () ->
-        {
-            Kryo kryo = new Kryo();
-            kryo.register(NodeStorage.class, 100);
-            kryo.register(RelationshipStorage.class, 200);
-            kryo.register(CreateOperation.class, 250);
-            kryo.register(DeleteOperation.class, 300);
-            kryo.register(UpdateOperation.class, 350);
-            return kryo;
-        };
-
         public MassiveRelationShipInsertThread(@NotNull final TestClient client, final int share, final int start, final int commitAfter)
         {
             this.client = client;
@@ -165,8 +134,7 @@ public class ClientWorkLoads
 
         public void run()
         {
-            final KryoPool pool = new KryoPool.Builder(factory).softReferences().build();
-            final Kryo kryo = pool.borrow();
+            final Kryo kryo = KryoContext.borrow();
             final List<CreateOperation<RelationshipStorage>> createRelationshipOperations = new ArrayList<>();
 
             try (FileReader fr = new FileReader(GRAPH_LOCATION); Scanner scan = new Scanner(fr);)
@@ -208,22 +176,20 @@ public class ClientWorkLoads
 
                         /*if (readLines >= totalShare)
                         {
-                            try (final Output output = new Output(0, 10024))
-                            {
-                                kryo.writeObject(output, createRelationshipOperations);
-                                out.sendMessage(output.getBuffer());
-                            }
+                            final Output output = KryoContext.borrowOutput();
+                            kryo.writeObject(output, createRelationshipOperations);
+                            out.sendMessage(output.toBytes());
+                            KryoContext.releaseOutput(output);
                             break;
                         }*/
 
                         if (writtenLines >= commitAfter)
                         {
-                            try (final Output output = new Output(0, 10024))
-                            {
-                                writtenLines = 0;
-                                kryo.writeObject(output, createRelationshipOperations);
-                                out.sendMessage(output.getBuffer());
-                            }
+                            final Output output = KryoContext.borrowOutput();
+                            writtenLines = 0;
+                            kryo.writeObject(output, createRelationshipOperations);
+                            out.sendMessage(output.toBytes());
+                            KryoContext.releaseOutput(output);
                             createRelationshipOperations.clear();
                         }
                     }
@@ -251,13 +217,28 @@ public class ClientWorkLoads
             }
             finally
             {
-                pool.release(kryo);
+                KryoContext.release(kryo);
             }
         }
     }
 
+    /**
+     * Realistic mix of reads and writes on the social graph.
+     * The reads between two writes or commits are sent together as one multi read,
+     * start with -Dbag.workload.read.batch=x to set the maximum amount of reads in one request, it defaults to 8, 1 sends every read on its own.
+     */
     public static class RealisticOperation
     {
+        /**
+         * Name of the system property of the maximum amount of reads sent together.
+         */
+        private static final String READ_BATCH_PROPERTY = "bag.workload.read.batch";
+
+        /**
+         * Maximum amount of reads sent together.
+         */
+        private final int readBatch = Math.max(1, Integer.getInteger(READ_BATCH_PROPERTY, 8));
+
         private BAGClient client = null;
 
         private final int    seed;
@@ -271,20 +252,6 @@ public class ClientWorkLoads
             public String relationName;
         }
 
-        /**
-         * Create a threadsafe version of kryo.
-         */
-        public final KryoFactory factory = () ->
-        {
-            Kryo kryo = new Kryo();
-            kryo.register(NodeStorage.class, 100);
-            kryo.register(RelationshipStorage.class, 200);
-            kryo.register(CreateOperation.class, 250);
-            kryo.register(DeleteOperation.class, 300);
-            kryo.register(UpdateOperation.class, 350);
-            return kryo;
-        };
-
         public RealisticOperation(@NotNull final BAGClient client, final int commitAfter, final int seed, final double percOfWrites)
         {
 
@@ -294,6 +261,35 @@ public class ClientWorkLoads
             this.percOfWrites = percOfWrites;
         }
 
+        /**
+         * Send the pending reads in one request and wait until all of them returned.
+         *
+         * @param pendingReads the nodes and relationships to read, cleared afterwards.
+         */
+        private void flushReads(final List<Object> pendingReads)
+        {
+            if (pendingReads.isEmpty())
+            {
+                return;
+            }
+
+            client.read(pendingReads.toArray());
+            pendingReads.clear();
+            try
+            {
+                while (client.getReadQueue().take() != TestClient.FINISHED_READING)
+                {
+                    ;
+                }
+            }
+            catch (final InterruptedException e)
+            {
+                /*
+                 * Intentionally left empty.
+                 */
+            }
+        }
+
         private List<GraphRelation> loadGraphRelations() throws IOException
         {
             final String graphLocation = System.getProperty("user.home") + "/thesis/src/testGraphs/social-a-graph.txt";
@@ -374,6 +370,7 @@ public class ClientWorkLoads
                 return;
             }
 
+            final List<Object> pendingReads = new ArrayList<>();
             final byte[] bytes = new byte[1000000];
 
             for (int i = 0; i < bytes.length; i++)
@@ -482,42 +479,23 @@ public class ClientWorkLoads
                 {
                     if (readNodeStorage != null)
                     {
-                        client.read(readNodeStorage);
-                        try
-                        {
-                            while (client.getReadQueue().take() != TestClient.FINISHED_READING)
-                            {
-                                ;
-                            }
-                        }
-                        catch (final InterruptedException e)
-                        {
-                                /*
-                                 * Intentionally left empty.
-                                 */
-                        }
+                        pendingReads.add(readNodeStorage);
                     }
 
                     if (readRelationship != null)
                     {
-                        client.read(readRelationship);
-                        try
-                        {
-                            while (client.getReadQueue().take() != TestClient.FINISHED_READING)
-                            {
-                                ;
-                            }
-                        }
-                        catch (final InterruptedException e)
-                        {
-                                /*
-                                 * Intentionally left empty.
-                                 */
-                        }
+                        pendingReads.add(readRelationship);
+                    }
+
+                    if (pendingReads.size() >= readBatch)
+                    {
+                        flushReads(pendingReads);
                     }
                 }
                 else
                 {
+                    //The reads before a write are done before it.
+                    flushReads(pendingReads);
                     if (operation instanceof DeleteOperation)
                     {
                         client.write(((DeleteOperation) operation).getObject(), null);
@@ -534,6 +512,7 @@ public class ClientWorkLoads
 
                 if (i % commitAfter == 0)
                 {
+                    flushReads(pendingReads);
                     if (!client.hasRead())
                     {
                         client.read(new NodeStorage(true));
@@ -574,6 +553,8 @@ public class ClientWorkLoads
                 }
             }
 
+            flushReads(pendingReads);
+
             final double dif = (System.nanoTime() - totalNanos) / 1000000000.0;
             System.out.println(String.format("Total Elapsed: %.3f s\nreadNodes: %d\nreadRelations: %d\n" +
                             "createNodes: %d\ncreateRelations: %d\nupdateNodes: %d\nupdateRelations: %d\n" +
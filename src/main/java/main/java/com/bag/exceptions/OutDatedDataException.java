@@ -1,15 +1,5 @@
 package main.java.com.bag.exceptions;
 
-import com.esotericsoftware.kryo.Kryo;
-import com.esotericsoftware.kryo.io.Input;
-import main.java.com.bag.util.storage.NodeStorage;
-import main.java.com.bag.util.storage.RelationshipStorage;
-import org.neo4j.kernel.impl.core.NodeProxy;
-import org.neo4j.kernel.impl.core.RelationshipProxy;
-
-import static main.java.com.bag.util.Constants.TAG_PRE;
-import static main.java.com.bag.util.Constants.TAG_SNAPSHOT_ID;
-
 /**
  * Exception thrown when outdated data is found on a read.
  */
@@ -52,88 +42,27 @@ public class OutDatedDataException extends Exception
      */
     public static void checkSnapshotId(final Object input, final long snapshotId) throws OutDatedDataException
     {
-        long tempSnapshotId = 0;
-
-        if(input instanceof String)
-        {
-            tempSnapshotId = Long.valueOf((String) input);
-        }
-        else if(input instanceof Long)
-        {
-            tempSnapshotId = (long) input;
-        }
-
-        if(tempSnapshotId > snapshotId && snapshotId != IGNORE_SNAPSHOT)
+        if(toSnapshotId(input) > snapshotId && snapshotId != IGNORE_SNAPSHOT)
         {
             throw new OutDatedDataException("Requested node or relationship has been updated by the database since the start of this transaction");
         }
     }
 
     /**
-     * Checks if an input is a valid snapshotId for the transaction.
-     * @param input the input to check.
-     * @param snapshotId the real snapshotId.
-     * @param storage the storage object.
-     * @throws OutDatedDataException exception to throw if not valid.
+     * Converts the snapshotId property of a node or relationship.
+     * @param input the property.
+     * @return the snapshotId, 0 if it isn't set.
      */
-    public static NodeStorage getCorrectNodeStorage(final Object input, final long snapshotId, final NodeStorage storage, final Kryo kryo)
+    public static long toSnapshotId(final Object input)
     {
-        long tempSnapshotId = 0;
-
         if(input instanceof String)
         {
-            tempSnapshotId = Long.valueOf((String) input);
+            return Long.valueOf((String) input);
         }
         else if(input instanceof Long)
         {
-            tempSnapshotId = (long) input;
-        }
-
-        NodeStorage tempStorage = storage;
-        if(tempSnapshotId > snapshotId && snapshotId != IGNORE_SNAPSHOT)
-        {
-            Object sId = storage.getProperties().get(TAG_SNAPSHOT_ID);
-            while(sId instanceof Long && (long) sId < tempSnapshotId && storage.getProperty(TAG_PRE) instanceof byte[])
-            {
-                final Input inputStream = new Input((byte[]) storage.getProperty(TAG_PRE));
-                tempStorage = kryo.readObject(inputStream, NodeStorage.class);
-                sId = tempStorage.getProperty(TAG_SNAPSHOT_ID);
-            }
-        }
-        return tempStorage;
-    }
-
-    /**
-     * Checks if an input is a valid snapshotId for the transaction.
-     * @param input the input to check.
-     * @param snapshotId the real snapshotId.
-     * @param storage the storage object.
-     * @throws OutDatedDataException exception to throw if not valid.
-     */
-    public static RelationshipStorage getCorrectRSStorage(final Object input, final long snapshotId, final RelationshipStorage storage, final Kryo kryo)
-    {
-        long tempSnapshotId = 0;
-
-        if(input instanceof String)
-        {
-            tempSnapshotId = Long.valueOf((String) input);
-        }
-        else if(input instanceof Long)
-        {
-            tempSnapshotId = (long) input;
-        }
-
-        RelationshipStorage tempStorage = storage;
-        if(tempSnapshotId > snapshotId && snapshotId != IGNORE_SNAPSHOT)
-        {
-            Object sId = storage.getProperties().get(TAG_SNAPSHOT_ID);
-            while(sId instanceof Long && (long) sId < tempSnapshotId && storage.getProperty(TAG_PRE) instanceof RelationshipProxy)
-            {
-                final Input inputStream = new Input((byte[]) storage.getProperty(TAG_PRE));
-                tempStorage = kryo.readObject(inputStream, RelationshipStorage.class);
-                sId = tempStorage.getProperty(TAG_SNAPSHOT_ID);
-            }
+            return (long) input;
         }
-        return tempStorage;
+        return 0;
     }
 }
@@ -0,0 +1,26 @@
+package main.java.com.bag.operations;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+import java.io.Serializable;
+
+/**
+ * Kryo serializer of the create operation, writes the registered id of the storage class followed by the storage.
+ */
+public class CreateOperationSerializer extends Serializer<CreateOperation<?>>
+{
+    @Override
+    public void write(final Kryo kryo, final Output output, final CreateOperation<?> operation)
+    {
+        kryo.writeClassAndObject(output, operation.getObject());
+    }
+
+    @Override
+    public CreateOperation<?> read(final Kryo kryo, final Input input, final Class<CreateOperation<?>> type)
+    {
+        return new CreateOperation<>((Serializable) kryo.readClassAndObject(input));
+    }
+}
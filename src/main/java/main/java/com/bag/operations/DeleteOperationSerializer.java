@@ -0,0 +1,26 @@
+package main.java.com.bag.operations;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+import java.io.Serializable;
+
+/**
+ * Kryo serializer of the delete operation, writes the registered id of the storage class followed by the storage.
+ */
+public class DeleteOperationSerializer extends Serializer<DeleteOperation<?>>
+{
+    @Override
+    public void write(final Kryo kryo, final Output output, final DeleteOperation<?> operation)
+    {
+        kryo.writeClassAndObject(output, operation.getObject());
+    }
+
+    @Override
+    public DeleteOperation<?> read(final Kryo kryo, final Input input, final Class<DeleteOperation<?>> type)
+    {
+        return new DeleteOperation<>((Serializable) kryo.readClassAndObject(input));
+    }
+}
@@ -0,0 +1,29 @@
+package main.java.com.bag.operations;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+import java.io.Serializable;
+
+/**
+ * Kryo serializer of the update operation, writes key and value each with the registered id of their class.
+ */
+public class UpdateOperationSerializer extends Serializer<UpdateOperation<?>>
+{
+    @Override
+    public void write(final Kryo kryo, final Output output, final UpdateOperation<?> operation)
+    {
+        kryo.writeClassAndObject(output, operation.getKey());
+        kryo.writeClassAndObject(output, operation.getValue());
+    }
+
+    @Override
+    public UpdateOperation<?> read(final Kryo kryo, final Input input, final Class<UpdateOperation<?>> type)
+    {
+        final Serializable key = (Serializable) kryo.readClassAndObject(input);
+        final Serializable value = (Serializable) kryo.readClassAndObject(input);
+        return new UpdateOperation<>(key, value);
+    }
+}
@@ -1,40 +1,41 @@
 package main.java.com.bag.server;
 
-import bftsmart.reconfiguration.util.RSAKeyLoader;
 import bftsmart.tom.ServiceReplica;
 import bftsmart.tom.server.defaultservices.DefaultRecoverable;
 import bftsmart.tom.server.defaultservices.DefaultReplier;
 import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
-import com.esotericsoftware.kryo.pool.KryoFactory;
-import com.esotericsoftware.kryo.pool.KryoPool;
 import com.github.benmanes.caffeine.cache.*;
+import main.java.com.bag.database.interfaces.IDatabaseAccess;
 import main.java.com.bag.exceptions.OutDatedDataException;
 import main.java.com.bag.instrumentations.ServerInstrumentation;
-import main.java.com.bag.operations.CreateOperation;
-import main.java.com.bag.operations.DeleteOperation;
 import main.java.com.bag.operations.IOperation;
-import main.java.com.bag.operations.UpdateOperation;
 import main.java.com.bag.util.Constants;
+import main.java.com.bag.util.KryoContext;
 import main.java.com.bag.util.Log;
 import main.java.com.bag.util.storage.NodeStorage;
 import main.java.com.bag.util.storage.RelationshipStorage;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ConcurrentNavigableMap;
 import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Super class of local or global cluster.
  * Used for common communication methods.
+ * The writeSets are compacted in the ordered execution every few snapshots,
+ * start with -Dbag.compaction.snapshots=x to set the amount of snapshots between two compactions, it defaults to 100.
  */
 public abstract class AbstractRecoverable extends DefaultRecoverable
 {
@@ -43,6 +44,31 @@ public abstract class AbstractRecoverable extends DefaultRecoverable
      */
     private static final int KEEP_LAST_X = 50;
 
+    /**
+     * Amount of nodes or relationships written to a snapshot in one chunk.
+     */
+    private static final int SNAPSHOT_CHUNK_SIZE = 1000;
+
+    /**
+     * Size of the buffer used to stream the snapshot.
+     */
+    private static final int SNAPSHOT_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Snapshots up to this length are empty (the placeholder snapshot had 2 bytes).
+     */
+    private static final int EMPTY_SNAPSHOT_LENGTH = 2;
+
+    /**
+     * Name of the system property of the amount of snapshots between two compactions of the writeSets.
+     */
+    private static final String COMPACTION_SNAPSHOTS_PROPERTY = "bag.compaction.snapshots";
+
+    /**
+     * Multi reads are only split into chunks of at least this many identifiers.
+     */
+    private static final int MIN_READ_CHUNK_SIZE = 16;
+
     /**
      * Contains the local server replica.
      */
@@ -64,9 +90,24 @@ public abstract class AbstractRecoverable extends DefaultRecoverable
     final Lock reentrantLock = new ReentrantLock();
 
     /**
-     * List of clients with the last snapshotId they read..
+     * Leases of the clients with the last snapshotId they certified against.
+     */
+    private final WatermarkService watermarks = new WatermarkService();
+
+    /**
+     * Writes committed before this snapshot have been compacted.
+     */
+    private final AtomicLong compactedBefore = new AtomicLong(0);
+
+    /**
+     * Amount of operations retained in the global writeSet.
      */
-    private final ConcurrentSkipListMap<Integer, Long> clients = new ConcurrentSkipListMap<>();
+    private final AtomicLong retainedOperations = new AtomicLong(0);
+
+    /**
+     * Amount of snapshots between two compactions of the writeSets.
+     */
+    private final long compactionSnapshots = Math.max(1, Long.getLong(COMPACTION_SNAPSHOTS_PROPERTY, 100L));
 
     /**
      * Write set of the nodes contains updates and deletes.
@@ -89,10 +130,39 @@ public abstract class AbstractRecoverable extends DefaultRecoverable
                 @Override
                 public void delete(@NotNull final Long key, @Nullable final List<IOperation> value, @NotNull final RemovalCause cause)
                 {
-                    globalWriteSet.put(key, value);
+                    //Overflow below the watermark isn't needed anymore.
+                    if (value != null && key >= compactedBefore.get() && globalWriteSet.put(key, value) == null)
+                    {
+                        retainedOperations.addAndGet(value.size());
+                    }
                 }
             }).build();
 
+    /**
+     * Index of the last committed snapshotId of every written node and relationship.
+     */
+    private final KeyVersionIndex versionIndex = new KeyVersionIndex();
+
+    /**
+     * Committed version of the objects in the database, validates the readSets.
+     */
+    private final CommittedVersionTable versionTable = new CommittedVersionTable();
+
+    /**
+     * Cache of the node and relationship reads at the latest snapshot.
+     */
+    private final ReadCache readCache = new ReadCache();
+
+    /**
+     * The open cursors of the paged reads.
+     */
+    private final ReadCursors readCursors = new ReadCursors();
+
+    /**
+     * Snapshot received before the database was available, installed as soon as it is.
+     */
+    private volatile byte[] pendingSnapshot = null;
+
     /**
      * Object to lock on commits.
      */
@@ -108,21 +178,6 @@ public abstract class AbstractRecoverable extends DefaultRecoverable
      */
     private final ServerInstrumentation instrumentation;
 
-    /**
-     * Factory for all Kryo related parts. Will give you a kryo object and receives it on release, to avoid memory leaks.
-     */
-    private final KryoFactory factory = () ->
-    {
-        Kryo kryo = new Kryo();
-        kryo.register(NodeStorage.class, 100);
-        kryo.register(RelationshipStorage.class, 200);
-        kryo.register(CreateOperation.class, 250);
-        kryo.register(DeleteOperation.class, 300);
-        kryo.register(UpdateOperation.class, 350);
-        // configure kryo instance, customize settings
-        return kryo;
-    };
-
     /**
      * Creates an instance of the abstract recoverable.
      *
@@ -137,16 +192,11 @@ public abstract class AbstractRecoverable extends DefaultRecoverable
         this.wrapper = wrapper;
         this.instrumentation = instrumentation;
         globalSnapshotId = 1;
-        final KryoPool pool = new KryoPool.Builder(factory).softReferences().build();
-        final Kryo kryo = pool.borrow();
         Log.getLogger().error("Instantiating abstract recoverable of id: " + id + " at config directory: " + configDirectory);
         //the default verifier is instantiated with null in the ServerReplica.
         this.replica = new ServiceReplica(id, configDirectory, this, this, null, new DefaultReplier());
 
         Log.getLogger().error("Finished instantiating abstract recoverable of id: " + id);
-        kryo.register(NodeStorage.class, 100);
-        kryo.register(RelationshipStorage.class, 200);
-        pool.release(kryo);
 
         globalWriteSet = new ConcurrentSkipListMap<>();
 
@@ -189,9 +239,103 @@ public abstract class AbstractRecoverable extends DefaultRecoverable
     @Override
     public void installSnapshot(final byte[] bytes)
     {
-        /**
-         * No Snapshots for the time being required.
-         */
+        if (bytes == null || bytes.length <= EMPTY_SNAPSHOT_LENGTH)
+        {
+            return;
+        }
+
+        if (wrapper.getDataBaseAccess() == null)
+        {
+            Log.getLogger().error("Database not started yet, delaying installation of snapshot at: " + id);
+            pendingSnapshot = bytes;
+            return;
+        }
+        readSnapshot(new ByteArrayInputStream(bytes));
+    }
+
+    /**
+     * Install the snapshot which has been received before the database was started.
+     */
+    public void installPendingSnapshot()
+    {
+        final byte[] bytes = pendingSnapshot;
+        if (bytes != null)
+        {
+            pendingSnapshot = null;
+            readSnapshot(new ByteArrayInputStream(bytes));
+        }
+    }
+
+    /**
+     * Restore the state of the replica from a snapshot stream.
+     * The database is cleared and rebuilt chunk by chunk.
+     *
+     * @param stream the stream to read the snapshot from.
+     */
+    public void readSnapshot(final InputStream stream)
+    {
+        final Kryo kryo = KryoContext.borrow();
+        final Input input = new Input(stream, SNAPSHOT_BUFFER_SIZE);
+
+        reentrantLock.lock();
+        try
+        {
+            globalSnapshotId = kryo.readObject(input, Long.class);
+
+            watermarks.readLeases(input, kryo);
+            final long compacted = kryo.readObject(input, Long.class);
+
+            @SuppressWarnings("unchecked")
+            final TreeMap<Long, List<IOperation>> global = kryo.readObject(input, TreeMap.class);
+            @SuppressWarnings("unchecked")
+            final TreeMap<Long, List<IOperation>> latest = kryo.readObject(input, TreeMap.class);
+
+            //Invalidating the cache moves its entries to the globalWriteSet, therefore clear it afterwards.
+            latestWritesSet.invalidateAll();
+            latestWritesSet.cleanUp();
+            globalWriteSet.clear();
+            globalWriteSet.putAll(global);
+            latestWritesSet.putAll(latest);
+            compactedBefore.set(compacted);
+            retainedOperations.set(global.values().stream().mapToLong(List::size).sum());
+
+            versionIndex.clear();
+            for (final Map.Entry<Long, List<IOperation>> entry : global.entrySet())
+            {
+                versionIndex.record(entry.getKey(), entry.getValue());
+            }
+            for (final Map.Entry<Long, List<IOperation>> entry : latest.entrySet())
+            {
+                versionIndex.record(entry.getKey(), entry.getValue());
+            }
+            if (compacted > 0)
+            {
+                versionIndex.prune(compacted);
+            }
+
+            readSpecificData(input, kryo);
+
+            final IDatabaseAccess access = wrapper.getDataBaseAccess();
+            access.clear(globalSnapshotId);
+            int chunks = 0;
+            while (input.readBoolean())
+            {
+                @SuppressWarnings("unchecked")
+                final List<Object> chunk = kryo.readObject(input, ArrayList.class);
+                access.importData(chunk);
+                chunks++;
+            }
+            versionTable.clear();
+            readCache.clear();
+            readCursors.clear();
+            Log.getLogger().error("Installed snapshot at: " + id + " with snapshotId: " + globalSnapshotId + " and " + chunks + " chunks");
+        }
+        finally
+        {
+            reentrantLock.unlock();
+            input.close();
+            KryoContext.release(kryo);
+        }
     }
 
     /**
@@ -211,43 +355,181 @@ public abstract class AbstractRecoverable extends DefaultRecoverable
     abstract Output writeSpecificData(final Output output, final Kryo kryo);
 
     /**
-     * Clean up all entries in write sets which we don't need anymore since we have the guarantee that the client will only respond with a higher id.
+     * Compact the writeSets at the watermark of the leases if this snapshot is due for a compaction.
+     * Called in the ordered execution after a commit, the snapshots and the leases are the same at every correct replica.
      */
-    private void shortCleanUp()
+    void compactIfDue()
     {
-        if (!clients.isEmpty() && reentrantLock.tryLock())
+        if (globalSnapshotId % compactionSnapshots == 0)
         {
-            long smallestSnapshot = Long.MAX_VALUE;
-            for (final Map.Entry<Integer, Long> entry : clients.entrySet())
+            compactWriteSets(watermarks.getLowWatermark(globalSnapshotId));
+        }
+    }
+
+    /**
+     * Renew the lease of a client with an ordered request.
+     *
+     * @param clientId   the id of the client.
+     * @param snapshotId the snapshot the client certifies against.
+     * @param time       the ordered timestamp of the request.
+     */
+    void renewLease(final int clientId, final long snapshotId, final long time)
+    {
+        watermarks.renew(clientId, snapshotId, time);
+    }
+
+    /**
+     * Drop the writes before the watermark, we have the guarantee that no live client certifies against them.
+     * Only called at a position of the ordered history, the writeSets are truncated by range.
+     *
+     * @param watermark the low watermark, it is bounded by the latest snapshot.
+     */
+    void compactWriteSets(final long watermark)
+    {
+        reentrantLock.lock();
+        try
+        {
+            final long bound = Math.min(watermark, globalSnapshotId);
+            if (bound <= compactedBefore.get())
             {
-                if (entry.getValue() < smallestSnapshot)
-                {
-                    smallestSnapshot = entry.getValue();
-                }
+                return;
             }
-
-            if (smallestSnapshot > 0)
+            compactedBefore.set(bound);
+            versionIndex.prune(bound);
+            versionTable.prune(bound);
+
+            final ConcurrentNavigableMap<Long, List<IOperation>> compacted = globalWriteSet.headMap(bound, false);
+            long operations = 0;
+            int entries = 0;
+            for (final List<IOperation> writeSet : compacted.values())
             {
-                final long end = globalWriteSet.firstKey();
-                Log.getLogger().info("Global size; " + globalWriteSet.size() + " deleting from: " + smallestSnapshot + " to: " + end);
+                operations += writeSet.size();
+                entries++;
+            }
+            compacted.clear();
+            retainedOperations.addAndGet(-operations);
 
-                for (long i = end; i < smallestSnapshot; i++)
-                {
-                    globalWriteSet.remove(i);
-                }
-                Log.getLogger().info("Global size now; " + globalWriteSet.size());
+            if (entries > 0)
+            {
+                Log.getLogger().info("Compacted " + entries + " writeSets before snapshot: " + bound + ", retained window: " + getRetainedWindow()
+                        + ", retained writeSets: " + globalWriteSet.size() + ", retained operations: " + retainedOperations.get()
+                        + ", version index size: " + versionIndex.size() + ", version table size: " + versionTable.size() + ", leases: " + watermarks.size());
             }
+        }
+        finally
+        {
             reentrantLock.unlock();
         }
     }
 
+    /**
+     * Get the amount of snapshots the writeSets are retained for.
+     *
+     * @return the amount from the low watermark to the latest snapshot.
+     */
+    public long getRetainedWindow()
+    {
+        return Math.max(0, globalSnapshotId - compactedBefore.get());
+    }
+
+    /**
+     * Get the amount of operations retained in the global writeSet.
+     *
+     * @return the amount.
+     */
+    public long getRetainedOperations()
+    {
+        return retainedOperations.get();
+    }
+
+    /**
+     * Get the snapshot before which the writeSets have been compacted.
+     *
+     * @return the low watermark.
+     */
+    public long getLowWatermark()
+    {
+        return compactedBefore.get();
+    }
+
+    /**
+     * Get the snapshot of the replica for BFT-SMaRt.
+     * The export is streamed to a temporary file first and read back at its final size,
+     * so the database is held in memory once and not in a growing buffer plus its copy.
+     *
+     * @return the snapshot.
+     */
     @Override
     public byte[] getSnapshot()
     {
-        /**
-         * No Snapshots for the time being required.
-         */
-        return new byte[] {0, 1};
+        Path file = null;
+        try
+        {
+            file = Files.createTempFile("bag-snapshot-" + id + "-", ".bin");
+            try (final OutputStream stream = Files.newOutputStream(file))
+            {
+                writeSnapshot(stream);
+            }
+            return Files.readAllBytes(file);
+        }
+        catch (final IOException e)
+        {
+            throw new IllegalStateException("Unable to write the snapshot of: " + id, e);
+        }
+        finally
+        {
+            if (file != null)
+            {
+                try
+                {
+                    Files.deleteIfExists(file);
+                }
+                catch (final IOException e)
+                {
+                    Log.getLogger().warn("Unable to delete the snapshot file: " + file, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Write the state of the replica to a snapshot stream.
+     * BFT-SMaRt calls this from the ordered execution, so no commit is applied while the database is exported.
+     * The database is exported in chunks, each chunk is flushed to the stream before the next one is read.
+     *
+     * @param stream the stream to write the snapshot to.
+     */
+    public void writeSnapshot(final OutputStream stream)
+    {
+        final Kryo kryo = KryoContext.borrow();
+        final Output output = new Output(stream, SNAPSHOT_BUFFER_SIZE);
+
+        try
+        {
+            kryo.writeObject(output, globalSnapshotId);
+            watermarks.writeLeases(output, kryo);
+            kryo.writeObject(output, compactedBefore.get());
+            kryo.writeObject(output, new TreeMap<>(globalWriteSet));
+            kryo.writeObject(output, new TreeMap<>(latestWritesSet.asMap()));
+            writeSpecificData(output, kryo);
+
+            final IDatabaseAccess access = wrapper.getDataBaseAccess();
+            if (access != null)
+            {
+                access.exportData(SNAPSHOT_CHUNK_SIZE, chunk ->
+                {
+                    output.writeBoolean(true);
+                    kryo.writeObject(output, new ArrayList<>(chunk));
+                    output.flush();
+                });
+            }
+            output.writeBoolean(false);
+        }
+        finally
+        {
+            output.close();
+            KryoContext.release(kryo);
+        }
     }
 
     /**
@@ -277,14 +559,6 @@ public abstract class AbstractRecoverable extends DefaultRecoverable
              **/
 
             localSnapshotId = getGlobalSnapshotId();
-            if (!clients.containsKey(clientId) || clients.get(clientId) < localSnapshotId)
-            {
-                clients.put(clientId, localSnapshotId);
-                if (localSnapshotId % 1000 == 0)
-                {
-                    shortCleanUp();
-                }
-            }
         }
         ArrayList<Object> returnList = null;
 
@@ -294,7 +568,7 @@ public abstract class AbstractRecoverable extends DefaultRecoverable
         {
             try
             {
-                returnList = new ArrayList<>(wrapper.getDataBaseAccess().readObject(identifier, localSnapshotId));
+                returnList = new ArrayList<>(readObject(identifier, localSnapshotId));
             }
             catch (final OutDatedDataException e)
             {
@@ -313,20 +587,103 @@ public abstract class AbstractRecoverable extends DefaultRecoverable
             returnList = new ArrayList<>();
         }
 
-        kryo.writeObject(output, Constants.CONTINUE);
-        kryo.writeObject(output, localSnapshotId);
         Log.getLogger().info("Got info from databaseAccess: " + returnList.size());
-        
-        if (returnList.isEmpty())
+        writePage(readCursors.open(clientId, localSnapshotId, returnList), kryo, output);
+        return output;
+    }
+
+    /**
+     * Handles the batched read message, resolves all identifiers at one snapshotId with a single database call.
+     * The response has the same format as the single node and relationship reads.
+     *
+     * @param input    get info from.
+     * @param kryo     kryo object.
+     * @param output   write info to.
+     * @param clientId the id of the reading client.
+     * @return output object to return to client.
+     */
+    Output handleMultiRead(final Input input, final Kryo kryo, final Output output, final int clientId)
+    {
+        long localSnapshotId = kryo.readObject(input, Long.class);
+        @SuppressWarnings("unchecked")
+        final ArrayList<Object> identifiers = kryo.readObject(input, ArrayList.class);
+        input.close();
+
+        identifiers.removeIf(identifier -> identifier instanceof NodeStorage && ((NodeStorage) identifier).getId().equalsIgnoreCase("Dummy"));
+        updateCounts(0, identifiers.size(), 0, 0);
+
+        Log.getLogger().info("Multi read of " + identifiers.size() + " objects with snapShot id: " + localSnapshotId);
+        if (localSnapshotId == -1)
+        {
+            localSnapshotId = getGlobalSnapshotId();
+        }
+
+        final List<Object> returnList;
+        try
+        {
+            returnList = identifiers.isEmpty() ? Collections.emptyList() : readConcurrently(identifiers, localSnapshotId);
+        }
+        catch (final OutDatedDataException e)
+        {
+            kryo.writeObject(output, Constants.ABORT);
+            kryo.writeObject(output, localSnapshotId);
+
+            Log.getLogger().info("Transaction found conflict");
+            Log.getLogger().info("OutdatedData Exception thrown: ", e);
+            kryo.writeObject(output, new ArrayList<NodeStorage>());
+            kryo.writeObject(output, new ArrayList<RelationshipStorage>());
+            return output;
+        }
+
+        writePage(readCursors.open(clientId, localSnapshotId, returnList), kryo, output);
+        return output;
+    }
+
+    /**
+     * Handles the request of the next page of a read, the page is read at the snapshot of the first one.
+     * The response has the same format as the single node and relationship reads, it aborts if the cursor has been closed.
+     *
+     * @param input    get info from.
+     * @param kryo     kryo object.
+     * @param output   write info to.
+     * @param clientId the id of the reading client.
+     * @return output object to return to client.
+     */
+    Output handlePageRead(final Input input, final Kryo kryo, final Output output, final int clientId)
+    {
+        final long token = kryo.readObject(input, Long.class);
+        input.close();
+
+        final ReadCursors.Page page = readCursors.next(clientId, token);
+        if (page == null)
         {
+            Log.getLogger().info("Cursor " + token + " of client " + clientId + " has been closed");
+            kryo.writeObject(output, Constants.ABORT);
+            kryo.writeObject(output, -1L);
             kryo.writeObject(output, new ArrayList<NodeStorage>());
             kryo.writeObject(output, new ArrayList<RelationshipStorage>());
             return output;
         }
 
+        writePage(page, kryo, output);
+        return output;
+    }
+
+    /**
+     * Write a page of a read to the response, the nodes and relationships split in two lists and the token of the next page.
+     *
+     * @param page   the page.
+     * @param kryo   kryo object.
+     * @param output write info to.
+     */
+    private static void writePage(final ReadCursors.Page page, final Kryo kryo, final Output output)
+    {
+        kryo.writeObject(output, Constants.CONTINUE);
+        kryo.writeObject(output, page.getSnapshotId());
+
         final ArrayList<NodeStorage> nodeStorage = new ArrayList<>();
         final ArrayList<RelationshipStorage> relationshipStorage = new ArrayList<>();
-        for (final Object obj : returnList)
+        for (final Object obj : page.getObjects())
         {
             if (obj instanceof NodeStorage)
             {
@@ -340,21 +697,127 @@ public abstract class AbstractRecoverable extends DefaultRecoverable
 
         kryo.writeObject(output, nodeStorage);
         kryo.writeObject(output, relationshipStorage);
+        kryo.writeObject(output, page.getToken());
+    }
 
-        return output;
+    /**
+     * Read a node or relationship, served from the read cache if it has been read at this or an earlier snapshot and not been written since.
+     *
+     * @param identifier the node or relationship storage to read.
+     * @param snapshotId the snapshotId to read at.
+     * @return the read nodes and relationships, must not be modified.
+     * @throws OutDatedDataException if the database found outdated data.
+     */
+    private List<Object> readObject(final Object identifier, final long snapshotId) throws OutDatedDataException
+    {
+        final String key = readCache.keyOf(identifier);
+        if (key == null)
+        {
+            return wrapper.getDataBaseAccess().readObject(identifier, snapshotId);
+        }
+
+        final List<Object> cached = readCache.get(key, snapshotId);
+        if (cached != null)
+        {
+            return cached;
+        }
+
+        //Only the latest state stays valid until the next write, older versions aren't cached.
+        final long invalidations = readCache.getInvalidations();
+        final boolean latest = snapshotId >= globalSnapshotId;
+        final List<Object> result = wrapper.getDataBaseAccess().readObject(identifier, snapshotId);
+        if (latest)
+        {
+            readCache.put(key, snapshotId, result, invalidations);
+        }
+        return result;
     }
 
     /**
-     * Create an empty ready response.
+     * Read the identifiers of a multi read at one snapshotId, the cached ones are served from the read cache like single reads.
      *
-     * @param message the message to write.
-     * @param kryo    the kryo instance.
-     * @return the generated output object.
+     * @param identifiers the node and relationship storages to read.
+     * @param snapshotId  the snapshotId to read at.
+     * @return the results in the order of the identifiers, must not be modified.
+     * @throws OutDatedDataException if the database found outdated data.
      */
-    Output makeEmptyReadResponse(final String message, final Kryo kryo)
+    private List<Object> readConcurrently(final List<Object> identifiers, final long snapshotId) throws OutDatedDataException
     {
-        final Output output = new Output(0, 10240);
-        kryo.writeObject(output, message);
+        //Only the latest state stays valid until the next write, older versions aren't cached.
+        final boolean latest = snapshotId >= globalSnapshotId;
+        return readCache.readAll(identifiers, snapshotId, latest, misses -> readChunks(misses, snapshotId));
+    }
+
+    /**
+     * Read identifiers from the database at one snapshotId, large reads are split into chunks which the read pool resolves concurrently.
+     *
+     * @param identifiers the node and relationship storages to read.
+     * @param snapshotId  the snapshotId to read at.
+     * @return the result of every identifier, in their order.
+     * @throws OutDatedDataException if any chunk found outdated data.
+     */
+    private List<List<Object>> readChunks(final List<Object> identifiers, final long snapshotId) throws OutDatedDataException
+    {
+        final IDatabaseAccess access = wrapper.getDataBaseAccess();
+        final int chunks = Math.min(wrapper.getReadThreads(), identifiers.size() / MIN_READ_CHUNK_SIZE);
+        if (chunks <= 1)
+        {
+            return access.readObjects(identifiers, snapshotId);
+        }
+
+        final int chunkSize = (identifiers.size() + chunks - 1) / chunks;
+        final List<Future<List<List<Object>>>> futures = new ArrayList<>(chunks);
+        for (int i = 0; i < identifiers.size(); i += chunkSize)
+        {
+            final List<Object> chunk = identifiers.subList(i, Math.min(i + chunkSize, identifiers.size()));
+            futures.add(wrapper.getReadService().submit(() -> access.readObjects(chunk, snapshotId)));
+        }
+
+        final List<List<Object>> result = new ArrayList<>(identifiers.size());
+        try
+        {
+            for (final Future<List<List<Object>>> future : futures)
+            {
+                result.addAll(future.get());
+            }
+        }
+        catch (final InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new OutDatedDataException("Interrupted while reading", e);
+        }
+        catch (final ExecutionException e)
+        {
+            if (e.getCause() instanceof OutDatedDataException)
+            {
+                throw (OutDatedDataException) e.getCause();
+            }
+            throw new IllegalStateException("Unable to read from the database", e.getCause());
+        }
+        finally
+        {
+            for (final Future<List<List<Object>>> future : futures)
+            {
+                future.cancel(true);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Create an empty read response, replaces what has been written to the output so far.
+     * It aborts the read like a read of outdated data.
+     *
+     * @param kryo   the kryo instance.
+     * @param output the output to write to.
+     * @return the output object.
+     */
+    Output makeEmptyReadResponse(final Kryo kryo, final Output output)
+    {
+        output.clear();
+        kryo.writeObject(output, Constants.READ_MESSAGE);
+        kryo.writeObject(output, Constants.ABORT);
+        kryo.writeObject(output, -1L);
         kryo.writeObject(output, new ArrayList<NodeStorage>());
         kryo.writeObject(output, new ArrayList<RelationshipStorage>());
         return output;
@@ -367,13 +830,12 @@ public abstract class AbstractRecoverable extends DefaultRecoverable
      */
     byte[] makeEmptyAbortResult()
     {
-        final Output output = new Output(0, 128);
-        final KryoPool pool = new KryoPool.Builder(getFactory()).softReferences().build();
-        final Kryo kryo = pool.borrow();
+        final Output output = KryoContext.borrowOutput();
+        final Kryo kryo = KryoContext.borrow();
         kryo.writeObject(output, Constants.ABORT);
-        final byte[] temp = output.getBuffer();
-        output.close();
-        pool.release(kryo);
+        final byte[] temp = output.toBytes();
+        KryoContext.releaseOutput(output);
+        KryoContext.release(kryo);
         return temp;
     }
 
@@ -404,10 +866,6 @@ public abstract class AbstractRecoverable extends DefaultRecoverable
              */
 
             localSnapshotId = getGlobalSnapshotId();
-            if (!clients.containsKey(clientId) || clients.get(clientId) < localSnapshotId)
-            {
-                clients.put(clientId, localSnapshotId);
-            }
         }
         ArrayList<Object> returnList = null;
 
@@ -415,7 +873,7 @@ public abstract class AbstractRecoverable extends DefaultRecoverable
         Log.getLogger().info("Get info from databaseAccess");
         try
         {
-            returnList = new ArrayList<>((wrapper.getDataBaseAccess()).readObject(identifier, localSnapshotId));
+            returnList = new ArrayList<>(readObject(identifier, localSnapshotId));
         }
         catch (final OutDatedDataException e)
         {
@@ -426,65 +884,68 @@ public abstract class AbstractRecoverable extends DefaultRecoverable
             Log.getLogger().info("OutdatedData Exception thrown: ", e);
             kryo.writeObject(output, new ArrayList<NodeStorage>());
             kryo.writeObject(output, new ArrayList<RelationshipStorage>());
-        }
-        kryo.writeObject(output, Constants.CONTINUE);
-        kryo.writeObject(output, localSnapshotId);
-
-        if (returnList == null || returnList.isEmpty())
-        {
-            kryo.writeObject(output, new ArrayList<NodeStorage>());
-            kryo.writeObject(output, new ArrayList<RelationshipStorage>());
             return output;
         }
         Log.getLogger().info("Got info from databaseAccess: " + returnList.size());
-
-        final ArrayList<NodeStorage> nodeStorage = new ArrayList<>();
-        final ArrayList<RelationshipStorage> relationshipStorage = new ArrayList<>();
-        for (final Object obj : returnList)
-        {
-            if (obj instanceof NodeStorage)
-            {
-                nodeStorage.add((NodeStorage) obj);
-            }
-            else if (obj instanceof RelationshipStorage)
-            {
-                relationshipStorage.add((RelationshipStorage) obj);
-            }
-        }
-
-        kryo.writeObject(output, nodeStorage);
-        kryo.writeObject(output, relationshipStorage);
-
+        writePage(readCursors.open(clientId, localSnapshotId, returnList), kryo, output);
         return output;
     }
 
     /**
      * Execute the commit on the replica.
-     *  @param localWriteSet the write set to execute.
-     * @param keyLoader     the key loader.
-     * @param idClient      the id of the server.
+     * @param localWriteSet the write set to execute.
      * @param consensusId the consensus ID.
+     * @return true if it has been applied, else nothing has been recorded and the snapshotId is unchanged.
      */
-    void executeCommit(final List<IOperation> localWriteSet, final RSAKeyLoader keyLoader, final int idClient, final long clientSnapshot, final int consensusId)
+    boolean executeCommit(final List<IOperation> localWriteSet, final int consensusId)
     {
-        if (!clients.containsKey(idClient) || clients.get(idClient) < clientSnapshot)
-        {
-            clients.put(idClient, clientSnapshot);
-        }
+        return executeCommits(Collections.singletonList(localWriteSet), consensusId)[0];
+    }
 
-        // First sign, then execute:
+    /**
+     * Execute the writeSets of one or more transactions on the replica under a single snapshotId.
+     * Only the applied writeSets are recorded, if none could be applied the snapshotId isn't used.
+     * @param writeSets the write sets to execute.
+     * @param consensusId the consensus ID.
+     * @return for every writeSet if it has been applied.
+     */
+    boolean[] executeCommits(final List<List<IOperation>> writeSets, final int consensusId)
+    {
         final long currentSnapshot = ++globalSnapshotId;
-        //Execute the transaction.
-        for (final IOperation op : localWriteSet)
+        //Execute the transactions, all operations in one database transaction if possible.
+        final boolean[] applied = wrapper.getDataBaseAccess().applyWriteSets(writeSets, currentSnapshot);
+        final List<IOperation> localWriteSet = new ArrayList<>();
+        int transactions = 0;
+        for (int i = 0; i < applied.length; i++)
         {
-            op.apply(wrapper.getDataBaseAccess(), globalSnapshotId, keyLoader, idClient);
-            updateCounts(1, 0, 0, 0);
+            if (applied[i])
+            {
+                localWriteSet.addAll(writeSets.get(i));
+                transactions++;
+            }
+            else
+            {
+                Log.getLogger().error("Failed applying a writeSet of snapshot: " + currentSnapshot + " with " + writeSets.get(i).size() + " writes");
+            }
         }
-        this.putIntoWriteSet(currentSnapshot, new ArrayList<>(localWriteSet));
-
 
         wrapper.setLastTransactionId(consensusId);
-        updateCounts(0, 0, 1, 0);
+        if (transactions < applied.length)
+        {
+            updateCounts(0, 0, 0, applied.length - transactions);
+        }
+        if (transactions == 0)
+        {
+            globalSnapshotId = currentSnapshot - 1;
+            return applied;
+        }
+
+        versionTable.record(currentSnapshot, localWriteSet);
+        readCache.invalidate(localWriteSet);
+        updateCounts(localWriteSet.size(), 0, 0, 0);
+        this.putIntoWriteSet(currentSnapshot, localWriteSet);
+        updateCounts(0, 0, transactions, 0);
+        return applied;
     }
 
     /**
@@ -495,6 +956,7 @@ public abstract class AbstractRecoverable extends DefaultRecoverable
      */
     public void putIntoWriteSet(final long currentSnapshot, final List<IOperation> localWriteSet)
     {
+        versionIndex.record(currentSnapshot, localWriteSet);
         latestWritesSet.put(currentSnapshot, localWriteSet);
     }
 
@@ -539,21 +1001,51 @@ public abstract class AbstractRecoverable extends DefaultRecoverable
     }
 
     /**
-     * Shuts down the Server.
+     * Get the index of the last committed snapshotId of every written key.
+     *
+     * @return the version index.
      */
-    public void terminate()
+    public KeyVersionIndex getVersionIndex()
     {
-        this.replica.kill();
+        return versionIndex;
     }
 
     /**
-     * Get the kryoFactory of this recoverable.
+     * Get the committed version of the objects in the database.
      *
-     * @return the factory.
+     * @return the version table.
      */
-    public KryoFactory getFactory()
+    public CommittedVersionTable getVersionTable()
     {
-        return factory;
+        return versionTable;
+    }
+
+    /**
+     * Get the cache of the node and relationship reads.
+     *
+     * @return the read cache.
+     */
+    public ReadCache getReadCache()
+    {
+        return readCache;
+    }
+
+    /**
+     * Get the open cursors of the paged reads.
+     *
+     * @return the cursors.
+     */
+    public ReadCursors getReadCursors()
+    {
+        return readCursors;
+    }
+
+    /**
+     * Shuts down the Server.
+     */
+    public void terminate()
+    {
+        this.replica.kill();
     }
 
     /**
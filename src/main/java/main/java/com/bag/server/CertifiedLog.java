@@ -0,0 +1,91 @@
+package main.java.com.bag.server;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Log of the signed slave updates a global replica distributed, slaves which missed an update fetch it from here.
+ * Only the latest updates are retained, start with -Dbag.certified.log.size=x to size it, it defaults to 4096 snapshots.
+ */
+public class CertifiedLog
+{
+    /**
+     * Name of the system property which sizes the log.
+     */
+    private static final String SIZE_PROPERTY = "bag.certified.log.size";
+
+    /**
+     * Maximum amount of updates returned for one range.
+     */
+    private static final int MAX_RANGE_UPDATES = 256;
+
+    /**
+     * Maximum amount of bytes returned for one range, a range is at least one update.
+     */
+    private static final int MAX_RANGE_BYTES = 1 << 20;
+
+    /**
+     * The serialized slave updates by their snapshotId.
+     */
+    private final ConcurrentSkipListMap<Long, byte[]> updates = new ConcurrentSkipListMap<>();
+
+    /**
+     * The amount of retained snapshots.
+     */
+    private final int capacity = Math.max(1, Integer.getInteger(SIZE_PROPERTY, 4096));
+
+    /**
+     * Retain a signed slave update, drops the updates which are more than the capacity snapshots older.
+     *
+     * @param snapShotId the snapshotId of the update.
+     * @param update     the serialized update message.
+     */
+    public void append(final long snapShotId, @NotNull final byte[] update)
+    {
+        updates.put(snapShotId, update);
+        updates.headMap(snapShotId - capacity, true).clear();
+    }
+
+    /**
+     * Get the retained updates of a range of snapshots in order, stops at the size limits.
+     *
+     * @param from the first snapshotId.
+     * @param to   the last snapshotId.
+     * @return the serialized updates, may have gaps if some were never distributed by this replica.
+     */
+    public List<byte[]> range(final long from, final long to)
+    {
+        final List<byte[]> result = new ArrayList<>();
+        if (from > to)
+        {
+            return result;
+        }
+
+        int bytes = 0;
+        for (final Map.Entry<Long, byte[]> entry : updates.subMap(from, true, to, true).entrySet())
+        {
+            if (result.size() >= MAX_RANGE_UPDATES || (!result.isEmpty() && bytes + entry.getValue().length > MAX_RANGE_BYTES))
+            {
+                break;
+            }
+            bytes += entry.getValue().length;
+            result.add(entry.getValue());
+        }
+        return result;
+    }
+
+    /**
+     * Get the oldest retained snapshotId.
+     *
+     * @return the snapshotId or -1 if the log is empty.
+     */
+    public long getFirst()
+    {
+        final Map.Entry<Long, byte[]> first = updates.firstEntry();
+        return first == null ? -1 : first.getKey();
+    }
+}
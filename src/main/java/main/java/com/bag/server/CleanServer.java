@@ -4,8 +4,6 @@ import bftsmart.reconfiguration.util.RSAKeyLoader;
 import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
-import com.esotericsoftware.kryo.pool.KryoFactory;
-import com.esotericsoftware.kryo.pool.KryoPool;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.*;
 import io.netty.channel.nio.NioEventLoopGroup;
@@ -18,14 +16,13 @@ import io.netty.util.concurrent.DefaultThreadFactory;
 import main.java.com.bag.exceptions.OutDatedDataException;
 import main.java.com.bag.instrumentations.ServerInstrumentation;
 import main.java.com.bag.main.DatabaseLoader;
-import main.java.com.bag.operations.CreateOperation;
 import main.java.com.bag.operations.DeleteOperation;
 import main.java.com.bag.operations.IOperation;
-import main.java.com.bag.operations.UpdateOperation;
 import main.java.com.bag.database.interfaces.IDatabaseAccess;
 import main.java.com.bag.server.nettyhandlers.BAGMessage;
 import main.java.com.bag.server.nettyhandlers.BAGMessageDecoder;
 import main.java.com.bag.server.nettyhandlers.BAGMessageEncoder;
+import main.java.com.bag.util.KryoContext;
 import main.java.com.bag.util.Log;
 import main.java.com.bag.util.storage.NodeStorage;
 import main.java.com.bag.util.storage.RelationshipStorage;
@@ -50,20 +47,6 @@ public class CleanServer extends SimpleChannelInboundHandler<BAGMessage>
      */
     private static final String GLOBAL_CONFIG_LOCATION = "global/config";
 
-    /**
-     * Create a threadsafe version of kryo.
-     */
-    private static final KryoFactory factory = () ->
-    {
-        Kryo kryo = new Kryo();
-        kryo.register(NodeStorage.class, 100);
-        kryo.register(RelationshipStorage.class, 200);
-        kryo.register(CreateOperation.class, 250);
-        kryo.register(DeleteOperation.class, 300);
-        kryo.register(UpdateOperation.class, 350);
-        return kryo;
-    };
-
     /**
      * The database access for this class.
      */
@@ -129,8 +112,7 @@ public class CleanServer extends SimpleChannelInboundHandler<BAGMessage>
     @Override
     public void channelRead0(final ChannelHandlerContext ctx, final BAGMessage msg)
     {
-        final KryoPool pool = new KryoPool.Builder(factory).softReferences().build();
-        final Kryo kryo = pool.borrow();
+        final Kryo kryo = KryoContext.borrow();
         final Input input = new Input(msg.buffer);
         int writesPerformed = 0;
         final List<Object> readObjects = new ArrayList<>();
@@ -169,15 +151,14 @@ public class CleanServer extends SimpleChannelInboundHandler<BAGMessage>
             instrumentation.updateCounts(0, 0, 1, 0);
         }
 
-        try (final Output output = new Output(0, 1024 * 100))
-        {
-            kryo.writeObject(output, readObjects);
-            final BAGMessage message = new BAGMessage();
-            message.buffer = output.getBuffer();
-            message.size = message.buffer.length;
-            pool.release(kryo);
-            ctx.writeAndFlush(message);
-        }
+        final Output output = KryoContext.borrowOutput();
+        kryo.writeObject(output, readObjects);
+        final BAGMessage message = new BAGMessage();
+        message.buffer = output.toBytes();
+        message.size = message.buffer.length;
+        KryoContext.releaseOutput(output);
+        KryoContext.release(kryo);
+        ctx.writeAndFlush(message);
     }
 
     /**
@@ -206,7 +187,7 @@ public class CleanServer extends SimpleChannelInboundHandler<BAGMessage>
 
         final ServerInstrumentation instrumentation = new ServerInstrumentation(id);
 
-        final IDatabaseAccess access = DatabaseLoader.instantiateDBAccess(tempInstance.toLowerCase(), id, false, null);
+        final IDatabaseAccess access = DatabaseLoader.instantiateDBAccess(tempInstance.toLowerCase(), id, false);
         if (args.length >= 4)
         {
             final boolean useLogging = Boolean.parseBoolean(args[3]);
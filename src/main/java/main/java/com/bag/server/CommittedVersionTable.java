@@ -0,0 +1,196 @@
+package main.java.com.bag.server;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import main.java.com.bag.operations.CreateOperation;
+import main.java.com.bag.operations.DeleteOperation;
+import main.java.com.bag.operations.IOperation;
+import main.java.com.bag.operations.UpdateOperation;
+import main.java.com.bag.util.storage.NodeStorage;
+import main.java.com.bag.util.storage.ReadKey;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Table of the committed version of the nodes and relationships in the database, used to validate the readSet without reading the database.
+ * The apply path records the snapshotId of every written key, reads which had to be validated by the database are added as well.
+ * An entry is an upper bound of the snapshotId the object has been written at, deleted objects have no entry.
+ * On a miss or if the bound is newer than the read the database decides, therefore entries may be dropped at any time.
+ * The entries written before the low watermark are dropped with every compaction and the table is bounded,
+ * start with -Dbag.version.table.size=x to set the maximum amount of entries, it defaults to 100000.
+ */
+public class CommittedVersionTable
+{
+    /**
+     * Bound of objects which exist but whose version isn't known.
+     */
+    private static final long UNKNOWN_VERSION = Long.MAX_VALUE;
+
+    /**
+     * Name of the system property of the maximum amount of entries.
+     */
+    private static final String SIZE_PROPERTY = "bag.version.table.size";
+
+    /**
+     * Map of the key to the upper bound of the snapshotId it has been written at.
+     */
+    private final ConcurrentMap<String, Long> versions = Caffeine.newBuilder()
+            .maximumSize(Math.max(1, Long.getLong(SIZE_PROPERTY, 100000L)))
+            .<String, Long>build()
+            .asMap();
+
+    /**
+     * Amount of recorded writeSets, a read validated by the database is only added if no write happened in between.
+     */
+    private long writes = 0;
+
+    /**
+     * Register the writeSet of a transaction which has been applied to the database.
+     *
+     * @param snapshotId    the snapshotId the writeSet has been applied at.
+     * @param localWriteSet the applied operations.
+     */
+    public synchronized void record(final long snapshotId, final List<IOperation> localWriteSet)
+    {
+        writes++;
+        for (final IOperation operation : localWriteSet)
+        {
+            if (operation instanceof CreateOperation)
+            {
+                put(snapshotId, ((CreateOperation) operation).getObject());
+            }
+            else if (operation instanceof DeleteOperation)
+            {
+                remove(((DeleteOperation) operation).getObject());
+            }
+            else if (operation instanceof UpdateOperation)
+            {
+                final UpdateOperation<?> update = (UpdateOperation<?>) operation;
+                final String key = ReadKey.keyOf(update.getKey());
+                final String newKey = ReadKey.keyOf(update.getValue());
+                if (newKey != null && !newKey.equals(key))
+                {
+                    //The idx changed, the object moved to the new key.
+                    remove(update.getKey());
+                    versions.put(newKey, snapshotId);
+                }
+                else
+                {
+                    put(snapshotId, update.getKey());
+                }
+            }
+            else
+            {
+                versions.clear();
+            }
+        }
+    }
+
+    /**
+     * Register a single created or updated storage.
+     * Storages which can't be keyed may have matched any object, then the whole table is dropped.
+     *
+     * @param snapshotId the snapshotId.
+     * @param storage    the written storage.
+     */
+    private void put(final long snapshotId, final Object storage)
+    {
+        final String key = ReadKey.keyOf(storage);
+        if (key == null)
+        {
+            versions.clear();
+            return;
+        }
+        versions.put(key, snapshotId);
+    }
+
+    /**
+     * Remove the entry of a deleted storage.
+     * Storages which can't be keyed may have matched any object, then the whole table is dropped.
+     *
+     * @param storage the deleted storage.
+     */
+    private void remove(final Object storage)
+    {
+        final String key = ReadKey.keyOf(storage);
+        if (key == null)
+        {
+            versions.clear();
+            return;
+        }
+        versions.remove(key);
+        if (storage instanceof NodeStorage)
+        {
+            //The relationships of the node have been deleted with it.
+            versions.keySet().removeIf(entry -> ReadKey.isEndpointOf(key, entry));
+        }
+    }
+
+    /**
+     * Checks if the table confirms a read, the object exists and hasn't been written after the version it has been read at.
+     * Reads without version only require the object to exist.
+     *
+     * @param readKey the key of the read.
+     * @return true if confirmed, false if the database has to decide.
+     */
+    public boolean confirms(final ReadKey readKey)
+    {
+        final Long committed = versions.get(readKey.getKey());
+        return committed != null && (readKey.getVersion() < 0 || committed <= readKey.getVersion());
+    }
+
+    /**
+     * Get the amount of recorded writeSets, to be passed to {@link #add(ReadKey, long)} after validating a read with the database.
+     *
+     * @return the counter.
+     */
+    public synchronized long getWrites()
+    {
+        return writes;
+    }
+
+    /**
+     * Add a read which has been validated by the database.
+     *
+     * @param readKey the key of the read.
+     * @param writes  the amount of recorded writeSets before the database has been read.
+     */
+    public synchronized void add(final ReadKey readKey, final long writes)
+    {
+        if (this.writes != writes)
+        {
+            return;
+        }
+        versions.putIfAbsent(readKey.getKey(), readKey.getVersion() < 0 ? UNKNOWN_VERSION : readKey.getVersion());
+    }
+
+    /**
+     * Drop the entries of the objects which haven't been written since the low watermark, reads of them are validated by the database again.
+     * Entries of reads without version are kept.
+     *
+     * @param smallestSnapshot the low watermark.
+     */
+    public synchronized void prune(final long smallestSnapshot)
+    {
+        versions.values().removeIf(version -> version < smallestSnapshot);
+    }
+
+    /**
+     * Remove all entries, used when the database has been replaced or a write couldn't be applied.
+     */
+    public synchronized void clear()
+    {
+        writes++;
+        versions.clear();
+    }
+
+    /**
+     * Get the number of keys in the table.
+     *
+     * @return the size.
+     */
+    public int size()
+    {
+        return versions.size();
+    }
+}
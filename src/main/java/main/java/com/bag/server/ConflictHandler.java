@@ -1,16 +1,15 @@
 package main.java.com.bag.server;
 
+import main.java.com.bag.operations.CreateOperation;
 import main.java.com.bag.operations.DeleteOperation;
 import main.java.com.bag.operations.IOperation;
 import main.java.com.bag.operations.UpdateOperation;
 import main.java.com.bag.database.interfaces.IDatabaseAccess;
 import main.java.com.bag.util.Log;
-import main.java.com.bag.util.storage.NodeStorage;
-import main.java.com.bag.util.storage.RelationshipStorage;
+import main.java.com.bag.util.storage.ReadKey;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentSkipListMap;
-import java.util.stream.Collectors;
 
 /**
  * Receives read and write sets and checks them for conflicts
@@ -30,177 +29,320 @@ public class ConflictHandler
     /**
      * Checks for conflicts between read and writeSets.
      *
+     * @param versionIndex        the index of the last committed snapshotId of each key.
+     * @param versionTable        the committed versions of the objects in the database.
      * @param globalWriteSet      the node and relationship global writeSet.
      * @param latestWriteSet      the AbstractRecoverable.KEEP_LAST_X writes.
      * @param localWriteSet       the node and relationship write set of the transaction.
-     * @param readSetNode         the node readSet.
-     * @param readSetRelationship the relationship readSet
+     * @param readSetNode         the node readSet, keys of the read nodes or node storages which can't be keyed.
+     * @param readSetRelationship the relationship readSet, keys of the read relationships or relationship storages which can't be keyed.
      * @param snapshotId          the snapShotId of the transaction.
      * @param multiVersion        if multiVersion mode.
      * @return true if no conflict has been found.
      */
     protected static boolean checkForConflict(
+            final KeyVersionIndex versionIndex,
+            final CommittedVersionTable versionTable,
             final ConcurrentSkipListMap<Long, List<IOperation>> globalWriteSet,
             final Map<Long, List<IOperation>> latestWriteSet,
             final List<IOperation> localWriteSet,
-            final List<NodeStorage> readSetNode,
-            final List<RelationshipStorage> readSetRelationship,
+            final List<?> readSetNode,
+            final List<?> readSetRelationship,
             final long snapshotId,
             final IDatabaseAccess access,
             final boolean multiVersion)
     {
-        //Commented out during first experiments because implementation is buggy
-        return isUpToDate(globalWriteSet, latestWriteSet, localWriteSet, readSetNode, readSetRelationship, snapshotId, multiVersion) && isCorrect(readSetNode, readSetRelationship, access);
+        return isUpToDate(versionIndex, globalWriteSet, latestWriteSet, localWriteSet, readSetNode, readSetRelationship, snapshotId, multiVersion)
+                && isCorrect(versionTable, readSetNode, readSetRelationship, access);
+    }
+
+    /**
+     * Checks a transaction against the transactions which have been accepted earlier in the same batch but are not applied yet.
+     *
+     * @param batchIndex          the version index of the accepted writes of the batch.
+     * @param batchWriteSet       the accepted writes of the batch, keyed by the snapshotId of the batch.
+     * @param localWriteSet       the node and relationship write set of the transaction.
+     * @param readSetNode         the node readSet, keys of the read nodes or node storages which can't be keyed.
+     * @param readSetRelationship the relationship readSet, keys of the read relationships or relationship storages which can't be keyed.
+     * @param committedSnapshotId the last snapshotId which has been applied.
+     * @param multiVersion        if multiVersion mode.
+     * @return true if no conflict has been found.
+     */
+    protected static boolean checkForBatchConflict(
+            final KeyVersionIndex batchIndex,
+            final Map<Long, List<IOperation>> batchWriteSet,
+            final List<IOperation> localWriteSet,
+            final List<?> readSetNode,
+            final List<?> readSetRelationship,
+            final long committedSnapshotId,
+            final boolean multiVersion)
+    {
+        return isUpToDate(batchIndex, new ConcurrentSkipListMap<>(), batchWriteSet, localWriteSet, readSetNode, readSetRelationship, committedSnapshotId, multiVersion);
     }
 
     /**
      * Checks if no changes have been made since the start of the transaction.
+     * Every read is looked up in the version index, the writeSets are only scanned for reads or writes which can't be keyed.
      *
+     * @param versionIndex        the index of the last committed snapshotId of each key.
      * @param writeSet            the node and relationship writeSet.
      * @param latestWriteSet      the node and relationship write set of the transaction.
      * @param localWriteSet       the node and relationship writeSet of the transaction.
-     * @param readSetNode         the node readSet.
-     * @param readSetRelationship the relationship readSet
+     * @param readSetNode         the node readSet, keys of the read nodes or node storages which can't be keyed.
+     * @param readSetRelationship the relationship readSet, keys of the read relationships or relationship storages which can't be keyed.
      * @param snapshotId          the snapShotId of the transaction.
      * @param multiVersion        if multiVersion mode.
      * @return true if data is up to date.
      */
     private static boolean isUpToDate(
+            final KeyVersionIndex versionIndex,
             final ConcurrentSkipListMap<Long, List<IOperation>> writeSet, final Map<Long, List<IOperation>> latestWriteSet, final List<IOperation> localWriteSet,
-            final List<NodeStorage> readSetNode,
-            final List<RelationshipStorage> readSetRelationship, final long snapshotId, final boolean multiVersion)
+            final List<?> readSetNode,
+            final List<?> readSetRelationship, final long snapshotId, final boolean multiVersion)
     {
+        if (versionIndex.isPrunedAfter(snapshotId))
+        {
+            Log.getLogger().info("Aborting because the writes since snapshot " + snapshotId + " have been compacted");
+            return false;
+        }
 
-        List<IOperation> pastWrites = new ArrayList<>();
-        boolean commit = true;
-        if (!readSetNode.isEmpty())
+        final List<Object> clashTargets = new ArrayList<>();
+        // If multiVersion then skip the operation clashes, just make new version.
+        if (!multiVersion)
         {
-            if (!writeSet.isEmpty() && snapshotId <= writeSet.lastKey())
+            for (final IOperation operation : localWriteSet)
             {
-
-                pastWrites = writeSet.entrySet()
-                        .stream()
-                        .filter(id -> id.getKey() > snapshotId)
-                        .filter(entry -> entry.getKey() > snapshotId)
-                        .map(Map.Entry::getValue)
-                        .flatMap(List::stream)
-                        .collect(Collectors.toList());
+                if (operation instanceof DeleteOperation)
+                {
+                    clashTargets.add(((DeleteOperation) operation).getObject());
+                }
+                else if (operation instanceof UpdateOperation)
+                {
+                    clashTargets.add(((UpdateOperation) operation).getKey());
+                }
             }
+        }
 
-            pastWrites.addAll(latestWriteSet.entrySet()
-                    .stream()
-                    .filter(id -> id.getKey() > snapshotId)
-                    .filter(entry -> entry.getKey() > snapshotId)
-                    .map(Map.Entry::getValue)
-                    .flatMap(List::stream)
-                    .collect(Collectors.toList()));
+        final boolean scanAll = versionIndex.hasUnkeyedWritesSince(snapshotId);
+        final boolean scanRequired = scanAll
+                || !readSetNode.stream().allMatch(KeyVersionIndex::isKeyed)
+                || !readSetRelationship.stream().allMatch(KeyVersionIndex::isKeyed)
+                || !clashTargets.stream().allMatch(KeyVersionIndex::isKeyed);
 
-            final List<IOperation> copy = new ArrayList<>(pastWrites);
-            commit = readSetNode.isEmpty() || !copy.removeAll(readSetNode);
-        }
+        final List<IOperation> pastWrites = scanRequired ? getPastWrites(writeSet, latestWriteSet, snapshotId) : Collections.emptyList();
 
-        if (!commit)
+        for (final Object node : readSetNode)
         {
-            if (!localWriteSet.isEmpty())
+            if (hasConflict(versionIndex, node, snapshotId, scanAll, pastWrites))
             {
-                Log.getLogger().info("Aborting because of writeSet containing node read");
+                if (!localWriteSet.isEmpty())
+                {
+                    Log.getLogger().info("Aborting because of writeSet containing node read");
+                }
+                return false;
             }
-            return false;
         }
 
-        if (!readSetRelationship.isEmpty())
+        for (final Object relationship : readSetRelationship)
         {
-            if (pastWrites.isEmpty())
+            if (hasConflict(versionIndex, relationship, snapshotId, scanAll, pastWrites))
             {
-                if (!writeSet.isEmpty() && snapshotId <= writeSet.lastKey())
+                if (!localWriteSet.isEmpty())
                 {
-                    pastWrites = writeSet.entrySet()
-                            .stream()
-                            .filter(id -> id.getKey() > snapshotId)
-                            .filter(entry -> entry.getKey() > snapshotId)
-                            .map(Map.Entry::getValue)
-                            .flatMap(List::stream)
-                            .collect(Collectors.toList());
+                    Log.getLogger().info("Aborting because of writeSet containing rs read");
                 }
-                pastWrites.addAll(latestWriteSet.entrySet()
-                        .stream()
-                        .filter(id -> id.getKey() > snapshotId)
-                        .filter(entry -> entry.getKey() > snapshotId)
-                        .map(Map.Entry::getValue)
-                        .flatMap(List::stream)
-                        .collect(Collectors.toList()));
+                return false;
             }
-            final List<IOperation> copy = new ArrayList<>(pastWrites);
-            commit = readSetRelationship.isEmpty() || !copy.removeAll(readSetRelationship);
         }
 
-        if (!commit)
+        for (final Object target : clashTargets)
         {
-            if (!localWriteSet.isEmpty())
+            if (hasConflict(versionIndex, target, snapshotId, scanAll, pastWrites))
             {
-                Log.getLogger().info("Aborting because of writeSet containing rs read");
+                Log.getLogger().info("Aborting because of writeSet containing clashing operation");
+                return false;
             }
-            return false;
         }
 
-        // If multiVersion then skip the operation clashes, just make new version.
-        if (multiVersion)
+        return true;
+    }
+
+    /**
+     * Checks if a storage has been written by a transaction committed after the snapshot.
+     *
+     * @param versionIndex the index of the last committed snapshotId of each key.
+     * @param storage      the node or relationship storage.
+     * @param snapshotId   the snapShotId of the transaction.
+     * @param scanAll      if unkeyed writes have been committed since the snapshot.
+     * @param pastWrites   the writes since the snapshot, only filled if a scan is required.
+     * @return true if there is a conflict.
+     */
+    private static boolean hasConflict(
+            final KeyVersionIndex versionIndex,
+            final Object storage,
+            final long snapshotId,
+            final boolean scanAll,
+            final List<IOperation> pastWrites)
+    {
+        if (storage instanceof ReadKey)
         {
-            return true;
+            return hasConflict(versionIndex, (ReadKey) storage, snapshotId, scanAll, pastWrites);
         }
 
-        final List<IOperation> tempList = localWriteSet.stream().filter(operation -> operation instanceof DeleteOperation || operation instanceof UpdateOperation)
-                .collect(Collectors.toList());
+        if (versionIndex.isModifiedSince(storage, snapshotId))
+        {
+            return true;
+        }
 
-        if (!tempList.isEmpty())
+        if (scanAll || !KeyVersionIndex.isKeyed(storage))
         {
-            if (pastWrites.isEmpty())
+            for (final IOperation operation : pastWrites)
             {
-                if (!writeSet.isEmpty() && snapshotId <= writeSet.lastKey())
+                if (operation.equals(storage))
                 {
-                    pastWrites = writeSet.entrySet()
-                            .stream()
-                            .filter(id -> id.getKey() > snapshotId)
-                            .filter(entry -> entry.getKey() > snapshotId)
-                            .map(Map.Entry::getValue)
-                            .flatMap(List::stream)
-                            .collect(Collectors.toList());
+                    return true;
                 }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks if a key of the readSet has been written by a transaction committed after the version it has been read at.
+     * The key carries no properties, writes which can't be keyed are matched by their label or type only.
+     *
+     * @param versionIndex the index of the last committed snapshotId of each key.
+     * @param readKey      the key of the read node or relationship.
+     * @param snapshotId   the snapShotId of the transaction.
+     * @param scanAll      if unkeyed writes have been committed since the snapshot.
+     * @param pastWrites   the writes since the snapshot, only filled if a scan is required.
+     * @return true if there is a conflict.
+     */
+    private static boolean hasConflict(
+            final KeyVersionIndex versionIndex,
+            final ReadKey readKey,
+            final long snapshotId,
+            final boolean scanAll,
+            final List<IOperation> pastWrites)
+    {
+        if (versionIndex.isModifiedSince(readKey, Math.min(snapshotId, readKey.getVersion())))
+        {
+            return true;
+        }
 
-                pastWrites.addAll(latestWriteSet.entrySet()
-                        .stream()
-                        .filter(id -> id.getKey() > snapshotId)
-                        .filter(entry -> entry.getKey() > snapshotId)
-                        .map(Map.Entry::getValue)
-                        .flatMap(List::stream)
-                        .collect(Collectors.toList()));
+        if (scanAll)
+        {
+            for (final IOperation operation : pastWrites)
+            {
+                final Object target = getTarget(operation);
+                if (!KeyVersionIndex.isKeyed(target) && readKey.mayMatch(target))
+                {
+                    return true;
+                }
             }
-            final List<IOperation> copy = new ArrayList<>(pastWrites);
+        }
+        return false;
+    }
 
-            commit = tempList.isEmpty() || !copy.removeAll(tempList);
+    /**
+     * Get the storage an operation writes.
+     *
+     * @param operation the operation.
+     * @return the created, deleted or updated storage, null for unknown operations.
+     */
+    private static Object getTarget(final IOperation operation)
+    {
+        if (operation instanceof CreateOperation)
+        {
+            return ((CreateOperation) operation).getObject();
         }
-        if (!commit && !localWriteSet.isEmpty())
+        else if (operation instanceof DeleteOperation)
         {
-            Log.getLogger().info("Aborting because of writeSet containing clashing operation");
+            return ((DeleteOperation) operation).getObject();
         }
+        else if (operation instanceof UpdateOperation)
+        {
+            return ((UpdateOperation) operation).getKey();
+        }
+        return null;
+    }
 
-        return commit;
+    /**
+     * Collect all writes which have been committed after a certain snapshot.
+     *
+     * @param writeSet       the node and relationship writeSet.
+     * @param latestWriteSet the AbstractRecoverable.KEEP_LAST_X writes.
+     * @param snapshotId     the snapShotId of the transaction.
+     * @return the list of operations.
+     */
+    private static List<IOperation> getPastWrites(
+            final ConcurrentSkipListMap<Long, List<IOperation>> writeSet,
+            final Map<Long, List<IOperation>> latestWriteSet,
+            final long snapshotId)
+    {
+        final List<IOperation> pastWrites = new ArrayList<>();
+        if (!writeSet.isEmpty() && snapshotId <= writeSet.lastKey())
+        {
+            for (final List<IOperation> operations : writeSet.tailMap(snapshotId, false).values())
+            {
+                pastWrites.addAll(operations);
+            }
+        }
+
+        for (final Map.Entry<Long, List<IOperation>> entry : latestWriteSet.entrySet())
+        {
+            if (entry.getKey() > snapshotId)
+            {
+                pastWrites.addAll(entry.getValue());
+            }
+        }
+        return pastWrites;
     }
 
     /**
      * Checks if readData matches with data in database.
+     * Keys are validated by the committed version table, the database is only read on a miss and for storages which couldn't be keyed.
      *
+     * @param versionTable        the committed versions of the objects in the database.
      * @param readSetNode         the node readSet.
      * @param readSetRelationship the relationship readSet
      * @return true if correct.
      */
-    private static boolean isCorrect(final List<NodeStorage> readSetNode, final List<RelationshipStorage> readSetRelationship, final IDatabaseAccess access)
+    private static boolean isCorrect(final CommittedVersionTable versionTable, final List<?> readSetNode, final List<?> readSetRelationship, final IDatabaseAccess access)
     {
-        final boolean eq = access.equalHash(readSetNode) && access.equalHash(readSetRelationship);
+        final boolean eq = isCurrent(versionTable, readSetNode, access)
+                && isCurrent(versionTable, readSetRelationship, access)
+                && access.equalHashNode(readSetNode)
+                && access.equalHashRelationship(readSetRelationship);
         if (!eq)
         {
             Log.getLogger().info("Aborting because of incorrect read");
         }
         return eq;
     }
+
+    /**
+     * Checks if the keys of a readSet match the committed versions.
+     *
+     * @param versionTable the committed versions of the objects in the database.
+     * @param readSet      the readSet.
+     * @param access       the database, read if the table can't confirm a key.
+     * @return true if all keys are current.
+     */
+    private static boolean isCurrent(final CommittedVersionTable versionTable, final List<?> readSet, final IDatabaseAccess access)
+    {
+        for (final Object storage : readSet)
+        {
+            if (storage instanceof ReadKey && !versionTable.confirms((ReadKey) storage))
+            {
+                final long writes = versionTable.getWrites();
+                if (!access.isReadCurrent((ReadKey) storage))
+                {
+                    return false;
+                }
+                versionTable.add((ReadKey) storage, writes);
+            }
+        }
+        return true;
+    }
 }
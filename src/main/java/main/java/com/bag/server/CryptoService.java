@@ -0,0 +1,180 @@
+package main.java.com.bag.server;
+
+import bftsmart.reconfiguration.util.RSAKeyLoader;
+import bftsmart.tom.util.TOMUtil;
+import main.java.com.bag.util.Log;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Signs and verifies the messages exchanged between the replicas.
+ * The keys are loaded from the config once and cached, signing and verification run on a pool of worker threads and return futures,
+ * this way they overlap with the execution of the transactions instead of running on the ordered path.
+ * Start with -Dbag.crypto.threads=x to size the pool, it defaults to the amount of processors.
+ * Start with -Dbag.authenticator=mac to authenticate with HMAC vectors instead of RSA signatures, see {@link MacAuthenticator},
+ * this has to be set equally on all servers and only fits deployments which don't need proofs a third party can verify.
+ */
+public class CryptoService
+{
+    /**
+     * Name of the system property which sizes the pool.
+     */
+    private static final String THREADS_PROPERTY = "bag.crypto.threads";
+
+    /**
+     * Name of the system property which selects the authenticator.
+     */
+    private static final String AUTHENTICATOR_PROPERTY = "bag.authenticator";
+
+    /**
+     * Value of the system property which selects the HMAC vectors.
+     */
+    private static final String MAC_AUTHENTICATOR = "mac";
+
+    /**
+     * The HMAC authenticator, null if RSA signatures are used.
+     */
+    @Nullable
+    private final MacAuthenticator macAuthenticator;
+
+    /**
+     * The config location of the keys.
+     */
+    private final String configLocation;
+
+    /**
+     * The cached public keys by the id of their replica.
+     */
+    private final ConcurrentHashMap<Integer, PublicKey> publicKeys = new ConcurrentHashMap<>();
+
+    /**
+     * The cached private keys by the id of their replica.
+     */
+    private final ConcurrentHashMap<Integer, PrivateKey> privateKeys = new ConcurrentHashMap<>();
+
+    /**
+     * The pool signing and verifying.
+     */
+    private final ExecutorService pool;
+
+    /**
+     * Creates the service.
+     *
+     * @param configLocation the config location of the keys.
+     * @param localClusterId the id of the local cluster of this server.
+     * @param localSlaveId   the id of this server in its local cluster, -1 if none.
+     */
+    public CryptoService(@NotNull final String configLocation, final int localClusterId, final int localSlaveId)
+    {
+        this.configLocation = configLocation;
+        this.macAuthenticator = MAC_AUTHENTICATOR.equalsIgnoreCase(System.getProperty(AUTHENTICATOR_PROPERTY))
+                ? new MacAuthenticator(configLocation, localClusterId, localSlaveId) : null;
+        final int threads = Integer.getInteger(THREADS_PROPERTY, Runtime.getRuntime().availableProcessors());
+        final AtomicInteger counter = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(Math.max(1, threads), runnable ->
+        {
+            final Thread thread = new Thread(runnable, "crypto-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Sign a message with the private key of a replica, or create its HMAC vector.
+     *
+     * @param signer  the id of the replica.
+     * @param message the message.
+     * @return future of the signature, completed exceptionally if the key can't be loaded.
+     */
+    public CompletableFuture<byte[]> sign(final int signer, @NotNull final byte[] message)
+    {
+        if (macAuthenticator != null)
+        {
+            return CompletableFuture.supplyAsync(() -> macAuthenticator.authenticate(signer, message), pool);
+        }
+        return CompletableFuture.supplyAsync(() -> TOMUtil.signMessage(getPrivateKey(signer), message), pool);
+    }
+
+    /**
+     * Verify the signature of a message, or the entry of this server in its HMAC vector.
+     *
+     * @param signer    the id of the replica which signed it.
+     * @param message   the message.
+     * @param signature the signature.
+     * @return future which is true if the signature matches, false as well if the key can't be loaded.
+     */
+    public CompletableFuture<Boolean> verify(final int signer, @NotNull final byte[] message, @NotNull final byte[] signature)
+    {
+        if (macAuthenticator != null)
+        {
+            return CompletableFuture.supplyAsync(() -> macAuthenticator.verify(signer, message, signature), pool);
+        }
+        return CompletableFuture.supplyAsync(() ->
+        {
+            try
+            {
+                return TOMUtil.verifySignature(getPublicKey(signer), message, signature);
+            }
+            catch (final CompletionException e)
+            {
+                Log.getLogger().error("Unable to load public key of server " + signer, e.getCause());
+                return false;
+            }
+        }, pool);
+    }
+
+    /**
+     * Get the cached public key of a replica, loads it on the first access.
+     *
+     * @param id the id of the replica.
+     * @return the key.
+     */
+    private PublicKey getPublicKey(final int id)
+    {
+        return publicKeys.computeIfAbsent(id, key ->
+        {
+            try
+            {
+                return new RSAKeyLoader(key, configLocation, false).loadPublicKey();
+            }
+            catch (final Exception e)
+            {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    /**
+     * Get the cached private key of a replica, loads it on the first access.
+     *
+     * @param id the id of the replica.
+     * @return the key.
+     */
+    private PrivateKey getPrivateKey(final int id)
+    {
+        return privateKeys.computeIfAbsent(id, key ->
+        {
+            try
+            {
+                return new RSAKeyLoader(key, configLocation, false).loadPrivateKey();
+            }
+            catch (final Exception e)
+            {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    /**
+     * Stop the pool, pending tasks are still executed.
+     */
+    public void shutdown()
+    {
+        pool.shutdown();
+    }
+}
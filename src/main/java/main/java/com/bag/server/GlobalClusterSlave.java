@@ -1,30 +1,28 @@
 package main.java.com.bag.server;
 
-import bftsmart.reconfiguration.util.RSAKeyLoader;
 import bftsmart.tom.MessageContext;
 import bftsmart.tom.ServiceProxy;
 import bftsmart.tom.core.messages.TOMMessageType;
-import bftsmart.tom.util.TOMUtil;
 import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
-import com.esotericsoftware.kryo.pool.KryoPool;
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import main.java.com.bag.instrumentations.ServerInstrumentation;
 import main.java.com.bag.operations.IOperation;
 import main.java.com.bag.database.SparkseeDatabaseAccess;
 import main.java.com.bag.util.Constants;
+import main.java.com.bag.util.KryoContext;
 import main.java.com.bag.util.Log;
-import main.java.com.bag.util.storage.NodeStorage;
-import main.java.com.bag.util.storage.RelationshipStorage;
+import main.java.com.bag.util.MerkleTree;
 import main.java.com.bag.util.storage.SignatureStorage;
 import org.jetbrains.annotations.NotNull;
 
-import java.security.PublicKey;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Class handling server communication in the global cluster.
@@ -66,6 +64,24 @@ public class GlobalClusterSlave extends AbstractRecoverable
      */
     private final ServiceProxy proxy;
 
+    /**
+     * The signed updates sent to the slaves, retained for slaves which missed some.
+     */
+    private final CertifiedLog certifiedLog = new CertifiedLog();
+
+    /**
+     * Time a certified batch waits for enough signatures of its root before it is dropped.
+     */
+    private static final int CERTIFIED_BATCH_TIMEOUT_MILLIS = 60000;
+
+    /**
+     * The batches of commits the slaves certify themselves by the last snapshotId, waiting for enough signatures of their root.
+     * Batches whose root doesn't collect enough signatures in time expire, the slaves fetch the missed commits from the certified log.
+     */
+    private final Cache<Long, CertifiedBatch> certifiedBatches = Caffeine.newBuilder()
+            .expireAfterWrite(CERTIFIED_BATCH_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)
+            .build();
+
     /**
      * SignatureStorageCache lock to be sure that we compare correctly.
      */
@@ -74,12 +90,17 @@ public class GlobalClusterSlave extends AbstractRecoverable
     /**
      * Thread pool for message sending.
      */
-    private final ExecutorService service = Executors.newSingleThreadExecutor();
+    private final ExecutorService localDis = Executors.newSingleThreadExecutor();
 
     /**
-     * Thread pool for message sending.
+     * Backoff before the first retry of a global message, doubles with every further one.
      */
-    private final ExecutorService localDis = Executors.newSingleThreadExecutor();
+    private static final long MIN_BACKOFF_MILLIS = 10;
+
+    /**
+     * Maximum backoff between two retries of a global message.
+     */
+    private static final long MAX_BACKOFF_MILLIS = 5000;
 
     GlobalClusterSlave(final int id, @NotNull final ServerWrapper wrapper, final ServerInstrumentation instrumentation)
     {
@@ -102,8 +123,7 @@ public class GlobalClusterSlave extends AbstractRecoverable
     @Override
     public byte[][] appExecuteBatch(final byte[][] message, final MessageContext[] messageContexts, final boolean noop)
     {
-        final KryoPool pool = new KryoPool.Builder(super.getFactory()).softReferences().build();
-        final Kryo kryo = pool.borrow();
+        final Kryo kryo = KryoContext.borrow();
 
         if (messageContexts == null || message == null || message.length != messageContexts.length)
         {
@@ -115,7 +135,34 @@ public class GlobalClusterSlave extends AbstractRecoverable
             Log.getLogger().info("Committed: " + getGlobalSnapshotId() + " consensus: " + messageContexts[i].getConsensusId() + " sequence: " + messageContexts[i].getSequence() + " op: " + messageContexts[i].getOperationId());
         }
 
+        final byte[][] allResults;
+        if (wrapper.isGloballyVerified())
+        {
+            //The slaves certify every transaction by themselves, therefore they have to receive them one by one.
+            allResults = executeSequentially(kryo, message, messageContexts);
+        }
+        else
+        {
+            allResults = executeBatch(kryo, message, messageContexts);
+        }
+
+        KryoContext.release(kryo);
+        return allResults;
+    }
+
+    /**
+     * Execute the messages of a batch one after another, each commit with its own snapshotId.
+     *
+     * @param kryo            the kryo instance.
+     * @param message         the requests.
+     * @param messageContexts the contexts.
+     * @return the answers of all requests in this batch.
+     */
+    private byte[][] executeSequentially(final Kryo kryo, final byte[][] message, final MessageContext[] messageContexts)
+    {
         final byte[][] allResults = new byte[message.length][];
+        final Map<Long, byte[]> slaveCommits = new LinkedHashMap<>();
+        int consensusId = -1;
         for (int i = 0; i < message.length; i++)
         {
             if (messageContexts != null && messageContexts[i] != null)
@@ -126,8 +173,9 @@ public class GlobalClusterSlave extends AbstractRecoverable
                 if (Constants.COMMIT_MESSAGE.equals(type))
                 {
                     final Long timeStamp = kryo.readObject(input, Long.class);
-                    final byte[] result = executeCommit(kryo, input, timeStamp, messageContexts[i]);
+                    final byte[] result = executeCommit(kryo, input, timeStamp, messageContexts[i], slaveCommits);
                     allResults[i] = result;
+                    consensusId = messageContexts[i].getConsensusId();
                 }
                 else
                 {
@@ -144,10 +192,226 @@ public class GlobalClusterSlave extends AbstractRecoverable
             }
         }
 
-        pool.release(kryo);
+        if (!slaveCommits.isEmpty())
+        {
+            certifyBatch(kryo, slaveCommits, consensusId);
+        }
         return allResults;
     }
 
+    /**
+     * Sign the merkle root of the commits of a batch once, every slave update carries the root signatures and the inclusion proof of its commit.
+     * The batch is keyed by its last snapshotId while the global replicas exchange the root signatures.
+     *
+     * @param kryo         the kryo instance.
+     * @param slaveCommits the serialized commits by their snapshotId, in order.
+     * @param consensusId  the consensus ID.
+     */
+    private void certifyBatch(final Kryo kryo, final Map<Long, byte[]> slaveCommits, final int consensusId)
+    {
+        final MerkleTree tree = new MerkleTree(new ArrayList<>(slaveCommits.values()));
+        long lastSnapshot = -1;
+        for (final long snapShotId : slaveCommits.keySet())
+        {
+            lastSnapshot = snapShotId;
+        }
+
+        final Output output = KryoContext.borrowOutput();
+        kryo.writeObject(output, Constants.BATCH_ROOT_MESSAGE);
+        kryo.writeObject(output, Constants.COMMIT);
+        kryo.writeObject(output, lastSnapshot);
+        kryo.writeObject(output, consensusId);
+        kryo.writeObject(output, tree.getRoot());
+        final byte[] rootMessage = output.toBytes();
+        KryoContext.releaseOutput(output);
+
+        Log.getLogger().info("Certifying batch: " + consensusId + " with " + tree.size() + " commits up to: " + lastSnapshot);
+        certifiedBatches.put(lastSnapshot, new CertifiedBatch(tree, slaveCommits));
+        distributeSignedCommit(rootMessage, wrapper.getCryptoService().sign(idClient, rootMessage), Constants.COMMIT, lastSnapshot, consensusId);
+    }
+
+    /**
+     * Execute all commits of a batch at once.
+     * Every transaction is certified against the committed state and against the transactions accepted earlier in the batch.
+     * The accepted writeSets are applied together under one snapshotId and signed once for the local clusters,
+     * transactions whose writeSet can't be applied are aborted.
+     *
+     * @param kryo            the kryo instance.
+     * @param message         the requests.
+     * @param messageContexts the contexts.
+     * @return the answers of all requests in this batch.
+     */
+    private byte[][] executeBatch(final Kryo kryo, final byte[][] message, final MessageContext[] messageContexts)
+    {
+        final BatchEntry[] entries = new BatchEntry[message.length];
+        final long committedSnapshot = getGlobalSnapshotId();
+        final KeyVersionIndex batchIndex = new KeyVersionIndex();
+        final List<IOperation> batchWriteSet = new ArrayList<>();
+        final Map<Long, List<IOperation>> batchWrites = Collections.singletonMap(committedSnapshot + 1, batchWriteSet);
+        final List<BatchEntry> accepted = new ArrayList<>();
+        final List<List<IOperation>> writeSets = new ArrayList<>();
+
+        int commits = 0;
+        long highestTimeStamp = -1;
+        int consensusId = -1;
+
+        for (int i = 0; i < message.length; i++)
+        {
+            if (messageContexts == null || messageContexts[i] == null)
+            {
+                Log.getLogger().error("Received message with empty context!");
+                updateCounts(0, 0, 0, 1);
+                continue;
+            }
+
+            final BatchEntry entry = decodeBatchEntry(kryo, message[i]);
+            if (entry == null)
+            {
+                updateCounts(0, 0, 0, 1);
+                continue;
+            }
+            entries[i] = entry;
+            consensusId = messageContexts[i].getConsensusId();
+            renewLease(messageContexts[i].getSender(), entry.timeStamp, messageContexts[i].getTimestamp());
+
+            if (!ConflictHandler.checkForConflict(super.getVersionIndex(), super.getVersionTable(),
+                    super.getGlobalWriteSet(),
+                    super.getLatestWritesSet(),
+                    entry.writeSet,
+                    entry.readSetNode,
+                    entry.readSetRelationship,
+                    entry.timeStamp,
+                    wrapper.getDataBaseAccess(), wrapper.isMultiVersion())
+                    || !ConflictHandler.checkForBatchConflict(batchIndex,
+                    batchWrites,
+                    entry.writeSet,
+                    entry.readSetNode,
+                    entry.readSetRelationship,
+                    committedSnapshot,
+                    wrapper.isMultiVersion()))
+            {
+                updateCounts(0, 0, 0, 1);
+                Log.getLogger().info("Found conflict in batch " + consensusId + ", returning abort with timestamp: " + entry.timeStamp + " globalSnapshot at: " + committedSnapshot
+                        + " and writes: " + entry.writeSet.size()
+                        + " and reads: " + entry.readSetNode.size() + " + " + entry.readSetRelationship.size());
+                continue;
+            }
+
+            entry.commit = true;
+            accepted.add(entry);
+            writeSets.add(entry.writeSet);
+            commits++;
+            highestTimeStamp = Math.max(highestTimeStamp, entry.timeStamp);
+            batchIndex.record(committedSnapshot + 1, entry.writeSet);
+            batchWriteSet.addAll(entry.writeSet);
+        }
+
+        if (!batchWriteSet.isEmpty())
+        {
+            //Sign the commit while the writeSet is applied.
+            final byte[] signedMessage = wrapper.getLocalCluster() == null ? null
+                    : serializeSignatureMessage(batchWriteSet, Constants.COMMIT, getGlobalSnapshotId() + 1, kryo, consensusId);
+            final CompletableFuture<byte[]> signature = signedMessage == null ? null : wrapper.getCryptoService().sign(idClient, signedMessage);
+
+            final boolean[] applied = super.executeCommits(writeSets, consensusId);
+            final List<IOperation> appliedWriteSet = new ArrayList<>();
+            for (int i = 0; i < applied.length; i++)
+            {
+                if (applied[i])
+                {
+                    appliedWriteSet.addAll(writeSets.get(i));
+                }
+                else
+                {
+                    accepted.get(i).commit = false;
+                    commits--;
+                    Log.getLogger().error("Aborting transaction of batch " + consensusId + " with timestamp: " + accepted.get(i).timeStamp + ", its writeSet couldn't be applied");
+                }
+            }
+
+            if (!appliedWriteSet.isEmpty())
+            {
+                compactIfDue();
+                Log.getLogger().info("Comitting batch: " + getGlobalSnapshotId() + " " + consensusId + " with " + commits + " transactions and " + appliedWriteSet.size() + " writes");
+            }
+
+            if (signature != null && !appliedWriteSet.isEmpty())
+            {
+                Log.getLogger().info("Sending global: " + getGlobalSnapshotId() + " Consensus: " + consensusId);
+                if (appliedWriteSet.size() == batchWriteSet.size())
+                {
+                    distributeSignedCommit(signedMessage, signature, Constants.COMMIT, getGlobalSnapshotId(), consensusId);
+                }
+                else
+                {
+                    //The signature in flight covers the aborted writes as well.
+                    final byte[] appliedMessage = serializeSignatureMessage(appliedWriteSet, Constants.COMMIT, getGlobalSnapshotId(), kryo, consensusId);
+                    distributeSignedCommit(appliedMessage, wrapper.getCryptoService().sign(idClient, appliedMessage), Constants.COMMIT, getGlobalSnapshotId(), consensusId);
+                }
+            }
+        }
+        else
+        {
+            updateCounts(0, 0, commits, 0);
+        }
+
+        final byte[][] allResults = new byte[message.length][];
+        final Output output = KryoContext.borrowOutput();
+        for (int i = 0; i < message.length; i++)
+        {
+            if (entries[i] == null)
+            {
+                allResults[i] = makeEmptyAbortResult();
+                continue;
+            }
+
+            output.clear();
+            kryo.writeObject(output, Constants.COMMIT_RESPONSE);
+            kryo.writeObject(output, entries[i].commit ? Constants.COMMIT : Constants.ABORT);
+            kryo.writeObject(output, getGlobalSnapshotId());
+            allResults[i] = output.toBytes();
+        }
+        KryoContext.releaseOutput(output);
+        return allResults;
+    }
+
+    /**
+     * Decode a commit message of a batch.
+     *
+     * @param kryo    the kryo instance.
+     * @param message the message.
+     * @return the decoded entry or null if it isn't a valid commit.
+     */
+    @SuppressWarnings("unchecked")
+    private BatchEntry decodeBatchEntry(final Kryo kryo, final byte[] message)
+    {
+        final Input input = new Input(message);
+        try
+        {
+            final String type = kryo.readObject(input, String.class);
+            if (!Constants.COMMIT_MESSAGE.equals(type))
+            {
+                Log.getLogger().error("Return empty bytes for message type: " + type);
+                return null;
+            }
+
+            final Long timeStamp = kryo.readObject(input, Long.class);
+            final ArrayList<Object> readSetNode = kryo.readObject(input, ArrayList.class);
+            final ArrayList<Object> readSetRelationship = kryo.readObject(input, ArrayList.class);
+            final ArrayList<IOperation> writeSet = kryo.readObject(input, ArrayList.class);
+            return new BatchEntry(timeStamp, readSetNode, readSetRelationship, writeSet);
+        }
+        catch (final Exception e)
+        {
+            Log.getLogger().info("Couldn't convert received data to sets. Returning abort", e);
+            return null;
+        }
+        finally
+        {
+            input.close();
+        }
+    }
+
     @Override
     void readSpecificData(final Input input, final Kryo kryo)
     {
@@ -170,6 +434,7 @@ public class GlobalClusterSlave extends AbstractRecoverable
     {
         if (signatureStorageCache == null)
         {
+            kryo.writeObject(output, 0);
             return output;
         }
 
@@ -192,30 +457,32 @@ public class GlobalClusterSlave extends AbstractRecoverable
      * @param kryo           the kryo instance.
      * @param input          the input.
      * @param messageContext the message context.
+     * @param slaveCommits   the commits of the batch for the slaves, the commit is added if the slaves certify it themselves.
      * @return the response.
      */
-    private byte[] executeCommit(final Kryo kryo, final Input input, final long timeStamp, final MessageContext messageContext)
+    private byte[] executeCommit(final Kryo kryo, final Input input, final long timeStamp, final MessageContext messageContext, final Map<Long, byte[]> slaveCommits)
     {
         Log.getLogger().info("Starting executing: " + "signatures" + " " + "commit" + " " + (getGlobalSnapshotId() + 1) + " " + messageContext.getConsensusId() + " sequence: " + messageContext.getSequence() + " op: " + messageContext.getOperationId());
         //Read the inputStream.
         final List readsSetNodeX = kryo.readObject(input, ArrayList.class);
         final List readsSetRelationshipX = kryo.readObject(input, ArrayList.class);
         final List writeSetX = kryo.readObject(input, ArrayList.class);
+        renewLease(messageContext.getSender(), timeStamp, messageContext.getTimestamp());
 
         //Create placeHolders.
-        final ArrayList<NodeStorage> readSetNode;
-        final ArrayList<RelationshipStorage> readsSetRelationship;
+        final ArrayList<Object> readSetNode;
+        final ArrayList<Object> readsSetRelationship;
         final ArrayList<IOperation> localWriteSet;
 
         input.close();
 
-        final Output output = new Output(128);
+        final Output output = KryoContext.borrowOutput();
         kryo.writeObject(output, Constants.COMMIT_RESPONSE);
 
         try
         {
-            readSetNode = (ArrayList<NodeStorage>) readsSetNodeX;
-            readsSetRelationship = (ArrayList<RelationshipStorage>) readsSetRelationshipX;
+            readSetNode = (ArrayList<Object>) readsSetNodeX;
+            readsSetRelationship = (ArrayList<Object>) readsSetRelationshipX;
             localWriteSet = (ArrayList<IOperation>) writeSetX;
         }
         catch (final Exception e)
@@ -225,31 +492,26 @@ public class GlobalClusterSlave extends AbstractRecoverable
             kryo.writeObject(output, getGlobalSnapshotId());
 
             //Send abort to client and abort
-            final byte[] returnBytes = output.getBuffer();
-            output.close();
+            final byte[] returnBytes = output.toBytes();
+            KryoContext.releaseOutput(output);
             return returnBytes;
         }
 
-        if (wrapper.isGloballyVerified() && wrapper.getLocalCluster() != null && !localWriteSet.isEmpty() && wrapper.getLocalClusterSlaveId() == 0)
-        {
-            Log.getLogger().info("Distribute commit to slave!");
-            distributeCommitToSlave(localWriteSet, Constants.COMMIT, getGlobalSnapshotId(), kryo, readSetNode, readsSetRelationship, messageContext);
-        }
-
         /*if (messageContext.getConsensusId() < wrapper.getLastTransactionId())
         {
             kryo.writeObject(output, Constants.COMMIT);
             kryo.writeObject(output, getGlobalSnapshotId());
 
-            final byte[] returnBytes = output.getBuffer();
-            output.close();
+            final byte[] returnBytes = output.toBytes();
+            KryoContext.releaseOutput(output);
             Log.getLogger().error("Old transaction, pulling it: " + getGlobalSnapshotId() + " compared to: " + messageContext.getConsensusId());
             return returnBytes;
         }*/
 
         Log.getLogger().info("Going to check: " + "signatures" + " " + "commit" + " " + (getGlobalSnapshotId() + 1) + " " + messageContext.getConsensusId() + " " + Arrays.toString(localWriteSet.toArray()) + " sequence: " + messageContext.getSequence() + " op: " + messageContext.getOperationId());
 
-        if (!ConflictHandler.checkForConflict(super.getGlobalWriteSet(),
+        if (!ConflictHandler.checkForConflict(super.getVersionIndex(), super.getVersionTable(),
+                super.getGlobalWriteSet(),
                 super.getLatestWritesSet(),
                 new ArrayList<>(localWriteSet),
                 readSetNode,
@@ -272,21 +534,41 @@ public class GlobalClusterSlave extends AbstractRecoverable
             }
 
             //Send abort to client and abort
-            final byte[] returnBytes = output.getBuffer();
-            output.close();
+            final byte[] returnBytes = output.toBytes();
+            KryoContext.releaseOutput(output);
             return returnBytes;
         }
 
         if (!localWriteSet.isEmpty())
         {
-            final RSAKeyLoader rsaLoader = new RSAKeyLoader(idClient, GLOBAL_CONFIG_LOCATION, false);
-            super.executeCommit(localWriteSet, rsaLoader, idClient, timeStamp, messageContext.getConsensusId());
+            //Sign the commit while the writeSet is applied.
+            final byte[] signedMessage = wrapper.getLocalCluster() == null || wrapper.isGloballyVerified() ? null
+                    : serializeSignatureMessage(localWriteSet, Constants.COMMIT, getGlobalSnapshotId() + 1, kryo, messageContext.getConsensusId());
+            final CompletableFuture<byte[]> signature = signedMessage == null ? null : wrapper.getCryptoService().sign(idClient, signedMessage);
+
+            if (!super.executeCommit(localWriteSet, messageContext.getConsensusId()))
+            {
+                Log.getLogger().error("Aborting transaction with timestamp: " + timeStamp + ", its writeSet couldn't be applied");
+                kryo.writeObject(output, Constants.ABORT);
+                kryo.writeObject(output, getGlobalSnapshotId());
+
+                final byte[] returnBytes = output.toBytes();
+                KryoContext.releaseOutput(output);
+                return returnBytes;
+            }
+            compactIfDue();
             Log.getLogger().info("Comitting: " + "signatures" + " " + "commit" + " " + getGlobalSnapshotId() + " " + messageContext.getConsensusId() + " " + Arrays.toString(localWriteSet.toArray()) + " sequence: " + messageContext.getSequence() + " op: " + messageContext.getOperationId());
 
-            if (wrapper.getLocalCluster() != null && !wrapper.isGloballyVerified())
+            if (signature != null)
             {
                 Log.getLogger().info("Sending global: " + getGlobalSnapshotId() + " Consensus: " + messageContext.getConsensusId());
-                signCommitWithDecisionAndDistribute(localWriteSet, Constants.COMMIT, getGlobalSnapshotId(), kryo, messageContext.getConsensusId());
+                distributeSignedCommit(signedMessage, signature, Constants.COMMIT, getGlobalSnapshotId(), messageContext.getConsensusId());
+            }
+            else if (wrapper.isGloballyVerified() && wrapper.getLocalCluster() != null)
+            {
+                Log.getLogger().info("Distribute commit to slave!");
+                slaveCommits.put(getGlobalSnapshotId(),
+                        serializeCertifiedCommit(localWriteSet, Constants.COMMIT, getGlobalSnapshotId(), kryo, readSetNode, readsSetRelationship, messageContext.getConsensusId()));
             }
         }
         else
@@ -297,8 +579,8 @@ public class GlobalClusterSlave extends AbstractRecoverable
         kryo.writeObject(output, Constants.COMMIT);
         kryo.writeObject(output, getGlobalSnapshotId());
 
-        final byte[] returnBytes = output.getBuffer();
-        output.close();
+        final byte[] returnBytes = output.toBytes();
+        KryoContext.releaseOutput(output);
         Log.getLogger().info("No conflict found, returning commit with snapShot id: " + getGlobalSnapshotId() + " size: " + returnBytes.length);
 
         return returnBytes;
@@ -319,18 +601,18 @@ public class GlobalClusterSlave extends AbstractRecoverable
         final List writeSetX = kryo.readObject(input, ArrayList.class);
 
         //Create placeHolders.
-        final ArrayList<NodeStorage> readSetNode;
-        final ArrayList<RelationshipStorage> readsSetRelationship;
+        final ArrayList<Object> readSetNode;
+        final ArrayList<Object> readsSetRelationship;
         final ArrayList<IOperation> localWriteSet;
 
         input.close();
-        final Output output = new Output(128);
+        final Output output = KryoContext.borrowOutput();
         kryo.writeObject(output, Constants.COMMIT_RESPONSE);
 
         try
         {
-            readSetNode = (ArrayList<NodeStorage>) readsSetNodeX;
-            readsSetRelationship = (ArrayList<RelationshipStorage>) readsSetRelationshipX;
+            readSetNode = (ArrayList<Object>) readsSetNodeX;
+            readsSetRelationship = (ArrayList<Object>) readsSetRelationshipX;
             localWriteSet = (ArrayList<IOperation>) writeSetX;
         }
         catch (final Exception e)
@@ -340,13 +622,14 @@ public class GlobalClusterSlave extends AbstractRecoverable
             kryo.writeObject(output, getGlobalSnapshotId());
 
             //Send abort to client and abort
-            final byte[] returnBytes = output.getBuffer();
-            output.close();
+            final byte[] returnBytes = output.toBytes();
+            KryoContext.releaseOutput(output);
             return returnBytes;
         }
 
 
-        if (!ConflictHandler.checkForConflict(super.getGlobalWriteSet(),
+        if (!ConflictHandler.checkForConflict(super.getVersionIndex(), super.getVersionTable(),
+                super.getGlobalWriteSet(),
                 super.getLatestWritesSet(),
                 localWriteSet,
                 readSetNode,
@@ -364,8 +647,8 @@ public class GlobalClusterSlave extends AbstractRecoverable
             kryo.writeObject(output, getGlobalSnapshotId());
 
             //Send abort to client and abort
-            final byte[] returnBytes = output.getBuffer();
-            output.close();
+            final byte[] returnBytes = output.toBytes();
+            KryoContext.releaseOutput(output);
             return returnBytes;
         }
 
@@ -374,174 +657,232 @@ public class GlobalClusterSlave extends AbstractRecoverable
         kryo.writeObject(output, Constants.COMMIT);
         kryo.writeObject(output, getGlobalSnapshotId());
 
-        final byte[] returnBytes = output.getBuffer();
-        output.close();
+        final byte[] returnBytes = output.toBytes();
+        KryoContext.releaseOutput(output);
         Log.getLogger().info("No conflict found, returning commit with snapShot id: " + getGlobalSnapshotId() + " size: " + returnBytes.length);
 
         return returnBytes;
     }
 
     /**
-     * Signs the commit, gathers all signatures,
-     * and distributes the commit and decision to the slaves.
+     * Serializes the commit which is signed by the global replicas.
+     * The low watermark of the ordered state is signed with it, the slaves compact their writeSets at the same position.
      *
      * @param localWriteSet the writeset.
      * @param decision      the decision.
      * @param snapShotId    the snapshot.
      * @param kryo          the kryo instance.
      * @param consensusId   the consensus ID.
+     * @return the message to sign.
      */
-    private void signCommitWithDecisionAndDistribute(final List<IOperation> localWriteSet, final String decision, final long snapShotId, final Kryo kryo, final int consensusId)
+    private byte[] serializeSignatureMessage(final List<IOperation> localWriteSet, final String decision, final long snapShotId, final Kryo kryo, final int consensusId)
     {
-        Log.getLogger().info("Sending signed commit to the other global replicas");
-        final RSAKeyLoader rsaLoader = new RSAKeyLoader(idClient, GLOBAL_CONFIG_LOCATION, false);
-
-        //Might not be enough, might have to think about increasing the buffer size in the future.
-        final Output output = new Output(0, 100240);
-
+        final Output output = KryoContext.borrowOutput();
         kryo.writeObject(output, Constants.SIGNATURE_MESSAGE);
         kryo.writeObject(output, decision);
         kryo.writeObject(output, snapShotId);
         kryo.writeObject(output, localWriteSet);
         kryo.writeObject(output, consensusId);
+        kryo.writeObject(output, getLowWatermark());
 
         final byte[] message = output.toBytes();
-        final byte[] signature;
-
-        try
-        {
-            signature = TOMUtil.signMessage(rsaLoader.loadPrivateKey(), message);
-        }
-        catch (final Exception e)
-        {
-            Log.getLogger().error("Unable to sign message at server " + getId(), e);
-            return;
-        }
+        KryoContext.releaseOutput(output);
+        return message;
+    }
 
-        synchronized (lock)
+    /**
+     * Gathers the signature of the commit once it has been computed,
+     * distributes the commit and decision to the slaves when enough signatures arrived and sends the own signature to the other global replicas.
+     *
+     * @param message     the signed message.
+     * @param signing     the future of the own signature.
+     * @param decision    the decision.
+     * @param snapShotId  the snapshot.
+     * @param consensusId the consensus ID.
+     */
+    private void distributeSignedCommit(final byte[] message, final CompletableFuture<byte[]> signing, final String decision, final long snapShotId, final int consensusId)
+    {
+        signing.whenComplete((signature, error) ->
         {
-            SignatureStorage signatureStorage = signatureStorageCache.getIfPresent(snapShotId);
-            if (signatureStorage != null)
-            {
-                if (signatureStorage.getMessage().length != output.toBytes().length)
-                {
-                    Log.getLogger().error("Message in signatureStorage: "
-                            + signatureStorage.getMessage().length
-                            + " message of committing server: "
-                            + message.length + "id: " + snapShotId);
-                }
-            }
-            else
+            if (error != null)
             {
-                Log.getLogger().info("Size of message stored is: " + message.length);
-                signatureStorage = new SignatureStorage(getReplica().getReplicaContext().getStaticConfiguration().getF() + 1, message, decision);
-                signatureStorageCache.put(snapShotId, signatureStorage);
+                Log.getLogger().error("Unable to sign message at server " + getId(), error);
+                return;
             }
 
-            signatureStorage.setProcessed();
-            Log.getLogger().info("Set processed by global cluster: " + snapShotId + " by: " + idClient);
-            signatureStorage.addSignatures(idClient, signature);
-            if (signatureStorage.hasEnough())
+            Log.getLogger().info("Sending signed commit to the other global replicas");
+            final Kryo kryo = KryoContext.borrow();
+            try
             {
-                Log.getLogger().info("Sending update to slave signed by all members: " + snapShotId);
-                final Output messageOutput = new Output(100096);
-                kryo.writeObject(messageOutput, Constants.UPDATE_SLAVE);
-                kryo.writeObject(messageOutput, decision);
-                kryo.writeObject(messageOutput, snapShotId);
-                kryo.writeObject(messageOutput, signatureStorage);
-                kryo.writeObject(messageOutput, consensusId);
-
-                if (wrapper.getLocalCluster().getId() == 0)
+                synchronized (lock)
                 {
-                    final DistributeMessageThread runnable = new DistributeMessageThread(messageOutput.getBuffer());
-                    service.submit(runnable);
+                    SignatureStorage signatureStorage = signatureStorageCache.getIfPresent(snapShotId);
+                    if (signatureStorage != null)
+                    {
+                        if (signatureStorage.getMessage().length != message.length)
+                        {
+                            Log.getLogger().error("Message in signatureStorage: "
+                                    + signatureStorage.getMessage().length
+                                    + " message of committing server: "
+                                    + message.length + "id: " + snapShotId);
+                        }
+                    }
+                    else
+                    {
+                        Log.getLogger().info("Size of message stored is: " + message.length);
+                        signatureStorage = new SignatureStorage(getReplica().getReplicaContext().getStaticConfiguration().getF() + 1, message, decision);
+                        signatureStorageCache.put(snapShotId, signatureStorage);
+                    }
+
+                    signatureStorage.setProcessed();
+                    Log.getLogger().info("Set processed by global cluster: " + snapShotId + " by: " + idClient);
+                    signatureStorage.addSignatures(idClient, signature);
+                    if (signatureStorage.hasEnough())
+                    {
+                        Log.getLogger().info("Sending update to slave signed by all members: " + snapShotId);
+                        distributeToSlaves(kryo, decision, snapShotId, signatureStorage, consensusId);
+
+                        signatureStorage.setDistributed();
+                        signatureStorageCache.put(snapShotId, signatureStorage);
+                        signatureStorageCache.invalidate(snapShotId);
+                        lastSent = Math.max(lastSent, snapShotId);
+                    }
+                    else
+                    {
+                        signatureStorageCache.put(snapShotId, signatureStorage);
+                    }
                 }
-                messageOutput.close();
 
-                signatureStorage.setDistributed();
-                signatureStorageCache.put(snapShotId, signatureStorage);
-                signatureStorageCache.invalidate(snapShotId);
-                lastSent = snapShotId;
+                final Output output = KryoContext.borrowOutput();
+                output.writeBytes(message);
+                kryo.writeObject(output, message.length);
+                kryo.writeObject(output, signature.length);
+                output.writeBytes(signature);
+
+                final GlobalMessageThread messageThread = new GlobalMessageThread(output.toBytes());
+                KryoContext.releaseOutput(output);
+                localDis.submit(messageThread);
             }
-            else
+            finally
             {
-                signatureStorageCache.put(snapShotId, signatureStorage);
+                KryoContext.release(kryo);
             }
-        }
-
-        kryo.writeObject(output, message.length);
-        kryo.writeObject(output, signature.length);
-        output.writeBytes(signature);
-
-        final GlobalMessageThread messageThread = new GlobalMessageThread(output.getBuffer());
-        localDis.submit(messageThread);
-        //proxy.sendMessageToTargets(output.getBuffer(), 0, 0, proxy.getViewManager().getCurrentViewProcesses(), TOMMessageType.UNORDERED_REQUEST);
-        output.close();
+        });
     }
 
     /**
-     * Takes the signature of the decision and sends it to the slaves.
+     * Serializes a commit the slaves certify themselves, with its readSets and the low watermark of the ordered state.
      *
      * @param localWriteSet        the local writeSet.
      * @param decision             the decision.
      * @param snapShotId           the snapshotId.
      * @param kryo                 the kryo instance.
-     * @param readSetNode          the read set for the nodes.
-     * @param readsSetRelationship the read set for the relationships.
-     * @param context              the message context.
+     * @param readSetNode          the compact read set for the nodes.
+     * @param readsSetRelationship the compact read set for the relationships.
+     * @param consensusId          the consensus ID.
+     * @return the message.
      */
-    private void distributeCommitToSlave(
+    private byte[] serializeCertifiedCommit(
             final List<IOperation> localWriteSet, final String decision, final long snapShotId, final Kryo kryo,
-            final ArrayList<NodeStorage> readSetNode,
-            final ArrayList<RelationshipStorage> readsSetRelationship,
-            final MessageContext context)
+            final ArrayList<Object> readSetNode,
+            final ArrayList<Object> readsSetRelationship,
+            final int consensusId)
     {
-        //Might not be enough, might have to think about increasing the buffer size in the future.
-        final Output output = new Output(0, 100240);
-
+        final Output output = KryoContext.borrowOutput();
         kryo.writeObject(output, Constants.SIGNATURE_MESSAGE);
         kryo.writeObject(output, decision);
         kryo.writeObject(output, snapShotId);
         kryo.writeObject(output, localWriteSet);
         kryo.writeObject(output, readSetNode);
         kryo.writeObject(output, readsSetRelationship);
-        kryo.writeObject(output, context.getConsensusId());
+        kryo.writeObject(output, consensusId);
+        kryo.writeObject(output, getLowWatermark());
 
         final byte[] message = output.toBytes();
-        final byte[] signature;
-
-        signature = context.getProof().iterator().next().getValue();
-        final SignatureStorage signatureStorage = new SignatureStorage(getReplica().getReplicaContext().getStaticConfiguration().getF() + 1, message, decision);
-
-        signatureStorage.setProcessed();
-        Log.getLogger().info("Set processed by global cluster: " + snapShotId + " by: " + idClient);
-        signatureStorage.addSignatures(idClient, signature);
-
+        KryoContext.releaseOutput(output);
+        return message;
+    }
 
-        Log.getLogger().info("Sending update to slave signed by all members: " + snapShotId);
+    /**
+     * Distributes the update signed by enough global replicas to the slaves, a certified batch is split into its commits.
+     *
+     * @param kryo             the kryo instance.
+     * @param decision         the decision.
+     * @param snapShotId       the snapshotId.
+     * @param signatureStorage the signatures of the commit.
+     * @param consensusId      the consensus ID.
+     */
+    private void distributeToSlaves(final Kryo kryo, final String decision, final long snapShotId, final SignatureStorage signatureStorage, final int consensusId)
+    {
+        final CertifiedBatch batch = certifiedBatches.asMap().remove(snapShotId);
+        if (batch == null)
+        {
+            sendToSlaves(kryo, decision, snapShotId, signatureStorage, consensusId);
+            return;
+        }
 
-        final Output messageOutput = new Output(100096);
+        //The signatures cover the root of the batch, every commit is sent with them and its inclusion proof.
+        int index = 0;
+        for (final Map.Entry<Long, byte[]> commit : batch.commits.entrySet())
+        {
+            final SignatureStorage certificate = new SignatureStorage(signatureStorage);
+            certificate.setMessage(commit.getValue());
+            certificate.setInclusionProof(signatureStorage.getMessage(), index, batch.tree.size(), batch.tree.getProof(index));
+            sendToSlaves(kryo, decision, commit.getKey(), certificate, consensusId);
+            index++;
+        }
+    }
 
+    /**
+     * Serializes one signed update, retains it in the certified log and sends it to the slaves.
+     *
+     * @param kryo             the kryo instance.
+     * @param decision         the decision.
+     * @param snapShotId       the snapshotId.
+     * @param signatureStorage the signatures of the commit.
+     * @param consensusId      the consensus ID.
+     */
+    private void sendToSlaves(final Kryo kryo, final String decision, final long snapShotId, final SignatureStorage signatureStorage, final int consensusId)
+    {
+        final Output messageOutput = KryoContext.borrowOutput();
         kryo.writeObject(messageOutput, Constants.UPDATE_SLAVE);
         kryo.writeObject(messageOutput, decision);
         kryo.writeObject(messageOutput, snapShotId);
         kryo.writeObject(messageOutput, signatureStorage);
-        kryo.writeObject(messageOutput, context.getConsensusId());
+        kryo.writeObject(messageOutput, consensusId);
 
-        Log.getLogger().info("Starting thread to update to slave signed by all members: " + snapShotId);
+        final byte[] update = messageOutput.toBytes();
+        KryoContext.releaseOutput(messageOutput);
+        certifiedLog.append(snapShotId, update);
 
         if (wrapper.getLocalCluster().getId() == 0)
         {
-            final DistributeMessageThread runnable = new DistributeMessageThread(messageOutput.getBuffer());
-            service.submit(runnable);
+            Log.getLogger().info("Notifying local cluster!");
+            wrapper.getLocalCluster().propagateUpdate(update);
         }
-        messageOutput.close();
+    }
 
-        signatureStorage.setDistributed();
-        lastSent = snapShotId;
+    /**
+     * Handles the request of a slave which missed updates, returns the retained signed updates of the range.
+     *
+     * @param input  the input.
+     * @param kryo   the kryo instance.
+     * @param output the output.
+     */
+    private void handleCatchUpMessage(final Input input, final Kryo kryo, final Output output)
+    {
+        final long from = kryo.readObject(input, Long.class);
+        final long to = kryo.readObject(input, Long.class);
 
-        Log.getLogger().info("Finished to update to slave signed by all members: " + snapShotId);
+        final List<byte[]> updates = certifiedLog.range(from, to);
+        Log.getLogger().info("Slave requested updates: " + from + " to " + to + ", returning: " + updates.size());
 
+        kryo.writeObject(output, certifiedLog.getFirst());
+        kryo.writeObject(output, updates.size());
+        for (final byte[] update : updates)
+        {
+            kryo.writeObject(output, update);
+        }
     }
 
     /**
@@ -550,8 +891,9 @@ public class GlobalClusterSlave extends AbstractRecoverable
      * @param input          the message.
      * @param messageContext the context.
      * @param kryo           the kryo object.
+     * @param root           true if the message is the root of a certified batch, it carries the merkle root instead of a writeSet.
      */
-    private void handleSignatureMessage(final Input input, final MessageContext messageContext, final Kryo kryo)
+    private void handleSignatureMessage(final Input input, final MessageContext messageContext, final Kryo kryo, final boolean root)
     {
         //Our own message.
         if (idClient == messageContext.getSender())
@@ -562,8 +904,17 @@ public class GlobalClusterSlave extends AbstractRecoverable
 
         final String decision = kryo.readObject(input, String.class);
         final Long snapShotId = kryo.readObject(input, Long.class);
-        final List writeSet = kryo.readObject(input, ArrayList.class);
+        final List writeSet = root ? new ArrayList<>() : kryo.readObject(input, ArrayList.class);
         final int consensusId = kryo.readObject(input, Integer.class);
+        if (root)
+        {
+            //The merkle root of the batch follows the consensus id.
+            kryo.readObject(input, byte[].class);
+        }
+        else
+        {
+            kryo.readObject(input, Long.class);
+        }
 
         final ArrayList<IOperation> localWriteSet;
 
@@ -602,28 +953,22 @@ public class GlobalClusterSlave extends AbstractRecoverable
             //Not required anymore.
             input.close();
 
-            final RSAKeyLoader rsaLoader = new RSAKeyLoader(messageContext.getSender(), GLOBAL_CONFIG_LOCATION, false);
-            final PublicKey key;
-            try
-            {
-                key = rsaLoader.loadPublicKey();
-            }
-            catch (final Exception e)
-            {
-                Log.getLogger().error("Unable to load public key on server " + id + " sent by server " + messageContext.getSender(), e);
-                return;
-            }
-
             final byte[] message = new byte[messageLength];
             System.arraycopy(buffer, 0, message, 0, messageLength);
 
-            final boolean signatureMatches = TOMUtil.verifySignature(key, message, signature);
-            if (signatureMatches)
+            //Verify on the crypto pool, the signature is stored once it has been verified.
+            wrapper.getCryptoService().verify(messageContext.getSender(), message, signature).thenAccept(signatureMatches ->
             {
-                storeSignedMessage(snapShotId, signature, messageContext, decision, message, writeSet, consensusId);
-                return;
-            }
-            Log.getLogger().error("Signature doesn't match of message, throwing message away." + id + ":" + messageContext.getSender() + ": " + message + "/" + signature);
+                if (signatureMatches)
+                {
+                    synchronized (lock)
+                    {
+                        storeSignedMessage(snapShotId, signature, messageContext, decision, message, consensusId);
+                    }
+                    return;
+                }
+                Log.getLogger().error("Signature doesn't match of message, throwing message away." + id + ":" + messageContext.getSender() + ": " + message + "/" + signature);
+            });
         }
     }
 
@@ -631,12 +976,12 @@ public class GlobalClusterSlave extends AbstractRecoverable
     public byte[] appExecuteUnordered(final byte[] bytes, final MessageContext messageContext)
     {
         Log.getLogger().info("Received unordered message at global replica");
-        final KryoPool pool = new KryoPool.Builder(getFactory()).softReferences().build();
-        final Kryo kryo = pool.borrow();
+        final Kryo kryo = KryoContext.borrow();
         final Input input = new Input(bytes);
 
         final String messageType = kryo.readObject(input, String.class);
-        Output output = new Output(1, 804800);
+        final Output pooledOutput = KryoContext.borrowOutput();
+        Output output = pooledOutput;
         byte[] returnValue;
 
         try
@@ -653,8 +998,7 @@ public class GlobalClusterSlave extends AbstractRecoverable
                     catch (final Exception t)
                     {
                         Log.getLogger().error("Error on " + Constants.READ_MESSAGE + ", returning empty read", t);
-                        output.close();
-                        output = makeEmptyReadResponse(Constants.READ_MESSAGE, kryo);
+                        output = makeEmptyReadResponse(kryo, pooledOutput);
                     }
                     break;
                 case Constants.RELATIONSHIP_READ_MESSAGE:
@@ -667,52 +1011,88 @@ public class GlobalClusterSlave extends AbstractRecoverable
                     catch (final Exception t)
                     {
                         Log.getLogger().error("Error on " + Constants.RELATIONSHIP_READ_MESSAGE + ", returning empty read", t);
-                        output = makeEmptyReadResponse(Constants.RELATIONSHIP_READ_MESSAGE, kryo);
+                        output = makeEmptyReadResponse(kryo, pooledOutput);
+                    }
+                    break;
+                case Constants.MULTI_READ_MESSAGE:
+                    Log.getLogger().info("Received multi read message");
+                    try
+                    {
+                        kryo.writeObject(output, Constants.READ_MESSAGE);
+                        output = handleMultiRead(input, kryo, output, messageContext.getSender());
+                    }
+                    catch (final Exception t)
+                    {
+                        Log.getLogger().error("Error on " + Constants.MULTI_READ_MESSAGE + ", returning empty read", t);
+                        output = makeEmptyReadResponse(kryo, pooledOutput);
+                    }
+                    break;
+                case Constants.PAGE_READ_MESSAGE:
+                    Log.getLogger().info("Received page read message");
+                    try
+                    {
+                        kryo.writeObject(output, Constants.READ_MESSAGE);
+                        output = handlePageRead(input, kryo, output, messageContext.getSender());
+                    }
+                    catch (final Exception t)
+                    {
+                        Log.getLogger().error("Error on " + Constants.PAGE_READ_MESSAGE + ", returning empty read", t);
+                        output = makeEmptyReadResponse(kryo, pooledOutput);
                     }
                     break;
                 case Constants.SIGNATURE_MESSAGE:
                     if (wrapper.getLocalCluster() != null)
                     {
-                        handleSignatureMessage(input, messageContext, kryo);
+                        handleSignatureMessage(input, messageContext, kryo, false);
                     }
                     break;
+                case Constants.BATCH_ROOT_MESSAGE:
+                    if (wrapper.getLocalCluster() != null)
+                    {
+                        handleSignatureMessage(input, messageContext, kryo, true);
+                    }
+                    break;
+                case Constants.CATCH_UP_MESSAGE:
+                    Log.getLogger().info("Received catch up message");
+                    kryo.writeObject(output, Constants.CATCH_UP_MESSAGE);
+                    handleCatchUpMessage(input, kryo, output);
+                    break;
                 case Constants.REGISTER_GLOBALLY_MESSAGE:
                     Log.getLogger().info("Received register globally message");
-                    output.close();
+                    final byte[] registerResult = handleRegisteringSlave(input, kryo);
                     input.close();
-                    pool.release(kryo);
-                    return handleRegisteringSlave(input, kryo);
+                    KryoContext.release(kryo);
+                    return registerResult;
                 case Constants.COMMIT:
                     Log.getLogger().info("Received commit message: " + input.getBuffer().length);
                     if (wrapper.getDataBaseAccess() instanceof SparkseeDatabaseAccess)
                     {
                         input.close();
-                        pool.release(kryo);
+                        KryoContext.release(kryo);
                         return new byte[] {0};
                     }
 
                     final byte[] result;
                     result = handleReadOnlyCommit(input, kryo);
                     input.close();
-                    pool.release(kryo);
+                    KryoContext.release(kryo);
                     Log.getLogger().info("Return it to client, size: " + result.length);
                     return result;
                 default:
                     Log.getLogger().error("Incorrect operation sent unordered to the server");
                     break;
             }
-            returnValue = output.getBuffer();
+            returnValue = output.toBytes();
         }
         finally
         {
-            output.close();
+            KryoContext.releaseOutput(pooledOutput);
         }
 
         Log.getLogger().info("Return it to client, size: " + returnValue.length);
 
         input.close();
-        output.close();
-        pool.release(kryo);
+        KryoContext.release(kryo);
 
         return returnValue;
     }
@@ -741,16 +1121,16 @@ public class GlobalClusterSlave extends AbstractRecoverable
 
         final ServiceProxy localProxy = new ServiceProxy(1000 + oldPrimary, "local" + localClusterID);
 
-        final Output output = new Output(512);
+        final Output output = KryoContext.borrowOutput();
 
         kryo.writeObject(output, Constants.REGISTER_GLOBALLY_CHECK);
         kryo.writeObject(output, newPrimary);
 
-        final byte[] result = localProxy.invokeUnordered(output.getBuffer());
+        final byte[] result = localProxy.invokeUnordered(output.toBytes());
+        KryoContext.releaseOutput(output);
 
-
-        final Output nextOutput = new Output(512);
-        kryo.writeObject(output, Constants.REGISTER_GLOBALLY_REPLY);
+        final Output nextOutput = KryoContext.borrowOutput();
+        kryo.writeObject(nextOutput, Constants.REGISTER_GLOBALLY_REPLY);
 
         final Input answer = new Input(result);
         if (Constants.REGISTER_GLOBALLY_REPLY.equals(answer.readString()))
@@ -758,12 +1138,11 @@ public class GlobalClusterSlave extends AbstractRecoverable
             kryo.writeObject(nextOutput, answer.readBoolean());
         }
 
-        final byte[] returnBuffer = nextOutput.getBuffer();
+        final byte[] returnBuffer = nextOutput.toBytes();
 
-        nextOutput.close();
+        KryoContext.releaseOutput(nextOutput);
         answer.close();
         localProxy.close();
-        output.close();
         return returnBuffer;
         //remove currentView and edit system.config
         //If alright send the result to all remaining global clusters so that they update themselves.
@@ -786,14 +1165,10 @@ public class GlobalClusterSlave extends AbstractRecoverable
             @NotNull final MessageContext context,
             final String decision,
             final byte[] message,
-            final List<IOperation> writeSet,
             final int consensusId)
     {
         final SignatureStorage signatureStorage;
 
-        final KryoPool pool = new KryoPool.Builder(super.getFactory()).softReferences().build();
-        final Kryo kryo = pool.borrow();
-
         final SignatureStorage tempStorage = signatureStorageCache.getIfPresent(snapShotId);
         signatureStorageCache.invalidate(snapShotId);
         if (tempStorage == null)
@@ -808,7 +1183,6 @@ public class GlobalClusterSlave extends AbstractRecoverable
 
         if (signatureStorage.getMessage().length != message.length)
         {
-            final Input messageInput = new Input(signatureStorage.getMessage());
             Log.getLogger().error("Different message size detected");
         }
 
@@ -827,24 +1201,11 @@ public class GlobalClusterSlave extends AbstractRecoverable
             Log.getLogger().info("Sending update to slave signed by all members: " + snapShotId);
             if (signatureStorage.isProcessed())
             {
+                final Kryo kryo = KryoContext.borrow();
+                distributeToSlaves(kryo, decision, snapShotId, signatureStorage, consensusId);
+                KryoContext.release(kryo);
 
-                final Output messageOutput = new Output(100096);
-
-                kryo.writeObject(messageOutput, Constants.UPDATE_SLAVE);
-                kryo.writeObject(messageOutput, decision);
-                kryo.writeObject(messageOutput, snapShotId);
-                kryo.writeObject(messageOutput, signatureStorage);
-                kryo.writeObject(messageOutput, consensusId);
-
-                if (wrapper.getLocalCluster().getId() == 0)
-                {
-                    final DistributeMessageThread runnable = new DistributeMessageThread(messageOutput.getBuffer());
-                    service.submit(runnable);
-                }
-                messageOutput.close();
-                pool.release(kryo);
-
-                lastSent = snapShotId;
+                lastSent = Math.max(lastSent, snapShotId);
                 signatureStorage.setDistributed();
             }
         }
@@ -885,33 +1246,78 @@ public class GlobalClusterSlave extends AbstractRecoverable
         proxy.close();
     }
 
-    private class DistributeMessageThread implements Runnable
+    /**
+     * A decoded commit of a batch waiting for its decision.
+     */
+    private static class BatchEntry
     {
-        private final byte[] message;
+        /**
+         * The snapshotId the transaction has been read at.
+         */
+        private final long timeStamp;
 
-        DistributeMessageThread(final byte[] message)
-        {
-            this.message = message;
-        }
+        /**
+         * The node readSet, keys of the read nodes or node storages which can't be keyed.
+         */
+        private final ArrayList<Object> readSetNode;
 
-        @Override
-        public void run()
+        /**
+         * The relationship readSet, keys of the read relationships or relationship storages which can't be keyed.
+         */
+        private final ArrayList<Object> readSetRelationship;
+
+        /**
+         * The writeSet.
+         */
+        private final ArrayList<IOperation> writeSet;
+
+        /**
+         * If the transaction has been accepted.
+         */
+        private boolean commit = false;
+
+        /**
+         * Create a batch entry.
+         *
+         * @param timeStamp           the snapshotId the transaction has been read at.
+         * @param readSetNode         the node readSet.
+         * @param readSetRelationship the relationship readSet.
+         * @param writeSet            the writeSet.
+         */
+        BatchEntry(final long timeStamp, final ArrayList<Object> readSetNode, final ArrayList<Object> readSetRelationship, final ArrayList<IOperation> writeSet)
         {
-            updateSlave(message);
+            this.timeStamp = timeStamp;
+            this.readSetNode = readSetNode;
+            this.readSetRelationship = readSetRelationship;
+            this.writeSet = writeSet;
         }
+    }
+
+    /**
+     * The commits of a batch and the merkle tree over them.
+     */
+    private static class CertifiedBatch
+    {
+        /**
+         * The tree.
+         */
+        private final MerkleTree tree;
+
+        /**
+         * The serialized commits by their snapshotId, in the order of the leaves.
+         */
+        private final Map<Long, byte[]> commits;
 
         /**
-         * Update the slave with a transaction.
+         * Create a certified batch.
          *
-         * @param message the message to propagate.
+         * @param tree    the tree.
+         * @param commits the commits.
          */
-        private void updateSlave(final byte[] message)
+        CertifiedBatch(final MerkleTree tree, final Map<Long, byte[]> commits)
         {
-            if (wrapper.getLocalCluster() != null)
-            {
-                Log.getLogger().info("Notifying local cluster!");
-                wrapper.getLocalCluster().propagateUpdate(message);
-            }
+            this.tree = tree;
+            this.commits = commits;
         }
     }
 
@@ -931,15 +1337,27 @@ public class GlobalClusterSlave extends AbstractRecoverable
         }
 
         /**
-         * Update the slave with a transaction.
+         * Update the slave with a transaction, retries with exponential backoff until the global cluster answers.
          *
          * @param message the message to propagate.
          */
         private void update(final byte[] message)
         {
+            int attempt = 0;
             while (proxy.invokeUnordered(message) == null)
             {
-                Log.getLogger().warn("Couldn't distribute the message in the global cluster");
+                final long backoff = Math.min(MAX_BACKOFF_MILLIS, MIN_BACKOFF_MILLIS << Math.min(attempt++, 16));
+                Log.getLogger().warn("Couldn't distribute the message in the global cluster, retrying in " + backoff + "ms");
+                try
+                {
+                    Thread.sleep(backoff);
+                }
+                catch (final InterruptedException e)
+                {
+                    Log.getLogger().warn("Interrupted while distributing the message in the global cluster", e);
+                    Thread.currentThread().interrupt();
+                    return;
+                }
             }
         }
     }
@@ -0,0 +1,198 @@
+package main.java.com.bag.server;
+
+import main.java.com.bag.operations.CreateOperation;
+import main.java.com.bag.operations.DeleteOperation;
+import main.java.com.bag.operations.IOperation;
+import main.java.com.bag.operations.UpdateOperation;
+import main.java.com.bag.util.storage.NodeStorage;
+import main.java.com.bag.util.storage.ReadKey;
+import main.java.com.bag.util.storage.RelationshipStorage;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Index holding the last committed snapshotId of every written node and relationship.
+ * Nodes are keyed by their idx, relationships by their type and the idx of both endpoints, see {@link ReadKey#keyOf(Object)}.
+ * Writes which can't be keyed are only tracked by their latest snapshotId, certification has to scan the writeSets in this case.
+ */
+public class KeyVersionIndex
+{
+    /**
+     * Map of the key to the last snapshotId it has been written at.
+     */
+    private final ConcurrentHashMap<String, Long> versions = new ConcurrentHashMap<>();
+
+    /**
+     * Last snapshotId a write which couldn't be keyed has been committed at.
+     */
+    private final AtomicLong lastUnkeyedWrite = new AtomicLong(-1);
+
+    /**
+     * Entries older than this snapshot have been pruned.
+     */
+    private final AtomicLong prunedBefore = new AtomicLong(-1);
+
+    /**
+     * Register the writeSet of a committed transaction.
+     *
+     * @param snapshotId    the snapshotId the writeSet has been committed at.
+     * @param localWriteSet the committed operations.
+     */
+    public void record(final long snapshotId, final List<IOperation> localWriteSet)
+    {
+        for (final IOperation operation : localWriteSet)
+        {
+            if (operation instanceof CreateOperation)
+            {
+                recordStorage(snapshotId, ((CreateOperation) operation).getObject());
+            }
+            else if (operation instanceof DeleteOperation)
+            {
+                recordStorage(snapshotId, ((DeleteOperation) operation).getObject());
+            }
+            else if (operation instanceof UpdateOperation)
+            {
+                final UpdateOperation<?> update = (UpdateOperation<?>) operation;
+                recordStorage(snapshotId, update.getKey());
+
+                //If the idx of a node changes the new idx has been written as well.
+                if (update.getValue() instanceof NodeStorage && ReadKey.keyOf((NodeStorage) update.getValue()) != null)
+                {
+                    recordStorage(snapshotId, update.getValue());
+                }
+            }
+            else
+            {
+                lastUnkeyedWrite.accumulateAndGet(snapshotId, Math::max);
+            }
+        }
+    }
+
+    /**
+     * Register a single written storage.
+     *
+     * @param snapshotId the snapshotId.
+     * @param storage    the written storage.
+     */
+    private void recordStorage(final long snapshotId, final Object storage)
+    {
+        final String key = ReadKey.keyOf(storage);
+        if (key == null)
+        {
+            lastUnkeyedWrite.accumulateAndGet(snapshotId, Math::max);
+            return;
+        }
+        versions.merge(key, snapshotId, Math::max);
+    }
+
+    /**
+     * Checks if a storage has been written after a certain snapshot.
+     * Relationships are modified as well if one of their endpoints has been written.
+     *
+     * @param storage    the node or relationship storage or the key of the readSet.
+     * @param snapshotId the snapshotId of the transaction.
+     * @return true if a write after the snapshot has been registered.
+     */
+    public boolean isModifiedSince(final Object storage, final long snapshotId)
+    {
+        if (storage instanceof RelationshipStorage)
+        {
+            final RelationshipStorage relationship = (RelationshipStorage) storage;
+            return isNewer(ReadKey.keyOf(relationship), snapshotId)
+                    || isNewer(ReadKey.keyOf(relationship.getStartNode()), snapshotId)
+                    || isNewer(ReadKey.keyOf(relationship.getEndNode()), snapshotId);
+        }
+        if (storage instanceof ReadKey && ((ReadKey) storage).isRelationship())
+        {
+            final ReadKey relationship = (ReadKey) storage;
+            return isNewer(relationship.getKey(), snapshotId)
+                    || isNewer(relationship.getStartNode().getKey(), snapshotId)
+                    || isNewer(relationship.getEndNode().getKey(), snapshotId);
+        }
+        return isNewer(ReadKey.keyOf(storage), snapshotId);
+    }
+
+    /**
+     * Checks if the entry of a key is newer than the snapshot.
+     *
+     * @param key        the key, may be null.
+     * @param snapshotId the snapshotId.
+     * @return true if so.
+     */
+    private boolean isNewer(@Nullable final String key, final long snapshotId)
+    {
+        if (key == null)
+        {
+            return false;
+        }
+        final Long version = versions.get(key);
+        return version != null && version > snapshotId;
+    }
+
+    /**
+     * Checks if writes which couldn't be keyed have been committed after the snapshot.
+     *
+     * @param snapshotId the snapshotId.
+     * @return true if the writeSets have to be scanned.
+     */
+    public boolean hasUnkeyedWritesSince(final long snapshotId)
+    {
+        return lastUnkeyedWrite.get() > snapshotId;
+    }
+
+    /**
+     * Checks if the index is able to decide about a storage by itself.
+     *
+     * @param storage the node or relationship storage or the key of the readSet.
+     * @return true if it has a key.
+     */
+    public static boolean isKeyed(final Object storage)
+    {
+        return ReadKey.keyOf(storage) != null;
+    }
+
+    /**
+     * Remove all entries which are older than the smallest snapshot any client may still certify against.
+     *
+     * @param smallestSnapshot the smallest snapshotId of all clients.
+     */
+    public void prune(final long smallestSnapshot)
+    {
+        prunedBefore.accumulateAndGet(smallestSnapshot, Math::max);
+        versions.values().removeIf(version -> version < smallestSnapshot);
+    }
+
+    /**
+     * Checks if a transaction read at a snapshot older than the pruned entries, the index can't decide about its conflicts anymore.
+     *
+     * @param snapshotId the snapshotId of the transaction.
+     * @return true if it has to abort.
+     */
+    public boolean isPrunedAfter(final long snapshotId)
+    {
+        return snapshotId >= 0 && snapshotId < prunedBefore.get();
+    }
+
+    /**
+     * Remove all entries, used when a snapshot is installed.
+     */
+    public void clear()
+    {
+        versions.clear();
+        lastUnkeyedWrite.set(-1);
+        prunedBefore.set(-1);
+    }
+
+    /**
+     * Get the number of keys in the index.
+     *
+     * @return the size.
+     */
+    public int size()
+    {
+        return versions.size();
+    }
+}
@@ -1,24 +1,30 @@
 package main.java.com.bag.server;
 
-import bftsmart.reconfiguration.util.RSAKeyLoader;
+import bftsmart.communication.client.ReplyListener;
+import bftsmart.tom.AsynchServiceProxy;
 import bftsmart.tom.MessageContext;
-import bftsmart.tom.ServiceProxy;
+import bftsmart.tom.RequestContext;
+import bftsmart.tom.core.messages.TOMMessage;
 import bftsmart.tom.core.messages.TOMMessageType;
-import bftsmart.tom.util.TOMUtil;
 import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
-import com.esotericsoftware.kryo.pool.KryoPool;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import main.java.com.bag.instrumentations.ServerInstrumentation;
 import main.java.com.bag.operations.IOperation;
 import main.java.com.bag.util.Constants;
+import main.java.com.bag.util.KryoContext;
 import main.java.com.bag.util.Log;
-import main.java.com.bag.util.storage.NodeStorage;
-import main.java.com.bag.util.storage.RelationshipStorage;
+import main.java.com.bag.util.MerkleTree;
 import main.java.com.bag.util.storage.SignatureStorage;
 import org.jetbrains.annotations.NotNull;
 
+import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  *
@@ -63,12 +69,67 @@ public class LocalClusterSlave extends AbstractRecoverable
     /**
      * The serviceProxy to establish communication with the other replicas.
      */
-    private final ServiceProxy proxy;
+    private final AsynchServiceProxy proxy;
 
     /**
-     * Queue to catch messages out of order.
+     * The queue of the updates this replica sends to the other replicas of the cluster, used if it is primary.
      */
-    private final Map<Long, List<IOperation>> buffer = new TreeMap<>();
+    private final SlaveUpdateQueue updateQueue;
+
+    /**
+     * Maximum amount of snapshots a slave update may be ahead of the last applied one, later ones are rejected.
+     */
+    private static final int MAX_PENDING_UPDATES = 1024;
+
+    /**
+     * Decoded slave updates waiting for their verification and for all earlier snapshots to be applied.
+     */
+    private final ConcurrentSkipListMap<Long, SlaveUpdate> pendingUpdates = new ConcurrentSkipListMap<>();
+
+    /**
+     * The thread applying the slave updates in snapshot order.
+     */
+    private final ExecutorService applyService = Executors.newSingleThreadExecutor();
+
+    /**
+     * The verifications of the batch roots, shared by all updates of a batch.
+     */
+    private final Cache<ByteBuffer, CompletableFuture<Boolean>> rootVerifications = Caffeine.newBuilder().maximumSize(1024).build();
+
+    /**
+     * Time to wait for a global replica to return the missed updates before asking the next one.
+     */
+    private static final int CATCH_UP_TIMEOUT_MILLIS = 2000;
+
+    /**
+     * Minimum time between two catch ups started because an update was too far ahead.
+     */
+    private static final int REJECTED_CATCH_UP_INTERVAL_MILLIS = 1000;
+
+    /**
+     * The id of the cluster.
+     */
+    private final int localClusterId;
+
+    /**
+     * The proxy to fetch missed updates from the global replicas, created on the first catch up.
+     */
+    private AsynchServiceProxy globalProxy;
+
+    /**
+     * The thread fetching missed updates.
+     */
+    private final ExecutorService catchUpService = Executors.newSingleThreadExecutor();
+
+    /**
+     * True while missed updates are being fetched.
+     */
+    private final AtomicBoolean catchingUp = new AtomicBoolean();
+
+    /**
+     * The time of the last catch up started because an update was too far ahead.
+     */
+    private final AtomicLong lastRejectedCatchUp = new AtomicLong();
 
     /**
      * Public constructor used to create a local cluster slave.
@@ -81,8 +142,10 @@ public class LocalClusterSlave extends AbstractRecoverable
     {
         super(id, String.format(LOCAL_CONFIG_LOCATION, localClusterId), wrapper, instrumentation);
         this.id = id;
+        this.localClusterId = localClusterId;
         this.wrapper = wrapper;
-        this.proxy = new ServiceProxy(1000 + id, String.format(LOCAL_CONFIG_LOCATION, localClusterId));
+        this.proxy = new AsynchServiceProxy(1000 + id, String.format(LOCAL_CONFIG_LOCATION, localClusterId));
+        this.updateQueue = new SlaveUpdateQueue(proxy);
         Log.getLogger().info("Turned on local cluster with id: " + id);
     }
 
@@ -124,30 +187,27 @@ public class LocalClusterSlave extends AbstractRecoverable
     public byte[][] appExecuteBatch(final byte[][] bytes, final MessageContext[] messageContexts, final boolean bim)
     {
         final byte[][] allResults = new byte[bytes.length][];
+        final Kryo kryo = KryoContext.borrow();
         for (int i = 0; i < bytes.length; ++i)
         {
             if (messageContexts != null && messageContexts[i] != null)
             {
-                final KryoPool pool = new KryoPool.Builder(super.getFactory()).softReferences().build();
-                final Kryo kryo = pool.borrow();
                 final Input input = new Input(bytes[i]);
 
                 final String type = kryo.readObject(input, String.class);
 
                 if (Constants.COMMIT_MESSAGE.equals(type))
                 {
-                    final byte[] result = handleReadOnlyCommit(input, kryo);
-                    pool.release(kryo);
-                    allResults[i] = result;
+                    allResults[i] = handleReadOnlyCommit(input, kryo);
                 }
                 else if (Constants.UPDATE_SLAVE.equals(type))
                 {
-                    final Output output;
+                    final Output output = KryoContext.borrowOutput();
                     Log.getLogger().error("Received update slave message ordered");
-                    output = handleSlaveUpdateMessage(input, new Output(0, 1024), kryo);
+                    handleSlaveUpdateMessage(input, output, kryo);
                     Log.getLogger().error("Leaving update slave message ordered");
-                    allResults[i] = output.getBuffer();
-                    output.close();
+                    allResults[i] = output.toBytes();
+                    KryoContext.releaseOutput(output);
                     input.close();
                 }
                 else
@@ -164,22 +224,20 @@ public class LocalClusterSlave extends AbstractRecoverable
                 updateCounts(0, 0, 0, 1);
             }
         }
+        KryoContext.release(kryo);
         return allResults;
     }
 
     @Override
     public byte[] appExecuteUnordered(final byte[] bytes, final MessageContext messageContext)
     {
-        final KryoPool pool;
-        final Kryo kryo;
-        final Input input;
+        Log.getLogger().info("Received unordered message");
+        final Kryo kryo = KryoContext.borrow();
+        final Input input = new Input(bytes);
+        final Output output = KryoContext.borrowOutput();
         final byte[] returnValue;
-        try (Output output = new Output(0, 400240))
+        try
         {
-            Log.getLogger().info("Received unordered message");
-            pool = new KryoPool.Builder(getFactory()).softReferences().build();
-            kryo = pool.borrow();
-            input = new Input(bytes);
             final String reason = kryo.readObject(input, String.class);
 
             switch (reason)
@@ -194,6 +252,16 @@ public class LocalClusterSlave extends AbstractRecoverable
                     kryo.writeObject(output, Constants.READ_MESSAGE);
                     handleRelationshipRead(input, kryo, output, messageContext.getSender());
                     break;
+                case Constants.MULTI_READ_MESSAGE:
+                    Log.getLogger().info("Received multi read message");
+                    kryo.writeObject(output, Constants.READ_MESSAGE);
+                    handleMultiRead(input, kryo, output, messageContext.getSender());
+                    break;
+                case Constants.PAGE_READ_MESSAGE:
+                    Log.getLogger().info("Received page read message");
+                    kryo.writeObject(output, Constants.READ_MESSAGE);
+                    handlePageRead(input, kryo, output, messageContext.getSender());
+                    break;
                 case Constants.GET_PRIMARY:
                     Log.getLogger().info("Received GetPrimary message");
                     kryo.writeObject(output, Constants.GET_PRIMARY);
@@ -203,7 +271,6 @@ public class LocalClusterSlave extends AbstractRecoverable
                     Log.getLogger().info("Received commit message: " + input.getBuffer().length);
                     final byte[] result = handleReadOnlyCommit(input, kryo);
                     input.close();
-                    pool.release(kryo);
                     Log.getLogger().info("Return it to client: " + input.getBuffer().length + ", size: " + result.length);
                     return result;
                 case Constants.REGISTER_GLOBALLY_MESSAGE:
@@ -215,16 +282,26 @@ public class LocalClusterSlave extends AbstractRecoverable
                     handleSlaveUpdateMessage(input, output, kryo);
                     input.close();
                     return new byte[0];
+                case Constants.UPDATE_SLAVE_BATCH:
+                    final int size = kryo.readObject(input, Integer.class);
+                    Log.getLogger().info("Received " + size + " update slave messages");
+                    handleSlaveUpdateMessages(input, size, output, kryo);
+                    input.close();
+                    return new byte[0];
                 default:
                     Log.getLogger().error("Incorrect operation sent unordered to the server");
                     input.close();
                     return new byte[0];
             }
-            returnValue = output.getBuffer();
+            returnValue = output.toBytes();
             Log.getLogger().info("Return it to sender, size: " + returnValue.length);
         }
+        finally
+        {
+            KryoContext.releaseOutput(output);
+            KryoContext.release(kryo);
+        }
         input.close();
-        pool.release(kryo);
         return returnValue;
     }
 
@@ -249,18 +326,18 @@ public class LocalClusterSlave extends AbstractRecoverable
         final List writeSetX = kryo.readObject(input, ArrayList.class);
 
         //Create placeHolders.
-        final ArrayList<NodeStorage> readSetNode;
-        final ArrayList<RelationshipStorage> readsSetRelationship;
+        final ArrayList<Object> readSetNode;
+        final ArrayList<Object> readsSetRelationship;
         final ArrayList<IOperation> localWriteSet;
 
         input.close();
-        final Output output = new Output(128);
+        final Output output = KryoContext.borrowOutput();
         kryo.writeObject(output, Constants.COMMIT_RESPONSE);
 
         try
         {
-            readSetNode = (ArrayList<NodeStorage>) readsSetNodeX;
-            readsSetRelationship = (ArrayList<RelationshipStorage>) readsSetRelationshipX;
+            readSetNode = (ArrayList<Object>) readsSetNodeX;
+            readsSetRelationship = (ArrayList<Object>) readsSetRelationshipX;
             localWriteSet = (ArrayList<IOperation>) writeSetX;
         }
         catch (final Exception e)
@@ -270,12 +347,13 @@ public class LocalClusterSlave extends AbstractRecoverable
             kryo.writeObject(output, getGlobalSnapshotId());
 
             //Send abort to client and abort
-            final byte[] returnBytes = output.getBuffer();
-            output.close();
+            final byte[] returnBytes = output.toBytes();
+            KryoContext.releaseOutput(output);
             return returnBytes;
         }
 
-        if (!ConflictHandler.checkForConflict(super.getGlobalWriteSet(),
+        if (!ConflictHandler.checkForConflict(super.getVersionIndex(), super.getVersionTable(),
+                super.getGlobalWriteSet(),
                 super.getLatestWritesSet(),
                 localWriteSet,
                 readSetNode,
@@ -293,8 +371,8 @@ public class LocalClusterSlave extends AbstractRecoverable
             kryo.writeObject(output, getGlobalSnapshotId());
 
             //Send abort to client and abort
-            final byte[] returnBytes = output.getBuffer();
-            output.close();
+            final byte[] returnBytes = output.toBytes();
+            KryoContext.releaseOutput(output);
             return returnBytes;
         }
 
@@ -303,8 +381,8 @@ public class LocalClusterSlave extends AbstractRecoverable
         kryo.writeObject(output, Constants.COMMIT);
         kryo.writeObject(output, getGlobalSnapshotId());
 
-        final byte[] returnBytes = output.getBuffer();
-        output.close();
+        final byte[] returnBytes = output.toBytes();
+        KryoContext.releaseOutput(output);
         Log.getLogger().info("No conflict found, returning commit with snapShot id: " + getGlobalSnapshotId() + " size: " + returnBytes.length);
 
         return returnBytes;
@@ -363,7 +441,7 @@ public class LocalClusterSlave extends AbstractRecoverable
     }
 
     @NotNull
-    private synchronized Output handleSlaveUpdateMessage(final Input input, @NotNull final Output output, final Kryo kryo)
+    private Output handleSlaveUpdateMessage(final Input input, @NotNull final Output output, final Kryo kryo)
     {
         //Not required. Is primary already dealt with it.
         if (wrapper.getGlobalCluster() != null)
@@ -422,9 +500,11 @@ public class LocalClusterSlave extends AbstractRecoverable
             readsSetNodeX = kryo.readObject(messageInput, ArrayList.class);
             readsSetRelationshipX = kryo.readObject(messageInput, ArrayList.class);
         }
+        kryo.readObject(messageInput, Integer.class);
+        final long watermark = kryo.readObject(messageInput, Long.class);
         final ArrayList<IOperation> localWriteSet;
-        ArrayList<NodeStorage> readSetNode = new ArrayList<>();
-        ArrayList<RelationshipStorage> readsSetRelationship = new ArrayList<>();
+        ArrayList<Object> readSetNode = new ArrayList<>();
+        ArrayList<Object> readsSetRelationship = new ArrayList<>();
 
         messageInput.close();
         try
@@ -432,8 +512,8 @@ public class LocalClusterSlave extends AbstractRecoverable
             localWriteSet = (ArrayList<IOperation>) writeSet;
             if (wrapper.isGloballyVerified() && !readsSetNodeX.isEmpty() && !readsSetRelationshipX.isEmpty())
             {
-                readSetNode = (ArrayList<NodeStorage>) readsSetNodeX;
-                readsSetRelationship = (ArrayList<RelationshipStorage>) readsSetRelationshipX;
+                readSetNode = (ArrayList<Object>) readsSetNodeX;
+                readsSetRelationship = (ArrayList<Object>) readsSetRelationshipX;
             }
         }
         catch (final ClassCastException e)
@@ -443,41 +523,18 @@ public class LocalClusterSlave extends AbstractRecoverable
             return output;
         }
 
-        if (!wrapper.isGloballyVerified())
+        if (snapShotId > lastKey + MAX_PENDING_UPDATES)
         {
-            int matchingSignatures = 0;
-            for (final Map.Entry<Integer, byte[]> entry : storage.getSignatures().entrySet())
-            {
-                final RSAKeyLoader rsaLoader = new RSAKeyLoader(entry.getKey(), GLOBAL_CONFIG_LOCATION, false);
-                try
-                {
-                    if (!TOMUtil.verifySignature(rsaLoader.loadPublicKey(), storage.getMessage(), entry.getValue()))
-                    {
-                        Log.getLogger().error("Signature of server: " + entry.getKey() + " doesn't match");
-                        Log.getLogger().error(Arrays.toString(storage.getMessage()) + " : " + Arrays.toString(entry.getValue()));
-                    }
-                    else
-                    {
-                        Log.getLogger().info("Signature matches of server: " + entry.getKey());
-                        matchingSignatures++;
-                    }
-                }
-                catch (final Exception e)
-                {
-                    Log.getLogger().error("Unable to load public key on server " + id + " of server: " + entry.getKey(), e);
-                    kryo.writeObject(output, false);
-                    return output;
-                }
-            }
-
-            if (matchingSignatures < 2)
+            Log.getLogger().error("Rejecting update: " + snapShotId + " more than " + MAX_PENDING_UPDATES + " snapshots ahead of: " + lastKey + ", fetching the missed ones");
+            //The updates in between are fetched in windows the pipeline accepts, every later rejection moves the window on.
+            final long now = System.currentTimeMillis();
+            final long last = lastRejectedCatchUp.get();
+            if (now - last >= REJECTED_CATCH_UP_INTERVAL_MILLIS && lastRejectedCatchUp.compareAndSet(last, now))
             {
-                Log.getLogger().error("Something went incredibly wrong. Transaction came without correct signatures from the primary at localCluster: "
-                                + wrapper.getLocalClusterSlaveId());
-                kryo.writeObject(output, false);
-                return output;
+                requestCatchUp(lastKey + 1, Math.min(snapShotId - 1, lastKey + MAX_PENDING_UPDATES));
             }
-            Log.getLogger().info("All: " + matchingSignatures + " signatures are correct, started to commit now!");
+            kryo.writeObject(output, false);
+            return output;
         }
 
         //Code to dynamically reconfigure the local cluster!
@@ -514,44 +571,387 @@ public class LocalClusterSlave extends AbstractRecoverable
             t.start();
         }*/
 
-        if (lastKey + 1 == snapShotId && Constants.COMMIT.equals(decision))
+        //Verify in parallel on the crypto pool, the update waits in the ordered stage until all earlier snapshots have been applied.
+        final CompletableFuture<Boolean> verification;
+        if (storage.getRootMessage() != null)
+        {
+            verification = verifyInclusion(storage, kryo);
+        }
+        else
+        {
+            verification = wrapper.isGloballyVerified() ? CompletableFuture.completedFuture(true) : verifySignatures(storage.getSignatures(), storage.getMessage());
+        }
+        //A copy received again replaces one which isn't verified, only a verified copy is kept.
+        final SlaveUpdate update = new SlaveUpdate(snapShotId, decision, consensusId, watermark, localWriteSet, readSetNode, readsSetRelationship, verification);
+        if (pendingUpdates.merge(snapShotId, update, (existing, received) -> isVerified(existing) ? existing : received) != update)
+        {
+            Log.getLogger().warn("Received update: " + snapShotId + " twice.");
+        }
+        verification.whenCompleteAsync((result, error) -> runApplyStage(), applyService);
+
+        kryo.writeObject(output, true);
+        return output;
+    }
+
+    /**
+     * Verify a slave update whose signatures cover the root of its batch.
+     * The inclusion proof is checked right away, the signatures of a root are only verified once for all updates of the batch.
+     *
+     * @param storage the signature storage of the update.
+     * @param kryo    the kryo instance.
+     * @return future which is true if the proof holds and enough signatures of the root match.
+     */
+    private CompletableFuture<Boolean> verifyInclusion(final SignatureStorage storage, final Kryo kryo)
+    {
+        final byte[] rootMessage = storage.getRootMessage();
+        final byte[] root;
+        try (final Input input = new Input(rootMessage))
         {
-            if (wrapper.isGloballyVerified() && !ConflictHandler.checkForConflict(super.getGlobalWriteSet(),
-                    super.getLatestWritesSet(),
-                    new ArrayList<>(localWriteSet),
-                    readSetNode,
-                    readsSetRelationship,
-                    snapShotId,
-                    wrapper.getDataBaseAccess(), wrapper.isMultiVersion()))
+            if (!Constants.BATCH_ROOT_MESSAGE.equals(kryo.readObject(input, String.class)))
             {
-                Log.getLogger()
-                        .error("Found conflict, returning abort with timestamp: " + snapShotId + " globalSnapshot at: " + getGlobalSnapshotId() + " and writes: "
-                                + localWriteSet.size()
-                                + " and reads: " + readSetNode.size() + " + " + readsSetRelationship.size());
-                kryo.writeObject(output, false);
-                return output;
+                Log.getLogger().error("Signed message of update isn't the root of a batch");
+                return CompletableFuture.completedFuture(false);
             }
-            final RSAKeyLoader rsaLoader = new RSAKeyLoader(id, GLOBAL_CONFIG_LOCATION, false);
-            executeCommit(localWriteSet, rsaLoader, id, snapShotId, consensusId);
+            kryo.readObject(input, String.class);
+            kryo.readObject(input, Long.class);
+            kryo.readObject(input, Integer.class);
+            root = kryo.readObject(input, byte[].class);
+        }
+        catch (final RuntimeException e)
+        {
+            Log.getLogger().error("Unable to read the root of the batch", e);
+            return CompletableFuture.completedFuture(false);
+        }
+
+        if (storage.getProof() == null || !MerkleTree.verify(storage.getMessage(), storage.getLeafIndex(), storage.getLeafCount(), storage.getProof(), root))
+        {
+            Log.getLogger().error("Inclusion proof of update doesn't match the root of its batch");
+            return CompletableFuture.completedFuture(false);
+        }
+        return rootVerifications.get(ByteBuffer.wrap(rootMessage), key -> verifySignatures(storage.getSignatures(), rootMessage));
+    }
+
+    /**
+     * Verify the signatures of the global replicas of a slave update in parallel.
+     *
+     * @param signatures the signatures by the id of their replica.
+     * @param message    the signed message.
+     * @return future which is true if enough signatures match.
+     */
+    private CompletableFuture<Boolean> verifySignatures(final Map<Integer, byte[]> signatures, final byte[] message)
+    {
+        final Map<Integer, CompletableFuture<Boolean>> verifications = new HashMap<>();
+        for (final Map.Entry<Integer, byte[]> entry : signatures.entrySet())
+        {
+            verifications.put(entry.getKey(), wrapper.getCryptoService().verify(entry.getKey(), message, entry.getValue()));
+        }
 
-            long requiredKey = lastKey + 1;
-            while (buffer.containsKey(requiredKey))
+        return CompletableFuture.allOf(verifications.values().toArray(new CompletableFuture<?>[0])).thenApply(ignored ->
+        {
+            int matchingSignatures = 0;
+            for (final Map.Entry<Integer, CompletableFuture<Boolean>> entry : verifications.entrySet())
             {
-                executeCommit(buffer.remove(requiredKey), rsaLoader, id, snapShotId, consensusId);
-                requiredKey++;
+                if (entry.getValue().join())
+                {
+                    Log.getLogger().info("Signature matches of server: " + entry.getKey());
+                    matchingSignatures++;
+                }
+                else
+                {
+                    Log.getLogger().error("Signature of server: " + entry.getKey() + " doesn't match");
+                }
             }
+            return matchingSignatures >= 2;
+        });
+    }
 
-            kryo.writeObject(output, true);
-            return output;
+    /**
+     * Check if the signatures of an update have been verified successfully.
+     *
+     * @param update the update.
+     * @return true if the verification completed and enough signatures matched.
+     */
+    private static boolean isVerified(final SlaveUpdate update)
+    {
+        return update.verification.isDone() && !update.verification.isCompletedExceptionally() && update.verification.join();
+    }
+
+    /**
+     * Run the ordered stage, a slave which can't apply a certified update stops instead of silently falling behind.
+     * Only runs on the apply thread.
+     */
+    private void runApplyStage()
+    {
+        try
+        {
+            applyPendingUpdates();
         }
-        buffer.put(snapShotId, localWriteSet);
-        Log.getLogger().info("Something went wrong, missing a message: " + snapShotId + " with decision: " + decision + " lastKey: " + lastKey + " adding to buffer");
-        if(buffer.size() % 200 == 0)
+        catch (final IllegalStateException e)
         {
-            Log.getLogger().error("Missing more than: " + buffer.size() + " messages, something is broken!" + lastKey);
+            Log.getLogger().error("Stopping slave: " + id + " of local cluster: " + localClusterId, e);
+            terminate();
+        }
+    }
+
+    /**
+     * The ordered stage, applies the pending updates in snapshot order as long as the next one has been verified.
+     * An update whose verification failed is dropped and fetched again from the global replicas.
+     * Only runs on the apply thread.
+     */
+    private void applyPendingUpdates()
+    {
+        Map.Entry<Long, SlaveUpdate> next;
+        while ((next = pendingUpdates.firstEntry()) != null)
+        {
+            final long lastKey = getGlobalSnapshotId();
+            if (next.getKey() <= lastKey)
+            {
+                pendingUpdates.remove(next.getKey());
+                continue;
+            }
+
+            if (next.getKey() != lastKey + 1)
+            {
+                Log.getLogger().warn("Missing updates: " + (lastKey + 1) + " to " + (next.getKey() - 1) + ", fetching them from the global cluster");
+                requestCatchUp(lastKey + 1, next.getKey() - 1);
+                return;
+            }
+
+            final SlaveUpdate update = next.getValue();
+            if (!update.verification.isDone())
+            {
+                return;
+            }
+            pendingUpdates.remove(next.getKey(), update);
+            if (!isVerified(update))
+            {
+                Log.getLogger().error("Something went incredibly wrong. Transaction came without correct signatures from the primary at localCluster: "
+                        + wrapper.getLocalClusterSlaveId() + ", fetching update: " + next.getKey() + " again");
+                requestCatchUp(next.getKey(), next.getKey());
+                return;
+            }
+            applyUpdate(update);
+        }
+    }
+
+    /**
+     * Apply a verified slave update, certifies it first if the slaves are globally verified.
+     * A certified update which isn't a commit only advances the snapshot.
+     *
+     * @param update the update.
+     * @throws IllegalStateException if the slave finds a conflict in a certified commit, its state diverged from the global cluster.
+     */
+    private void applyUpdate(final SlaveUpdate update)
+    {
+        Log.getLogger().info("All signatures are correct, started to commit now!");
+
+        if (!Constants.COMMIT.equals(update.decision))
+        {
+            Log.getLogger().error("Received update: " + update.snapShotId + " with decision: " + update.decision + ", skipping its snapshot");
+            setGlobalSnapshotId(update.snapShotId);
+            return;
+        }
+
+        if (wrapper.isGloballyVerified() && !ConflictHandler.checkForConflict(super.getVersionIndex(), super.getVersionTable(),
+                super.getGlobalWriteSet(),
+                super.getLatestWritesSet(),
+                new ArrayList<>(update.writeSet),
+                update.readSetNode,
+                update.readSetRelationship,
+                update.snapShotId,
+                wrapper.getDataBaseAccess(), wrapper.isMultiVersion()))
+        {
+            throw new IllegalStateException("Found conflict in certified update: " + update.snapShotId + " globalSnapshot at: " + getGlobalSnapshotId() + " and writes: "
+                    + update.writeSet.size()
+                    + " and reads: " + update.readSetNode.size() + " + " + update.readSetRelationship.size());
+        }
+        if (!executeCommit(update.writeSet, update.consensusId))
+        {
+            throw new IllegalStateException("Unable to apply certified update: " + update.snapShotId + " with writes: " + update.writeSet.size());
+        }
+        compactWriteSets(update.watermark);
+    }
+
+    /**
+     * Fetch the missed updates of a range from the certified log of the global replicas, unless a fetch is running already.
+     * The returned updates enter the pipeline like received ones and are applied once the gap has been closed.
+     *
+     * @param from the first missing snapshotId.
+     * @param to   the last missing snapshotId.
+     */
+    private void requestCatchUp(final long from, final long to)
+    {
+        if (!catchingUp.compareAndSet(false, true))
+        {
+            return;
+        }
+
+        catchUpService.submit(() ->
+        {
+            try
+            {
+                catchUp(from, to);
+            }
+            catch (final RuntimeException e)
+            {
+                Log.getLogger().error("Unable to fetch missed updates: " + from + " to " + to, e);
+            }
+            finally
+            {
+                catchingUp.set(false);
+            }
+        });
+    }
+
+    /**
+     * Ask the global replicas one after the other for the missed updates until one returns them.
+     *
+     * @param from the first missing snapshotId.
+     * @param to   the last missing snapshotId.
+     */
+    private void catchUp(final long from, final long to)
+    {
+        if (globalProxy == null)
+        {
+            globalProxy = new AsynchServiceProxy(2000 + localClusterId * 100 + id, GLOBAL_CONFIG_LOCATION);
+        }
+
+        final Kryo kryo = KryoContext.borrow();
+        final Output output = KryoContext.borrowOutput();
+        try
+        {
+            kryo.writeObject(output, Constants.CATCH_UP_MESSAGE);
+            kryo.writeObject(output, from);
+            kryo.writeObject(output, to);
+            final byte[] request = output.toBytes();
+
+            final List<Integer> replicas = new ArrayList<>();
+            for (final int replica : globalProxy.getViewManager().getCurrentViewProcesses())
+            {
+                replicas.add(replica);
+            }
+            Collections.shuffle(replicas);
+
+            for (final int replica : replicas)
+            {
+                final byte[] reply = invokeGlobalReplica(replica, request);
+                if (reply != null && processCatchUpReply(reply, from, replica, kryo, output))
+                {
+                    return;
+                }
+            }
+            Log.getLogger().error("No global replica returned the missed updates: " + from + " to " + to);
+        }
+        finally
+        {
+            KryoContext.releaseOutput(output);
+            KryoContext.release(kryo);
+        }
+    }
+
+    /**
+     * Send a request to a single global replica and wait for its reply.
+     *
+     * @param replica the id of the replica.
+     * @param request the request.
+     * @return the reply or null if it didn't answer in time.
+     */
+    private byte[] invokeGlobalReplica(final int replica, final byte[] request)
+    {
+        final CompletableFuture<byte[]> reply = new CompletableFuture<>();
+        final int requestId = globalProxy.invokeAsynchRequest(request, new int[] {replica}, new ReplyListener()
+        {
+            @Override
+            public void reset()
+            {
+                //Waits for the first reply only.
+            }
+
+            @Override
+            public void replyReceived(final RequestContext requestContext, final TOMMessage tomMessage)
+            {
+                reply.complete(tomMessage.getContent());
+            }
+        }, TOMMessageType.UNORDERED_REQUEST);
+
+        try
+        {
+            return reply.get(CATCH_UP_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        catch (final InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        catch (final ExecutionException | TimeoutException e)
+        {
+            Log.getLogger().warn("Global replica: " + replica + " didn't return the missed updates", e);
+            return null;
+        }
+        finally
+        {
+            globalProxy.cleanAsynchRequest(requestId);
+        }
+    }
+
+    /**
+     * Feed the updates returned by a global replica into the pipeline, they are verified like received updates.
+     *
+     * @param reply   the reply.
+     * @param from    the first missing snapshotId.
+     * @param replica the id of the replica.
+     * @param kryo    the kryo instance.
+     * @param output  scratch output for the update handler.
+     * @return true if the replica returned at least one update.
+     */
+    private boolean processCatchUpReply(final byte[] reply, final long from, final int replica, final Kryo kryo, final Output output)
+    {
+        try (final Input input = new Input(reply))
+        {
+            if (!Constants.CATCH_UP_MESSAGE.equals(kryo.readObject(input, String.class)))
+            {
+                Log.getLogger().error("Unexpected reply to catch up of global replica: " + replica);
+                return false;
+            }
+
+            final long first = kryo.readObject(input, Long.class);
+            final int size = kryo.readObject(input, Integer.class);
+            if (size == 0)
+            {
+                if (first > from)
+                {
+                    Log.getLogger().error("Global replica: " + replica + " doesn't retain update: " + from + " anymore, oldest is: " + first);
+                }
+                return false;
+            }
+
+            Log.getLogger().info("Global replica: " + replica + " returned: " + size + " missed updates starting at: " + from);
+            handleSlaveUpdateMessages(input, size, output, kryo);
+            return true;
+        }
+    }
+
+    /**
+     * Handle several serialized update slave messages, each enters the pipeline on its own.
+     *
+     * @param input  the input holding the messages.
+     * @param size   the amount of messages.
+     * @param output scratch output for the update handler.
+     * @param kryo   the kryo instance.
+     */
+    private void handleSlaveUpdateMessages(final Input input, final int size, final Output output, final Kryo kryo)
+    {
+        for (int i = 0; i < size; i++)
+        {
+            try (final Input update = new Input(kryo.readObject(input, byte[].class)))
+            {
+                if (Constants.UPDATE_SLAVE.equals(kryo.readObject(update, String.class)))
+                {
+                    output.clear();
+                    handleSlaveUpdateMessage(update, output, kryo);
+                }
+            }
         }
-        kryo.writeObject(output, true);
-        return output;
     }
 
     @Override
@@ -576,14 +976,103 @@ public class LocalClusterSlave extends AbstractRecoverable
     }
 
     /**
-     * Send this update to all other replicas.
+     * Queue this update to be sent to all other replicas, returns right away.
      * @param message the message.
      */
     public void propagateUpdate(final byte[] message)
     {
-        while(proxy.invokeUnordered(message) == null)
+        updateQueue.add(message);
+    }
+
+    /**
+     * Get the queue of the updates sent to the other replicas.
+     *
+     * @return the queue.
+     */
+    public SlaveUpdateQueue getUpdateQueue()
+    {
+        return updateQueue;
+    }
+
+    @Override
+    public void terminate()
+    {
+        updateQueue.close();
+        catchUpService.shutdownNow();
+        super.terminate();
+    }
+
+    /**
+     * A decoded slave update on its way through the pipeline.
+     */
+    private static class SlaveUpdate
+    {
+        /**
+         * The snapshotId of the update.
+         */
+        private final long snapShotId;
+
+        /**
+         * The decision of the global cluster.
+         */
+        private final String decision;
+
+        /**
+         * The consensus ID.
+         */
+        private final int consensusId;
+
+        /**
+         * The low watermark of the global cluster when the update was certified.
+         */
+        private final long watermark;
+
+        /**
+         * The writeSet.
+         */
+        private final ArrayList<IOperation> writeSet;
+
+        /**
+         * The compact readSets, only filled if globally verified.
+         */
+        private final ArrayList<Object> readSetNode;
+        private final ArrayList<Object> readSetRelationship;
+
+        /**
+         * Future which is true if enough signatures match.
+         */
+        private final CompletableFuture<Boolean> verification;
+
+        /**
+         * Create a slave update.
+         *
+         * @param snapShotId          the snapshotId.
+         * @param decision            the decision.
+         * @param consensusId         the consensus ID.
+         * @param watermark           the low watermark of the global cluster.
+         * @param writeSet            the writeSet.
+         * @param readSetNode         the node readSet.
+         * @param readSetRelationship the relationship readSet.
+         * @param verification        the verification of the signatures.
+         */
+        SlaveUpdate(
+                final long snapShotId,
+                final String decision,
+                final int consensusId,
+                final long watermark,
+                final ArrayList<IOperation> writeSet,
+                final ArrayList<Object> readSetNode,
+                final ArrayList<Object> readSetRelationship,
+                final CompletableFuture<Boolean> verification)
         {
-            Log.getLogger().error("Slave update failed, no response, trying again!");
+            this.snapShotId = snapShotId;
+            this.decision = decision;
+            this.consensusId = consensusId;
+            this.watermark = watermark;
+            this.writeSet = writeSet;
+            this.readSetNode = readSetNode;
+            this.readSetRelationship = readSetRelationship;
+            this.verification = verification;
         }
     }
 }
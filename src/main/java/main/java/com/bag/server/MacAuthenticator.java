@@ -0,0 +1,327 @@
+package main.java.com.bag.server;
+
+import main.java.com.bag.util.Log;
+import org.jetbrains.annotations.NotNull;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Authenticates the messages of the global replicas with a vector of HMACs, one for every slave of every local cluster.
+ * Each entry uses the key shared by the sending global replica and the receiving slave only, read from keys/mackey{sender}-{cluster}-{slave}
+ * of the global config. A global replica holds the keys of all slaves and a slave the keys of all global replicas, but no node the key of a pair
+ * it isn't part of, so a slave which verified the entries of f + 1 global replicas knows a correct one sent the message.
+ * Run the main method with the global config location and the ids of the global replicas to generate the keys of all pairs,
+ * then hand every node only the files of its own pairs.
+ * Verifying an entry only takes one hash of the message, but unlike a signature it only convinces its own receiver.
+ */
+public class MacAuthenticator
+{
+    /**
+     * The file of the key of a global replica, a local cluster and a slave in the global config.
+     */
+    private static final String KEY_FILE = "/keys/mackey%d-%d-%d";
+
+    /**
+     * The config location of the local clusters.
+     */
+    private static final String LOCAL_CONFIG_LOCATION = "local%d/config";
+
+    /**
+     * The property of the replicas of a cluster.
+     */
+    private static final String INITIAL_VIEW = "system.initial.view";
+
+    /**
+     * The HMAC algorithm.
+     */
+    private static final String ALGORITHM = "HmacSHA256";
+
+    /**
+     * Size of a key and of an HMAC.
+     */
+    private static final int MAC_SIZE = 32;
+
+    /**
+     * Size of an entry, the cluster and slave id and the HMAC.
+     */
+    private static final int ENTRY_SIZE = 8 + MAC_SIZE;
+
+    /**
+     * The location of the global config.
+     */
+    private final String configLocation;
+
+    /**
+     * The id of the local cluster and of the slave in it this replica verifies for, -1 if it isn't a slave.
+     */
+    private final int localClusterId;
+    private final int localSlaveId;
+
+    /**
+     * The cluster and slave id of every receiver.
+     */
+    private final List<int[]> receivers = new ArrayList<>();
+
+    /**
+     * The cached pairwise keys by the name of their file.
+     */
+    private final ConcurrentHashMap<String, SecretKeySpec> keys = new ConcurrentHashMap<>();
+
+    /**
+     * The mac of each thread.
+     */
+    private static final ThreadLocal<Mac> MAC = ThreadLocal.withInitial(() ->
+    {
+        try
+        {
+            return Mac.getInstance(ALGORITHM);
+        }
+        catch (final GeneralSecurityException e)
+        {
+            throw new IllegalStateException(ALGORITHM + " not available", e);
+        }
+    });
+
+    /**
+     * The digest of each thread.
+     */
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() ->
+    {
+        try
+        {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch (final GeneralSecurityException e)
+        {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    });
+
+    /**
+     * Creates the authenticator, reads the slaves of all local clusters, the keys are read on their first use.
+     *
+     * @param configLocation the location of the global config.
+     * @param localClusterId the id of the local cluster of this replica.
+     * @param localSlaveId   the id of this replica in its local cluster, -1 if none.
+     */
+    public MacAuthenticator(@NotNull final String configLocation, final int localClusterId, final int localSlaveId)
+    {
+        this.configLocation = configLocation;
+        this.localClusterId = localClusterId;
+        this.localSlaveId = localSlaveId;
+        receivers.addAll(readReceivers(configLocation));
+        Log.getLogger().info("Authenticating with HMACs for " + receivers.size() + " slaves");
+    }
+
+    /**
+     * Generates a random key for every pair of a global replica and a slave.
+     *
+     * @param args the location of the global config followed by the ids of the global replicas.
+     * @throws IOException if a key can't be written.
+     */
+    public static void main(final String[] args) throws IOException
+    {
+        if (args.length < 2)
+        {
+            Log.getLogger().warn("Usage: MacAuthenticator <global config location> <global replica id>...");
+            return;
+        }
+        final int[] senders = new int[args.length - 1];
+        for (int i = 1; i < args.length; i++)
+        {
+            senders[i - 1] = Integer.parseInt(args[i]);
+        }
+        generateKeys(args[0], senders);
+    }
+
+    /**
+     * Write a new random key for every pair of the global replicas and the slaves of all local clusters.
+     *
+     * @param configLocation the location of the global config.
+     * @param senders        the ids of the global replicas.
+     * @throws IOException if a key can't be written.
+     */
+    public static void generateKeys(@NotNull final String configLocation, @NotNull final int... senders) throws IOException
+    {
+        final SecureRandom random = new SecureRandom();
+        final List<int[]> receivers = readReceivers(configLocation);
+        for (final int sender : senders)
+        {
+            for (final int[] receiver : receivers)
+            {
+                final byte[] key = new byte[MAC_SIZE];
+                random.nextBytes(key);
+                Files.write(Paths.get(configLocation + String.format(KEY_FILE, sender, receiver[0], receiver[1])), key);
+            }
+        }
+        Log.getLogger().info("Generated " + senders.length * receivers.size() + " HMAC keys in " + configLocation);
+    }
+
+    /**
+     * Read the cluster and slave id of the slaves of all local clusters.
+     *
+     * @param configLocation the location of the global config.
+     * @return the ids of every slave.
+     */
+    private static List<int[]> readReceivers(final String configLocation)
+    {
+        final List<int[]> receivers = new ArrayList<>();
+        for (final int cluster : readInitialView(configLocation))
+        {
+            for (final int slave : readInitialView(String.format(LOCAL_CONFIG_LOCATION, cluster)))
+            {
+                receivers.add(new int[] {cluster, slave});
+            }
+        }
+        return receivers;
+    }
+
+    /**
+     * Read the replicas of the initial view of a cluster.
+     *
+     * @param configLocation the config location of the cluster.
+     * @return the ids, empty if the config can't be read.
+     */
+    private static int[] readInitialView(final String configLocation)
+    {
+        final Properties properties = new Properties();
+        try (final InputStream stream = new FileInputStream(configLocation + "/system.config"))
+        {
+            properties.load(stream);
+        }
+        catch (final IOException e)
+        {
+            Log.getLogger().warn("Unable to read the view of: " + configLocation, e);
+            return new int[0];
+        }
+
+        final String view = properties.getProperty(INITIAL_VIEW, "").trim();
+        if (view.isEmpty())
+        {
+            return new int[0];
+        }
+        final String[] ids = view.split(",");
+        final int[] result = new int[ids.length];
+        for (int i = 0; i < ids.length; i++)
+        {
+            result[i] = Integer.parseInt(ids[i].trim());
+        }
+        return result;
+    }
+
+    /**
+     * Create the authenticator of a message, the HMAC of its digest for every slave.
+     *
+     * @param sender  the id of the sending global replica.
+     * @param message the message.
+     * @return the entries of all slaves.
+     * @throws IllegalStateException if the key of the sender and a slave is missing.
+     */
+    public byte[] authenticate(final int sender, @NotNull final byte[] message)
+    {
+        final byte[] digest = DIGEST.get().digest(message);
+        final ByteBuffer authenticator = ByteBuffer.allocate(receivers.size() * ENTRY_SIZE);
+        for (final int[] receiver : receivers)
+        {
+            authenticator.putInt(receiver[0]);
+            authenticator.putInt(receiver[1]);
+            authenticator.put(mac(sender, receiver[0], receiver[1], digest));
+        }
+        return authenticator.array();
+    }
+
+    /**
+     * Verify the entry of this replica in the authenticator of a message.
+     *
+     * @param sender        the id of the sending global replica.
+     * @param message       the message.
+     * @param authenticator the entries of all slaves.
+     * @return true if the entry exists and matches, false as well if the key of the sender and this replica is missing.
+     */
+    public boolean verify(final int sender, @NotNull final byte[] message, @NotNull final byte[] authenticator)
+    {
+        final ByteBuffer entries = ByteBuffer.wrap(authenticator);
+        while (entries.remaining() >= ENTRY_SIZE)
+        {
+            final int cluster = entries.getInt();
+            final int slave = entries.getInt();
+            if (cluster == localClusterId && slave == localSlaveId)
+            {
+                final byte[] expected = new byte[MAC_SIZE];
+                entries.get(expected);
+                try
+                {
+                    return MessageDigest.isEqual(expected, mac(sender, cluster, slave, DIGEST.get().digest(message)));
+                }
+                catch (final IllegalStateException e)
+                {
+                    Log.getLogger().error("Unable to verify the HMAC of global replica " + sender, e);
+                    return false;
+                }
+            }
+            entries.position(entries.position() + MAC_SIZE);
+        }
+        return false;
+    }
+
+    /**
+     * Compute the HMAC of a digest with the key of a sender and a slave.
+     *
+     * @param sender  the id of the global replica.
+     * @param cluster the id of the local cluster.
+     * @param slave   the id of the slave.
+     * @param digest  the digest of the message.
+     * @return the HMAC.
+     */
+    private byte[] mac(final int sender, final int cluster, final int slave, final byte[] digest)
+    {
+        final Mac mac = MAC.get();
+        try
+        {
+            mac.init(getKey(sender, cluster, slave));
+        }
+        catch (final GeneralSecurityException e)
+        {
+            throw new IllegalStateException("Invalid HMAC key", e);
+        }
+        return mac.doFinal(digest);
+    }
+
+    /**
+     * Get the key shared by a global replica and a slave, read from its file on the first access.
+     *
+     * @param sender  the id of the global replica.
+     * @param cluster the id of the local cluster.
+     * @param slave   the id of the slave.
+     * @return the key.
+     * @throws IllegalStateException if this replica doesn't hold the key.
+     */
+    private SecretKeySpec getKey(final int sender, final int cluster, final int slave)
+    {
+        return keys.computeIfAbsent(configLocation + String.format(KEY_FILE, sender, cluster, slave), file ->
+        {
+            try
+            {
+                return new SecretKeySpec(Files.readAllBytes(Paths.get(file)), ALGORITHM);
+            }
+            catch (final IOException e)
+            {
+                throw new IllegalStateException("No HMAC key of global replica " + sender + " and slave " + slave + " of cluster " + cluster + " in " + file, e);
+            }
+        });
+    }
+}
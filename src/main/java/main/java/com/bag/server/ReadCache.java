@@ -0,0 +1,595 @@
+package main.java.com.bag.server;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import main.java.com.bag.exceptions.OutDatedDataException;
+import main.java.com.bag.operations.CreateOperation;
+import main.java.com.bag.operations.DeleteOperation;
+import main.java.com.bag.operations.IOperation;
+import main.java.com.bag.operations.UpdateOperation;
+import main.java.com.bag.util.Constants;
+import main.java.com.bag.util.Log;
+import main.java.com.bag.util.storage.NodeStorage;
+import main.java.com.bag.util.storage.ReadKey;
+import main.java.com.bag.util.storage.RelationshipStorage;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of the results of the node and relationship reads, keyed like the {@link KeyVersionIndex}.
+ * Only reads of a node by its idx and of a relationship by its type and the idx of its endpoints are cached, other reads may match any object.
+ * An entry holds the result of a read at the latest snapshot and serves all reads at this or a later snapshot until a commit writes its key.
+ * Relationship results contain their endpoints, so the write of a node invalidates the relationships of the node as well.
+ * Reads of all relationships of a type into a node, with an empty start node, are cached as the adjacency of the node per type.
+ * The adjacency is built lazily on the first read and kept as arrays of the neighbours and relationship properties which share one end node,
+ * it is invalidated by every relationship of its type written into the node.
+ * Start with -Dbag.read.cache.size=x to bound the amount of entries, it defaults to 10000, 0 turns the cache off.
+ */
+public class ReadCache
+{
+    /**
+     * Name of the system property which bounds the cache.
+     */
+    private static final String SIZE_PROPERTY = "bag.read.cache.size";
+
+    /**
+     * Log the metrics every time this amount of reads has been served.
+     */
+    private static final long METRICS_INTERVAL = 10000;
+
+    /**
+     * Prefix of the keys of the adjacencies.
+     */
+    private static final String ADJACENCY_PREFIX = "A";
+
+    /**
+     * Separator of the parts of the adjacency keys.
+     */
+    private static final char SEPARATOR = '\u0000';
+
+    /**
+     * The maximum amount of entries.
+     */
+    private final long maximumSize = Math.max(0, Long.getLong(SIZE_PROPERTY, 10000L));
+
+    /**
+     * The cached reads by key.
+     */
+    private final Cache<String, CachedRead> cache;
+
+    /**
+     * The keys of the cached relationships by the key of their endpoints, and of the cached adjacencies by their group.
+     */
+    private final ConcurrentHashMap<String, Set<String>> relationshipsOfNode = new ConcurrentHashMap<>();
+
+    /**
+     * Amount of invalidations, a read is only cached if no invalidation happened since it started.
+     */
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /**
+     * Amount of served reads.
+     */
+    private final AtomicLong reads = new AtomicLong();
+
+    /**
+     * Creates the cache.
+     */
+    public ReadCache()
+    {
+        cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Get the key of a read which can be cached.
+     *
+     * @param identifier the node or relationship storage of the read.
+     * @return the key or null if the read may match more than one object.
+     */
+    @Nullable
+    public String keyOf(@NotNull final Object identifier)
+    {
+        if (maximumSize == 0)
+        {
+            return null;
+        }
+        if (identifier instanceof NodeStorage)
+        {
+            return isPlainNode((NodeStorage) identifier) ? ReadKey.keyOf(identifier) : null;
+        }
+        if (identifier instanceof RelationshipStorage)
+        {
+            final RelationshipStorage relationship = (RelationshipStorage) identifier;
+            if (!relationship.getProperties().isEmpty() || !isPlainNode(relationship.getEndNode()))
+            {
+                return null;
+            }
+            if (relationship.getStartNode().getProperties().isEmpty())
+            {
+                return adjacencyKeyOf(relationship);
+            }
+            return isPlainNode(relationship.getStartNode()) ? ReadKey.keyOf(identifier) : null;
+        }
+        return null;
+    }
+
+    /**
+     * Get the key of the adjacency of the end node of a relationship with its type and start label.
+     *
+     * @param relationship the relationship.
+     * @return the key or null if it has no type or the end node no idx.
+     */
+    @Nullable
+    private static String adjacencyKeyOf(final RelationshipStorage relationship)
+    {
+        final String group = adjacencyGroupOf(relationship);
+        return group == null ? null : group + SEPARATOR + relationship.getStartNode().getId();
+    }
+
+    /**
+     * Get the key all adjacencies of the end node of a relationship with its type are registered with, whatever their start label.
+     *
+     * @param relationship the relationship.
+     * @return the key or null if it has no type or the end node no idx.
+     */
+    @Nullable
+    private static String adjacencyGroupOf(final RelationshipStorage relationship)
+    {
+        final Object endIdx = relationship.getEndNode().getProperty(Constants.TAG_IDX);
+        if (relationship.getId().isEmpty() || endIdx == null)
+        {
+            return null;
+        }
+        return ADJACENCY_PREFIX + SEPARATOR + relationship.getId() + SEPARATOR + endIdx;
+    }
+
+    /**
+     * Checks if a node pattern only consists of its idx.
+     *
+     * @param node the node pattern.
+     * @return true if so.
+     */
+    private static boolean isPlainNode(final NodeStorage node)
+    {
+        return node.getProperties().size() == 1 && node.getProperty(Constants.TAG_IDX) != null;
+    }
+
+    /**
+     * Get the cached result of a read.
+     *
+     * @param key        the key of the read.
+     * @param snapshotId the snapshot the read is at.
+     * @return the result or null if none is cached or it has been cached at a later snapshot.
+     */
+    @Nullable
+    public List<Object> get(@NotNull final String key, final long snapshotId)
+    {
+        final CachedRead cached = cache.getIfPresent(key);
+        logMetrics();
+        return cached == null || snapshotId < cached.snapshotId ? null : cached.getResult();
+    }
+
+    /**
+     * Read several identifiers at one snapshot, the cached ones are served from the cache and only the others are loaded from the database.
+     * The loaded results are cached like single reads, only if they are of the latest snapshot and no invalidation happened since the start.
+     *
+     * @param identifiers the node and relationship storages to read.
+     * @param snapshotId  the snapshot the reads are at.
+     * @param latest      true if the snapshot is the latest one, checked before the read.
+     * @param loader      loads the results of the identifiers which are not cached.
+     * @return the results in the order of the identifiers, must not be modified.
+     * @throws OutDatedDataException if the loader found outdated data.
+     */
+    public List<Object> readAll(@NotNull final List<Object> identifiers, final long snapshotId, final boolean latest, @NotNull final Loader loader)
+            throws OutDatedDataException
+    {
+        final long invalidationsBefore = getInvalidations();
+        final List<List<Object>> results = new ArrayList<>(identifiers.size());
+        final List<Object> misses = new ArrayList<>();
+        final List<String> missedKeys = new ArrayList<>();
+        for (final Object identifier : identifiers)
+        {
+            final String key = keyOf(identifier);
+            final List<Object> cached = key == null ? null : get(key, snapshotId);
+            if (cached == null)
+            {
+                misses.add(identifier);
+                missedKeys.add(key);
+            }
+            results.add(cached);
+        }
+
+        if (!misses.isEmpty())
+        {
+            final Iterator<List<Object>> loaded = loader.load(misses).iterator();
+            final Iterator<String> keys = missedKeys.iterator();
+            for (int i = 0; i < results.size(); i++)
+            {
+                if (results.get(i) == null)
+                {
+                    final List<Object> result = loaded.next();
+                    final String key = keys.next();
+                    if (latest && key != null)
+                    {
+                        put(key, snapshotId, result, invalidationsBefore);
+                    }
+                    results.set(i, result);
+                }
+            }
+        }
+
+        final List<Object> objects = new ArrayList<>();
+        for (final List<Object> result : results)
+        {
+            objects.addAll(result);
+        }
+        return objects;
+    }
+
+    /**
+     * Get the amount of invalidations so far, has to be taken before reading the database.
+     *
+     * @return the amount.
+     */
+    public long getInvalidations()
+    {
+        return invalidations.get();
+    }
+
+    /**
+     * Cache the result of a read of the latest snapshot.
+     *
+     * @param key           the key of the read.
+     * @param snapshotId    the snapshot of the read.
+     * @param result        the result, not modified anymore.
+     * @param invalidations the amount of invalidations before the database has been read.
+     */
+    public void put(@NotNull final String key, final long snapshotId, @NotNull final List<Object> result, final long invalidations)
+    {
+        if (this.invalidations.get() != invalidations)
+        {
+            return;
+        }
+
+        final CachedRead cached = key.startsWith(ADJACENCY_PREFIX) ? CachedAdjacency.of(snapshotId, result) : new CachedRead(snapshotId, result);
+        cache.put(key, cached);
+        linkRelationship(key, cached);
+
+        //A commit or sweep in between may have missed the entry.
+        if (this.invalidations.get() != invalidations)
+        {
+            cache.asMap().remove(key, cached);
+        }
+
+        //Every live entry is registered with its endpoints, adjacencies with all their neighbours and their group, sweep them once they fill up.
+        if (relationshipsOfNode.size() > 4 * maximumSize)
+        {
+            sweep();
+        }
+    }
+
+    /**
+     * Remove the relationships which left the cache from their endpoints.
+     * Counts as invalidation, so reads being cached meanwhile don't lose their registration.
+     */
+    private synchronized void sweep()
+    {
+        invalidations.incrementAndGet();
+        final Map<String, CachedRead> entries = cache.asMap();
+        relationshipsOfNode.values().removeIf(relationships ->
+        {
+            relationships.removeIf(key -> !entries.containsKey(key));
+            return relationships.isEmpty();
+        });
+    }
+
+    /**
+     * Invalidate the entries of the objects written by an applied writeSet.
+     *
+     * @param localWriteSet the applied operations.
+     */
+    public void invalidate(@NotNull final List<IOperation> localWriteSet)
+    {
+        if (maximumSize == 0)
+        {
+            return;
+        }
+        invalidations.incrementAndGet();
+        for (final IOperation operation : localWriteSet)
+        {
+            if (operation instanceof CreateOperation)
+            {
+                invalidate(((CreateOperation) operation).getObject());
+            }
+            else if (operation instanceof DeleteOperation)
+            {
+                invalidate(((DeleteOperation) operation).getObject());
+            }
+            else if (operation instanceof UpdateOperation)
+            {
+                final UpdateOperation<?> update = (UpdateOperation<?>) operation;
+                invalidate(update.getKey());
+
+                //If the idx of a node changes the new idx has been written as well.
+                if (ReadKey.keyOf(update.getValue()) != null)
+                {
+                    invalidate(update.getValue());
+                }
+            }
+            else
+            {
+                clear();
+            }
+        }
+        invalidations.incrementAndGet();
+    }
+
+    /**
+     * Invalidate the entry of a written storage and the relationships of a written node.
+     * Storages which can't be keyed may have matched any object, then the whole cache is dropped.
+     *
+     * @param storage the written storage.
+     */
+    private void invalidate(final Object storage)
+    {
+        final String key = ReadKey.keyOf(storage);
+        if (key == null)
+        {
+            if (storage instanceof NodeStorage || storage instanceof RelationshipStorage)
+            {
+                clear();
+            }
+            return;
+        }
+
+        cache.invalidate(key);
+        final String linkKey = storage instanceof RelationshipStorage ? adjacencyGroupOf((RelationshipStorage) storage) : key;
+        if (linkKey != null)
+        {
+            final Set<String> relationships = relationshipsOfNode.remove(linkKey);
+            if (relationships != null)
+            {
+                cache.invalidateAll(relationships);
+            }
+        }
+    }
+
+    /**
+     * Drop all entries.
+     */
+    public void clear()
+    {
+        invalidations.incrementAndGet();
+        cache.invalidateAll();
+        relationshipsOfNode.clear();
+    }
+
+    /**
+     * Register a cached relationship with its endpoints.
+     *
+     * @param key    the key of the relationship.
+     * @param cached the cached read.
+     */
+    private void linkRelationship(final String key, final CachedRead cached)
+    {
+        if (key.startsWith(ADJACENCY_PREFIX))
+        {
+            link(key.substring(0, key.lastIndexOf(SEPARATOR)), key);
+        }
+
+        if (cached instanceof CachedAdjacency)
+        {
+            final CachedAdjacency adjacency = (CachedAdjacency) cached;
+            link(ReadKey.keyOf(adjacency.end), key);
+            for (final NodeStorage neighbour : adjacency.neighbours)
+            {
+                link(ReadKey.keyOf(neighbour), key);
+            }
+            return;
+        }
+
+        for (final Object storage : cached.getResult())
+        {
+            if (storage instanceof RelationshipStorage)
+            {
+                final RelationshipStorage relationship = (RelationshipStorage) storage;
+                link(ReadKey.keyOf(relationship.getStartNode()), key);
+                link(ReadKey.keyOf(relationship.getEndNode()), key);
+            }
+        }
+    }
+
+    /**
+     * Register a relationship with one endpoint.
+     *
+     * @param nodeKey the key of the endpoint, may be null.
+     * @param key     the key of the relationship.
+     */
+    private void link(@Nullable final String nodeKey, final String key)
+    {
+        if (nodeKey != null)
+        {
+            relationshipsOfNode.computeIfAbsent(nodeKey, k -> ConcurrentHashMap.newKeySet()).add(key);
+        }
+    }
+
+    /**
+     * Get the hit, miss and eviction counts.
+     *
+     * @return the statistics.
+     */
+    public CacheStats getStats()
+    {
+        return cache.stats();
+    }
+
+    /**
+     * Log the metrics every few reads.
+     */
+    private void logMetrics()
+    {
+        if (reads.incrementAndGet() % METRICS_INTERVAL == 0)
+        {
+            final CacheStats stats = cache.stats();
+            Log.getLogger().info("Read cache hits: " + stats.hitCount() + ", misses: " + stats.missCount() + ", hit rate: " + stats.hitRate()
+                    + ", evictions: " + stats.evictionCount() + ", size: " + cache.estimatedSize());
+        }
+    }
+
+    /**
+     * Loads the reads which are not cached from the database.
+     */
+    @FunctionalInterface
+    public interface Loader
+    {
+        /**
+         * Read the identifiers from the database.
+         *
+         * @param identifiers the node and relationship storages to read.
+         * @return the result of every identifier, in their order.
+         * @throws OutDatedDataException if the database found outdated data.
+         */
+        List<List<Object>> load(List<Object> identifiers) throws OutDatedDataException;
+    }
+
+    /**
+     * The result of a read with the snapshot it has been read at.
+     */
+    private static class CachedRead
+    {
+        /**
+         * The snapshot of the read.
+         */
+        private final long snapshotId;
+
+        /**
+         * The read nodes and relationships.
+         */
+        private final List<Object> result;
+
+        /**
+         * Creates a cached read.
+         *
+         * @param snapshotId the snapshot of the read.
+         * @param result     the read nodes and relationships, null if kept in another form.
+         */
+        private CachedRead(final long snapshotId, @Nullable final List<Object> result)
+        {
+            this.snapshotId = snapshotId;
+            this.result = result;
+        }
+
+        /**
+         * Get the read nodes and relationships.
+         *
+         * @return the result.
+         */
+        List<Object> getResult()
+        {
+            return result;
+        }
+    }
+
+    /**
+     * The adjacency of a node with one relationship type, the relationships share the end node and type
+     * and only the neighbours and relationship properties are kept, in arrays.
+     */
+    private static final class CachedAdjacency extends CachedRead
+    {
+        /**
+         * The type of the relationships.
+         */
+        private final String type;
+
+        /**
+         * The node the relationships end at.
+         */
+        private final NodeStorage end;
+
+        /**
+         * The nodes the relationships start at.
+         */
+        private final NodeStorage[] neighbours;
+
+        /**
+         * The properties of the relationships, null if empty.
+         */
+        private final Map<?, ?>[] properties;
+
+        /**
+         * Creates a cached adjacency.
+         *
+         * @param snapshotId the snapshot of the read.
+         * @param type       the type of the relationships.
+         * @param end        the node the relationships end at.
+         * @param neighbours the nodes the relationships start at.
+         * @param properties the properties of the relationships.
+         */
+        private CachedAdjacency(final long snapshotId, final String type, final NodeStorage end, final NodeStorage[] neighbours, final Map<?, ?>[] properties)
+        {
+            super(snapshotId, null);
+            this.type = type;
+            this.end = end;
+            this.neighbours = neighbours;
+            this.properties = properties;
+        }
+
+        /**
+         * Compact the result of an adjacency read, it is kept as is if the relationships don't share the type and end node.
+         *
+         * @param snapshotId the snapshot of the read.
+         * @param result     the read relationships.
+         * @return the cached read.
+         */
+        private static CachedRead of(final long snapshotId, final List<Object> result)
+        {
+            if (result.isEmpty() || !(result.get(0) instanceof RelationshipStorage))
+            {
+                return new CachedRead(snapshotId, result);
+            }
+
+            final RelationshipStorage first = (RelationshipStorage) result.get(0);
+            final NodeStorage[] neighbours = new NodeStorage[result.size()];
+            final Map<?, ?>[] properties = new Map<?, ?>[result.size()];
+            for (int i = 0; i < neighbours.length; i++)
+            {
+                final Object storage = result.get(i);
+                if (!(storage instanceof RelationshipStorage)
+                        || !first.getId().equals(((RelationshipStorage) storage).getId())
+                        || !first.getEndNode().equals(((RelationshipStorage) storage).getEndNode()))
+                {
+                    return new CachedRead(snapshotId, result);
+                }
+                final RelationshipStorage relationship = (RelationshipStorage) storage;
+                neighbours[i] = relationship.getStartNode();
+                properties[i] = relationship.getProperties().isEmpty() ? null : relationship.getProperties();
+            }
+            return new CachedAdjacency(snapshotId, first.getId(), first.getEndNode(), neighbours, properties);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        List<Object> getResult()
+        {
+            final List<Object> result = new ArrayList<>(neighbours.length);
+            for (int i = 0; i < neighbours.length; i++)
+            {
+                result.add(properties[i] == null ? new RelationshipStorage(type, neighbours[i], end)
+                        : new RelationshipStorage(type, (Map<String, Object>) properties[i], neighbours[i], end));
+            }
+            return result;
+        }
+    }
+}
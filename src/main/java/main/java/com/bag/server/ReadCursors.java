@@ -0,0 +1,236 @@
+package main.java.com.bag.server;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import main.java.com.bag.util.Constants;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Splits the results of the reads into pages, a reply only carries one page and a continuation token to request the next one.
+ * The remaining results are kept as an open cursor of the reading client, bound to the snapshot they have been read at,
+ * so all pages of a read belong to the same snapshot even if commits happen in between.
+ * Cursors which aren't continued expire and the oldest ones are dropped once too many are open, the client has to abort then.
+ * Start with -Dbag.read.page.size=x to set the amount of objects in a page, it defaults to 1000, 0 turns the paging off,
+ * with -Dbag.read.cursor.timeout=x to set the milliseconds a cursor stays open, it defaults to 30000,
+ * and with -Dbag.read.cursors=x to bound the amount of open cursors, it defaults to 1000.
+ */
+public class ReadCursors
+{
+    /**
+     * Name of the system property of the page size.
+     */
+    private static final String PAGE_SIZE_PROPERTY = "bag.read.page.size";
+
+    /**
+     * Name of the system property of the time a cursor stays open.
+     */
+    private static final String TIMEOUT_PROPERTY = "bag.read.cursor.timeout";
+
+    /**
+     * Name of the system property which bounds the open cursors.
+     */
+    private static final String CURSORS_PROPERTY = "bag.read.cursors";
+
+    /**
+     * The amount of objects in a page.
+     */
+    private final int pageSize = Math.max(0, Integer.getInteger(PAGE_SIZE_PROPERTY, 1000));
+
+    /**
+     * The open cursors by their token.
+     */
+    private final Cache<Long, Cursor> cursors = Caffeine.newBuilder()
+            .expireAfterAccess(Math.max(1, Long.getLong(TIMEOUT_PROPERTY, 30000L)), TimeUnit.MILLISECONDS)
+            .maximumSize(Math.max(1, Long.getLong(CURSORS_PROPERTY, 1000L)))
+            .build();
+
+    /**
+     * The last handed out token.
+     */
+    private final AtomicLong lastToken = new AtomicLong();
+
+    /**
+     * Get the first page of a read, opens a cursor if there are more.
+     *
+     * @param clientId   the id of the reading client.
+     * @param snapshotId the snapshot the result has been read at.
+     * @param result     the read nodes and relationships, must not be modified afterwards.
+     * @return the page.
+     */
+    public Page open(final int clientId, final long snapshotId, @NotNull final List<Object> result)
+    {
+        if (pageSize == 0 || result.size() <= pageSize)
+        {
+            return new Page(result, snapshotId, Constants.NO_CURSOR);
+        }
+        return advance(lastToken.incrementAndGet(), new Cursor(clientId, snapshotId, result, 0));
+    }
+
+    /**
+     * Get the next page of an open cursor.
+     *
+     * @param clientId the id of the reading client.
+     * @param token    the continuation token of the last page.
+     * @return the page or null if the cursor expired or belongs to another client.
+     */
+    @Nullable
+    public Page next(final int clientId, final long token)
+    {
+        final Cursor cursor = cursors.getIfPresent(token);
+        if (cursor == null || cursor.clientId != clientId || !cursors.asMap().remove(token, cursor))
+        {
+            return null;
+        }
+        return advance(token, cursor);
+    }
+
+    /**
+     * Take the next page of a cursor and keep the cursor open if results remain.
+     *
+     * @param token  the token of the cursor.
+     * @param cursor the cursor.
+     * @return the page.
+     */
+    private Page advance(final long token, final Cursor cursor)
+    {
+        final int end = Math.min(cursor.result.size(), cursor.offset + pageSize);
+        final List<Object> page = new ArrayList<>(cursor.result.subList(cursor.offset, end));
+        if (end == cursor.result.size())
+        {
+            return new Page(page, cursor.snapshotId, Constants.NO_CURSOR);
+        }
+        cursors.put(token, new Cursor(cursor.clientId, cursor.snapshotId, cursor.result, end));
+        return new Page(page, cursor.snapshotId, token);
+    }
+
+    /**
+     * Get the amount of open cursors.
+     *
+     * @return the amount.
+     */
+    public long size()
+    {
+        return cursors.estimatedSize();
+    }
+
+    /**
+     * Close all cursors, the snapshots they are bound to can't be read anymore.
+     */
+    public void clear()
+    {
+        cursors.invalidateAll();
+    }
+
+    /**
+     * A page of a read.
+     */
+    public static class Page
+    {
+        /**
+         * The nodes and relationships of the page.
+         */
+        private final List<Object> objects;
+
+        /**
+         * The snapshot the page has been read at.
+         */
+        private final long snapshotId;
+
+        /**
+         * The token to request the next page.
+         */
+        private final long token;
+
+        /**
+         * Creates a page.
+         *
+         * @param objects    the nodes and relationships.
+         * @param snapshotId the snapshot of the page.
+         * @param token      the continuation token, {@link Constants#NO_CURSOR} on the last page.
+         */
+        private Page(final List<Object> objects, final long snapshotId, final long token)
+        {
+            this.objects = objects;
+            this.snapshotId = snapshotId;
+            this.token = token;
+        }
+
+        /**
+         * Get the nodes and relationships of the page.
+         *
+         * @return the objects.
+         */
+        public List<Object> getObjects()
+        {
+            return objects;
+        }
+
+        /**
+         * Get the snapshot the page has been read at.
+         *
+         * @return the snapshotId.
+         */
+        public long getSnapshotId()
+        {
+            return snapshotId;
+        }
+
+        /**
+         * Get the token to request the next page.
+         *
+         * @return the token, {@link Constants#NO_CURSOR} on the last page.
+         */
+        public long getToken()
+        {
+            return token;
+        }
+    }
+
+    /**
+     * The remaining results of a read, replaced on every page.
+     */
+    private static class Cursor
+    {
+        /**
+         * The id of the reading client.
+         */
+        private final int clientId;
+
+        /**
+         * The snapshot the results have been read at.
+         */
+        private final long snapshotId;
+
+        /**
+         * All results of the read.
+         */
+        private final List<Object> result;
+
+        /**
+         * The index of the first result of the next page.
+         */
+        private final int offset;
+
+        /**
+         * Creates a cursor.
+         *
+         * @param clientId   the id of the reading client.
+         * @param snapshotId the snapshot of the results.
+         * @param result     all results.
+         * @param offset     the index of the next page.
+         */
+        private Cursor(final int clientId, final long snapshotId, final List<Object> result, final int offset)
+        {
+            this.clientId = clientId;
+            this.snapshotId = snapshotId;
+            this.result = result;
+            this.offset = offset;
+        }
+    }
+}
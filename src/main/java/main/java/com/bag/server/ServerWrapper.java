@@ -1,6 +1,5 @@
 package main.java.com.bag.server;
 
-import com.esotericsoftware.kryo.pool.KryoFactory;
 import main.java.com.bag.instrumentations.ServerInstrumentation;
 import main.java.com.bag.database.interfaces.IDatabaseAccess;
 import main.java.com.bag.main.DatabaseLoader;
@@ -10,6 +9,9 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.Scanner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Server wrapper class which will contain the instance of the local cluster and global cluster.
@@ -21,6 +23,21 @@ public class ServerWrapper
      */
     private static final String INVALID_ARGUMENTS = "Invalid program arguments, terminating server, expecting: <serverId> <DBInstance> <localSlaveId> <primaryID> <actsInGlobalCluster> [logging] [multiVersion] [globallyVerified]";
 
+    /**
+     * Name of the location of the global config.
+     */
+    private static final String GLOBAL_CONFIG_LOCATION = "global/config";
+
+    /**
+     * Name of the system property which sizes the read pool.
+     */
+    private static final String READ_THREADS_PROPERTY = "bag.read.threads";
+
+    /**
+     * Signs and verifies the messages of the global replicas, shared by the global and local cluster.
+     */
+    private final CryptoService cryptoService;
+
     /**
      * If the server operates under multiVersion mode or not.
      */
@@ -59,9 +76,19 @@ public class ServerWrapper
 
 
     /**
-     * The database instance.
+     * The database instance, written once after the clusters have been started which may already read it.
      */
-    private final IDatabaseAccess databaseAccess;
+    private volatile IDatabaseAccess databaseAccess;
+
+    /**
+     * The amount of threads of the read pool.
+     */
+    private final int readThreads = Math.max(1, Integer.getInteger(READ_THREADS_PROPERTY, Runtime.getRuntime().availableProcessors()));
+
+    /**
+     * The pool reading from the database concurrently, start with -Dbag.read.threads=x to size it, it defaults to the amount of processors.
+     */
+    private final ExecutorService readService;
 
     /**
      * Creates a serverWrapper which contains the instances of the global and local clusters.
@@ -84,6 +111,14 @@ public class ServerWrapper
         final ServerInstrumentation instrumentation = new ServerInstrumentation(globalServerId);
         this.globalServerId = globalServerId;
         this.localClusterSlaveId = localClusterSlaveId;
+        this.cryptoService = new CryptoService(GLOBAL_CONFIG_LOCATION, initialLeaderId, localClusterSlaveId);
+        final AtomicInteger counter = new AtomicInteger();
+        this.readService = Executors.newFixedThreadPool(readThreads, runnable ->
+        {
+            final Thread thread = new Thread(runnable, "read-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
         lastTransactionId = 0;
 
         if(isPrimary)
@@ -108,11 +143,18 @@ public class ServerWrapper
             Log.getLogger().error("Finished turning on local cluster slave with id: " + localClusterSlaveId);
         }
 
-        final KryoFactory pool = globalCluster != null ? globalCluster.getFactory() : localCluster.getFactory();
-
-        databaseAccess = DatabaseLoader.instantiateDBAccess(instance, globalServerId, multiVersion, pool);
+        databaseAccess = DatabaseLoader.instantiateDBAccess(instance, globalServerId, multiVersion);
         databaseAccess.start();
 
+        if (globalCluster != null)
+        {
+            globalCluster.installPendingSnapshot();
+        }
+        if (localCluster != null)
+        {
+            localCluster.installPendingSnapshot();
+        }
+
         if(isPrimary && localClusterSlaveId != -1)
         {
             localCluster.setPrimary(true);
@@ -126,11 +168,29 @@ public class ServerWrapper
      * Get an instance of the dataBaseAccess.
      * @return the instance.
      */
-    public synchronized IDatabaseAccess getDataBaseAccess()
+    public IDatabaseAccess getDataBaseAccess()
     {
         return this.databaseAccess;
     }
 
+    /**
+     * Get the pool reading from the database concurrently.
+     * @return the executor.
+     */
+    public ExecutorService getReadService()
+    {
+        return readService;
+    }
+
+    /**
+     * Get the amount of threads of the read pool.
+     * @return the amount.
+     */
+    public int getReadThreads()
+    {
+        return readThreads;
+    }
+
     /**
      * Get the global cluster in this wrapper.
      * @return the global cluster.
@@ -141,6 +201,15 @@ public class ServerWrapper
         return this.globalCluster;
     }
 
+    /**
+     * Get the service which signs and verifies the messages of the global replicas.
+     * @return the crypto service.
+     */
+    public CryptoService getCryptoService()
+    {
+        return cryptoService;
+    }
+
     /**
      * Getter to check if multiVersion.
      * @return true if so.
@@ -199,6 +268,8 @@ public class ServerWrapper
         {
             localCluster.terminate();
         }
+        cryptoService.shutdown();
+        readService.shutdownNow();
     }
 
     /**
@@ -0,0 +1,370 @@
+package main.java.com.bag.server;
+
+import bftsmart.communication.client.ReplyListener;
+import bftsmart.tom.AsynchServiceProxy;
+import bftsmart.tom.RequestContext;
+import bftsmart.tom.core.messages.TOMMessage;
+import bftsmart.tom.core.messages.TOMMessageType;
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Output;
+import main.java.com.bag.util.Constants;
+import main.java.com.bag.util.KryoContext;
+import main.java.com.bag.util.Log;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Outbound queue of the signed updates a global replica sends to the slaves of its local cluster.
+ * Updates which queued up while earlier ones were in flight are coalesced into one message, at most a few messages are in flight at once
+ * and unconfirmed messages are resent with exponential backoff. A slow local cluster only grows its own queue instead of blocking the global replica.
+ */
+public class SlaveUpdateQueue
+{
+    /**
+     * Maximum amount of updates coalesced into one message.
+     */
+    private static final int MAX_BATCH_UPDATES = 64;
+
+    /**
+     * Maximum amount of messages in flight.
+     */
+    private static final int MAX_IN_FLIGHT = 4;
+
+    /**
+     * Time to wait for the slaves to confirm a message before resending it.
+     */
+    private static final long TIMEOUT_MILLIS = 2000;
+
+    /**
+     * Backoff before the first resend, doubles with every further one.
+     */
+    private static final long MIN_BACKOFF_MILLIS = 50;
+
+    /**
+     * Maximum backoff between two resends.
+     */
+    private static final long MAX_BACKOFF_MILLIS = 5000;
+
+    /**
+     * Log the metrics every time this amount of messages has been confirmed.
+     */
+    private static final long METRICS_INTERVAL = 1000;
+
+    /**
+     * The proxy of the local cluster.
+     */
+    private final AsynchServiceProxy proxy;
+
+    /**
+     * The updates waiting to be sent.
+     */
+    private final LinkedBlockingQueue<byte[]> updates = new LinkedBlockingQueue<>();
+
+    /**
+     * Permits of the messages which may be in flight.
+     */
+    private final Semaphore window = new Semaphore(MAX_IN_FLIGHT);
+
+    /**
+     * Timer of the timeouts and resends.
+     */
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable ->
+    {
+        final Thread thread = new Thread(runnable, "slave-update-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * The thread coalescing and sending the updates.
+     */
+    private final Thread sender;
+
+    /**
+     * Metrics, the messages in flight, the deepest the queue has been, the confirmed messages and updates and the resends.
+     */
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+    private final AtomicLong sentMessages = new AtomicLong();
+    private final AtomicLong sentUpdates = new AtomicLong();
+    private final AtomicLong resends = new AtomicLong();
+
+    /**
+     * Creates the queue and starts sending.
+     *
+     * @param proxy the proxy of the local cluster.
+     */
+    public SlaveUpdateQueue(@NotNull final AsynchServiceProxy proxy)
+    {
+        this.proxy = proxy;
+        this.sender = new Thread(this::send, "slave-update-sender");
+        this.sender.setDaemon(true);
+        this.sender.start();
+    }
+
+    /**
+     * Queue a signed update, it is sent after all updates queued before.
+     *
+     * @param update the serialized update message.
+     */
+    public void add(@NotNull final byte[] update)
+    {
+        updates.add(update);
+        maxQueueDepth.accumulateAndGet(updates.size(), Math::max);
+    }
+
+    /**
+     * Takes the queued updates as long as there is room in the window and sends them.
+     */
+    private void send()
+    {
+        final List<byte[]> batch = new ArrayList<>(MAX_BATCH_UPDATES);
+        while (!Thread.currentThread().isInterrupted())
+        {
+            try
+            {
+                window.acquire();
+                batch.add(updates.take());
+            }
+            catch (final InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            updates.drainTo(batch, MAX_BATCH_UPDATES - 1);
+
+            inFlight.incrementAndGet();
+            new PendingMessage(serialize(batch), batch.size()).invoke();
+            batch.clear();
+        }
+    }
+
+    /**
+     * Serializes a batch, a single update is sent as is.
+     *
+     * @param batch the updates.
+     * @return the message.
+     */
+    private static byte[] serialize(final List<byte[]> batch)
+    {
+        if (batch.size() == 1)
+        {
+            return batch.get(0);
+        }
+
+        final Kryo kryo = KryoContext.borrow();
+        final Output output = KryoContext.borrowOutput();
+        kryo.writeObject(output, Constants.UPDATE_SLAVE_BATCH);
+        kryo.writeObject(output, batch.size());
+        for (final byte[] update : batch)
+        {
+            kryo.writeObject(output, update);
+        }
+
+        final byte[] message = output.toBytes();
+        KryoContext.releaseOutput(output);
+        KryoContext.release(kryo);
+        return message;
+    }
+
+    /**
+     * Get the amount of updates waiting to be sent.
+     *
+     * @return the depth of the queue.
+     */
+    public int getQueueDepth()
+    {
+        return updates.size();
+    }
+
+    /**
+     * Get the deepest the queue has been.
+     *
+     * @return the maximum depth.
+     */
+    public int getMaxQueueDepth()
+    {
+        return maxQueueDepth.get();
+    }
+
+    /**
+     * Get the amount of messages which haven't been confirmed yet.
+     *
+     * @return the amount.
+     */
+    public int getInFlight()
+    {
+        return inFlight.get();
+    }
+
+    /**
+     * Get the amount of messages which have been resent.
+     *
+     * @return the amount.
+     */
+    public long getResends()
+    {
+        return resends.get();
+    }
+
+    /**
+     * Stop sending, queued updates are dropped.
+     */
+    public void close()
+    {
+        sender.interrupt();
+        timer.shutdownNow();
+    }
+
+    /**
+     * A message in flight, resent until enough slaves confirmed it.
+     */
+    private class PendingMessage implements ReplyListener
+    {
+        /**
+         * The message.
+         */
+        private final byte[] message;
+
+        /**
+         * The amount of updates in it.
+         */
+        private final int size;
+
+        /**
+         * The slaves which confirmed it, in any of the attempts.
+         */
+        private final Set<Integer> confirmed = new HashSet<>();
+
+        /**
+         * The amount of resends so far.
+         */
+        private int attempt = 0;
+
+        /**
+         * The id of the request of the current attempt.
+         */
+        private int requestId = -1;
+
+        /**
+         * The timeout of the current attempt.
+         */
+        private ScheduledFuture<?> timeout;
+
+        /**
+         * If enough slaves confirmed it.
+         */
+        private boolean done = false;
+
+        /**
+         * Creates a message.
+         *
+         * @param message the message.
+         * @param size    the amount of updates in it.
+         */
+        private PendingMessage(final byte[] message, final int size)
+        {
+            this.message = message;
+            this.size = size;
+        }
+
+        /**
+         * Send the message to all slaves and start the timeout.
+         */
+        private synchronized void invoke()
+        {
+            if (done)
+            {
+                return;
+            }
+            try
+            {
+                requestId = proxy.invokeAsynchRequest(message, this, TOMMessageType.UNORDERED_REQUEST);
+            }
+            catch (final RuntimeException e)
+            {
+                Log.getLogger().error("Unable to send slave update", e);
+            }
+
+            try
+            {
+                timeout = timer.schedule(this::resend, TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            }
+            catch (final RejectedExecutionException e)
+            {
+                Log.getLogger().warn("Slave update queue closed, dropping message");
+            }
+        }
+
+        /**
+         * Resend the message after the backoff, the window stays occupied until it has been confirmed.
+         */
+        private synchronized void resend()
+        {
+            if (done)
+            {
+                return;
+            }
+            proxy.cleanAsynchRequest(requestId);
+
+            final long backoff = Math.min(MAX_BACKOFF_MILLIS, MIN_BACKOFF_MILLIS << Math.min(attempt, 16));
+            attempt++;
+            resends.incrementAndGet();
+            Log.getLogger().warn("Slave update of " + size + " updates not confirmed, resending in " + backoff + "ms, queued: " + getQueueDepth());
+
+            try
+            {
+                timer.schedule(this::invoke, backoff, TimeUnit.MILLISECONDS);
+            }
+            catch (final RejectedExecutionException e)
+            {
+                Log.getLogger().warn("Slave update queue closed, dropping message");
+            }
+        }
+
+        @Override
+        public void reset()
+        {
+            //Confirmations of earlier attempts stay valid.
+        }
+
+        @Override
+        public synchronized void replyReceived(final RequestContext requestContext, final TOMMessage tomMessage)
+        {
+            if (done)
+            {
+                proxy.cleanAsynchRequest(requestContext.getReqId());
+                return;
+            }
+
+            confirmed.add(tomMessage.getSender());
+            if (confirmed.size() < (proxy.getViewManager().getCurrentViewN() + proxy.getViewManager().getCurrentViewF()) / 2 + 1)
+            {
+                return;
+            }
+
+            done = true;
+            if (timeout != null)
+            {
+                timeout.cancel(false);
+            }
+            proxy.cleanAsynchRequest(requestContext.getReqId());
+            inFlight.decrementAndGet();
+            window.release();
+
+            sentUpdates.addAndGet(size);
+            if (sentMessages.incrementAndGet() % METRICS_INTERVAL == 0)
+            {
+                Log.getLogger().info("Slave updates sent: " + sentUpdates.get() + " in messages: " + sentMessages.get() + ", queued: " + getQueueDepth()
+                        + ", max queued: " + getMaxQueueDepth() + ", in flight: " + getInFlight() + ", resends: " + getResends());
+            }
+        }
+    }
+}
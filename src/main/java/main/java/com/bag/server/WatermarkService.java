@@ -0,0 +1,158 @@
+package main.java.com.bag.server;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tracks the snapshot every client certifies against with a lease, the lowest snapshot of all live leases is the low watermark.
+ * No transaction of a client with a live lease certifies against an older snapshot, so the writes before the watermark may be dropped.
+ * The leases are part of the replicated state, they are only renewed by ordered commits and their time is the ordered timestamp of the request,
+ * therefore all correct replicas compute the same watermark at the same position of the ordered history.
+ * A lease expires if it hasn't been renewed for a while of ordered time, start with -Dbag.watermark.lease=x to set the milliseconds, it defaults to 60000.
+ */
+public class WatermarkService
+{
+    /**
+     * Name of the system property of the lease duration.
+     */
+    private static final String LEASE_PROPERTY = "bag.watermark.lease";
+
+    /**
+     * Time a lease lives after its last renewal.
+     */
+    private final long leaseMillis = Math.max(1, Long.getLong(LEASE_PROPERTY, 60000L));
+
+    /**
+     * The leases by the id of their client.
+     */
+    private final ConcurrentHashMap<Integer, Lease> leases = new ConcurrentHashMap<>();
+
+    /**
+     * The latest ordered timestamp, the clock the leases expire by.
+     */
+    private long clock = 0;
+
+    /**
+     * Renew the lease of a client, its snapshot only ever increases. Commits which ignore the snapshot don't take a lease.
+     *
+     * @param clientId   the id of the client.
+     * @param snapshotId the snapshot the client certifies against.
+     * @param time       the ordered timestamp of the request.
+     */
+    public void renew(final int clientId, final long snapshotId, final long time)
+    {
+        clock = Math.max(clock, time);
+        if (snapshotId < 0)
+        {
+            return;
+        }
+        leases.merge(clientId, new Lease(snapshotId, clock), (old, lease) -> new Lease(Math.max(old.snapshotId, snapshotId), lease.renewed));
+    }
+
+    /**
+     * Get the lowest snapshot of all live leases, drops the ones which expired by the ordered clock.
+     *
+     * @param latest the latest snapshot, returned if no lease is live.
+     * @return the low watermark.
+     */
+    public long getLowWatermark(final long latest)
+    {
+        long lowest = latest;
+        final Iterator<Lease> iterator = leases.values().iterator();
+        while (iterator.hasNext())
+        {
+            final Lease lease = iterator.next();
+            if (clock - lease.renewed > leaseMillis)
+            {
+                iterator.remove();
+            }
+            else
+            {
+                lowest = Math.min(lowest, lease.snapshotId);
+            }
+        }
+        return lowest;
+    }
+
+    /**
+     * Write the clock and the leases to a snapshot of the replica.
+     *
+     * @param output object to write to.
+     * @param kryo   kryo object.
+     */
+    public void writeLeases(final Output output, final Kryo kryo)
+    {
+        kryo.writeObject(output, clock);
+        final Map<Integer, Lease> copy = new ConcurrentHashMap<>(leases);
+        kryo.writeObject(output, copy.size());
+        for (final Map.Entry<Integer, Lease> entry : copy.entrySet())
+        {
+            kryo.writeObject(output, entry.getKey());
+            kryo.writeObject(output, entry.getValue().snapshotId);
+            kryo.writeObject(output, entry.getValue().renewed);
+        }
+    }
+
+    /**
+     * Replace the clock and the leases with the ones of an installed snapshot.
+     *
+     * @param input object to read from.
+     * @param kryo  kryo object.
+     */
+    public void readLeases(final Input input, final Kryo kryo)
+    {
+        leases.clear();
+        clock = kryo.readObject(input, Long.class);
+        final int length = kryo.readObject(input, Integer.class);
+        for (int i = 0; i < length; i++)
+        {
+            final int clientId = kryo.readObject(input, Integer.class);
+            final long snapshotId = kryo.readObject(input, Long.class);
+            final long renewed = kryo.readObject(input, Long.class);
+            leases.put(clientId, new Lease(snapshotId, renewed));
+        }
+    }
+
+    /**
+     * Get the amount of leases, expired ones included until the next watermark is computed.
+     *
+     * @return the amount.
+     */
+    public int size()
+    {
+        return leases.size();
+    }
+
+    /**
+     * The lease of a client.
+     */
+    private static class Lease
+    {
+        /**
+         * The snapshot the client certifies against.
+         */
+        private final long snapshotId;
+
+        /**
+         * The ordered time of the last renewal.
+         */
+        private final long renewed;
+
+        /**
+         * Creates a lease.
+         *
+         * @param snapshotId the snapshot.
+         * @param renewed    the time of the renewal.
+         */
+        private Lease(final long snapshotId, final long renewed)
+        {
+            this.snapshotId = snapshotId;
+            this.renewed = renewed;
+        }
+    }
+}
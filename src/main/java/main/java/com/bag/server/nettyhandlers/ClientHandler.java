@@ -2,8 +2,6 @@ package main.java.com.bag.server.nettyhandlers;
 
 import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.io.Input;
-import com.esotericsoftware.kryo.pool.KryoFactory;
-import com.esotericsoftware.kryo.pool.KryoPool;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.PooledByteBufAllocator;
@@ -11,13 +9,10 @@ import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
 import main.java.com.bag.client.TestClient;
-import main.java.com.bag.operations.CreateOperation;
 import main.java.com.bag.operations.DeleteOperation;
-import main.java.com.bag.operations.UpdateOperation;
 import main.java.com.bag.util.Constants;
+import main.java.com.bag.util.KryoContext;
 import main.java.com.bag.util.Log;
-import main.java.com.bag.util.storage.NodeStorage;
-import main.java.com.bag.util.storage.RelationshipStorage;
 import org.apache.log4j.Level;
 
 import java.util.ArrayList;
@@ -33,18 +28,6 @@ import java.util.concurrent.LinkedBlockingQueue;
  */
 public class ClientHandler extends SimpleChannelInboundHandler<BAGMessage>
 {
-    private static KryoFactory factory = () ->
-    {
-        Kryo kryo = new Kryo();
-        kryo.register(NodeStorage.class, 100);
-        kryo.register(RelationshipStorage.class, 200);
-        kryo.register(CreateOperation.class, 250);
-        kryo.register(DeleteOperation.class, 300);
-        kryo.register(UpdateOperation.class, 350);
-        return kryo;
-    };
-
-
     private ByteBufAllocator allocator;
     private ChannelHandlerContext ctx;
 
@@ -84,12 +67,11 @@ public class ClientHandler extends SimpleChannelInboundHandler<BAGMessage>
     @Override
     public void channelRead0(ChannelHandlerContext ctx, BAGMessage msg)
     {
-        final KryoPool pool = new KryoPool.Builder(factory).softReferences().build();
-        final Kryo kryo = pool.borrow();
+        final Kryo kryo = KryoContext.borrow();
         final Input input = new Input(msg.buffer);
         final List returnValue = kryo.readObject(input, ArrayList.class);
         input.close();
-        pool.release(kryo);
+        KryoContext.release(kryo);
 
         for (Object item : returnValue) {
             if (item instanceof DeleteOperation) {
@@ -8,6 +8,8 @@ public class Constants
     public static final String COMMIT_MESSAGE             = "commit";
     public static final String READ_MESSAGE               = "node/read";
     public static final String RELATIONSHIP_READ_MESSAGE  = "relationship/read";
+    public static final String MULTI_READ_MESSAGE         = "multi/read";
+    public static final String PAGE_READ_MESSAGE          = "page/read";
     public static final String COMMIT_RESPONSE            = "commit/response";
     public static final String NEO4J                      = "neo4j";
     public static final String ORIENTDB                   = "orientdb";
@@ -24,8 +26,17 @@ public class Constants
     public static final String REGISTER_GLOBALLY_REPLY   = "registeringReply";
     public static final String UPDATE_SLAVE              = "updateSlave";
     public static final String CONTINUE                  = "continue";
+    public static final String UPDATE_SLAVE_BATCH        = "updateSlaves";
+    public static final String CATCH_UP_MESSAGE          = "catchUp";
+    public static final String BATCH_ROOT_MESSAGE        = "batchRoot";
     public static final String TAG_VERSION = "version";
     public static final String TAG_PRE = "preversion";
+    public static final String TAG_IDX = "idx";
+
+    /**
+     * Continuation token of the last page of a read.
+     */
+    public static final long NO_CURSOR = -1;
 
     /**
      * Used to convert nano time to seconds.
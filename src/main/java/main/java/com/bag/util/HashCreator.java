@@ -1,20 +1,53 @@
 package main.java.com.bag.util;
 
+import com.esotericsoftware.kryo.io.Output;
 import main.java.com.bag.util.storage.NodeStorage;
 import main.java.com.bag.util.storage.RelationshipStorage;
+import org.jetbrains.annotations.Nullable;
 
+import java.io.OutputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-
-import static main.java.com.bag.util.Constants.TAG_PRE;
-import static main.java.com.bag.util.Constants.TAG_SNAPSHOT_ID;
-import static main.java.com.bag.util.Constants.TAG_VERSION;
+import java.util.Arrays;
 
 /**
  * Class used to create a Hash out of a node or relationship.
+ * The canonical binary encoding of the storage is streamed into a digest kept per thread, the result are the raw digest bytes.
+ * Start with -Dbag.hash=fast to use a non-cryptographic 64 bit hash instead of SHA-1,
+ * this only makes sense if the signatures of the BFT protocol already cover integrity and has to be set equally on all servers and clients.
  */
 public class HashCreator
 {
+    /**
+     * Name of the system property which selects the hash.
+     */
+    private static final String HASH_PROPERTY = "bag.hash";
+
+    /**
+     * Value of the system property which selects the non-cryptographic hash.
+     */
+    private static final String FAST_HASH = "fast";
+
+    /**
+     * Size of the buffer between the encoding and the digest.
+     */
+    private static final int BUFFER_SIZE = 512;
+
+    /**
+     * If the fast non-cryptographic hash is used.
+     */
+    private static final boolean FAST = FAST_HASH.equalsIgnoreCase(System.getProperty(HASH_PROPERTY));
+
+    /**
+     * Digits of the hex representation.
+     */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /**
+     * The digest and its encoding output of each thread.
+     */
+    private static final ThreadLocal<Hasher> HASHER = ThreadLocal.withInitial(Hasher::new);
+
     /**
      * Private constructor to hide implicit one.
      */
@@ -26,56 +59,215 @@ public class HashCreator
     }
 
     /**
-     * Create a sha1 hash-sum from a @NodeStorage.
+     * Create the hash of a @NodeStorage.
      * @param node the input @NodeStorage
-     * @return the return string (hash-sum)
-     * @throws NoSuchAlgorithmException possible exception.
+     * @return the raw hash bytes.
      */
-    public static String sha1FromNode(final NodeStorage node) throws NoSuchAlgorithmException
+    public static byte[] hashNode(final NodeStorage node)
     {
-        final NodeStorage copy = new NodeStorage(node);
-        copy.removeProperty(TAG_VERSION);
-        copy.removeProperty(TAG_PRE);
-        copy.removeProperty(TAG_SNAPSHOT_ID);
-
-        final MessageDigest mDigest = MessageDigest.getInstance("SHA1");
+        final Hasher hasher = HASHER.get();
+        node.writeCanonical(hasher.start());
+        return hasher.digest();
+    }
 
-        final byte[] result = mDigest.digest(copy.getBytes());
+    /**
+     * Create the hash of a @RelationshipStorage.
+     * @param relationShip the input @RelationshipStorage
+     * @return the raw hash bytes.
+     */
+    public static byte[] hashRelationship(final RelationshipStorage relationShip)
+    {
+        final Hasher hasher = HASHER.get();
+        relationShip.writeCanonical(hasher.start());
+        return hasher.digest();
+    }
 
-        final StringBuilder sb = new StringBuilder();
-        for (final byte aResult : result)
+    /**
+     * Checks if a hash equals the hash stored in the database.
+     * @param hash the computed hash.
+     * @param stored the stored hash, the raw bytes or the hex string for databases which can't store bytes.
+     * @return true if they match.
+     */
+    public static boolean matches(final byte[] hash, @Nullable final Object stored)
+    {
+        if (stored instanceof byte[])
         {
-            sb.append(Integer.toString((aResult & 0xff) + 0x100, 16).substring(1));
+            return Arrays.equals(hash, (byte[]) stored);
         }
+        return stored instanceof String && toHex(hash).equals(stored);
+    }
 
-        return sb.toString();
+    /**
+     * Get the hex representation of a hash, for databases which can't store bytes.
+     * @param hash the raw hash bytes.
+     * @return the hex string.
+     */
+    public static String toHex(final byte[] hash)
+    {
+        final char[] chars = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++)
+        {
+            chars[i * 2] = HEX_DIGITS[(hash[i] >> 4) & 0xf];
+            chars[i * 2 + 1] = HEX_DIGITS[hash[i] & 0xf];
+        }
+        return new String(chars);
     }
 
     /**
-     * Create a sha1 hash-sum from a @RelationshipStorage.
-     * @param relationShip the input @RelationshipStorage
-     * @return the return string (hash-sum)
-     * @throws NoSuchAlgorithmException possible exception.
+     * Digest of one thread with the output which streams the encoding into it.
      */
-    public static String sha1FromRelationship(final RelationshipStorage relationShip) throws NoSuchAlgorithmException
+    private static class Hasher
     {
-        final RelationshipStorage copy = new RelationshipStorage(relationShip);
-        copy.removeProperty(TAG_VERSION);
-        copy.removeProperty(TAG_PRE);
-        copy.removeProperty(TAG_SNAPSHOT_ID);
+        /**
+         * The digest.
+         */
+        private final MessageDigest digest;
 
-        final MessageDigest mDigest = MessageDigest.getInstance("SHA1");
+        /**
+         * Output which flushes into the digest whenever its buffer is full.
+         */
+        private final Output output;
 
-        final byte[] result = mDigest.digest(copy.getBytes());
+        /**
+         * Creates the digest of the configured hash.
+         */
+        private Hasher()
+        {
+            if (FAST)
+            {
+                digest = new FastDigest();
+            }
+            else
+            {
+                try
+                {
+                    digest = MessageDigest.getInstance("SHA1");
+                }
+                catch (final NoSuchAlgorithmException e)
+                {
+                    throw new IllegalStateException("SHA1 is not available", e);
+                }
+            }
 
-        final StringBuilder sb = new StringBuilder();
-        for (final byte aResult : result)
+            output = new Output(BUFFER_SIZE, BUFFER_SIZE);
+            output.setOutputStream(new OutputStream()
+            {
+                @Override
+                public void write(final int b)
+                {
+                    digest.update((byte) b);
+                }
+
+                @Override
+                public void write(final byte[] b, final int off, final int len)
+                {
+                    digest.update(b, off, len);
+                }
+            });
+        }
+
+        /**
+         * Reset the digest and the output, in case a previous hash has been aborted.
+         * @return the output to write the encoding to.
+         */
+        private Output start()
         {
-            sb.append(Integer.toString((aResult & 0xff) + 0x100, 16).substring(1));
+            digest.reset();
+            output.setPosition(0);
+            return output;
         }
 
-        return sb.toString();
+        /**
+         * Flush the rest of the encoding and complete the hash, resets the digest.
+         * @return the hash.
+         */
+        private byte[] digest()
+        {
+            output.flush();
+            return digest.digest();
+        }
     }
-}
 
+    /**
+     * Non-cryptographic 64 bit hash, FNV-1a over the input finished with the mix of MurmurHash3.
+     */
+    private static class FastDigest extends MessageDigest
+    {
+        /**
+         * The FNV-1a offset basis.
+         */
+        private static final long OFFSET_BASIS = 0xcbf29ce484222325L;
+
+        /**
+         * The FNV-1a prime.
+         */
+        private static final long PRIME = 0x100000001b3L;
+
+        /**
+         * The length of the hash in bytes.
+         */
+        private static final int LENGTH = 8;
+
+        /**
+         * The current state.
+         */
+        private long state = OFFSET_BASIS;
+
+        /**
+         * Creates the digest.
+         */
+        private FastDigest()
+        {
+            super(FAST_HASH);
+        }
+
+        @Override
+        protected int engineGetDigestLength()
+        {
+            return LENGTH;
+        }
+
+        @Override
+        protected void engineUpdate(final byte input)
+        {
+            state = (state ^ (input & 0xff)) * PRIME;
+        }
+
+        @Override
+        protected void engineUpdate(final byte[] input, final int offset, final int len)
+        {
+            long hash = state;
+            for (int i = offset; i < offset + len; i++)
+            {
+                hash = (hash ^ (input[i] & 0xff)) * PRIME;
+            }
+            state = hash;
+        }
+
+        @Override
+        protected byte[] engineDigest()
+        {
+            long hash = state;
+            hash ^= hash >>> 33;
+            hash *= 0xff51afd7ed558ccdL;
+            hash ^= hash >>> 33;
+            hash *= 0xc4ceb9fe1a85ec53L;
+            hash ^= hash >>> 33;
+            engineReset();
 
+            final byte[] result = new byte[LENGTH];
+            for (int i = LENGTH - 1; i >= 0; i--)
+            {
+                result[i] = (byte) hash;
+                hash >>>= 8;
+            }
+            return result;
+        }
+
+        @Override
+        protected void engineReset()
+        {
+            state = OFFSET_BASIS;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package main.java.com.bag.util;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.pool.KryoFactory;
+import com.esotericsoftware.kryo.pool.KryoPool;
+import main.java.com.bag.operations.*;
+import main.java.com.bag.util.storage.NodeStorage;
+import main.java.com.bag.util.storage.NodeStorageSerializer;
+import main.java.com.bag.util.storage.ReadKey;
+import main.java.com.bag.util.storage.ReadKeySerializer;
+import main.java.com.bag.util.storage.RelationshipStorage;
+import main.java.com.bag.util.storage.RelationshipStorageSerializer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Process wide serialization context.
+ * Holds one pool of kryo instances with all classes registered and a pool of reusable output buffers,
+ * this way serializing a message doesn't have to construct and configure kryo.
+ */
+public final class KryoContext
+{
+    /**
+     * Initial size of a pooled output buffer.
+     */
+    private static final int OUTPUT_BUFFER_SIZE = 1024;
+
+    /**
+     * Outputs which grew beyond this size are not returned to the pool to not hold on large buffers.
+     */
+    private static final int MAX_POOLED_BUFFER_SIZE = 1024 * 1024;
+
+    /**
+     * Maximum amount of outputs kept in the pool.
+     */
+    private static final int MAX_POOLED_OUTPUTS = 64;
+
+    /**
+     * Factory for all Kryo related parts. Will give you a kryo object with all classes registered.
+     * The messages contain no shared or cyclic objects, therefore reference tracking is turned off.
+     */
+    private static final KryoFactory FACTORY = () ->
+    {
+        final Kryo kryo = new Kryo();
+        kryo.setReferences(false);
+        kryo.register(NodeStorage.class, new NodeStorageSerializer(), 100);
+        kryo.register(ReadKey.class, new ReadKeySerializer(), 150);
+        kryo.register(RelationshipStorage.class, new RelationshipStorageSerializer(), 200);
+        kryo.register(CreateOperation.class, new CreateOperationSerializer(), 250);
+        kryo.register(DeleteOperation.class, new DeleteOperationSerializer(), 300);
+        kryo.register(UpdateOperation.class, new UpdateOperationSerializer(), 350);
+        kryo.register(ArrayList.class, 400);
+        kryo.register(TreeMap.class, 410);
+        kryo.register(HashMap.class, 420);
+        return kryo;
+    };
+
+    /**
+     * The shared pool of kryo instances.
+     */
+    private static final KryoPool POOL = new KryoPool.Builder(FACTORY).softReferences().build();
+
+    /**
+     * The outputs which are free to be reused.
+     */
+    private static final Queue<Output> OUTPUTS = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Private constructor to hide the public one.
+     */
+    private KryoContext()
+    {
+        //Hides implicit constructor.
+    }
+
+    /**
+     * Get the factory which creates the kryo instances of this context.
+     *
+     * @return the factory.
+     */
+    public static KryoFactory getFactory()
+    {
+        return FACTORY;
+    }
+
+    /**
+     * Get the shared kryo pool.
+     *
+     * @return the pool.
+     */
+    public static KryoPool getPool()
+    {
+        return POOL;
+    }
+
+    /**
+     * Borrow a kryo instance, has to be returned with {@link #release(Kryo)}.
+     *
+     * @return the kryo instance.
+     */
+    public static Kryo borrow()
+    {
+        return POOL.borrow();
+    }
+
+    /**
+     * Return a borrowed kryo instance.
+     *
+     * @param kryo the kryo instance.
+     */
+    public static void release(final Kryo kryo)
+    {
+        POOL.release(kryo);
+    }
+
+    /**
+     * Borrow an empty output which grows as needed, has to be returned with {@link #releaseOutput(Output)}.
+     * The buffer is reused afterwards, take the written bytes with {@link Output#toBytes()}.
+     *
+     * @return the output.
+     */
+    public static Output borrowOutput()
+    {
+        final Output output = OUTPUTS.poll();
+        if (output == null)
+        {
+            return new Output(OUTPUT_BUFFER_SIZE, -1);
+        }
+        return output;
+    }
+
+    /**
+     * Return a borrowed output.
+     *
+     * @param output the output.
+     */
+    public static void releaseOutput(final Output output)
+    {
+        if (output.getBuffer().length > MAX_POOLED_BUFFER_SIZE || OUTPUTS.size() >= MAX_POOLED_OUTPUTS)
+        {
+            return;
+        }
+        output.clear();
+        OUTPUTS.offer(output);
+    }
+}
@@ -0,0 +1,188 @@
+package main.java.com.bag.util;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * SHA-256 Merkle tree over a list of messages, used to sign the commits of a whole batch with one signature.
+ * Leaves and inner nodes are hashed with a different prefix, the last node of a level without sibling moves up unchanged.
+ * An inclusion proof are the siblings on the path from the leaf to the root.
+ */
+public class MerkleTree
+{
+    /**
+     * Prefix of the leaf hashes.
+     */
+    private static final byte LEAF = 0;
+
+    /**
+     * Prefix of the inner node hashes.
+     */
+    private static final byte NODE = 1;
+
+    /**
+     * The digest of each thread.
+     */
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() ->
+    {
+        try
+        {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch (final NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    });
+
+    /**
+     * The levels of the tree, the leaf hashes first and the root last.
+     */
+    private final List<byte[][]> levels = new ArrayList<>();
+
+    /**
+     * Build the tree of a batch.
+     *
+     * @param leaves the messages, at least one.
+     */
+    public MerkleTree(@NotNull final List<byte[]> leaves)
+    {
+        if (leaves.isEmpty())
+        {
+            throw new IllegalArgumentException("Merkle tree without leaves");
+        }
+
+        byte[][] level = new byte[leaves.size()][];
+        for (int i = 0; i < level.length; i++)
+        {
+            level[i] = hashLeaf(leaves.get(i));
+        }
+        levels.add(level);
+
+        while (level.length > 1)
+        {
+            final byte[][] parent = new byte[(level.length + 1) / 2][];
+            for (int i = 0; i < parent.length; i++)
+            {
+                parent[i] = 2 * i + 1 < level.length ? hashNode(level[2 * i], level[2 * i + 1]) : level[2 * i];
+            }
+            levels.add(parent);
+            level = parent;
+        }
+    }
+
+    /**
+     * Get the root hash.
+     *
+     * @return the root.
+     */
+    public byte[] getRoot()
+    {
+        return levels.get(levels.size() - 1)[0];
+    }
+
+    /**
+     * Get the amount of leaves.
+     *
+     * @return the size.
+     */
+    public int size()
+    {
+        return levels.get(0).length;
+    }
+
+    /**
+     * Get the inclusion proof of a leaf.
+     *
+     * @param index the index of the leaf.
+     * @return the siblings from the leaf to the root.
+     */
+    public byte[][] getProof(final int index)
+    {
+        final List<byte[]> proof = new ArrayList<>();
+        int position = index;
+        for (int i = 0; i < levels.size() - 1; i++)
+        {
+            final byte[][] level = levels.get(i);
+            final int sibling = position ^ 1;
+            if (sibling < level.length)
+            {
+                proof.add(level[sibling]);
+            }
+            position /= 2;
+        }
+        return proof.toArray(new byte[0][]);
+    }
+
+    /**
+     * Check the inclusion proof of a message.
+     *
+     * @param message the message.
+     * @param index   the index of its leaf.
+     * @param size    the amount of leaves of the tree.
+     * @param proof   the siblings from the leaf to the root.
+     * @param root    the root hash.
+     * @return true if the message is the leaf at the index of the tree with the root.
+     */
+    public static boolean verify(@NotNull final byte[] message, final int index, final int size, @NotNull final byte[][] proof, @NotNull final byte[] root)
+    {
+        if (index < 0 || index >= size)
+        {
+            return false;
+        }
+
+        byte[] hash = hashLeaf(message);
+        int position = index;
+        int levelSize = size;
+        int next = 0;
+        while (levelSize > 1)
+        {
+            final int sibling = position ^ 1;
+            if (sibling < levelSize)
+            {
+                if (next >= proof.length)
+                {
+                    return false;
+                }
+                hash = (position & 1) == 0 ? hashNode(hash, proof[next]) : hashNode(proof[next], hash);
+                next++;
+            }
+            position /= 2;
+            levelSize = (levelSize + 1) / 2;
+        }
+        return next == proof.length && Arrays.equals(hash, root);
+    }
+
+    /**
+     * Hash a leaf.
+     *
+     * @param message the message of the leaf.
+     * @return the hash.
+     */
+    private static byte[] hashLeaf(final byte[] message)
+    {
+        final MessageDigest digest = DIGEST.get();
+        digest.update(LEAF);
+        return digest.digest(message);
+    }
+
+    /**
+     * Hash an inner node.
+     *
+     * @param left  the hash of the left child.
+     * @param right the hash of the right child.
+     * @return the hash.
+     */
+    private static byte[] hashNode(final byte[] left, final byte[] right)
+    {
+        final MessageDigest digest = DIGEST.get();
+        digest.update(NODE);
+        digest.update(left);
+        return digest.digest(right);
+    }
+}
@@ -3,12 +3,10 @@ package main.java.com.bag.util.storage;
 import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
+import main.java.com.bag.util.KryoContext;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.Serializable;
-import java.util.HashMap;
-import java.util.Set;
-import java.util.TreeMap;
 import java.util.Map;
 
 import static main.java.com.bag.util.Constants.TAG_HASH;
@@ -30,7 +28,7 @@ public class NodeStorage implements Serializable
      * The properties of the node, may be empty as well.
      */
     @NotNull
-    private Map<String, Object> properties = new TreeMap<>();
+    private final PropertyMap properties;
 
     /**
      * Default constructor, needed for Kryo.
@@ -38,6 +36,7 @@ public class NodeStorage implements Serializable
     public NodeStorage()
     {
         id = "Node";
+        properties = new PropertyMap();
     }
 
     /**
@@ -47,6 +46,7 @@ public class NodeStorage implements Serializable
     public NodeStorage(final boolean dummy)
     {
         id = "Dummy";
+        properties = new PropertyMap();
     }
 
     /**
@@ -57,7 +57,7 @@ public class NodeStorage implements Serializable
     public NodeStorage(@NotNull final NodeStorage copy)
     {
         this.id = copy.getId();
-        this.properties.putAll(copy.getProperties());
+        this.properties = new PropertyMap(copy.properties);
     }
 
     /**
@@ -68,7 +68,7 @@ public class NodeStorage implements Serializable
     public NodeStorage(@NotNull final String id)
     {
         this.id = "Node";
-        this.properties = new TreeMap<>();
+        this.properties = new PropertyMap();
         this.properties.put("idx", id);
     }
 
@@ -81,6 +81,7 @@ public class NodeStorage implements Serializable
     public NodeStorage(@NotNull final String id, @NotNull final Map<String, Object> properties)
     {
         this.id = "Node";
+        this.properties = new PropertyMap(properties.size() + 1);
         this.properties.putAll(properties);
         if (!properties.containsKey("idx"))
         {
@@ -88,6 +89,18 @@ public class NodeStorage implements Serializable
         }
     }
 
+    /**
+     * Constructor of the serializer, takes over the deserialized id and property map as they are.
+     *
+     * @param id         the id of the node.
+     * @param properties the properties, not copied.
+     */
+    NodeStorage(@NotNull final String id, @NotNull final PropertyMap properties)
+    {
+        this.id = id;
+        this.properties = properties;
+    }
+
     /**
      * Getter of the id.
      *
@@ -102,12 +115,23 @@ public class NodeStorage implements Serializable
     /**
      * Getter of the properties.
      *
-     * @return unmodifiable map of the properties.
+     * @return read-only view of the properties, sorted by key.
      */
     @NotNull
     public Map<String, Object> getProperties()
     {
-        return new TreeMap<>(properties);
+        return properties.readOnly();
+    }
+
+    /**
+     * Getter of the property map without copying it, used by the serializer.
+     *
+     * @return the map of the properties.
+     */
+    @NotNull
+    PropertyMap getPropertyMap()
+    {
+        return properties;
     }
 
     /**
@@ -161,17 +185,13 @@ public class NodeStorage implements Serializable
             return false;
         }
 
-        final Map<String, Object> thatMap = that.getProperties();
-        final Map<String, Object> thisMap = this.getProperties();
-
-        return thisMap.entrySet().containsAll(thatMap.entrySet())
-                || thatMap.entrySet().containsAll(thisMap.entrySet());
+        return properties.containsAll(that.properties) || that.properties.containsAll(properties);
     }
 
     @Override
     public int hashCode()
     {
-        return 31 * (31 * getId().hashCode() + getProperties().hashCode());
+        return 31 * (31 * getId().hashCode() + properties.hashCode());
     }
 
     /**
@@ -181,10 +201,10 @@ public class NodeStorage implements Serializable
      */
     public byte[] getByteArray(final Kryo kryo)
     {
-        final Output output = new Output(0, 100024);
+        final Output output = KryoContext.borrowOutput();
         kryo.writeObject(output, this);
-        final byte[] bytes = output.getBuffer();
-        output.close();
+        final byte[] bytes = output.toBytes();
+        KryoContext.releaseOutput(output);
         return bytes;
     }
 
@@ -217,15 +237,15 @@ public class NodeStorage implements Serializable
         sb.append(id);
 
         sb.append("[");
-        for (final Map.Entry<String, Object> item : properties.entrySet())
+        for (int i = 0; i < properties.size(); i++)
         {
-            /*if(item.getKey().equals(TAG_HASH) || item.getKey().equals(TAG_SNAPSHOT_ID) || item.getKey().equals(TAG_VERSION))
+            /*if(properties.keyAt(i).equals(TAG_HASH) || properties.keyAt(i).equals(TAG_SNAPSHOT_ID) || properties.keyAt(i).equals(TAG_VERSION))
             {
                 continue;
             }*/
-            sb.append(item.getKey());
+            sb.append(properties.keyAt(i));
             sb.append("=");
-            sb.append(item.getValue());
+            sb.append(properties.valueAt(i));
             sb.append(",");
         }
         sb.deleteCharAt(sb.length() - 1);
@@ -235,6 +255,18 @@ public class NodeStorage implements Serializable
         return sb.toString();
     }
 
+    /**
+     * Write the canonical binary encoding which is hashed to verify reads.
+     * Contains the id and all properties except the hash and version tags.
+     *
+     * @param output the output to write to.
+     */
+    public void writeCanonical(@NotNull final Output output)
+    {
+        PropertyCodec.writeName(output, id);
+        PropertyCodec.writeCanonicalProperties(output, properties);
+    }
+
     /**
      * Returns a byte representation of the nodeStorage.
      *
@@ -245,9 +277,9 @@ public class NodeStorage implements Serializable
         final StringBuilder sb = new StringBuilder();
         sb.append(id);
 
-        for (final Map.Entry<String, Object> entry : properties.entrySet())
+        for (int i = 0; i < properties.size(); i++)
         {
-            sb.append(entry.getKey()).append(entry.getValue());
+            sb.append(properties.keyAt(i)).append(properties.valueAt(i));
         }
 
         return sb.toString().getBytes();
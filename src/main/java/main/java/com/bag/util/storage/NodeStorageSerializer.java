@@ -0,0 +1,26 @@
+package main.java.com.bag.util.storage;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+/**
+ * Kryo serializer of the node storage, writes the id and the properties with the compact property encoding.
+ */
+public class NodeStorageSerializer extends Serializer<NodeStorage>
+{
+    @Override
+    public void write(final Kryo kryo, final Output output, final NodeStorage storage)
+    {
+        PropertyCodec.writeName(output, storage.getId());
+        PropertyCodec.writeProperties(kryo, output, storage.getPropertyMap());
+    }
+
+    @Override
+    public NodeStorage read(final Kryo kryo, final Input input, final Class<NodeStorage> type)
+    {
+        final String id = PropertyCodec.readName(input);
+        return new NodeStorage(id, PropertyCodec.readProperties(kryo, input));
+    }
+}
@@ -0,0 +1,258 @@
+package main.java.com.bag.util.storage;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import main.java.com.bag.util.Constants;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compact encoding of the names and property maps of node and relationship storages.
+ * Frequent names are written as index into a dictionary, values with a one byte type tag and numbers as varints.
+ */
+final class PropertyCodec
+{
+    /**
+     * Names which are written as their index, only append to keep the wire format of existing entries.
+     */
+    private static final String[] DICTIONARY;
+
+    /**
+     * Lookup of the dictionary index of a name.
+     */
+    private static final Map<String, Integer> DICTIONARY_INDEX = new HashMap<>();
+
+    static
+    {
+        final String[] tags = {"Node", "Dummy", "", Constants.TAG_IDX, Constants.TAG_HASH, Constants.TAG_SNAPSHOT_ID, Constants.TAG_VERSION, Constants.TAG_PRE};
+        DICTIONARY = new String[tags.length + Constants.RELATIONSHIP_TYPES_LIST.length];
+        System.arraycopy(tags, 0, DICTIONARY, 0, tags.length);
+        System.arraycopy(Constants.RELATIONSHIP_TYPES_LIST, 0, DICTIONARY, tags.length, Constants.RELATIONSHIP_TYPES_LIST.length);
+        for (int i = 0; i < DICTIONARY.length; i++)
+        {
+            DICTIONARY_INDEX.putIfAbsent(DICTIONARY[i], i);
+        }
+    }
+
+    /**
+     * Type tags of the property values.
+     */
+    private static final byte TYPE_NULL    = 0;
+    private static final byte TYPE_STRING  = 1;
+    private static final byte TYPE_LONG    = 2;
+    private static final byte TYPE_INTEGER = 3;
+    private static final byte TYPE_BOOLEAN = 4;
+    private static final byte TYPE_DOUBLE  = 5;
+    private static final byte TYPE_BYTES   = 6;
+    private static final byte TYPE_OBJECT  = 7;
+
+    /**
+     * Private constructor to hide the implicit one.
+     */
+    private PropertyCodec()
+    {
+        //Hides implicit constructor.
+    }
+
+    /**
+     * Write a name, the index + 1 if it is in the dictionary, else 0 followed by the string.
+     *
+     * @param output the output to write to.
+     * @param name   the name.
+     */
+    static void writeName(final Output output, final String name)
+    {
+        final Integer index = DICTIONARY_INDEX.get(name);
+        if (index == null)
+        {
+            output.writeVarInt(0, true);
+            output.writeString(name);
+        }
+        else
+        {
+            output.writeVarInt(index + 1, true);
+        }
+    }
+
+    /**
+     * Read a name written by {@link #writeName(Output, String)}.
+     *
+     * @param input the input to read from.
+     * @return the name, dictionary entries are returned as the interned instance.
+     */
+    static String readName(final Input input)
+    {
+        final int index = input.readVarInt(true);
+        return index == 0 ? input.readString() : DICTIONARY[index - 1];
+    }
+
+    /**
+     * Write a property map, the amount of entries followed by the name and the tagged value of each entry.
+     *
+     * @param kryo       the kryo instance for values of unknown types.
+     * @param output     the output to write to.
+     * @param properties the properties.
+     */
+    static void writeProperties(final Kryo kryo, final Output output, final PropertyMap properties)
+    {
+        output.writeVarInt(properties.size(), true);
+        for (int i = 0; i < properties.size(); i++)
+        {
+            writeName(output, properties.keyAt(i));
+            writeValue(kryo, output, properties.valueAt(i));
+        }
+    }
+
+    /**
+     * Read a property map written by {@link #writeProperties(Kryo, Output, PropertyMap)}.
+     *
+     * @param kryo  the kryo instance for values of unknown types.
+     * @param input the input to read from.
+     * @return the properties.
+     */
+    static PropertyMap readProperties(final Kryo kryo, final Input input)
+    {
+        final int size = input.readVarInt(true);
+        final PropertyMap properties = new PropertyMap(size);
+        for (int i = 0; i < size; i++)
+        {
+            final String key = readName(input);
+            properties.put(key, readValue(kryo, input));
+        }
+        return properties;
+    }
+
+    /**
+     * Write the canonical encoding of a property map which is hashed.
+     * Same as {@link #writeProperties(Kryo, Output, PropertyMap)} but without the hash and version tags,
+     * which change independently of the content, and with values of unknown types written as their string.
+     *
+     * @param output     the output to write to.
+     * @param properties the properties.
+     */
+    static void writeCanonicalProperties(final Output output, final PropertyMap properties)
+    {
+        int hashed = 0;
+        for (int i = 0; i < properties.size(); i++)
+        {
+            if (!isUnhashed(properties.keyAt(i)))
+            {
+                hashed++;
+            }
+        }
+
+        output.writeVarInt(hashed, true);
+        for (int i = 0; i < properties.size(); i++)
+        {
+            final String key = properties.keyAt(i);
+            if (!isUnhashed(key))
+            {
+                writeName(output, key);
+                writeValue(null, output, properties.valueAt(i));
+            }
+        }
+    }
+
+    /**
+     * Checks if a property is excluded from the hash.
+     *
+     * @param key the name of the property.
+     * @return true if so.
+     */
+    private static boolean isUnhashed(final String key)
+    {
+        return Constants.TAG_HASH.equals(key) || Constants.TAG_VERSION.equals(key) || Constants.TAG_PRE.equals(key) || Constants.TAG_SNAPSHOT_ID.equals(key);
+    }
+
+    /**
+     * Write a property value with its type tag.
+     *
+     * @param kryo   the kryo instance for values of unknown types, null to write them as string.
+     * @param output the output to write to.
+     * @param value  the value.
+     */
+    static void writeValue(final Kryo kryo, final Output output, final Object value)
+    {
+        if (value == null)
+        {
+            output.writeByte(TYPE_NULL);
+        }
+        else if (value instanceof String)
+        {
+            output.writeByte(TYPE_STRING);
+            output.writeString((String) value);
+        }
+        else if (value instanceof Long)
+        {
+            output.writeByte(TYPE_LONG);
+            output.writeVarLong((Long) value, false);
+        }
+        else if (value instanceof Integer)
+        {
+            output.writeByte(TYPE_INTEGER);
+            output.writeVarInt((Integer) value, false);
+        }
+        else if (value instanceof Boolean)
+        {
+            output.writeByte(TYPE_BOOLEAN);
+            output.writeBoolean((Boolean) value);
+        }
+        else if (value instanceof Double)
+        {
+            output.writeByte(TYPE_DOUBLE);
+            output.writeDouble((Double) value);
+        }
+        else if (value instanceof byte[])
+        {
+            final byte[] bytes = (byte[]) value;
+            output.writeByte(TYPE_BYTES);
+            output.writeVarInt(bytes.length, true);
+            output.writeBytes(bytes);
+        }
+        else if (kryo == null)
+        {
+            output.writeByte(TYPE_OBJECT);
+            output.writeString(value.toString());
+        }
+        else
+        {
+            output.writeByte(TYPE_OBJECT);
+            kryo.writeClassAndObject(output, value);
+        }
+    }
+
+    /**
+     * Read a property value written by {@link #writeValue(Kryo, Output, Object)}.
+     *
+     * @param kryo  the kryo instance for values of unknown types.
+     * @param input the input to read from.
+     * @return the value.
+     */
+    static Object readValue(final Kryo kryo, final Input input)
+    {
+        final byte type = input.readByte();
+        switch (type)
+        {
+            case TYPE_NULL:
+                return null;
+            case TYPE_STRING:
+                return input.readString();
+            case TYPE_LONG:
+                return input.readVarLong(false);
+            case TYPE_INTEGER:
+                return input.readVarInt(false);
+            case TYPE_BOOLEAN:
+                return input.readBoolean();
+            case TYPE_DOUBLE:
+                return input.readDouble();
+            case TYPE_BYTES:
+                return input.readBytes(input.readVarInt(true));
+            case TYPE_OBJECT:
+                return kryo.readClassAndObject(input);
+            default:
+                throw new IllegalStateException("Unknown property type: " + type);
+        }
+    }
+}
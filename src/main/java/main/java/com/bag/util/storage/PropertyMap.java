@@ -0,0 +1,357 @@
+package main.java.com.bag.util.storage;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * Compact property map of the node and relationship storages.
+ * Keys and values are kept in two arrays sorted by key, so it iterates in the same order as the TreeMap it replaces,
+ * needs no entry objects and the typical map of a handful of properties fits into a few words.
+ * The hash is cached until the map is modified.
+ */
+final class PropertyMap extends AbstractMap<String, Object> implements Serializable
+{
+    /**
+     * Version of the serialized form.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Initial capacity, nodes usually have one to five properties.
+     */
+    private static final int INITIAL_CAPACITY = 4;
+
+    /**
+     * The sorted keys, valid up to size.
+     */
+    private String[] keys;
+
+    /**
+     * The values at the index of their key.
+     */
+    private Object[] values;
+
+    /**
+     * The amount of properties.
+     */
+    private int size;
+
+    /**
+     * The cached hash, 0 if it has to be computed.
+     */
+    private int hash;
+
+    /**
+     * Cached read-only view handed out by the storages.
+     */
+    private transient Map<String, Object> readOnlyView;
+
+    /**
+     * Creates an empty property map.
+     */
+    PropertyMap()
+    {
+        this(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Creates an empty property map with a certain capacity.
+     *
+     * @param capacity the amount of properties it can hold without growing.
+     */
+    PropertyMap(final int capacity)
+    {
+        keys = new String[Math.max(1, capacity)];
+        values = new Object[keys.length];
+    }
+
+    /**
+     * Copy constructor.
+     *
+     * @param copy the map to copy.
+     */
+    PropertyMap(@NotNull final PropertyMap copy)
+    {
+        keys = Arrays.copyOf(copy.keys, Math.max(1, copy.size));
+        values = Arrays.copyOf(copy.values, keys.length);
+        size = copy.size;
+        hash = copy.hash;
+    }
+
+    /**
+     * Get the key at a position, to iterate without allocating entries.
+     *
+     * @param index the position, smaller than the size.
+     * @return the key.
+     */
+    String keyAt(final int index)
+    {
+        return keys[index];
+    }
+
+    /**
+     * Get the value at a position, to iterate without allocating entries.
+     *
+     * @param index the position, smaller than the size.
+     * @return the value.
+     */
+    Object valueAt(final int index)
+    {
+        return values[index];
+    }
+
+    /**
+     * Get the cached read-only view of this map.
+     *
+     * @return the view, it reflects later modifications.
+     */
+    Map<String, Object> readOnly()
+    {
+        if (readOnlyView == null)
+        {
+            readOnlyView = Collections.unmodifiableMap(this);
+        }
+        return readOnlyView;
+    }
+
+    /**
+     * Checks if all properties of another map are contained with equal values in this one.
+     * Walks both sorted key arrays once without allocating.
+     *
+     * @param other the other map.
+     * @return true if the other map is a subset of this map.
+     */
+    boolean containsAll(@NotNull final PropertyMap other)
+    {
+        if (other.size > size)
+        {
+            return false;
+        }
+
+        int i = 0;
+        for (int j = 0; j < other.size; j++)
+        {
+            final String key = other.keys[j];
+            int comparison = -1;
+            while (i < size && (comparison = keys[i].compareTo(key)) < 0)
+            {
+                i++;
+            }
+            if (comparison != 0 || !Objects.equals(values[i], other.values[j]))
+            {
+                return false;
+            }
+            i++;
+        }
+        return true;
+    }
+
+    /**
+     * Find the position of a key.
+     *
+     * @param key the key.
+     * @return the index if it is contained, else -(insertion point) - 1.
+     */
+    private int indexOf(final String key)
+    {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high)
+        {
+            final int mid = (low + high) >>> 1;
+            final int comparison = keys[mid].compareTo(key);
+            if (comparison < 0)
+            {
+                low = mid + 1;
+            }
+            else if (comparison > 0)
+            {
+                high = mid - 1;
+            }
+            else
+            {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    @Override
+    public int size()
+    {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    @Override
+    public boolean containsKey(final Object key)
+    {
+        return key instanceof String && indexOf((String) key) >= 0;
+    }
+
+    @Override
+    public Object get(final Object key)
+    {
+        if (!(key instanceof String))
+        {
+            return null;
+        }
+        final int index = indexOf((String) key);
+        return index >= 0 ? values[index] : null;
+    }
+
+    @Override
+    public Object put(@NotNull final String key, final Object value)
+    {
+        hash = 0;
+        final int index = indexOf(key);
+        if (index >= 0)
+        {
+            final Object old = values[index];
+            values[index] = value;
+            return old;
+        }
+
+        final int insertion = -index - 1;
+        if (size == keys.length)
+        {
+            keys = Arrays.copyOf(keys, size * 2);
+            values = Arrays.copyOf(values, keys.length);
+        }
+        System.arraycopy(keys, insertion, keys, insertion + 1, size - insertion);
+        System.arraycopy(values, insertion, values, insertion + 1, size - insertion);
+        keys[insertion] = key;
+        values[insertion] = value;
+        size++;
+        return null;
+    }
+
+    @Override
+    public void putAll(@NotNull final Map<? extends String, ?> map)
+    {
+        if (map instanceof PropertyMap)
+        {
+            final PropertyMap other = (PropertyMap) map;
+            for (int i = 0; i < other.size; i++)
+            {
+                put(other.keys[i], other.values[i]);
+            }
+            return;
+        }
+        for (final Map.Entry<? extends String, ?> entry : map.entrySet())
+        {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @Override
+    public Object remove(final Object key)
+    {
+        if (!(key instanceof String))
+        {
+            return null;
+        }
+        final int index = indexOf((String) key);
+        if (index < 0)
+        {
+            return null;
+        }
+        final Object old = values[index];
+        size--;
+        System.arraycopy(keys, index + 1, keys, index, size - index);
+        System.arraycopy(values, index + 1, values, index, size - index);
+        keys[size] = null;
+        values[size] = null;
+        hash = 0;
+        return old;
+    }
+
+    @Override
+    public void clear()
+    {
+        Arrays.fill(keys, 0, size, null);
+        Arrays.fill(values, 0, size, null);
+        size = 0;
+        hash = 0;
+    }
+
+    @NotNull
+    @Override
+    public Set<Entry<String, Object>> entrySet()
+    {
+        return new AbstractSet<Entry<String, Object>>()
+        {
+            @Override
+            public Iterator<Entry<String, Object>> iterator()
+            {
+                return new Iterator<Entry<String, Object>>()
+                {
+                    /**
+                     * The next position.
+                     */
+                    private int next = 0;
+
+                    @Override
+                    public boolean hasNext()
+                    {
+                        return next < size;
+                    }
+
+                    @Override
+                    public Entry<String, Object> next()
+                    {
+                        if (next >= size)
+                        {
+                            throw new NoSuchElementException();
+                        }
+                        final int index = next++;
+                        return new SimpleImmutableEntry<>(keys[index], values[index]);
+                    }
+                };
+            }
+
+            @Override
+            public int size()
+            {
+                return size;
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(final Object o)
+    {
+        if (this == o)
+        {
+            return true;
+        }
+        if (o instanceof PropertyMap)
+        {
+            final PropertyMap that = (PropertyMap) o;
+            return size == that.size && containsAll(that);
+        }
+        return super.equals(o);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        if (hash == 0)
+        {
+            int result = 0;
+            for (int i = 0; i < size; i++)
+            {
+                result += keys[i].hashCode() ^ Objects.hashCode(values[i]);
+            }
+            hash = result;
+        }
+        return hash;
+    }
+}
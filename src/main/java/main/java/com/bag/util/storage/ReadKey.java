@@ -0,0 +1,328 @@
+package main.java.com.bag.util.storage;
+
+import main.java.com.bag.util.Constants;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Serializable;
+
+/**
+ * Compact entry of the commit readSet, the key of a read node or relationship and the snapshot version it has been read at.
+ * Nodes are identified by their label and idx, relationships by their type and both endpoint nodes.
+ * Reads which can't be keyed are still sent as full storage.
+ */
+public final class ReadKey implements Serializable
+{
+    /**
+     * Version of the serialized form.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Prefix of the node keys.
+     */
+    private static final String NODE_PREFIX = "N";
+
+    /**
+     * Prefix of the relationship keys.
+     */
+    private static final String RELATIONSHIP_PREFIX = "R";
+
+    /**
+     * Separator between the parts of a key.
+     */
+    private static final char SEPARATOR = '\u0000';
+
+    /**
+     * The label of the node or the type of the relationship.
+     */
+    private final String id;
+
+    /**
+     * The idx of the node, null for relationships.
+     */
+    @Nullable
+    private final Object idx;
+
+    /**
+     * The endpoints of the relationship, null for nodes.
+     */
+    @Nullable
+    private final ReadKey startNode;
+    @Nullable
+    private final ReadKey endNode;
+
+    /**
+     * The snapshotId the object has been read at.
+     */
+    private final long version;
+
+    /**
+     * The cached key.
+     */
+    private transient String key;
+
+    /**
+     * Creates the key of a node.
+     *
+     * @param id      the label.
+     * @param idx     the idx.
+     * @param version the snapshotId it has been read at.
+     */
+    ReadKey(@NotNull final String id, @NotNull final Object idx, final long version)
+    {
+        this.id = id;
+        this.idx = idx;
+        this.startNode = null;
+        this.endNode = null;
+        this.version = version;
+    }
+
+    /**
+     * Creates the key of a relationship.
+     *
+     * @param id        the type.
+     * @param startNode the key of the start node.
+     * @param endNode   the key of the end node.
+     * @param version   the snapshotId it has been read at.
+     */
+    ReadKey(@NotNull final String id, @NotNull final ReadKey startNode, @NotNull final ReadKey endNode, final long version)
+    {
+        this.id = id;
+        this.idx = null;
+        this.startNode = startNode;
+        this.endNode = endNode;
+        this.version = version;
+    }
+
+    /**
+     * Create the readSet entry of a read storage.
+     *
+     * @param storage the read node or relationship storage.
+     * @param version the snapshotId it has been read at.
+     * @return the entry or null if the storage can't be keyed.
+     */
+    @Nullable
+    public static ReadKey of(final Object storage, final long version)
+    {
+        if (storage instanceof NodeStorage)
+        {
+            return of((NodeStorage) storage, version);
+        }
+        else if (storage instanceof RelationshipStorage)
+        {
+            final RelationshipStorage relationship = (RelationshipStorage) storage;
+            final ReadKey start = of(relationship.getStartNode(), version);
+            final ReadKey end = of(relationship.getEndNode(), version);
+            if (relationship.getId().isEmpty() || start == null || end == null)
+            {
+                return null;
+            }
+            return new ReadKey(relationship.getId(), start, end, version);
+        }
+        return null;
+    }
+
+    /**
+     * Create the readSet entry of a read node.
+     *
+     * @param node    the node.
+     * @param version the snapshotId it has been read at.
+     * @return the entry or null if it has no idx.
+     */
+    @Nullable
+    private static ReadKey of(final NodeStorage node, final long version)
+    {
+        final Object nodeIdx = node.getProperty(Constants.TAG_IDX);
+        return nodeIdx == null ? null : new ReadKey(node.getId(), nodeIdx, version);
+    }
+
+    /**
+     * Get the key of a node or relationship storage or of a readSet entry.
+     * Nodes are keyed by their idx, relationships by their type and the idx of both endpoints.
+     *
+     * @param storage the storage.
+     * @return the key or null if it can't be keyed.
+     */
+    @Nullable
+    public static String keyOf(final Object storage)
+    {
+        if (storage instanceof ReadKey)
+        {
+            return ((ReadKey) storage).getKey();
+        }
+        else if (storage instanceof NodeStorage)
+        {
+            final Object nodeIdx = ((NodeStorage) storage).getProperty(Constants.TAG_IDX);
+            return nodeIdx == null ? null : NODE_PREFIX + SEPARATOR + nodeIdx;
+        }
+        else if (storage instanceof RelationshipStorage)
+        {
+            final RelationshipStorage relationship = (RelationshipStorage) storage;
+            final Object startIdx = relationship.getStartNode().getProperty(Constants.TAG_IDX);
+            final Object endIdx = relationship.getEndNode().getProperty(Constants.TAG_IDX);
+            if (relationship.getId().isEmpty() || startIdx == null || endIdx == null)
+            {
+                return null;
+            }
+            return RELATIONSHIP_PREFIX + SEPARATOR + relationship.getId() + SEPARATOR + startIdx + SEPARATOR + endIdx;
+        }
+        return null;
+    }
+
+    /**
+     * Checks if a node is an endpoint of a relationship.
+     *
+     * @param nodeKey the key of the node.
+     * @param key     any key.
+     * @return true if the key is the key of a relationship from or to the node.
+     */
+    public static boolean isEndpointOf(final String nodeKey, final String key)
+    {
+        if (!key.startsWith(RELATIONSHIP_PREFIX + SEPARATOR))
+        {
+            return false;
+        }
+        final String idx = nodeKey.substring(NODE_PREFIX.length() + 1);
+        final int end = key.lastIndexOf(SEPARATOR);
+        final int start = key.lastIndexOf(SEPARATOR, end - 1);
+        return key.substring(end + 1).equals(idx) || key.substring(start + 1, end).equals(idx);
+    }
+
+    /**
+     * Get the key, equal to the key of the storage it has been created of.
+     *
+     * @return the key.
+     */
+    public String getKey()
+    {
+        if (key == null)
+        {
+            if (startNode == null || endNode == null)
+            {
+                key = NODE_PREFIX + SEPARATOR + idx;
+            }
+            else
+            {
+                key = RELATIONSHIP_PREFIX + SEPARATOR + id + SEPARATOR + startNode.idx + SEPARATOR + endNode.idx;
+            }
+        }
+        return key;
+    }
+
+    /**
+     * Checks if a write of a storage which can't be keyed might have modified the read object.
+     * Unkeyed writes are matched by their label or type only, this errs on the side of an abort.
+     *
+     * @param storage the written node or relationship storage without key.
+     * @return true if it might.
+     */
+    public boolean mayMatch(final Object storage)
+    {
+        if (startNode != null && endNode != null)
+        {
+            if (storage instanceof RelationshipStorage)
+            {
+                return matchesId(((RelationshipStorage) storage).getId());
+            }
+            return startNode.mayMatch(storage) || endNode.mayMatch(storage);
+        }
+        return storage instanceof NodeStorage && matchesId(((NodeStorage) storage).getId());
+    }
+
+    /**
+     * Checks if a label or type might refer to the same object, empty ones match everything.
+     *
+     * @param otherId the other label or type.
+     * @return true if so.
+     */
+    private boolean matchesId(final String otherId)
+    {
+        return id.isEmpty() || otherId.isEmpty() || id.equals(otherId);
+    }
+
+    /**
+     * Create the storage which reads the object from the database.
+     *
+     * @return a node storage with the idx or a relationship storage between the two endpoints.
+     */
+    public Object toPattern()
+    {
+        if (startNode == null || endNode == null)
+        {
+            final PropertyMap properties = new PropertyMap(1);
+            properties.put(Constants.TAG_IDX, idx);
+            return new NodeStorage(id, properties);
+        }
+        return new RelationshipStorage(id, (NodeStorage) startNode.toPattern(), (NodeStorage) endNode.toPattern());
+    }
+
+    /**
+     * Checks if it is the key of a relationship.
+     *
+     * @return true if so.
+     */
+    public boolean isRelationship()
+    {
+        return startNode != null;
+    }
+
+    /**
+     * Get the label of the node or the type of the relationship.
+     *
+     * @return the id.
+     */
+    public String getId()
+    {
+        return id;
+    }
+
+    /**
+     * Get the idx of the node.
+     *
+     * @return the idx, null for relationships.
+     */
+    @Nullable
+    public Object getIdx()
+    {
+        return idx;
+    }
+
+    /**
+     * Get the key of the start node.
+     *
+     * @return the key, null for nodes.
+     */
+    @Nullable
+    public ReadKey getStartNode()
+    {
+        return startNode;
+    }
+
+    /**
+     * Get the key of the end node.
+     *
+     * @return the key, null for nodes.
+     */
+    @Nullable
+    public ReadKey getEndNode()
+    {
+        return endNode;
+    }
+
+    /**
+     * Get the snapshotId the object has been read at.
+     *
+     * @return the version.
+     */
+    public long getVersion()
+    {
+        return version;
+    }
+
+    @Override
+    public String toString()
+    {
+        return (isRelationship() ? "Relationship " + id + " from " + startNode + " to " + endNode : "Node " + id + " " + idx) + " @" + version;
+    }
+}
@@ -0,0 +1,60 @@
+package main.java.com.bag.util.storage;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+/**
+ * Kryo serializer of the readSet keys, writes the names and idx with the compact property encoding and the version once.
+ */
+public class ReadKeySerializer extends Serializer<ReadKey>
+{
+    @Override
+    public void write(final Kryo kryo, final Output output, final ReadKey readKey)
+    {
+        output.writeBoolean(readKey.isRelationship());
+        PropertyCodec.writeName(output, readKey.getId());
+        if (readKey.isRelationship())
+        {
+            writeNode(kryo, output, readKey.getStartNode());
+            writeNode(kryo, output, readKey.getEndNode());
+        }
+        else
+        {
+            PropertyCodec.writeValue(kryo, output, readKey.getIdx());
+        }
+        output.writeVarLong(readKey.getVersion(), false);
+    }
+
+    @Override
+    public ReadKey read(final Kryo kryo, final Input input, final Class<ReadKey> type)
+    {
+        final boolean relationship = input.readBoolean();
+        final String id = PropertyCodec.readName(input);
+        if (relationship)
+        {
+            final String startId = PropertyCodec.readName(input);
+            final Object startIdx = PropertyCodec.readValue(kryo, input);
+            final String endId = PropertyCodec.readName(input);
+            final Object endIdx = PropertyCodec.readValue(kryo, input);
+            final long version = input.readVarLong(false);
+            return new ReadKey(id, new ReadKey(startId, startIdx, version), new ReadKey(endId, endIdx, version), version);
+        }
+        final Object idx = PropertyCodec.readValue(kryo, input);
+        return new ReadKey(id, idx, input.readVarLong(false));
+    }
+
+    /**
+     * Write the label and idx of an endpoint, it shares the version of the relationship.
+     *
+     * @param kryo   the kryo instance.
+     * @param output the output to write to.
+     * @param node   the key of the endpoint.
+     */
+    private static void writeNode(final Kryo kryo, final Output output, final ReadKey node)
+    {
+        PropertyCodec.writeName(output, node.getId());
+        PropertyCodec.writeValue(kryo, output, node.getIdx());
+    }
+}
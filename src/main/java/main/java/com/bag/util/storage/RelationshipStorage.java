@@ -3,6 +3,7 @@ package main.java.com.bag.util.storage;
 import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
+import main.java.com.bag.util.KryoContext;
 import main.java.com.bag.util.Log;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -10,7 +11,6 @@ import org.jetbrains.annotations.Nullable;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.Serializable;
-import java.util.TreeMap;
 import java.util.Map;
 
 import static main.java.com.bag.util.Constants.TAG_HASH;
@@ -32,7 +32,7 @@ public class RelationshipStorage implements Serializable
      * The properties of the relationship, may be empty as well.
      */
     @NotNull
-    private Map<String, Object> properties = new TreeMap<>();
+    private final PropertyMap properties;
 
     /**
      * The node the relationship starts.
@@ -51,6 +51,7 @@ public class RelationshipStorage implements Serializable
         startNode = new NodeStorage();
         endNode = new NodeStorage();
         id = "";
+        properties = new PropertyMap();
     }
 
     /**
@@ -63,7 +64,7 @@ public class RelationshipStorage implements Serializable
         this.id = copy.getId();
         this.startNode = copy.startNode;
         this.endNode = copy.endNode;
-        this.properties.putAll(copy.getProperties());
+        this.properties = new PropertyMap(copy.properties);
     }
 
     /**
@@ -75,9 +76,7 @@ public class RelationshipStorage implements Serializable
      */
     public RelationshipStorage(@NotNull final String id, @NotNull final NodeStorage startNode, @NotNull final NodeStorage endNode)
     {
-        this.id = id;
-        this.startNode = startNode;
-        this.endNode = endNode;
+        this(id, new PropertyMap(), startNode, endNode);
     }
 
     /**
@@ -90,10 +89,26 @@ public class RelationshipStorage implements Serializable
      */
     public RelationshipStorage(@NotNull final String id, @Nullable final Map<String, Object> properties, @NotNull final NodeStorage startNode, @NotNull final NodeStorage endNode)
     {
-        this(id, startNode, endNode);
+        this(id, new PropertyMap(), startNode, endNode);
         this.properties.putAll(properties);
     }
 
+    /**
+     * Constructor of the serializer, takes over the deserialized property map as it is.
+     *
+     * @param id         string identifier of the relationship.
+     * @param properties the properties, not copied.
+     * @param startNode  node the relationship starts.
+     * @param endNode    node the relationship ends.
+     */
+    RelationshipStorage(@NotNull final String id, @NotNull final PropertyMap properties, @NotNull final NodeStorage startNode, @NotNull final NodeStorage endNode)
+    {
+        this.id = id;
+        this.properties = properties;
+        this.startNode = startNode;
+        this.endNode = endNode;
+    }
+
     /**
      * Getter of the id.
      *
@@ -108,12 +123,23 @@ public class RelationshipStorage implements Serializable
     /**
      * Getter of the properties.
      *
-     * @return unmodifiable map of the properties.
+     * @return read-only view of the properties, sorted by key.
      */
     @NotNull
     public Map<String, Object> getProperties()
     {
-        return new TreeMap<>(properties);
+        return properties.readOnly();
+    }
+
+    /**
+     * Getter of the property map without copying it, used by the serializer.
+     *
+     * @return the map of the properties.
+     */
+    @NotNull
+    PropertyMap getPropertyMap()
+    {
+        return properties;
     }
 
     /**
@@ -178,11 +204,7 @@ public class RelationshipStorage implements Serializable
             return false;
         }
 
-        final Map<String, Object> thatMap = that.getProperties();
-        final Map<String, Object> thisMap = this.getProperties();
-
-        if(!thisMap.entrySet().containsAll(thatMap.entrySet())
-                && !thatMap.entrySet().containsAll(thisMap.entrySet()))
+        if(!properties.containsAll(that.properties) && !that.properties.containsAll(properties))
         {
             return false;
         }
@@ -194,7 +216,7 @@ public class RelationshipStorage implements Serializable
     public int hashCode()
     {
         return 31 * (31 * (31 * (31 * getId().hashCode()
-                + getProperties().hashCode())
+                + properties.hashCode())
                 + getStartNode().hashCode()) + getEndNode().hashCode());
     }
 
@@ -209,15 +231,16 @@ public class RelationshipStorage implements Serializable
         sb.append(id);
 
         sb.append("[");
-        for (Map.Entry<String, Object> item : properties.entrySet())
+        for (int i = 0; i < properties.size(); i++)
         {
-            if(item.getKey().equals(TAG_HASH) || item.getKey().equals(TAG_SNAPSHOT_ID) || item.getKey().equals(TAG_VERSION))
+            final String key = properties.keyAt(i);
+            if(key.equals(TAG_HASH) || key.equals(TAG_SNAPSHOT_ID) || key.equals(TAG_VERSION))
             {
                 continue;
             }
-            sb.append(item.getKey());
+            sb.append(key);
             sb.append("=");
-            sb.append(item.getValue());
+            sb.append(properties.valueAt(i));
             sb.append(",");
         }
         sb.deleteCharAt(sb.length() - 1);
@@ -255,10 +278,10 @@ public class RelationshipStorage implements Serializable
      */
     public byte[] getByteArray(final Kryo kryo)
     {
-        final Output output = new Output(0, 100024);
+        final Output output = KryoContext.borrowOutput();
         kryo.writeObject(output, this);
-        byte[] bytes = output.getBuffer();
-        output.close();
+        final byte[] bytes = output.toBytes();
+        KryoContext.releaseOutput(output);
         return bytes;
     }
 
@@ -274,6 +297,20 @@ public class RelationshipStorage implements Serializable
         return kryo.readObject(tempInput, RelationshipStorage.class);
     }
 
+    /**
+     * Write the canonical binary encoding which is hashed to verify reads.
+     * Contains the id and all properties except the hash and version tags, followed by both endpoints.
+     *
+     * @param output the output to write to.
+     */
+    public void writeCanonical(@NotNull final Output output)
+    {
+        PropertyCodec.writeName(output, id);
+        PropertyCodec.writeCanonicalProperties(output, properties);
+        startNode.writeCanonical(output);
+        endNode.writeCanonical(output);
+    }
+
     /**
      * Returns a byte representation of the nodeStorage.
      *
@@ -284,9 +321,9 @@ public class RelationshipStorage implements Serializable
         StringBuilder sb = new StringBuilder();
         sb.append(id);
 
-        for (Map.Entry<String, Object> entry : properties.entrySet())
+        for (int i = 0; i < properties.size(); i++)
         {
-            sb.append(entry.getKey()).append(entry.getValue());
+            sb.append(properties.keyAt(i)).append(properties.valueAt(i));
         }
 
         ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
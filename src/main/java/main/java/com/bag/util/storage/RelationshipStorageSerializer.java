@@ -0,0 +1,36 @@
+package main.java.com.bag.util.storage;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+/**
+ * Kryo serializer of the relationship storage, writes the id, the properties and both nodes inline.
+ */
+public class RelationshipStorageSerializer extends Serializer<RelationshipStorage>
+{
+    /**
+     * The serializer of the start and end node.
+     */
+    private final NodeStorageSerializer nodeSerializer = new NodeStorageSerializer();
+
+    @Override
+    public void write(final Kryo kryo, final Output output, final RelationshipStorage storage)
+    {
+        PropertyCodec.writeName(output, storage.getId());
+        PropertyCodec.writeProperties(kryo, output, storage.getPropertyMap());
+        nodeSerializer.write(kryo, output, storage.getStartNode());
+        nodeSerializer.write(kryo, output, storage.getEndNode());
+    }
+
+    @Override
+    public RelationshipStorage read(final Kryo kryo, final Input input, final Class<RelationshipStorage> type)
+    {
+        final String id = PropertyCodec.readName(input);
+        final PropertyMap properties = PropertyCodec.readProperties(kryo, input);
+        final NodeStorage startNode = nodeSerializer.read(kryo, input, NodeStorage.class);
+        final NodeStorage endNode = nodeSerializer.read(kryo, input, NodeStorage.class);
+        return new RelationshipStorage(id, properties, startNode, endNode);
+    }
+}
@@ -39,6 +39,22 @@ public class SignatureStorage implements Serializable
      */
     private boolean isDistributed = false;
 
+    /**
+     * The signed message of the batch root if the signatures cover a whole batch, null if they cover the message itself.
+     */
+    private byte[] rootMessage;
+
+    /**
+     * The index of the message in the batch and the amount of messages in the batch.
+     */
+    private int leafIndex;
+    private int leafCount;
+
+    /**
+     * The inclusion proof of the message in the batch.
+     */
+    private byte[][] proof;
+
     /**
      * Standard constructor for kryo.
      */
@@ -130,6 +146,57 @@ public class SignatureStorage implements Serializable
         this.message = message;
     }
 
+    /**
+     * Set that the signatures cover the root of a batch the message is part of.
+     * @param rootMessage the signed root message.
+     * @param leafIndex the index of the message in the batch.
+     * @param leafCount the amount of messages in the batch.
+     * @param proof the inclusion proof of the message.
+     */
+    public void setInclusionProof(final byte[] rootMessage, final int leafIndex, final int leafCount, final byte[][] proof)
+    {
+        this.rootMessage = rootMessage;
+        this.leafIndex = leafIndex;
+        this.leafCount = leafCount;
+        this.proof = proof;
+    }
+
+    /**
+     * Getter for the signed root message.
+     * @return the message or null if the signatures cover the message itself.
+     */
+    public byte[] getRootMessage()
+    {
+        return rootMessage;
+    }
+
+    /**
+     * Getter for the index of the message in the batch.
+     * @return the index.
+     */
+    public int getLeafIndex()
+    {
+        return leafIndex;
+    }
+
+    /**
+     * Getter for the amount of messages in the batch.
+     * @return the amount.
+     */
+    public int getLeafCount()
+    {
+        return leafCount;
+    }
+
+    /**
+     * Getter for the inclusion proof of the message.
+     * @return the siblings from the leaf to the root.
+     */
+    public byte[][] getProof()
+    {
+        return proof;
+    }
+
     /**
      * Set that the replica holding this storage object processed the commit.
      */
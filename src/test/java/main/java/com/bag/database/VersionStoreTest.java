@@ -0,0 +1,154 @@
+package main.java.com.bag.database;
+
+import main.java.com.bag.exceptions.OutDatedDataException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static main.java.com.bag.util.TestUtil.withProperties;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the version chains of the multi-version databases and the vacuum of the versions no snapshot reads anymore.
+ */
+public class VersionStoreTest
+{
+    /**
+     * Time to wait for the vacuum at most.
+     */
+    private static final long VACUUM_TIMEOUT_MILLIS = 5000;
+
+    /**
+     * The store of a test.
+     */
+    private VersionStore store;
+
+    @Before
+    public void createStore() throws Exception
+    {
+        store = withProperties(VersionStore::new, "bag.version.chain.length", "3", "bag.version.vacuum.interval", "5");
+    }
+
+    @After
+    public void closeStore()
+    {
+        store.close();
+    }
+
+    /**
+     * Wait until the vacuum reduced the retained versions.
+     *
+     * @param count the expected amount of retained versions.
+     */
+    private void awaitVersionCount(final long count) throws InterruptedException
+    {
+        final long deadline = System.currentTimeMillis() + VACUUM_TIMEOUT_MILLIS;
+        while (store.getVersionCount() != count && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(5);
+        }
+        assertEquals(count, store.getVersionCount());
+    }
+
+    /**
+     * Read a version and expect it to have been dropped.
+     *
+     * @param key        the key of the object.
+     * @param snapshotId the snapshot.
+     */
+    private void assertOutDated(final String key, final long snapshotId)
+    {
+        try
+        {
+            store.getVersion(key, snapshotId);
+            fail("Expected the version of snapshot " + snapshotId + " to be dropped");
+        }
+        catch (final OutDatedDataException e)
+        {
+            // expected
+        }
+    }
+
+    @Test
+    public void snapshotsReadTheVersionValidAtThem() throws OutDatedDataException
+    {
+        store.touch(0);
+        store.addVersion("n", "v1", 1, 5);
+        store.addVersion("n", "v2", 5, 9);
+
+        assertNull(store.getVersion("n", 0));
+        assertEquals("v1", store.getVersion("n", 1));
+        assertEquals("v1", store.getVersion("n", 4));
+        assertEquals("v2", store.getVersion("n", 5));
+        assertNull(store.getVersion("n", 9));
+        assertNull(store.getVersion("other", 3));
+    }
+
+    @Test
+    public void vacuumKeepsTheVersionsOfActiveSnapshots() throws Exception
+    {
+        store.touch(6);
+        store.addVersion("n", "v1", 1, 5);
+        store.addVersion("n", "v2", 5, 9);
+        store.addVersion("m", "w1", 2, 4);
+
+        awaitVersionCount(1);
+        assertEquals(6, store.getLowestActiveSnapshot());
+        assertEquals("v2", store.getVersion("n", 6));
+        assertNull(store.getVersion("n", 9));
+        assertOutDated("n", 3);
+        assertOutDated("m", 3);
+    }
+
+    @Test
+    public void vacuumDropsAllVersionsWithoutActiveSnapshots() throws Exception
+    {
+        store.addVersion("n", "v1", 1, 5);
+        store.addVersion("n", "v2", 5, 9);
+
+        awaitVersionCount(0);
+        assertEquals(9, store.getLowestActiveSnapshot());
+        assertNull(store.getVersion("n", 9));
+        assertOutDated("n", 6);
+    }
+
+    @Test
+    public void boundedChainDropsTheOldestVersion() throws OutDatedDataException
+    {
+        store.touch(0);
+        for (int i = 0; i < 4; i++)
+        {
+            store.addVersion("n", "v" + i, i * 2, i * 2 + 2);
+        }
+
+        assertEquals(3, store.getVersionCount());
+        assertEquals("v1", store.getVersion("n", 2));
+        assertEquals("v3", store.getVersion("n", 7));
+        assertOutDated("n", 1);
+    }
+
+    @Test
+    public void clearRejectsTheSnapshotsBeforeTheInstalledOne() throws OutDatedDataException
+    {
+        store.touch(2);
+        store.addVersion("n", "v1", 1, 5);
+        store.clear(8);
+
+        assertEquals(0, store.getVersionCount());
+        assertOutDated("n", 2);
+        assertOutDated("other", 7);
+        assertNull(store.getVersion("n", 8));
+        assertNull(store.getVersion("n", 10));
+    }
+
+    @Test
+    public void ignoredSnapshotIsNeverActive()
+    {
+        store.addVersion("n", "v1", 1, 5);
+        store.touch(OutDatedDataException.IGNORE_SNAPSHOT);
+
+        assertEquals(5, store.getLowestActiveSnapshot());
+    }
+}
@@ -0,0 +1,181 @@
+package main.java.com.bag.database.interfaces;
+
+import main.java.com.bag.operations.CreateOperation;
+import main.java.com.bag.operations.IOperation;
+import main.java.com.bag.util.storage.NodeStorage;
+import main.java.com.bag.util.storage.RelationshipStorage;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static main.java.com.bag.util.TestUtil.writeSet;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests how the writeSets of a batch of transactions are applied to a database which runs every writeSet in one backend transaction.
+ */
+public class IDatabaseAccessTest
+{
+    /**
+     * The operations of the tests.
+     */
+    private final IOperation first = new CreateOperation<>(new NodeStorage("1"));
+    private final IOperation second = new CreateOperation<>(new NodeStorage("2"));
+    private final IOperation bad = new CreateOperation<>(new NodeStorage("bad"));
+
+    @Test
+    public void batchIsAppliedInOneTransaction()
+    {
+        final TransactionalDatabaseAccess access = new TransactionalDatabaseAccess();
+
+        assertEquals("[true, true]", Arrays.toString(access.applyWriteSets(Arrays.asList(writeSet(first), writeSet(second)), 1)));
+        assertEquals(1, access.transactions);
+        assertEquals(Arrays.asList(new NodeStorage("1"), new NodeStorage("2")), access.committed);
+    }
+
+    @Test
+    public void failingTransactionOnlyAbortsItself()
+    {
+        final TransactionalDatabaseAccess access = new TransactionalDatabaseAccess();
+        final List<IOperation> failing = writeSet(new CreateOperation<>(new NodeStorage("3")), bad);
+
+        assertEquals("[true, false, true]", Arrays.toString(access.applyWriteSets(Arrays.asList(writeSet(first), failing, writeSet(second)), 1)));
+        assertEquals(4, access.transactions);
+        assertEquals(Arrays.asList(new NodeStorage("1"), new NodeStorage("2")), access.committed);
+    }
+
+    @Test
+    public void singleTransactionIsAppliedOnce()
+    {
+        final TransactionalDatabaseAccess access = new TransactionalDatabaseAccess();
+
+        assertEquals("[false]", Arrays.toString(access.applyWriteSets(Collections.singletonList(writeSet(bad)), 1)));
+        assertEquals(1, access.transactions);
+        assertEquals(0, access.committed.size());
+    }
+
+    /**
+     * Database which commits a writeSet completely or, if it creates the node "bad", not at all.
+     */
+    private static class TransactionalDatabaseAccess implements IDatabaseAccess
+    {
+        /**
+         * The created storages of the committed operations.
+         */
+        private final List<Object> committed = new ArrayList<>();
+
+        /**
+         * The amount of backend transactions.
+         */
+        private int transactions;
+
+        @Override
+        public boolean applyWriteSet(final List<IOperation> writeSet, final long snapshotId)
+        {
+            transactions++;
+            final List<Object> created = new ArrayList<>();
+            for (final IOperation operation : writeSet)
+            {
+                created.add(((CreateOperation<?>) operation).getObject());
+            }
+            if (created.contains(new NodeStorage("bad")))
+            {
+                return false;
+            }
+            committed.addAll(created);
+            return true;
+        }
+
+        @Override
+        public void start()
+        {
+            /*
+             * Intentionally left empty.
+             */
+        }
+
+        @Override
+        public void terminate()
+        {
+            /*
+             * Intentionally left empty.
+             */
+        }
+
+        @Override
+        public boolean compareRelationship(final RelationshipStorage storage)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean compareNode(final NodeStorage storage)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean applyUpdate(final NodeStorage key, final NodeStorage value, final long snapshotId)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean applyCreate(final NodeStorage storage, final long snapshotId)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean applyDelete(final NodeStorage storage, final long snapshotId)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean applyUpdate(final RelationshipStorage key, final RelationshipStorage value, final long snapshotId)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean applyCreate(final RelationshipStorage storage, final long snapshotId)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean applyDelete(final RelationshipStorage storage, final long snapshotId)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<Object> readObject(final Object identifier, final long localSnapshotId)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean shouldFollow(final int sequence)
+        {
+            return true;
+        }
+
+        @Override
+        public void exportData(final int chunkSize, final Consumer<List<Object>> consumer)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void clear(final long snapshotId)
+        {
+            committed.clear();
+        }
+    }
+}
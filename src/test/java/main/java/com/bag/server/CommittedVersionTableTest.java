@@ -0,0 +1,92 @@
+package main.java.com.bag.server;
+
+import main.java.com.bag.operations.CreateOperation;
+import main.java.com.bag.operations.DeleteOperation;
+import main.java.com.bag.operations.UpdateOperation;
+import main.java.com.bag.util.storage.NodeStorage;
+import main.java.com.bag.util.storage.ReadKey;
+import main.java.com.bag.util.storage.RelationshipStorage;
+import org.junit.Test;
+
+import static main.java.com.bag.util.TestUtil.writeSet;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the validation of reads by the committed version table.
+ */
+public class CommittedVersionTableTest
+{
+    @Test
+    public void confirmsReadsAtOrAfterTheCommittedVersion()
+    {
+        final CommittedVersionTable table = new CommittedVersionTable();
+        table.record(5, writeSet(new CreateOperation<>(new NodeStorage("1"))));
+
+        assertTrue(table.confirms(ReadKey.of(new NodeStorage("1"), 5)));
+        assertTrue(table.confirms(ReadKey.of(new NodeStorage("1"), -1)));
+        assertFalse(table.confirms(ReadKey.of(new NodeStorage("1"), 4)));
+        assertFalse(table.confirms(ReadKey.of(new NodeStorage("2"), 5)));
+    }
+
+    @Test
+    public void deleteOfANodeDropsItsRelationships()
+    {
+        final CommittedVersionTable table = new CommittedVersionTable();
+        final RelationshipStorage relationship = new RelationshipStorage("knows", new NodeStorage("1"), new NodeStorage("2"));
+        table.record(1, writeSet(new CreateOperation<>(relationship)));
+        table.record(2, writeSet(new DeleteOperation<>(new NodeStorage("2"))));
+
+        assertFalse(table.confirms(ReadKey.of(relationship, 3)));
+    }
+
+    @Test
+    public void updateOfTheIdxMovesTheEntry()
+    {
+        final CommittedVersionTable table = new CommittedVersionTable();
+        table.record(1, writeSet(new CreateOperation<>(new NodeStorage("1"))));
+        table.record(2, writeSet(new UpdateOperation<>(new NodeStorage("1"), new NodeStorage("9"))));
+
+        assertFalse(table.confirms(ReadKey.of(new NodeStorage("1"), 3)));
+        assertTrue(table.confirms(ReadKey.of(new NodeStorage("9"), 2)));
+    }
+
+    @Test
+    public void unkeyedWriteDropsTheTable()
+    {
+        final CommittedVersionTable table = new CommittedVersionTable();
+        table.record(1, writeSet(new CreateOperation<>(new NodeStorage("1"))));
+        table.record(2, writeSet(new CreateOperation<>(new NodeStorage())));
+
+        assertEquals(0, table.size());
+    }
+
+    @Test
+    public void validatedReadIsOnlyAddedWithoutWritesInBetween()
+    {
+        final CommittedVersionTable table = new CommittedVersionTable();
+        final long before = table.getWrites();
+        table.record(1, writeSet(new CreateOperation<>(new NodeStorage("2"))));
+        table.add(ReadKey.of(new NodeStorage("1"), 1), before);
+        assertFalse(table.confirms(ReadKey.of(new NodeStorage("1"), 1)));
+
+        table.add(ReadKey.of(new NodeStorage("1"), 1), table.getWrites());
+        assertTrue(table.confirms(ReadKey.of(new NodeStorage("1"), 1)));
+    }
+
+    @Test
+    public void pruneDropsEntriesBeforeTheWatermark()
+    {
+        final CommittedVersionTable table = new CommittedVersionTable();
+        table.record(3, writeSet(new CreateOperation<>(new NodeStorage("1"))));
+        table.record(8, writeSet(new CreateOperation<>(new NodeStorage("2"))));
+        table.add(ReadKey.of(new NodeStorage("3"), -1), table.getWrites());
+        table.prune(5);
+
+        assertFalse(table.confirms(ReadKey.of(new NodeStorage("1"), 9)));
+        assertTrue(table.confirms(ReadKey.of(new NodeStorage("2"), 9)));
+        assertTrue(table.confirms(ReadKey.of(new NodeStorage("3"), -1)));
+        assertEquals(2, table.size());
+    }
+}
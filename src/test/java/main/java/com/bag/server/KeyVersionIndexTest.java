@@ -0,0 +1,116 @@
+package main.java.com.bag.server;
+
+import main.java.com.bag.operations.CreateOperation;
+import main.java.com.bag.operations.DeleteOperation;
+import main.java.com.bag.operations.UpdateOperation;
+import main.java.com.bag.util.storage.NodeStorage;
+import main.java.com.bag.util.storage.ReadKey;
+import main.java.com.bag.util.storage.RelationshipStorage;
+import org.junit.Test;
+
+import static main.java.com.bag.util.TestUtil.writeSet;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the conflict detection and the prune boundaries of the key version index.
+ */
+public class KeyVersionIndexTest
+{
+    /**
+     * Create a node with an idx.
+     *
+     * @param idx the idx.
+     * @return the node.
+     */
+    private static NodeStorage node(final String idx)
+    {
+        return new NodeStorage(idx);
+    }
+
+    @Test
+    public void detectsWritesAfterTheSnapshot()
+    {
+        final KeyVersionIndex index = new KeyVersionIndex();
+        index.record(5, writeSet(new CreateOperation<>(node("1"))));
+
+        assertTrue(index.isModifiedSince(node("1"), 4));
+        assertFalse(index.isModifiedSince(node("1"), 5));
+        assertFalse(index.isModifiedSince(node("2"), 0));
+        assertTrue(index.isModifiedSince(ReadKey.of(node("1"), 4), 4));
+    }
+
+    @Test
+    public void keepsTheLatestVersionOfAKey()
+    {
+        final KeyVersionIndex index = new KeyVersionIndex();
+        index.record(7, writeSet(new DeleteOperation<>(node("1"))));
+        index.record(6, writeSet(new CreateOperation<>(node("1"))));
+
+        assertTrue(index.isModifiedSince(node("1"), 6));
+        assertFalse(index.isModifiedSince(node("1"), 7));
+    }
+
+    @Test
+    public void relationshipIsModifiedWithItsEndpoints()
+    {
+        final KeyVersionIndex index = new KeyVersionIndex();
+        final RelationshipStorage relationship = new RelationshipStorage("knows", node("1"), node("2"));
+        index.record(3, writeSet(new UpdateOperation<>(node("2"), node("2"))));
+
+        assertTrue(index.isModifiedSince(relationship, 2));
+        assertTrue(index.isModifiedSince(ReadKey.of(relationship, 2), 2));
+        assertFalse(index.isModifiedSince(relationship, 3));
+    }
+
+    @Test
+    public void updateOfTheIdxWritesTheNewKey()
+    {
+        final KeyVersionIndex index = new KeyVersionIndex();
+        index.record(4, writeSet(new UpdateOperation<>(node("1"), node("9"))));
+
+        assertTrue(index.isModifiedSince(node("1"), 3));
+        assertTrue(index.isModifiedSince(node("9"), 3));
+    }
+
+    @Test
+    public void unkeyedWritesAreTrackedBySnapshot()
+    {
+        final KeyVersionIndex index = new KeyVersionIndex();
+        index.record(8, writeSet(new CreateOperation<>(new NodeStorage())));
+
+        assertFalse(KeyVersionIndex.isKeyed(new NodeStorage()));
+        assertTrue(index.hasUnkeyedWritesSince(7));
+        assertFalse(index.hasUnkeyedWritesSince(8));
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    public void pruneDropsOnlyOlderEntries()
+    {
+        final KeyVersionIndex index = new KeyVersionIndex();
+        index.record(9, writeSet(new CreateOperation<>(node("1"))));
+        index.record(10, writeSet(new CreateOperation<>(node("2"))));
+        index.prune(10);
+
+        assertEquals(1, index.size());
+        assertTrue(index.isModifiedSince(node("2"), 9));
+        assertFalse(index.isModifiedSince(node("1"), 8));
+    }
+
+    @Test
+    public void transactionsBeforeThePruneBoundaryAbort()
+    {
+        final KeyVersionIndex index = new KeyVersionIndex();
+        index.prune(10);
+        index.prune(5);
+
+        assertTrue(index.isPrunedAfter(9));
+        assertFalse(index.isPrunedAfter(10));
+        assertFalse(index.isPrunedAfter(-1));
+
+        index.clear();
+        assertFalse(index.isPrunedAfter(9));
+    }
+}
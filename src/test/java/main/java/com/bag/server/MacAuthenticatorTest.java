@@ -0,0 +1,151 @@
+package main.java.com.bag.server;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the HMAC vectors of the global replicas 2 and 3 against the local clusters 0 and 1 of the checked in configs.
+ */
+public class MacAuthenticatorTest
+{
+    /**
+     * The global config of a test.
+     */
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * The location of the global config.
+     */
+    private String configLocation;
+
+    /**
+     * The message of a test.
+     */
+    private final byte[] message = "commit".getBytes(StandardCharsets.UTF_8);
+
+    @Before
+    public void writeConfig() throws IOException
+    {
+        final File config = folder.newFolder("config");
+        assertTrue(new File(config, "keys").mkdir());
+        Files.write(new File(config, "system.config").toPath(), "system.initial.view = 0,1\n".getBytes(StandardCharsets.UTF_8));
+        configLocation = config.getPath();
+        MacAuthenticator.generateKeys(configLocation, 2, 3);
+    }
+
+    /**
+     * Get the key file of a pair.
+     *
+     * @param sender  the id of the global replica.
+     * @param cluster the id of the local cluster.
+     * @param slave   the id of the slave.
+     * @return the file.
+     */
+    private File keyOf(final int sender, final int cluster, final int slave)
+    {
+        return new File(configLocation, "keys/mackey" + sender + "-" + cluster + "-" + slave);
+    }
+
+    @Test
+    public void everySlaveVerifiesItsEntry()
+    {
+        final byte[] authenticator = new MacAuthenticator(configLocation, 0, -1).authenticate(2, message);
+
+        assertEquals(8 * 40, authenticator.length);
+        for (int cluster = 0; cluster <= 1; cluster++)
+        {
+            for (int slave = 0; slave <= 3; slave++)
+            {
+                assertTrue(new MacAuthenticator(configLocation, cluster, slave).verify(2, message, authenticator));
+            }
+        }
+    }
+
+    @Test
+    public void everyPairHasItsOwnKey() throws IOException
+    {
+        assertFalse(Arrays.equals(Files.readAllBytes(keyOf(2, 1, 2).toPath()), Files.readAllBytes(keyOf(3, 1, 2).toPath())));
+        assertFalse(Arrays.equals(Files.readAllBytes(keyOf(2, 1, 2).toPath()), Files.readAllBytes(keyOf(2, 1, 3).toPath())));
+    }
+
+    @Test
+    public void tamperedMessageIsRejected()
+    {
+        final byte[] authenticator = new MacAuthenticator(configLocation, 0, -1).authenticate(2, message);
+
+        assertFalse(new MacAuthenticator(configLocation, 1, 2).verify(2, "abort".getBytes(StandardCharsets.UTF_8), authenticator));
+    }
+
+    @Test
+    public void otherSenderIsRejected()
+    {
+        final byte[] authenticator = new MacAuthenticator(configLocation, 0, -1).authenticate(2, message);
+
+        assertFalse(new MacAuthenticator(configLocation, 1, 2).verify(3, message, authenticator));
+    }
+
+    @Test
+    public void tamperedEntryIsRejected()
+    {
+        final byte[] authenticator = new MacAuthenticator(configLocation, 0, -1).authenticate(2, message);
+        authenticator[authenticator.length - 1] ^= 1;
+
+        assertFalse(new MacAuthenticator(configLocation, 1, 3).verify(2, message, authenticator));
+        assertTrue(new MacAuthenticator(configLocation, 1, 2).verify(2, message, authenticator));
+    }
+
+    @Test
+    public void replicaWithoutEntryIsRejected()
+    {
+        final byte[] authenticator = new MacAuthenticator(configLocation, 0, -1).authenticate(2, message);
+
+        assertFalse(new MacAuthenticator(configLocation, 2, 0).verify(2, message, authenticator));
+        assertFalse(new MacAuthenticator(configLocation, 0, -1).verify(2, message, authenticator));
+        assertFalse(new MacAuthenticator(configLocation, 0, 0).verify(2, message, new byte[0]));
+    }
+
+    @Test
+    public void slaveOnlyNeedsItsOwnKeys()
+    {
+        final byte[] authenticator = new MacAuthenticator(configLocation, 0, -1).authenticate(2, message);
+        for (final File key : new File(configLocation, "keys").listFiles())
+        {
+            if (!key.getName().endsWith("-1-2"))
+            {
+                assertTrue(key.delete());
+            }
+        }
+
+        assertTrue(new MacAuthenticator(configLocation, 1, 2).verify(2, message, authenticator));
+        assertFalse(new MacAuthenticator(configLocation, 1, 3).verify(2, message, authenticator));
+    }
+
+    @Test
+    public void otherKeyIsRejected() throws IOException
+    {
+        final byte[] authenticator = new MacAuthenticator(configLocation, 0, -1).authenticate(2, message);
+        Files.write(keyOf(2, 0, 1).toPath(), Files.readAllBytes(keyOf(3, 0, 1).toPath()));
+
+        assertFalse(new MacAuthenticator(configLocation, 0, 1).verify(2, message, authenticator));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void missingKeyFailsTheAuthentication()
+    {
+        assertTrue(keyOf(2, 1, 0).delete());
+        new MacAuthenticator(configLocation, 0, -1).authenticate(2, message);
+    }
+}
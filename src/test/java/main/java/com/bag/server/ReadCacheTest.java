@@ -0,0 +1,248 @@
+package main.java.com.bag.server;
+
+import main.java.com.bag.exceptions.OutDatedDataException;
+import main.java.com.bag.operations.CreateOperation;
+import main.java.com.bag.operations.UpdateOperation;
+import main.java.com.bag.util.storage.NodeStorage;
+import main.java.com.bag.util.storage.RelationshipStorage;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static main.java.com.bag.util.TestUtil.writeSet;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests the read cache, its keys, the invalidation by commits and the reads racing them.
+ */
+public class ReadCacheTest
+{
+    /**
+     * Create the result of a read.
+     *
+     * @param storages the read storages.
+     * @return the result.
+     */
+    private static List<Object> result(final Object... storages)
+    {
+        return new ArrayList<>(Arrays.asList(storages));
+    }
+
+    @Test
+    public void onlyReadsOfOneObjectAreKeyed()
+    {
+        final ReadCache cache = new ReadCache();
+        final NodeStorage withName = new NodeStorage("1");
+        withName.addProperty("name", "a");
+
+        assertNotNull(cache.keyOf(new NodeStorage("1")));
+        assertNull(cache.keyOf(withName));
+        assertNull(cache.keyOf(new NodeStorage()));
+        assertNotNull(cache.keyOf(new RelationshipStorage("knows", new NodeStorage("1"), new NodeStorage("2"))));
+        assertNull(cache.keyOf(new RelationshipStorage("knows", withName, new NodeStorage("2"))));
+        assertNull(cache.keyOf(new RelationshipStorage("knows", new NodeStorage("1"), new NodeStorage())));
+        assertNull(cache.keyOf("1"));
+    }
+
+    @Test
+    public void entryServesThisAndLaterSnapshots()
+    {
+        final ReadCache cache = new ReadCache();
+        final String key = cache.keyOf(new NodeStorage("1"));
+        cache.put(key, 5, result(new NodeStorage("1")), cache.getInvalidations());
+
+        assertNull(cache.get(key, 4));
+        assertEquals(result(new NodeStorage("1")), cache.get(key, 5));
+        assertEquals(result(new NodeStorage("1")), cache.get(key, 9));
+    }
+
+    @Test
+    public void multiReadOnlyLoadsTheMisses() throws OutDatedDataException
+    {
+        final ReadCache cache = new ReadCache();
+        final RelationshipStorage relationship = new RelationshipStorage("knows", new NodeStorage("1"), new NodeStorage("2"));
+        cache.put(cache.keyOf(new NodeStorage("1")), 1, result(new NodeStorage("1")), cache.getInvalidations());
+        final List<Object> loaded = new ArrayList<>();
+        final ReadCache.Loader loader = misses ->
+        {
+            loaded.addAll(misses);
+            final List<List<Object>> results = new ArrayList<>();
+            for (final Object miss : misses)
+            {
+                results.add(result(miss));
+            }
+            return results;
+        };
+
+        assertEquals(result(new NodeStorage("2"), new NodeStorage("1"), relationship),
+                cache.readAll(result(new NodeStorage("2"), new NodeStorage("1"), relationship), 1, true, loader));
+        assertEquals(result(new NodeStorage("2"), relationship), loaded);
+
+        loaded.clear();
+        assertEquals(result(new NodeStorage("1"), relationship, new NodeStorage("2")),
+                cache.readAll(result(new NodeStorage("1"), relationship, new NodeStorage("2")), 2, true, loader));
+        assertEquals(Collections.emptyList(), loaded);
+    }
+
+    @Test
+    public void multiReadOfAnOlderSnapshotIsNotCached() throws OutDatedDataException
+    {
+        final ReadCache cache = new ReadCache();
+        cache.readAll(result(new NodeStorage("1")), 1, false, misses -> Collections.singletonList(result(new NodeStorage("1"))));
+
+        assertNull(cache.get(cache.keyOf(new NodeStorage("1")), 1));
+    }
+
+    @Test
+    public void writeOfANodeInvalidatesItsRelationships()
+    {
+        final ReadCache cache = new ReadCache();
+        final RelationshipStorage relationship = new RelationshipStorage("knows", new NodeStorage("1"), new NodeStorage("2"));
+        final String nodeKey = cache.keyOf(new NodeStorage("3"));
+        final String relationshipKey = cache.keyOf(relationship);
+        cache.put(nodeKey, 1, result(new NodeStorage("3")), cache.getInvalidations());
+        cache.put(relationshipKey, 1, result(relationship), cache.getInvalidations());
+
+        cache.invalidate(writeSet(new UpdateOperation<>(new NodeStorage("2"), new NodeStorage("2"))));
+
+        assertNull(cache.get(relationshipKey, 2));
+        assertNotNull(cache.get(nodeKey, 2));
+    }
+
+    @Test
+    public void unkeyedWriteDropsAllEntries()
+    {
+        final ReadCache cache = new ReadCache();
+        final String key = cache.keyOf(new NodeStorage("1"));
+        cache.put(key, 1, result(new NodeStorage("1")), cache.getInvalidations());
+
+        cache.invalidate(writeSet(new CreateOperation<>(new NodeStorage())));
+
+        assertNull(cache.get(key, 2));
+    }
+
+    @Test
+    public void adjacencyIsRebuiltAndInvalidated()
+    {
+        final ReadCache cache = new ReadCache();
+        final RelationshipStorage pattern = new RelationshipStorage("knows", new NodeStorage(), new NodeStorage("9"));
+        final String key = cache.keyOf(pattern);
+        assertNotNull(key);
+        assertNotEquals(key, cache.keyOf(new RelationshipStorage("likes", new NodeStorage(), new NodeStorage("9"))));
+
+        final RelationshipStorage first = new RelationshipStorage("knows", new NodeStorage("1"), new NodeStorage("9"));
+        final RelationshipStorage second = new RelationshipStorage("knows", new NodeStorage("2"), new NodeStorage("9"));
+        second.addProperty("since", 2017);
+        cache.put(key, 3, result(first, second), cache.getInvalidations());
+        assertEquals(result(first, second), cache.get(key, 3));
+
+        cache.invalidate(writeSet(new UpdateOperation<>(new NodeStorage("2"), new NodeStorage("2"))));
+        assertNull(cache.get(key, 4));
+
+        cache.put(key, 4, result(first, second), cache.getInvalidations());
+        cache.invalidate(writeSet(new CreateOperation<>(new RelationshipStorage("knows", new NodeStorage("5"), new NodeStorage("9")))));
+        assertNull(cache.get(key, 5));
+    }
+
+    @Test
+    public void multiReadIsServedFromTheAdjacency() throws OutDatedDataException
+    {
+        final ReadCache cache = new ReadCache();
+        final RelationshipStorage pattern = new RelationshipStorage("knows", new NodeStorage(), new NodeStorage("9"));
+        final RelationshipStorage first = new RelationshipStorage("knows", new NodeStorage("1"), new NodeStorage("9"));
+        final RelationshipStorage second = new RelationshipStorage("knows", new NodeStorage("2"), new NodeStorage("9"));
+        final AtomicInteger loads = new AtomicInteger();
+        final ReadCache.Loader loader = misses ->
+        {
+            loads.addAndGet(misses.size());
+            return Collections.singletonList(result(first, second));
+        };
+
+        assertEquals(result(first, second), cache.readAll(result(pattern), 3, true, loader));
+        assertEquals(result(first, second), cache.readAll(result(pattern), 4, true, loader));
+        assertEquals(1, loads.get());
+
+        cache.invalidate(writeSet(new CreateOperation<>(new RelationshipStorage("knows", new NodeStorage("5"), new NodeStorage("9")))));
+        cache.readAll(result(pattern), 5, true, loader);
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void readStartedBeforeAnInvalidationIsNotCached()
+    {
+        final ReadCache cache = new ReadCache();
+        final String key = cache.keyOf(new NodeStorage("1"));
+        final long invalidations = cache.getInvalidations();
+
+        cache.invalidate(writeSet(new UpdateOperation<>(new NodeStorage("1"), new NodeStorage("1"))));
+        cache.put(key, 1, result(new NodeStorage("1")), invalidations);
+
+        assertNull(cache.get(key, 1));
+    }
+
+    @Test
+    public void invalidationRacingAPutNeverLeavesAStaleEntry() throws InterruptedException
+    {
+        final ReadCache cache = new ReadCache();
+        final String key = cache.keyOf(new NodeStorage("1"));
+        final AtomicInteger database = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        final int rounds = 20000;
+
+        final Thread writer = new Thread(() ->
+        {
+            awaitQuietly(start);
+            for (int i = 1; i <= rounds; i++)
+            {
+                database.set(i);
+                cache.invalidate(writeSet(new UpdateOperation<>(new NodeStorage("1"), new NodeStorage("1"))));
+            }
+        });
+        final Thread reader = new Thread(() ->
+        {
+            awaitQuietly(start);
+            for (int i = 0; i < rounds; i++)
+            {
+                final long invalidations = cache.getInvalidations();
+                cache.put(key, 0, result(database.get()), invalidations);
+            }
+        });
+
+        writer.start();
+        reader.start();
+        start.countDown();
+        writer.join();
+        reader.join();
+
+        final List<Object> cached = cache.get(key, 0);
+        if (cached != null)
+        {
+            assertEquals(result(database.get()), cached);
+        }
+    }
+
+    /**
+     * Wait for the start of a race.
+     *
+     * @param start the latch of the start.
+     */
+    private static void awaitQuietly(final CountDownLatch start)
+    {
+        try
+        {
+            start.await();
+        }
+        catch (final InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
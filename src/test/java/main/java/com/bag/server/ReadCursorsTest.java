@@ -0,0 +1,112 @@
+package main.java.com.bag.server;
+
+import main.java.com.bag.util.Constants;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static main.java.com.bag.util.TestUtil.withProperties;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests the paging of large read results with pages of three objects.
+ */
+public class ReadCursorsTest
+{
+    /**
+     * The cursors of a test.
+     */
+    private ReadCursors cursors;
+
+    @Before
+    public void createCursors() throws Exception
+    {
+        cursors = withProperties(ReadCursors::new, "bag.read.page.size", "3", "bag.read.cursor.timeout", "100");
+    }
+
+    /**
+     * Create the result of a read.
+     *
+     * @param size the amount of objects.
+     * @return the result.
+     */
+    private static List<Object> result(final int size)
+    {
+        final List<Object> result = new ArrayList<>();
+        for (int i = 0; i < size; i++)
+        {
+            result.add("object" + i);
+        }
+        return result;
+    }
+
+    @Test
+    public void smallResultIsOnePage()
+    {
+        final ReadCursors.Page page = cursors.open(1, 4, result(3));
+
+        assertEquals(result(3), page.getObjects());
+        assertEquals(4, page.getSnapshotId());
+        assertEquals(Constants.NO_CURSOR, page.getToken());
+        assertEquals(0, cursors.size());
+    }
+
+    @Test
+    public void pagesCoverTheResultInOrder()
+    {
+        final List<Object> received = new ArrayList<>();
+        ReadCursors.Page page = cursors.open(1, 4, result(8));
+        received.addAll(page.getObjects());
+        final long token = page.getToken();
+        assertNotEquals(Constants.NO_CURSOR, token);
+
+        while (page.getToken() != Constants.NO_CURSOR)
+        {
+            assertEquals(token, page.getToken());
+            page = cursors.next(1, page.getToken());
+            assertEquals(4, page.getSnapshotId());
+            received.addAll(page.getObjects());
+        }
+
+        assertEquals(result(8), received);
+        assertEquals(Arrays.asList("object6", "object7"), page.getObjects());
+        assertNull(cursors.next(1, token));
+    }
+
+    @Test
+    public void cursorOfAnotherClientIsRejected()
+    {
+        final long token = cursors.open(1, 4, result(5)).getToken();
+
+        assertNull(cursors.next(2, token));
+        assertEquals(Arrays.asList("object3", "object4"), cursors.next(1, token).getObjects());
+    }
+
+    @Test
+    public void lastPageClosesTheCursor()
+    {
+        final long token = cursors.open(1, 4, result(5)).getToken();
+        assertEquals(1, cursors.size());
+
+        assertEquals(Constants.NO_CURSOR, cursors.next(1, token).getToken());
+        assertEquals(0, cursors.size());
+    }
+
+    @Test
+    public void cursorsExpireAndClose() throws InterruptedException
+    {
+        final long expiring = cursors.open(1, 4, result(5)).getToken();
+        Thread.sleep(300);
+        assertNull(cursors.next(1, expiring));
+
+        final long closed = cursors.open(1, 4, result(5)).getToken();
+        assertNotEquals(expiring, closed);
+        cursors.clear();
+        assertNull(cursors.next(1, closed));
+    }
+}
@@ -0,0 +1,314 @@
+package main.java.com.bag.server;
+
+import bftsmart.communication.client.ReplyListener;
+import bftsmart.reconfiguration.ClientViewController;
+import bftsmart.tom.AsynchServiceProxy;
+import bftsmart.tom.RequestContext;
+import bftsmart.tom.core.messages.TOMMessage;
+import bftsmart.tom.core.messages.TOMMessageType;
+import main.java.com.bag.util.Constants;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.objenesis.ObjenesisStd;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static main.java.com.bag.util.TestUtil.read;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests the window, the coalescing and the resends of the slave update queue against a proxy which records the messages instead of sending them.
+ * The proxy is never connected and sees a view of four replicas of which three have to confirm.
+ */
+public class SlaveUpdateQueueTest
+{
+    /**
+     * Time to wait for a message to be sent.
+     */
+    private static final long SEND_TIMEOUT_MILLIS = 5000;
+
+    /**
+     * The proxy of a test.
+     */
+    private RecordingProxy proxy;
+
+    /**
+     * The queue of a test.
+     */
+    private SlaveUpdateQueue queue;
+
+    @Before
+    public void createQueue()
+    {
+        proxy = RecordingProxy.create();
+        queue = new SlaveUpdateQueue(proxy);
+    }
+
+    @After
+    public void closeQueue()
+    {
+        queue.close();
+    }
+
+    /**
+     * Wait for the next message the queue sends.
+     *
+     * @return the sent message.
+     */
+    private Invocation sent() throws InterruptedException
+    {
+        final Invocation invocation = proxy.invocations.poll(SEND_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        assertNotNull("Expected a message to be sent", invocation);
+        return invocation;
+    }
+
+    /**
+     * Create an update.
+     *
+     * @param id the id of the update.
+     * @return the update.
+     */
+    private static byte[] update(final int id)
+    {
+        return new byte[] {(byte) id, 1, 2};
+    }
+
+    /**
+     * Read the updates of a coalesced message.
+     *
+     * @param message the message.
+     * @return the updates.
+     */
+    private static List<byte[]> readBatch(final byte[] message)
+    {
+        return read(message, (kryo, input) ->
+        {
+            assertEquals(Constants.UPDATE_SLAVE_BATCH, kryo.readObject(input, String.class));
+            final int size = kryo.readObject(input, Integer.class);
+            final List<byte[]> updates = new ArrayList<>(size);
+            for (int i = 0; i < size; i++)
+            {
+                updates.add(kryo.readObject(input, byte[].class));
+            }
+            return updates;
+        });
+    }
+
+    @Test
+    public void singleUpdateIsSentAsIs() throws InterruptedException
+    {
+        queue.add(update(1));
+
+        assertArrayEquals(update(1), sent().message);
+        assertEquals(1, queue.getInFlight());
+    }
+
+    @Test
+    public void updatesQueuedBehindAFullWindowAreCoalesced() throws InterruptedException
+    {
+        final List<Invocation> inFlight = new ArrayList<>();
+        for (int i = 0; i < 4; i++)
+        {
+            queue.add(update(i));
+            inFlight.add(sent());
+        }
+
+        queue.add(update(4));
+        queue.add(update(5));
+        queue.add(update(6));
+        assertNull(proxy.invocations.poll(200, TimeUnit.MILLISECONDS));
+        assertEquals(3, queue.getQueueDepth());
+
+        inFlight.get(0).confirm(0, 1, 2);
+        final List<byte[]> batch = readBatch(sent().message);
+        assertEquals(3, batch.size());
+        for (int i = 0; i < 3; i++)
+        {
+            assertArrayEquals(update(4 + i), batch.get(i));
+        }
+        assertEquals(4, queue.getInFlight());
+    }
+
+    @Test
+    public void messageNeedsAQuorumOfDistinctSlaves() throws InterruptedException
+    {
+        queue.add(update(1));
+        final Invocation invocation = sent();
+
+        invocation.confirm(0, 1, 1);
+        assertEquals(1, queue.getInFlight());
+
+        invocation.confirm(3);
+        assertEquals(0, queue.getInFlight());
+    }
+
+    @Test
+    public void unconfirmedMessageIsResent() throws InterruptedException
+    {
+        queue.add(update(1));
+        final Invocation first = sent();
+
+        final Invocation second = sent();
+        assertArrayEquals(first.message, second.message);
+        assertEquals(1, queue.getResends());
+        assertEquals(first.requestId, (int) proxy.cleaned.poll(SEND_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+
+        first.confirm(0);
+        second.confirm(1, 2);
+        assertEquals(0, queue.getInFlight());
+    }
+
+    /**
+     * A message handed to the proxy.
+     */
+    private static class Invocation
+    {
+        /**
+         * The message.
+         */
+        private final byte[] message;
+
+        /**
+         * The listener of the replies.
+         */
+        private final ReplyListener listener;
+
+        /**
+         * The id of the request.
+         */
+        private final int requestId;
+
+        /**
+         * Creates an invocation.
+         *
+         * @param message   the message.
+         * @param listener  the listener of the replies.
+         * @param requestId the id of the request.
+         */
+        private Invocation(final byte[] message, final ReplyListener listener, final int requestId)
+        {
+            this.message = message;
+            this.listener = listener;
+            this.requestId = requestId;
+        }
+
+        /**
+         * Reply to the message from some slaves.
+         *
+         * @param senders the ids of the slaves.
+         */
+        private void confirm(final int... senders)
+        {
+            final RequestContext context = new RequestContext(requestId, 0, TOMMessageType.UNORDERED_REQUEST, new int[0], 0, listener, message);
+            for (final int sender : senders)
+            {
+                listener.replyReceived(context, new TOMMessage(sender, 0, requestId, 0, new byte[0], 0, TOMMessageType.UNORDERED_REQUEST));
+            }
+        }
+    }
+
+    /**
+     * Proxy which records the messages instead of sending them.
+     * It is instantiated without its constructor, which would load a config and connect to the replicas.
+     */
+    private static class RecordingProxy extends AsynchServiceProxy
+    {
+        /**
+         * The recorded messages.
+         */
+        private LinkedBlockingQueue<Invocation> invocations;
+
+        /**
+         * The ids of the cleaned requests.
+         */
+        private LinkedBlockingQueue<Integer> cleaned;
+
+        /**
+         * The last id of a request.
+         */
+        private AtomicInteger lastRequestId;
+
+        /**
+         * The view of four replicas tolerating one fault.
+         */
+        private ClientViewController viewManager;
+
+        /**
+         * Private constructor, the proxy is created by {@link #create()}.
+         */
+        private RecordingProxy()
+        {
+            super(0);
+        }
+
+        /**
+         * Creates the proxy.
+         *
+         * @return the proxy.
+         */
+        private static RecordingProxy create()
+        {
+            final ObjenesisStd objenesis = new ObjenesisStd();
+            final RecordingProxy proxy = objenesis.newInstance(RecordingProxy.class);
+            proxy.invocations = new LinkedBlockingQueue<>();
+            proxy.cleaned = new LinkedBlockingQueue<>();
+            proxy.lastRequestId = new AtomicInteger();
+            proxy.viewManager = objenesis.newInstance(FixedView.class);
+            return proxy;
+        }
+
+        @Override
+        public ClientViewController getViewManager()
+        {
+            return viewManager;
+        }
+
+        @Override
+        public int invokeAsynchRequest(final byte[] request, final ReplyListener replyListener, final TOMMessageType reqType)
+        {
+            final int requestId = lastRequestId.incrementAndGet();
+            invocations.add(new Invocation(request, replyListener, requestId));
+            return requestId;
+        }
+
+        @Override
+        public void cleanAsynchRequest(final int requestId)
+        {
+            cleaned.add(requestId);
+        }
+    }
+
+    /**
+     * View of four replicas tolerating one fault.
+     */
+    private static class FixedView extends ClientViewController
+    {
+        /**
+         * Private constructor, the view is created without it.
+         */
+        private FixedView()
+        {
+            super(0);
+        }
+
+        @Override
+        public int getCurrentViewN()
+        {
+            return 4;
+        }
+
+        @Override
+        public int getCurrentViewF()
+        {
+            return 1;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package main.java.com.bag.server;
+
+import org.junit.Test;
+
+import static main.java.com.bag.util.TestUtil.read;
+import static main.java.com.bag.util.TestUtil.write;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the leases of the watermark service, which only follow the ordered time of the requests.
+ */
+public class WatermarkServiceTest
+{
+    /**
+     * The default lease duration.
+     */
+    private static final long LEASE_MILLIS = 60000;
+
+    /**
+     * Write the leases of a service and read them into another one.
+     *
+     * @param source the service to write.
+     * @param target the service to read into.
+     * @return the target.
+     */
+    private static WatermarkService copy(final WatermarkService source, final WatermarkService target)
+    {
+        final byte[] leases = write((kryo, output) -> source.writeLeases(output, kryo));
+        return read(leases, (kryo, input) ->
+        {
+            target.readLeases(input, kryo);
+            return target;
+        });
+    }
+
+    @Test
+    public void watermarkIsTheLowestLiveSnapshot()
+    {
+        final WatermarkService service = new WatermarkService();
+        assertEquals(20, service.getLowWatermark(20));
+
+        service.renew(1, 7, 100);
+        service.renew(2, 12, 200);
+        assertEquals(7, service.getLowWatermark(20));
+        assertEquals(2, service.size());
+    }
+
+    @Test
+    public void snapshotOfALeaseOnlyIncreases()
+    {
+        final WatermarkService service = new WatermarkService();
+        service.renew(1, 9, 100);
+        service.renew(1, 4, 200);
+        assertEquals(9, service.getLowWatermark(20));
+
+        service.renew(1, 15, 300);
+        assertEquals(15, service.getLowWatermark(20));
+    }
+
+    @Test
+    public void commitsIgnoringTheSnapshotTakeNoLease()
+    {
+        final WatermarkService service = new WatermarkService();
+        service.renew(1, -1, 100);
+
+        assertEquals(0, service.size());
+        assertEquals(20, service.getLowWatermark(20));
+    }
+
+    @Test
+    public void leasesExpireByTheOrderedClock()
+    {
+        final WatermarkService service = new WatermarkService();
+        service.renew(1, 5, 1000);
+        service.renew(2, 8, 1000 + LEASE_MILLIS);
+        assertEquals(5, service.getLowWatermark(20));
+
+        service.renew(2, 8, 1001 + LEASE_MILLIS);
+        assertEquals(8, service.getLowWatermark(20));
+        assertEquals(1, service.size());
+    }
+
+    @Test
+    public void clockNeverGoesBack()
+    {
+        final WatermarkService service = new WatermarkService();
+        service.renew(1, 5, 1000);
+        service.renew(2, 8, 2000 + LEASE_MILLIS);
+        service.renew(1, 6, 500);
+        assertEquals(6, service.getLowWatermark(20));
+
+        service.renew(3, 9, 2000 + 2 * LEASE_MILLIS);
+        assertEquals(6, service.getLowWatermark(20));
+
+        service.renew(3, 9, 2001 + 2 * LEASE_MILLIS);
+        assertEquals(9, service.getLowWatermark(20));
+    }
+
+    @Test
+    public void leasesSurviveASnapshotOfTheReplica()
+    {
+        final WatermarkService service = new WatermarkService();
+        service.renew(1, 5, 1000);
+        service.renew(2, 8, 30000);
+
+        final WatermarkService copy = copy(service, new WatermarkService());
+        assertEquals(2, copy.size());
+        assertEquals(5, copy.getLowWatermark(20));
+
+        copy.renew(3, 9, 1001 + LEASE_MILLIS);
+        service.renew(3, 9, 1001 + LEASE_MILLIS);
+        assertEquals(service.getLowWatermark(20), copy.getLowWatermark(20));
+        assertEquals(8, copy.getLowWatermark(20));
+    }
+
+    @Test
+    public void readingASnapshotReplacesTheLeases()
+    {
+        final WatermarkService service = new WatermarkService();
+        service.renew(1, 5, 1000);
+        copy(new WatermarkService(), service);
+
+        assertEquals(0, service.size());
+        assertEquals(20, service.getLowWatermark(20));
+    }
+}
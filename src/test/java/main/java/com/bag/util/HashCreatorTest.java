@@ -0,0 +1,154 @@
+package main.java.com.bag.util;
+
+import main.java.com.bag.util.storage.NodeStorage;
+import main.java.com.bag.util.storage.RelationshipStorage;
+import org.junit.Test;
+
+import java.io.File;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static main.java.com.bag.util.TestUtil.withProperties;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the binary hashes of the storages in the default and in the fast mode.
+ */
+public class HashCreatorTest
+{
+    /**
+     * Create a node with a few properties.
+     *
+     * @param name the value of the name property.
+     * @return the node.
+     */
+    private static NodeStorage node(final String name)
+    {
+        final NodeStorage node = new NodeStorage("1");
+        node.addProperty("name", name);
+        node.addProperty("age", 30);
+        return node;
+    }
+
+    /**
+     * Hash a node in a separate class loader which initializes the HashCreator with -Dbag.hash=fast.
+     *
+     * @param name the value of the name property.
+     * @return the fast hash.
+     */
+    private static byte[] fastHash(final String name) throws Exception
+    {
+        final List<URL> urls = new ArrayList<>();
+        for (final String path : System.getProperty("java.class.path").split(File.pathSeparator))
+        {
+            urls.add(toUrl(path));
+        }
+
+        return withProperties(() ->
+        {
+            try (final URLClassLoader loader = new URLClassLoader(urls.toArray(new URL[urls.size()]), null))
+            {
+                final Class<?> nodeClass = loader.loadClass(NodeStorage.class.getName());
+                final Object node = nodeClass.getConstructor(String.class).newInstance("1");
+                nodeClass.getMethod("addProperty", String.class, Object.class).invoke(node, "name", name);
+                nodeClass.getMethod("addProperty", String.class, Object.class).invoke(node, "age", 30);
+                return (byte[]) loader.loadClass(HashCreator.class.getName()).getMethod("hashNode", nodeClass).invoke(null, node);
+            }
+        }, "bag.hash", "fast");
+    }
+
+    /**
+     * Convert a class path entry to an url.
+     *
+     * @param path the entry.
+     * @return the url.
+     */
+    private static URL toUrl(final String path)
+    {
+        try
+        {
+            return new File(path).toURI().toURL();
+        }
+        catch (final MalformedURLException e)
+        {
+            throw new IllegalArgumentException(path, e);
+        }
+    }
+
+    @Test
+    public void defaultHashIsTheRawSha1()
+    {
+        final byte[] hash = HashCreator.hashNode(node("a"));
+        assertEquals(20, hash.length);
+        assertArrayEquals(hash, HashCreator.hashNode(node("a")));
+        assertFalse(Arrays.equals(hash, HashCreator.hashNode(node("b"))));
+    }
+
+    @Test
+    public void hashIgnoresTheVersionAndHashTags()
+    {
+        final NodeStorage tagged = node("a");
+        tagged.addProperty(Constants.TAG_HASH, new byte[] {1, 2});
+        tagged.addProperty(Constants.TAG_VERSION, 7L);
+        tagged.addProperty(Constants.TAG_SNAPSHOT_ID, 3L);
+
+        assertArrayEquals(HashCreator.hashNode(node("a")), HashCreator.hashNode(tagged));
+    }
+
+    @Test
+    public void relationshipHashCoversItsEndpoints()
+    {
+        final RelationshipStorage relationship = new RelationshipStorage("knows", node("a"), new NodeStorage("2"));
+        final RelationshipStorage other = new RelationshipStorage("knows", node("b"), new NodeStorage("2"));
+
+        assertArrayEquals(HashCreator.hashRelationship(relationship), HashCreator.hashRelationship(new RelationshipStorage(relationship)));
+        assertFalse(Arrays.equals(HashCreator.hashRelationship(relationship), HashCreator.hashRelationship(other)));
+    }
+
+    @Test
+    public void encodingLargerThanTheBufferIsHashedCompletely() throws NoSuchAlgorithmException
+    {
+        final StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 2000; i++)
+        {
+            value.append((char) ('a' + i % 26));
+        }
+        final NodeStorage first = node(value.toString());
+        final NodeStorage second = node(value.substring(0, 1999) + "!");
+
+        assertFalse(Arrays.equals(HashCreator.hashNode(first), HashCreator.hashNode(second)));
+        assertEquals(MessageDigest.getInstance("SHA1").getDigestLength(), HashCreator.hashNode(first).length);
+    }
+
+    @Test
+    public void storedHashMatchesAsBytesOrHex()
+    {
+        final byte[] hash = HashCreator.hashNode(node("a"));
+
+        assertTrue(HashCreator.matches(hash, hash.clone()));
+        assertTrue(HashCreator.matches(hash, HashCreator.toHex(hash)));
+        assertFalse(HashCreator.matches(hash, HashCreator.hashNode(node("b"))));
+        assertFalse(HashCreator.matches(hash, null));
+        assertEquals("00ff10", HashCreator.toHex(new byte[] {0, (byte) 0xff, 0x10}));
+    }
+
+    @Test
+    public void fastHashIsStableAndShort() throws Exception
+    {
+        final byte[] hash = fastHash("a");
+
+        assertEquals(8, hash.length);
+        assertArrayEquals(hash, fastHash("a"));
+        assertNotEquals(HashCreator.toHex(hash), HashCreator.toHex(fastHash("b")));
+    }
+}
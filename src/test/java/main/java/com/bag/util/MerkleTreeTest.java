@@ -0,0 +1,121 @@
+package main.java.com.bag.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the roots and inclusion proofs of the merkle tree over a batch.
+ */
+public class MerkleTreeTest
+{
+    /**
+     * Create the messages of a batch.
+     *
+     * @param size the amount of messages.
+     * @return the messages.
+     */
+    private static List<byte[]> messages(final int size)
+    {
+        final List<byte[]> messages = new ArrayList<>();
+        for (int i = 0; i < size; i++)
+        {
+            messages.add(new byte[] {(byte) i, (byte) (i * 7)});
+        }
+        return messages;
+    }
+
+    @Test
+    public void everyLeafVerifiesForAllSizes()
+    {
+        for (int size = 1; size <= 9; size++)
+        {
+            final List<byte[]> messages = messages(size);
+            final MerkleTree tree = new MerkleTree(messages);
+            assertEquals(size, tree.size());
+
+            for (int i = 0; i < size; i++)
+            {
+                assertTrue("leaf " + i + " of " + size, MerkleTree.verify(messages.get(i), i, size, tree.getProof(i), tree.getRoot()));
+            }
+        }
+    }
+
+    @Test
+    public void singleLeafHasAnEmptyProof()
+    {
+        final MerkleTree tree = new MerkleTree(messages(1));
+
+        assertEquals(0, tree.getProof(0).length);
+        assertTrue(MerkleTree.verify(messages(1).get(0), 0, 1, new byte[0][], tree.getRoot()));
+    }
+
+    @Test
+    public void tamperedLeafIsRejected()
+    {
+        final List<byte[]> messages = messages(5);
+        final MerkleTree tree = new MerkleTree(messages);
+        final byte[] tampered = messages.get(2).clone();
+        tampered[0] ^= 1;
+
+        assertFalse(MerkleTree.verify(tampered, 2, 5, tree.getProof(2), tree.getRoot()));
+    }
+
+    @Test
+    public void leafAtAnotherIndexIsRejected()
+    {
+        final List<byte[]> messages = messages(4);
+        final MerkleTree tree = new MerkleTree(messages);
+
+        assertFalse(MerkleTree.verify(messages.get(1), 0, 4, tree.getProof(1), tree.getRoot()));
+        assertFalse(MerkleTree.verify(messages.get(3), 3, 5, tree.getProof(3), tree.getRoot()));
+        assertFalse(MerkleTree.verify(messages.get(1), 4, 4, tree.getProof(1), tree.getRoot()));
+        assertFalse(MerkleTree.verify(messages.get(1), -1, 4, tree.getProof(1), tree.getRoot()));
+    }
+
+    @Test
+    public void tamperedOrTruncatedProofIsRejected()
+    {
+        final List<byte[]> messages = messages(6);
+        final MerkleTree tree = new MerkleTree(messages);
+        final byte[][] proof = tree.getProof(3);
+
+        final byte[][] tampered = proof.clone();
+        tampered[0] = tampered[0].clone();
+        tampered[0][0] ^= 1;
+        assertFalse(MerkleTree.verify(messages.get(3), 3, 6, tampered, tree.getRoot()));
+
+        final byte[][] truncated = new byte[proof.length - 1][];
+        System.arraycopy(proof, 0, truncated, 0, truncated.length);
+        assertFalse(MerkleTree.verify(messages.get(3), 3, 6, truncated, tree.getRoot()));
+
+        final byte[][] extended = new byte[proof.length + 1][];
+        System.arraycopy(proof, 0, extended, 0, proof.length);
+        extended[proof.length] = proof[0];
+        assertFalse(MerkleTree.verify(messages.get(3), 3, 6, extended, tree.getRoot()));
+    }
+
+    @Test
+    public void innerNodeCantBePassedAsLeaf()
+    {
+        final List<byte[]> messages = messages(2);
+        final MerkleTree tree = new MerkleTree(messages);
+        final MerkleTree left = new MerkleTree(Collections.singletonList(messages.get(0)));
+
+        assertFalse(MerkleTree.verify(left.getRoot(), 0, 1, new byte[0][], tree.getRoot()));
+        assertArrayEquals(tree.getRoot(), new MerkleTree(messages(2)).getRoot());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void emptyBatchIsRejected()
+    {
+        new MerkleTree(Collections.emptyList());
+    }
+}
@@ -0,0 +1,133 @@
+package main.java.com.bag.util;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import main.java.com.bag.operations.IOperation;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+
+/**
+ * Helpers shared by the tests.
+ */
+public final class TestUtil
+{
+    /**
+     * Private constructor to hide implicit one.
+     */
+    private TestUtil()
+    {
+        /*
+         * Intentionally left empty.
+         */
+    }
+
+    /**
+     * Create the writeSet of a transaction.
+     *
+     * @param operations the operations.
+     * @return the writeSet.
+     */
+    public static List<IOperation> writeSet(final IOperation... operations)
+    {
+        return Arrays.asList(operations);
+    }
+
+    /**
+     * Write with a pooled kryo instance and output.
+     *
+     * @param writer writes to the output.
+     * @return the written bytes.
+     */
+    public static byte[] write(final BiConsumer<Kryo, Output> writer)
+    {
+        final Kryo kryo = KryoContext.borrow();
+        final Output output = KryoContext.borrowOutput();
+        try
+        {
+            writer.accept(kryo, output);
+            return output.toBytes();
+        }
+        finally
+        {
+            KryoContext.releaseOutput(output);
+            KryoContext.release(kryo);
+        }
+    }
+
+    /**
+     * Read with a pooled kryo instance.
+     *
+     * @param bytes  the bytes to read.
+     * @param reader reads from the input.
+     * @param <T>    the type of the result.
+     * @return the result of the reader.
+     */
+    public static <T> T read(final byte[] bytes, final BiFunction<Kryo, Input, T> reader)
+    {
+        final Kryo kryo = KryoContext.borrow();
+        try (final Input input = new Input(bytes))
+        {
+            return reader.apply(kryo, input);
+        }
+        finally
+        {
+            KryoContext.release(kryo);
+        }
+    }
+
+    /**
+     * Serialize and deserialize an object with the registered serializer.
+     *
+     * @param object the object.
+     * @param type   the class to read.
+     * @param <T>    the type of the object.
+     * @return the deserialized copy.
+     */
+    public static <T> T roundTrip(final T object, final Class<T> type)
+    {
+        return read(write((kryo, output) -> kryo.writeObject(output, object)), (kryo, input) -> kryo.readObject(input, type));
+    }
+
+    /**
+     * Run an action with system properties set, for classes which read their configuration once on construction.
+     * The previous values are restored afterwards.
+     *
+     * @param action     the action.
+     * @param properties the names and values of the properties, alternating.
+     * @param <T>        the type of the result.
+     * @return the result of the action.
+     */
+    public static <T> T withProperties(final Callable<T> action, final String... properties) throws Exception
+    {
+        final Map<String, String> previous = new HashMap<>();
+        for (int i = 0; i < properties.length; i += 2)
+        {
+            previous.put(properties[i], System.setProperty(properties[i], properties[i + 1]));
+        }
+        try
+        {
+            return action.call();
+        }
+        finally
+        {
+            for (final Map.Entry<String, String> entry : previous.entrySet())
+            {
+                if (entry.getValue() == null)
+                {
+                    System.clearProperty(entry.getKey());
+                }
+                else
+                {
+                    System.setProperty(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package main.java.com.bag.util.storage;
+
+import main.java.com.bag.operations.UpdateOperation;
+import main.java.com.bag.util.Constants;
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static main.java.com.bag.util.TestUtil.read;
+import static main.java.com.bag.util.TestUtil.roundTrip;
+import static main.java.com.bag.util.TestUtil.write;
+import static main.java.com.bag.util.TestUtil.writeSet;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the compact encoding of the names, property maps, storages and operations.
+ */
+public class PropertyCodecTest
+{
+    /**
+     * Write properties and read them back.
+     *
+     * @param properties the properties.
+     * @return the copy.
+     */
+    private static PropertyMap roundTripProperties(final PropertyMap properties)
+    {
+        return read(write((kryo, output) -> PropertyCodec.writeProperties(kryo, output, properties)), PropertyCodec::readProperties);
+    }
+
+    @Test
+    public void dictionaryNamesTakeOneByte()
+    {
+        final byte[] bytes = write((kryo, output) -> PropertyCodec.writeName(output, Constants.TAG_IDX));
+        assertEquals(1, bytes.length);
+
+        final byte[] both = write((kryo, output) ->
+        {
+            PropertyCodec.writeName(output, Constants.TAG_IDX);
+            PropertyCodec.writeName(output, "notInTheDictionary");
+        });
+        read(both, (kryo, input) ->
+        {
+            assertEquals(Constants.TAG_IDX, PropertyCodec.readName(input));
+            assertEquals("notInTheDictionary", PropertyCodec.readName(input));
+            return null;
+        });
+    }
+
+    @Test
+    public void valuesKeepTheirType()
+    {
+        final PropertyMap properties = new PropertyMap();
+        properties.put("string", "text");
+        properties.put("long", 5L);
+        properties.put("int", 7);
+        properties.put("boolean", true);
+        properties.put("double", 1.5);
+        properties.put("list", new ArrayList<>());
+        properties.put("null", null);
+        properties.put("bytes", new byte[] {1, 2, 3});
+
+        final PropertyMap copy = roundTripProperties(properties);
+        assertArrayEquals(new byte[] {1, 2, 3}, (byte[]) copy.remove("bytes"));
+        properties.remove("bytes");
+        assertEquals(properties, copy);
+        assertNull(copy.get("null"));
+        assertTrue(copy.containsKey("null"));
+    }
+
+    @Test
+    public void storagesRoundTrip()
+    {
+        final NodeStorage start = new NodeStorage("1");
+        start.addProperty("name", "start");
+        final RelationshipStorage relationship = new RelationshipStorage(Constants.RELATIONSHIP_TYPES_LIST[0], start, new NodeStorage("2"));
+        relationship.addProperty("weight", 2L);
+
+        assertEquals(start, roundTrip(start, NodeStorage.class));
+        assertEquals(relationship, roundTrip(relationship, RelationshipStorage.class));
+    }
+
+    @Test
+    public void writeSetRoundTrip()
+    {
+        final ArrayList<?> copy = roundTrip(new ArrayList<>(writeSet(new UpdateOperation<>(new NodeStorage("1"), new NodeStorage("2")))), ArrayList.class);
+
+        assertEquals(1, copy.size());
+        final UpdateOperation<?> update = (UpdateOperation<?>) copy.get(0);
+        assertEquals(new NodeStorage("1"), update.getKey());
+        assertEquals(new NodeStorage("2"), update.getValue());
+    }
+}
@@ -0,0 +1,139 @@
+package main.java.com.bag.util.storage;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the sorted array map which holds the properties of the storages.
+ */
+public class PropertyMapTest
+{
+    /**
+     * Fill a property map and a tree map with the same entries.
+     *
+     * @param properties the property map.
+     * @param expected   the tree map.
+     * @param count      the number of entries.
+     */
+    private static void fill(final PropertyMap properties, final Map<String, Object> expected, final int count)
+    {
+        for (int i = count - 1; i >= 0; i--)
+        {
+            properties.put("key" + i, i);
+            expected.put("key" + i, i);
+        }
+    }
+
+    @Test
+    public void iteratesInTheOrderOfATreeMap()
+    {
+        final PropertyMap properties = new PropertyMap(1);
+        final Map<String, Object> expected = new TreeMap<>();
+        fill(properties, expected, 20);
+
+        assertEquals(20, properties.size());
+        assertEquals(new ArrayList<>(expected.keySet()), new ArrayList<>(properties.keySet()));
+        assertEquals(new ArrayList<>(expected.values()), new ArrayList<>(properties.values()));
+        for (int i = 0; i < properties.size(); i++)
+        {
+            assertEquals(properties.get(properties.keyAt(i)), properties.valueAt(i));
+        }
+    }
+
+    @Test
+    public void putAndRemoveReturnThePreviousValue()
+    {
+        final PropertyMap properties = new PropertyMap();
+        assertNull(properties.put("name", "a"));
+        assertEquals("a", properties.put("name", "b"));
+        assertEquals(1, properties.size());
+
+        assertEquals("b", properties.remove("name"));
+        assertNull(properties.remove("name"));
+        assertTrue(properties.isEmpty());
+        assertFalse(properties.containsKey("name"));
+    }
+
+    @Test
+    public void equalsAndHashCodeMatchOtherMaps()
+    {
+        final PropertyMap properties = new PropertyMap();
+        final Map<String, Object> expected = new HashMap<>();
+        fill(properties, expected, 5);
+
+        assertEquals(expected, properties);
+        assertEquals(properties, expected);
+        assertEquals(expected.hashCode(), properties.hashCode());
+        assertEquals(properties, new PropertyMap(properties));
+    }
+
+    @Test
+    public void hashCodeFollowsModifications()
+    {
+        final PropertyMap properties = new PropertyMap();
+        properties.put("name", "a");
+        final int before = properties.hashCode();
+
+        properties.put("name", "b");
+        assertNotEquals(before, properties.hashCode());
+        assertEquals(new HashMap<>(properties).hashCode(), properties.hashCode());
+
+        properties.clear();
+        assertEquals(0, properties.hashCode());
+    }
+
+    @Test
+    public void copyIsIndependentOfTheOriginal()
+    {
+        final PropertyMap properties = new PropertyMap();
+        properties.put("name", "a");
+        final PropertyMap copy = new PropertyMap(properties);
+        copy.put("age", 3);
+
+        assertEquals(1, properties.size());
+        assertFalse(properties.containsKey("age"));
+    }
+
+    @Test
+    public void containsAllComparesKeysAndValues()
+    {
+        final PropertyMap properties = new PropertyMap();
+        properties.put("a", 1);
+        properties.put("b", 2);
+        properties.put("c", 3);
+
+        final PropertyMap subset = new PropertyMap();
+        subset.put("c", 3);
+        subset.put("a", 1);
+        assertTrue(properties.containsAll(subset));
+
+        subset.put("a", 5);
+        assertFalse(properties.containsAll(subset));
+
+        subset.put("a", 1);
+        subset.put("d", 4);
+        assertFalse(properties.containsAll(subset));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void readOnlyViewRejectsModifications()
+    {
+        final PropertyMap properties = new PropertyMap();
+        properties.put("name", "a");
+        final Map<String, Object> view = properties.readOnly();
+        properties.put("age", 3);
+
+        assertEquals(2, view.size());
+        view.put("other", 1);
+    }
+}
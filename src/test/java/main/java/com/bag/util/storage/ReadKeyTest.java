@@ -0,0 +1,100 @@
+package main.java.com.bag.util.storage;
+
+import main.java.com.bag.util.Constants;
+import org.junit.Test;
+
+import static main.java.com.bag.util.TestUtil.roundTrip;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the keys of the compact readSet, their serialization and the matching of unkeyed writes.
+ */
+public class ReadKeyTest
+{
+    @Test
+    public void nodeKeyMatchesTheKeyOfItsStorage()
+    {
+        final NodeStorage node = new NodeStorage("1");
+        final ReadKey readKey = ReadKey.of(node, 3);
+
+        assertNotNull(readKey);
+        assertEquals(ReadKey.keyOf(node), readKey.getKey());
+        assertEquals(3, readKey.getVersion());
+        assertFalse(readKey.isRelationship());
+    }
+
+    @Test
+    public void storagesWithoutIdxCantBeKeyed()
+    {
+        assertNull(ReadKey.of(new NodeStorage(), 1));
+        assertNull(ReadKey.keyOf(new NodeStorage()));
+        assertNull(ReadKey.of(new RelationshipStorage("knows", new NodeStorage("1"), new NodeStorage()), 1));
+        assertNull(ReadKey.of(new RelationshipStorage("", new NodeStorage("1"), new NodeStorage("2")), 1));
+    }
+
+    @Test
+    public void nodeRoundTrip()
+    {
+        final ReadKey readKey = ReadKey.of(new NodeStorage("42"), 7);
+        final ReadKey copy = roundTrip(readKey, ReadKey.class);
+
+        assertEquals(readKey.getKey(), copy.getKey());
+        assertEquals(readKey.getId(), copy.getId());
+        assertEquals(readKey.getIdx(), copy.getIdx());
+        assertEquals(7, copy.getVersion());
+    }
+
+    @Test
+    public void relationshipRoundTrip()
+    {
+        final RelationshipStorage relationship = new RelationshipStorage("knows", new NodeStorage("1"), new NodeStorage("2"));
+        final ReadKey readKey = ReadKey.of(relationship, 9);
+        final ReadKey copy = roundTrip(readKey, ReadKey.class);
+
+        assertTrue(copy.isRelationship());
+        assertEquals(ReadKey.keyOf(relationship), copy.getKey());
+        assertEquals(readKey.getStartNode().getKey(), copy.getStartNode().getKey());
+        assertEquals(readKey.getEndNode().getKey(), copy.getEndNode().getKey());
+        assertEquals(9, copy.getVersion());
+    }
+
+    @Test
+    public void patternReadsTheSameObject()
+    {
+        final RelationshipStorage relationship = new RelationshipStorage("knows", new NodeStorage("1"), new NodeStorage("2"));
+        final Object pattern = ReadKey.of(relationship, 1).toPattern();
+
+        assertTrue(pattern instanceof RelationshipStorage);
+        assertEquals(ReadKey.keyOf(relationship), ReadKey.keyOf(pattern));
+        assertEquals("1", ((RelationshipStorage) pattern).getStartNode().getProperty(Constants.TAG_IDX));
+    }
+
+    @Test
+    public void unkeyedWritesMatchByLabelOrType()
+    {
+        final ReadKey node = ReadKey.of(new NodeStorage("1"), 1);
+        final ReadKey relationship = ReadKey.of(new RelationshipStorage("knows", new NodeStorage("1"), new NodeStorage("2")), 1);
+
+        assertTrue(node.mayMatch(new NodeStorage()));
+        assertFalse(node.mayMatch(new RelationshipStorage("knows", new NodeStorage(), new NodeStorage())));
+        assertTrue(relationship.mayMatch(new RelationshipStorage("knows", new NodeStorage(), new NodeStorage())));
+        assertFalse(relationship.mayMatch(new RelationshipStorage("likes", new NodeStorage(), new NodeStorage())));
+        assertTrue(relationship.mayMatch(new NodeStorage()));
+    }
+
+    @Test
+    public void relationshipKeysNameTheirEndpoints()
+    {
+        final String relationship = ReadKey.keyOf(new RelationshipStorage("knows", new NodeStorage("1"), new NodeStorage("2")));
+        final String nodeKey = ReadKey.keyOf(new NodeStorage("2"));
+
+        assertTrue(ReadKey.isEndpointOf(nodeKey, relationship));
+        assertTrue(ReadKey.isEndpointOf(ReadKey.keyOf(new NodeStorage("1")), relationship));
+        assertFalse(ReadKey.isEndpointOf(ReadKey.keyOf(new NodeStorage("3")), relationship));
+        assertFalse(ReadKey.isEndpointOf(nodeKey, nodeKey));
+    }
+}